@@ -0,0 +1,102 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.api;
+
+import java.util.concurrent.Future;
+
+/**
+ * Result of an asynchronous send. Besides the blocking {@link Future} methods it allows to register
+ * callbacks and to chain further processing, so no thread has to wait while the request is pending.
+ * <p>
+ * The future completes with the answer, or fails with a {@link java.util.concurrent.TimeoutException}
+ * when no answer arrives in time and with a {@link java.util.concurrent.CancellationException} when
+ * it is cancelled. Cancelling a pending request stops its timer and drops a late answer.
+ *
+ * @param <A> type of the result
+ */
+public interface AnswerFuture<A> extends Future<A> {
+
+  /**
+   * Registers a callback which is notified once this future completes. If it is already complete the
+   * callback is invoked right away, in the calling thread; otherwise it runs in the thread which
+   * completes the future, so it should not block.
+   *
+   * @param callback the callback to notify
+   * @return this future
+   */
+  AnswerFuture<A> addCallback(Callback<? super A> callback);
+
+  /**
+   * Returns a future which completes with the result of applying the given function to the result of
+   * this one. A failure of this future, or an exception thrown by the function, fails the returned one.
+   *
+   * @param function function to apply to the result
+   * @return the new future
+   */
+  <B> AnswerFuture<B> thenApply(Function<? super A, ? extends B> function);
+
+  /**
+   * Returns a future which completes with the result of the future returned by the given function,
+   * typically a further asynchronous send depending on this answer.
+   *
+   * @param function function returning the next future
+   * @return the new future
+   */
+  <B> AnswerFuture<B> thenCompose(Function<? super A, ? extends AnswerFuture<B>> function);
+
+  /**
+   * Completion callback
+   *
+   * @param <A> type of the result
+   */
+  interface Callback<A> {
+
+    /**
+     * Notifies the callback about the result
+     *
+     * @param result the result, usually the answer message
+     */
+    void onSuccess(A result);
+
+    /**
+     * Notifies the callback about a failure, timeout or cancellation
+     *
+     * @param cause the failure cause
+     */
+    void onFailure(Throwable cause);
+  }
+
+  /**
+   * Function used to chain processing of results
+   *
+   * @param <T> type of the argument
+   * @param <R> type of the result
+   */
+  interface Function<T, R> {
+
+    /**
+     * @param value the argument
+     * @return the result
+     * @throws Exception any failure, which fails the resulting future
+     */
+    R apply(T value) throws Exception;
+  }
+}
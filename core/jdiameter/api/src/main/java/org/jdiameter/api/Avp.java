@@ -238,6 +238,46 @@ public interface Avp extends Wrapper, Serializable {
    */
   int PROXY_STATE = 33;
 
+  /**
+   * The DRMP (Diameter Routing Message Priority) AVP code
+   */
+  int DRMP = 301;
+
+  /**
+   * The OC-Supported-Features AVP code
+   */
+  int OC_SUPPORTED_FEATURES = 621;
+
+  /**
+   * The OC-Feature-Vector AVP code
+   */
+  int OC_FEATURE_VECTOR = 622;
+
+  /**
+   * The OC-OLR AVP code
+   */
+  int OC_OLR = 623;
+
+  /**
+   * The OC-Sequence-Number AVP code
+   */
+  int OC_SEQUENCE_NUMBER = 624;
+
+  /**
+   * The OC-Validity-Duration AVP code
+   */
+  int OC_VALIDITY_DURATION = 625;
+
+  /**
+   * The OC-Report-Type AVP code
+   */
+  int OC_REPORT_TYPE = 626;
+
+  /**
+   * The OC-Reduction-Percentage AVP code
+   */
+  int OC_REDUCTION_PERCENTAGE = 627;
+
   /**
    * The Authentication-Application-Id AVP code
    */
@@ -42,6 +42,8 @@
 
 package org.jdiameter.api;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * This interface introduces a capability to work with a network.
  * You can get instance of this interface over stack instance:
@@ -92,5 +94,33 @@ public interface Network extends Wrapper {
    */
   void removeNetworkReqListener(Selector<Message, ApplicationId>... selector);
 
+  /**
+   * Register a publisher of the network requests of an application, which delivers them only on
+   * subscriber demand. It is removed again when its subscription is cancelled. At most
+   * {@link RequestPublisher#DEFAULT_CAPACITY} requests wait for demand.
+   * @param applicationId application id of the requests
+   * @param maxPause maximum time a request waits for demand before it is answered with DIAMETER_TOO_BUSY,
+   * zero answers right away
+   * @param timeUnit type of maxPause value
+   * @return publisher of the requests
+   * @throws ApplicationAlreadyUseException if a listener is already registered for the application
+   */
+  RequestPublisher getRequestPublisher(ApplicationId applicationId, long maxPause, TimeUnit timeUnit) throws ApplicationAlreadyUseException;
+
+  /**
+   * Register a publisher of the network requests of an application, which delivers them only on
+   * subscriber demand. It is removed again when its subscription is cancelled.
+   * @param applicationId application id of the requests
+   * @param capacity maximum number of requests waiting for demand, further ones are answered with
+   * DIAMETER_TOO_BUSY right away
+   * @param maxPause maximum time a request waits for demand before it is answered with DIAMETER_TOO_BUSY,
+   * zero answers right away
+   * @param timeUnit type of maxPause value
+   * @return publisher of the requests
+   * @throws ApplicationAlreadyUseException if a listener is already registered for the application
+   */
+  RequestPublisher getRequestPublisher(ApplicationId applicationId, int capacity, long maxPause, TimeUnit timeUnit)
+      throws ApplicationAlreadyUseException;
+
 }
 
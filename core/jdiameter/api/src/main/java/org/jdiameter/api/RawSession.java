@@ -42,6 +42,8 @@
 
 package org.jdiameter.api;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
@@ -139,4 +141,51 @@ public interface RawSession extends BaseSession, Wrapper {
   Future<Message> send(Message message, long timeOut, TimeUnit timeUnit)
       throws InternalException, IllegalDiameterStateException, RouteException, OverloadException;
 
+  /**
+   * Sends request message with default timeout, without blocking the calling thread
+   * @param message request diameter message
+   * @return AnswerFuture completed with the answer, or failed on timeout or cancellation
+   * @throws org.jdiameter.api.InternalException The InternalException signals that internal error is occurred.
+   * @throws org.jdiameter.api.IllegalDiameterStateException The IllegalStateException signals that session has incorrect state (invalid).
+   * @throws org.jdiameter.api.RouteException The NoRouteException signals that no route exist for a given realm.
+   * @throws org.jdiameter.api.OverloadException The OverloadException signals that destination host is overloaded.
+   */
+  AnswerFuture<Message> sendAsync(Message message) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException;
+
+  /**
+   * Sends request message with defined timeout, without blocking the calling thread
+   * @param message request diameter message
+   * @param timeOut value of timeout
+   * @param timeUnit type of timeOut value
+   * @return AnswerFuture completed with the answer, or failed on timeout or cancellation
+   * @throws org.jdiameter.api.InternalException The InternalException signals that internal error is occurred.
+   * @throws org.jdiameter.api.IllegalDiameterStateException The IllegalStateException signals that session has incorrect state (invalid).
+   * @throws org.jdiameter.api.RouteException The NoRouteException signals that no route exist for a given realm.
+   * @throws org.jdiameter.api.OverloadException The OverloadException signals that destination host is overloaded.
+   */
+  AnswerFuture<Message> sendAsync(Message message, long timeOut, TimeUnit timeUnit)
+      throws InternalException, IllegalDiameterStateException, RouteException, OverloadException;
+
+  /**
+   * Sends a batch of request messages with default timeout. Each request is routed on its own and requests
+   * routed to the same peer are written to it together; requests which can not be routed or sent fail their future.
+   * @param messages request diameter messages
+   * @return futures for the answers, in the order of the requests
+   * @throws org.jdiameter.api.InternalException The InternalException signals that internal error is occurred.
+   * @throws org.jdiameter.api.IllegalDiameterStateException The IllegalStateException signals that session has incorrect state (invalid).
+   */
+  List<AnswerFuture<Message>> sendBatch(Collection<? extends Message> messages) throws InternalException, IllegalDiameterStateException;
+
+  /**
+   * Sends a batch of request messages with defined timeout
+   * @param messages request diameter messages
+   * @param timeOut value of timeout
+   * @param timeUnit type of timeOut value
+   * @return futures for the answers, in the order of the requests
+   * @throws org.jdiameter.api.InternalException The InternalException signals that internal error is occurred.
+   * @throws org.jdiameter.api.IllegalDiameterStateException The IllegalStateException signals that session has incorrect state (invalid).
+   */
+  List<AnswerFuture<Message>> sendBatch(Collection<? extends Message> messages, long timeOut, TimeUnit timeUnit)
+      throws InternalException, IllegalDiameterStateException;
+
 }
\ No newline at end of file
@@ -0,0 +1,98 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.api;
+
+/**
+ * Publishes incoming network requests of one application to a single subscriber, honoring the
+ * demand the subscriber has signalled. It is the pull based alternative to a {@link NetworkReqListener}
+ * and is obtained from {@link Network#getRequestPublisher(ApplicationId, long, java.util.concurrent.TimeUnit)}.
+ * <p>
+ * Requests are delivered with {@link Subscriber#onNext(Request)} and answered asynchronously, by sending
+ * the answer through a session of the stack. While there is no outstanding demand requests wait for it in
+ * a queue, for at most the configured pause, without holding the delivering thread; requests still not
+ * accepted after it, or arriving while the queue is full, are answered with {@link ResultCode#TOO_BUSY}.
+ */
+public interface RequestPublisher {
+
+  /**
+   * Number of requests waiting for demand unless configured otherwise
+   */
+  int DEFAULT_CAPACITY = 1024;
+
+  /**
+   * Subscribes to the requests of this publisher. Only one subscriber is supported, a second one is
+   * notified with {@link Subscriber#onError(Throwable)}.
+   *
+   * @param subscriber the subscriber
+   */
+  void subscribe(Subscriber subscriber);
+
+  /**
+   * Receiver of published requests
+   */
+  interface Subscriber {
+
+    /**
+     * Invoked once on subscription, before any other method
+     *
+     * @param subscription the subscription used to signal demand
+     */
+    void onSubscribe(Subscription subscription);
+
+    /**
+     * Delivers the next request. Invoked only within the signalled demand and never concurrently.
+     *
+     * @param request the network request
+     */
+    void onNext(Request request);
+
+    /**
+     * Terminates the subscription because of an error
+     *
+     * @param cause the error
+     */
+    void onError(Throwable cause);
+
+    /**
+     * Terminates the subscription because the publisher has been closed
+     */
+    void onComplete();
+  }
+
+  /**
+   * Link between a publisher and its subscriber
+   */
+  interface Subscription {
+
+    /**
+     * Adds the given number of requests to the outstanding demand
+     *
+     * @param n number of requests, must be positive
+     */
+    void request(long n);
+
+    /**
+     * Cancels the subscription and unregisters the publisher. Requests for its application are no
+     * longer accepted.
+     */
+    void cancel();
+  }
+}
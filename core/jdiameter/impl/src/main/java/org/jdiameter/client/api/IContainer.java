@@ -43,6 +43,8 @@
 package org.jdiameter.client.api;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.jdiameter.api.AvpDataException;
@@ -104,6 +106,14 @@ public interface IContainer extends Stack {
    */
   void sendMessage(IMessage session) throws RouteException, AvpDataException, IllegalDiameterStateException, IOException;
 
+  /**
+   * Send a batch of messages, see {@link org.jdiameter.client.api.controller.IPeerTable#sendMessages(List)}
+   * @param messages message instances
+   * @return messages which could not be sent, with the failure cause
+   * @throws IllegalDiameterStateException
+   */
+  Map<IMessage, Exception> sendMessages(List<IMessage> messages) throws IllegalDiameterStateException;
+
 
   /**
    * Add session listener
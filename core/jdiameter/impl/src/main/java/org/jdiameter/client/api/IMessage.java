@@ -47,6 +47,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.jdiameter.api.ApplicationId;
 import org.jdiameter.client.api.controller.IPeer;
+import org.jdiameter.common.api.statistic.IMessageTracer;
 
 /**
  * This interface extends basic message interface
@@ -80,6 +81,11 @@ public interface IMessage extends IRequest, IAnswer {
    */
   int STATE_ANSWERED = 3;
 
+  /**
+   * DRMP (RFC 7944) priority of messages without DRMP AVP, PRIORITY_0 is the highest and PRIORITY_15 the lowest
+   */
+  int DEFAULT_PRIORITY = 10;
+
   /**
    * Return state of message
    * @return state of message
@@ -92,6 +98,78 @@ public interface IMessage extends IRequest, IAnswer {
    */
   void setState(int newState);
 
+  /**
+   * Return the time, as given by {@link System#nanoTime()}, when the message was last handed to the transport
+   * @return send time in nanoseconds or 0 if the message was not sent yet
+   */
+  long getSendTime();
+
+  /**
+   * Set the time, as given by {@link System#nanoTime()}, when the message is handed to the transport
+   * @param nanoTime send time in nanoseconds
+   */
+  void setSendTime(long nanoTime);
+
+  /**
+   * Return the time, as given by {@link System#nanoTime()}, when the transport started to read the message
+   * @return receive time in nanoseconds or 0 if the message was not received from network
+   */
+  long getReceiveTime();
+
+  /**
+   * Set the time, as given by {@link System#nanoTime()}, when the transport started to read the message
+   * @param nanoTime receive time in nanoseconds
+   */
+  void setReceiveTime(long nanoTime);
+
+  /**
+   * Return length of the message in bytes, as last decoded or encoded
+   * @return length in bytes or 0 if the message was neither decoded nor encoded yet
+   */
+  int getSize();
+
+  /**
+   * Return DRMP (RFC 7944) priority of the message, answers created from a request inherit its priority
+   * @return priority from 0 (highest) to 15 (lowest)
+   */
+  int getPriority();
+
+  /**
+   * Set DRMP (RFC 7944) priority of the message
+   * @param priority priority from 0 (highest) to 15 (lowest)
+   */
+  void setPriority(int priority);
+
+  /**
+   * Return DOIC (RFC 7683) features agreed with the sender of the request, carried over to answers created from it
+   * @return OC-Feature-Vector bits or 0 if the sender does not support overload control
+   */
+  long getOverloadFeatures();
+
+  /**
+   * Set DOIC (RFC 7683) features agreed with the sender of the request
+   * @param features OC-Feature-Vector bits
+   */
+  void setOverloadFeatures(long features);
+
+  /**
+   * Return lifecycle trace of sampled message, see {@link IMessageTracer}
+   * @return stamps indexed by stage ordinal or null if the message is not traced
+   */
+  long[] getTrace();
+
+  /**
+   * Attach or detach lifecycle trace
+   * @param trace stamps indexed by stage ordinal or null
+   */
+  void setTrace(long[] trace);
+
+  /**
+   * Record the current time for given stage if the message is traced and the stage was not reached yet
+   * @param stage reached stage
+   */
+  void stamp(IMessageTracer.Stage stage);
+
   /**
    * Return header applicationId
    * @return header applicationId
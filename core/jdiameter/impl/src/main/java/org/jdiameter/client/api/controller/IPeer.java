@@ -42,6 +42,8 @@
 
 package org.jdiameter.client.api.controller;
 
+import java.util.List;
+
 import org.jdiameter.api.InternalException;
 import org.jdiameter.api.OverloadException;
 import org.jdiameter.api.Peer;
@@ -89,11 +91,49 @@ public interface IPeer extends Peer {
    */
   void remMessage(IMessage message);
 
+  /**
+   * Remove request from request storage map, as it expired without answer
+   *
+   * @param message request instance
+   */
+  void remExpiredMessage(IMessage message);
+
   /**
    * Clear request storage map
    */
   IMessage[] remAllMessage();
 
+  /**
+   * Return number of requests sent to this peer which are still waiting for an answer,
+   * that is, the current size of the request storage map
+   *
+   * @return number of outstanding requests
+   */
+  int getOutstandingRequests();
+
+  /**
+   * Return smoothed (exponentially weighted moving average) time between sending a request to this
+   * peer and receiving its answer
+   *
+   * @return answer latency in nanoseconds or 0 if no answer was received yet
+   */
+  long getAnswerLatency();
+
+  /**
+   * Return the time, as given by {@link System#nanoTime()}, of the last request sent to this peer that
+   * expired without answer
+   *
+   * @return time of last timeout or {@link Long#MIN_VALUE} if no request timed out
+   */
+  long getLastTimeoutTime();
+
+  /**
+   * Return the time, as given by {@link System#nanoTime()}, when this peer last entered OKAY state
+   *
+   * @return time of last transition to OKAY or {@link Long#MIN_VALUE} if the peer never was in OKAY state
+   */
+  long getOkayTime();
+
   /**
    * Put message to peer fsm
    *
@@ -114,6 +154,16 @@ public interface IPeer extends Peer {
    */
   boolean sendMessage(IMessage message) throws TransportException, OverloadException, InternalException;
 
+  /**
+   * Send several requests to the peer with a single FSM event, so they are written together
+   *
+   * @param messages request instances, in order
+   * @return true if messages will be set to FSM
+   * @throws TransportException
+   * @throws OverloadException
+   */
+  boolean sendMessages(List<IMessage> messages) throws TransportException, OverloadException, InternalException;
+
   /**
    * Return true if peer has valid connection
    *
@@ -43,6 +43,7 @@
 package org.jdiameter.client.api.controller;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 
 import org.jdiameter.api.AvpDataException;
@@ -96,6 +97,16 @@ public interface IPeerTable extends PeerTable {
    */
   void sendMessage(IMessage message) throws IllegalDiameterStateException, IOException, RouteException, AvpDataException;
 
+  /**
+   * Send a batch of messages to diameter network. Each request is routed on its own, requests routed to
+   * the same peer are handed to it together.
+   *
+   * @param messages message instances
+   * @return messages which could not be sent, with the failure cause
+   * @throws IllegalDiameterStateException
+   */
+  Map<IMessage, Exception> sendMessages(List<IMessage> messages) throws IllegalDiameterStateException;
+
   /**
    * Register session lister
    *
@@ -84,6 +84,14 @@ public interface IRealm extends Realm {
    */
   boolean hasPeerName(String name);
 
+  /**
+   * Return a counter that changes every time a peer name is added to or removed from
+   * this realm. Allows routing caches to detect stale peer sets without copying names.
+   *
+   * @return current peer names version
+   */
+  int getPeerNamesVersion();
+
   /**
    * Get the processing agent for this realm
    *
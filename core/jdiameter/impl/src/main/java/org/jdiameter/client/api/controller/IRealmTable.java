@@ -63,6 +63,15 @@ public interface IRealmTable extends RealmTable {
 
   Realm matchRealm(IRequest request);
 
+  /**
+   * Match realm for a request which Destination-Realm has already been read.
+   *
+   * @param request the request
+   * @param destRealm Destination-Realm of the request
+   * @return matching realm or null
+   */
+  Realm matchRealm(IRequest request, String destRealm);
+
   Realm matchRealm(IAnswer message, String destRealm);
 
   Realm getRealm(String realmName, ApplicationId applicationId);
@@ -79,7 +88,13 @@ public interface IRealmTable extends RealmTable {
 
   void addLocalApplicationId(ApplicationId ap);
 
-  void removeLocalApplicationId(ApplicationId a);
+  /**
+   * Removes the local realm entry of an application id, if it was added dynamically.
+   *
+   * @param a the application id
+   * @return the removed realm entry or null if none was removed
+   */
+  Realm removeLocalApplicationId(ApplicationId a);
 
   void addLocalRealm(String localRealm, String fqdn);
   /**
@@ -42,6 +42,8 @@
 
 package org.jdiameter.client.api.fsm;
 
+import java.util.List;
+
 import org.jdiameter.api.app.StateEvent;
 import org.jdiameter.client.api.IMessage;
 
@@ -57,7 +59,9 @@ public class FsmEvent implements StateEvent {
   private String key;
   private EventTypes type;
   private Object value;
+  private List<IMessage> messages;
   private final long createdTime = System.currentTimeMillis();
+  private final long createdNanoTime = System.nanoTime();
 
   /**
    * Create instance of class
@@ -102,6 +106,17 @@ public class FsmEvent implements StateEvent {
     this.key = key;
   }
 
+  /**
+   * Create instance of class for a batch of messages sent together
+   *
+   * @param type type of event
+   * @param messages attached messages, the first one is also returned as the event message
+   */
+  public FsmEvent(EventTypes type, List<IMessage> messages) {
+    this(type, messages.get(0));
+    this.messages = messages;
+  }
+
   /**
    * Return key value
    *
@@ -120,6 +135,15 @@ public class FsmEvent implements StateEvent {
     return (IMessage) getData();
   }
 
+  /**
+   * Return attached batch of messages
+   *
+   * @return messages sent together, or null for a single message event
+   */
+  public List<IMessage> getMessages() {
+    return messages;
+  }
+
   /**
    * Return created time
    *
@@ -129,6 +153,15 @@ public class FsmEvent implements StateEvent {
     return createdTime;
   }
 
+  /**
+   * Return created time in System.nanoTime() units, for latency measurement
+   *
+   * @return created nano time
+   */
+  public long getCreatedNanoTime() {
+    return createdNanoTime;
+  }
+
   @Override
   public <E> E encodeType(Class<E> eClass) {
     return (E) type;
@@ -43,6 +43,7 @@
 package org.jdiameter.client.api.fsm;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.jdiameter.api.IllegalDiameterStateException;
 import org.jdiameter.api.InternalException;
@@ -50,6 +51,7 @@ import org.jdiameter.api.Message;
 import org.jdiameter.api.OverloadException;
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.io.TransportException;
+import org.jdiameter.common.api.statistic.IHistogram;
 
 /**
  * This interface describe operations of FSM context object
@@ -83,6 +85,14 @@ public interface IContext {
    */
   boolean sendMessage(IMessage message) throws TransportException, OverloadException;
 
+  /**
+   * This method allow sent several messages to remote peer with a single write
+   * @param messages messages which should be sent to remote peer
+   * @throws TransportException
+   * @throws OverloadException
+   */
+  void sendMessages(List<IMessage> messages) throws TransportException, OverloadException;
+
   /**
    * This method allow sent CER command to remote peer
    * @throws TransportException
@@ -141,6 +151,13 @@ public interface IContext {
    */
   boolean receiveMessage(IMessage iMessage);
 
+  /**
+   * This method call when a received request is dropped before it was processed
+   * @param request dropped request, it is turned into the answer
+   * @param resultCode value for result-code Avp
+   */
+  void rejectMessage(IMessage request, int resultCode);
+
   /**
    * This method call when peer instance receive DWR event
    * @param iMessage message
@@ -190,6 +207,14 @@ public interface IContext {
    */
   String getPeerDescription();
 
+  /**
+   * Return latency histogram of parent peer for application and command of given message
+   * @param type kind of measured latency
+   * @param message message identifying application id and command code
+   * @return histogram keyed by peer uri, shared by all samples of the same key
+   */
+  IHistogram getHistogram(IHistogram.Type type, Message message);
+
   /**
    * Clears statistics for context
    */
@@ -61,6 +61,19 @@ public interface IStateMachine extends StateMachine {
    */
   double getQueueInfo();
 
+  /**
+   * This method returns true while the event queue delay stays above the configured ingress target
+   * @return true if ingress overload control is shedding requests
+   */
+  boolean isIngressOverloaded();
+
+  /**
+   * Decides if a new request is rejected by ingress overload control. Lower priority requests are rejected first
+   * @param priority DRMP priority of the request, 0 is the highest
+   * @return true if the request should be rejected
+   */
+  boolean shedIngressRequest(int priority);
+
   void remStateChangeNotification(StateChangeListener listener);
 
   IStatistic getStatistic();
@@ -44,6 +44,7 @@ package org.jdiameter.client.api.io;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.List;
 
 import org.jdiameter.api.OverloadException;
 import org.jdiameter.api.Wrapper;
@@ -91,6 +92,14 @@ public interface IConnection extends Wrapper {
    */
   void sendMessage(IMessage message) throws TransportException, OverloadException;
 
+  /**
+   * Send several messages, coalesced into a single write where the transport allows it
+   * @param messages messages to send, in order
+   * @throws TransportException
+   * @throws OverloadException
+   */
+  void sendMessages(List<IMessage> messages) throws TransportException, OverloadException;
+
   /**
    * Clear all attachec resources (close socket)
    * @throws IOException
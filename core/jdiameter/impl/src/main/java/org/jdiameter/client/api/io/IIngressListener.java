@@ -0,0 +1,37 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.client.api.io;
+
+/**
+ * Connection listener that can inspect incoming messages before they are decoded.
+ * Transports which support it call {@link #rejectBeforeDecode(String, byte[])} ahead of
+ * {@link #messageReceived(String, org.jdiameter.client.api.IMessage)}.
+ */
+public interface IIngressListener extends IConnectionListener {
+
+  /**
+   * Inspects the raw bytes of an incoming message
+   * @param connKey identifier of connection
+   * @param message encoded incoming message, including the header
+   * @return true if the listener has dealt with the message and it must not be decoded nor delivered
+   */
+  boolean rejectBeforeDecode(String connKey, byte[] message);
+}
@@ -44,6 +44,7 @@ package org.jdiameter.client.api.router;
 
 import org.jdiameter.api.AvpDataException;
 import org.jdiameter.api.InternalException;
+import org.jdiameter.api.Realm;
 import org.jdiameter.api.RouteException;
 import org.jdiameter.client.api.IAnswer;
 import org.jdiameter.client.api.IMessage;
@@ -121,6 +122,14 @@ public interface IRouter  {
    */
   void processRedirectAnswer(IRequest request, IAnswer answer, IPeerTable table) throws InternalException, RouteException;
 
+  /**
+   * Called when an answer carrying a DOIC (RFC 7683) overload report is received for request. This method updates
+   * the reduction state used to abate requests sent to the reporting host or realm.
+   * @param request
+   * @param answer
+   */
+  void processOverloadReport(IRequest request, IAnswer answer);
+
   /**
    * Based on Redirect entries or any other factors, this method changes route information.
    * @param message
@@ -130,4 +139,18 @@ public interface IRouter  {
    */
   boolean updateRoute(IRequest message) throws RouteException, AvpDataException;
 
+  /**
+   * Discards precomputed routing data, such as the per realm sets of available peers, so that it is
+   * rebuilt on next use. Must be called whenever a peer changes state or the peer table changes.
+   */
+  void invalidatePeerCandidates();
+
+  /**
+   * Discards all routing data kept for a realm entry, such as its set of available peers. Must be called
+   * once the realm entry is removed from the realm table.
+   *
+   * @param realm the removed realm entry
+   */
+  void realmRemoved(Realm realm);
+
 }
@@ -0,0 +1,287 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.client.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jdiameter.api.AnswerFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation for {@link AnswerFuture}. Completion happens in the thread delivering the answer or the
+ * timeout, which also runs the registered callbacks; nothing waits for the result unless {@link #get()}
+ * is called.
+ */
+public class AnswerFutureImpl<A> implements AnswerFuture<A> {
+
+  private static final Logger logger = LoggerFactory.getLogger(AnswerFutureImpl.class);
+
+  private boolean done;
+  private A result;
+  private Throwable failure;
+  private List<Callback<? super A>> callbacks;
+  private volatile Runnable canceller;
+
+  /**
+   * Completes this future with the given result
+   *
+   * @param result the result
+   * @return false if the future was already complete
+   */
+  public boolean complete(A result) {
+    List<Callback<? super A>> pending;
+    synchronized (this) {
+      if (done) {
+        return false;
+      }
+      this.result = result;
+      this.done = true;
+      pending = takeCallbacks();
+    }
+    for (Callback<? super A> callback : pending) {
+      notifySuccess(callback, result);
+    }
+    return true;
+  }
+
+  /**
+   * Fails this future with the given cause
+   *
+   * @param cause the failure cause
+   * @return false if the future was already complete
+   */
+  public boolean fail(Throwable cause) {
+    List<Callback<? super A>> pending;
+    synchronized (this) {
+      if (done) {
+        return false;
+      }
+      this.failure = cause;
+      this.done = true;
+      pending = takeCallbacks();
+    }
+    for (Callback<? super A> callback : pending) {
+      notifyFailure(callback, cause);
+    }
+    return true;
+  }
+
+  /**
+   * Sets the action run when this future is cancelled before completion, used to release the pending request
+   *
+   * @param canceller the action
+   */
+  public void setCanceller(Runnable canceller) {
+    this.canceller = canceller;
+  }
+
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    if (!fail(new CancellationException())) {
+      return false;
+    }
+    if (canceller != null) {
+      try {
+        canceller.run();
+      }
+      catch (Exception e) {
+        logger.debug("Failure releasing cancelled request", e);
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public synchronized boolean isCancelled() {
+    return failure instanceof CancellationException;
+  }
+
+  @Override
+  public synchronized boolean isDone() {
+    return done;
+  }
+
+  @Override
+  public synchronized A get() throws InterruptedException, ExecutionException {
+    while (!done) {
+      wait();
+    }
+    return report();
+  }
+
+  @Override
+  public synchronized A get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (!done) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        throw new TimeoutException();
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    return report();
+  }
+
+  @Override
+  public AnswerFuture<A> addCallback(Callback<? super A> callback) {
+    synchronized (this) {
+      if (!done) {
+        if (callbacks == null) {
+          callbacks = new ArrayList<Callback<? super A>>(2);
+        }
+        callbacks.add(callback);
+        return this;
+      }
+    }
+    if (failure == null) {
+      notifySuccess(callback, result);
+    }
+    else {
+      notifyFailure(callback, failure);
+    }
+    return this;
+  }
+
+  @Override
+  public <B> AnswerFuture<B> thenApply(final Function<? super A, ? extends B> function) {
+    final AnswerFutureImpl<B> next = new AnswerFutureImpl<B>();
+    next.setCanceller(new Canceller(this));
+    addCallback(new Callback<A>() {
+
+      @Override
+      public void onSuccess(A value) {
+        try {
+          next.complete(function.apply(value));
+        }
+        catch (Exception e) {
+          next.fail(e);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable cause) {
+        next.fail(cause);
+      }
+    });
+    return next;
+  }
+
+  @Override
+  public <B> AnswerFuture<B> thenCompose(final Function<? super A, ? extends AnswerFuture<B>> function) {
+    final AnswerFutureImpl<B> next = new AnswerFutureImpl<B>();
+    next.setCanceller(new Canceller(this));
+    addCallback(new Callback<A>() {
+
+      @Override
+      public void onSuccess(A value) {
+        AnswerFuture<B> stage;
+        try {
+          stage = function.apply(value);
+        }
+        catch (Exception e) {
+          next.fail(e);
+          return;
+        }
+        if (stage == null) {
+          next.complete(null);
+          return;
+        }
+        next.setCanceller(new Canceller(stage));
+        stage.addCallback(new Callback<B>() {
+
+          @Override
+          public void onSuccess(B result) {
+            next.complete(result);
+          }
+
+          @Override
+          public void onFailure(Throwable cause) {
+            next.fail(cause);
+          }
+        });
+      }
+
+      @Override
+      public void onFailure(Throwable cause) {
+        next.fail(cause);
+      }
+    });
+    return next;
+  }
+
+  private List<Callback<? super A>> takeCallbacks() {
+    notifyAll();
+    List<Callback<? super A>> pending = callbacks;
+    callbacks = null;
+    return pending != null ? pending : new ArrayList<Callback<? super A>>(0);
+  }
+
+  private A report() throws ExecutionException {
+    if (failure == null) {
+      return result;
+    }
+    if (failure instanceof CancellationException) {
+      throw (CancellationException) failure;
+    }
+    throw new ExecutionException(failure);
+  }
+
+  private void notifySuccess(Callback<? super A> callback, A value) {
+    try {
+      callback.onSuccess(value);
+    }
+    catch (Throwable e) {
+      logger.warn("Failure in answer callback", e);
+    }
+  }
+
+  private void notifyFailure(Callback<? super A> callback, Throwable cause) {
+    try {
+      callback.onFailure(cause);
+    }
+    catch (Throwable e) {
+      logger.warn("Failure in answer callback", e);
+    }
+  }
+
+  /**
+   * Propagates cancellation of a dependent future to the stage it is waiting for
+   */
+  private static class Canceller implements Runnable {
+
+    private final AnswerFuture<?> stage;
+
+    Canceller(AnswerFuture<?> stage) {
+      this.stage = stage;
+    }
+
+    @Override
+    public void run() {
+      stage.cancel(false);
+    }
+  }
+}
@@ -46,8 +46,14 @@ import static org.jdiameter.client.impl.helpers.Parameters.MessageTimeOut;
 import static org.jdiameter.client.impl.helpers.Parameters.SessionTimeOut;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -55,6 +61,7 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.jdiameter.api.Answer;
+import org.jdiameter.api.AnswerFuture;
 import org.jdiameter.api.ApplicationId;
 import org.jdiameter.api.Avp;
 import org.jdiameter.api.AvpSet;
@@ -67,11 +74,14 @@ import org.jdiameter.api.NetworkReqListener;
 import org.jdiameter.api.OverloadException;
 import org.jdiameter.api.Request;
 import org.jdiameter.api.RouteException;
+import org.jdiameter.api.app.AppSession;
 import org.jdiameter.client.api.IAssembler;
 import org.jdiameter.client.api.IContainer;
 import org.jdiameter.client.api.IEventListener;
 import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.controller.IPeer;
 import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.jdiameter.common.api.timer.ITimerFacility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -100,6 +110,9 @@ public abstract class BaseSessionImpl implements BaseSession {
 
   protected Serializable istTimerId;
 
+  // looked up on first send
+  private transient IConcurrentFactory concurrentFactory;
+
   @Override
   public long getCreationTime() {
     return creationTime;
@@ -161,7 +174,7 @@ public abstract class BaseSessionImpl implements BaseSession {
     return false;
   }
 
-  protected void genericSend(Message message, EventListener listener)
+  protected void genericSend(Message message, EventListener<?, ?> listener)
       throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
     if (isValid) {
       long timeOut = container.getConfiguration().getLongValue(MessageTimeOut.ordinal(), (Long) MessageTimeOut.defValue());
@@ -172,13 +185,38 @@ public abstract class BaseSessionImpl implements BaseSession {
     }
   }
 
-  protected void genericSend(Message aMessage, EventListener listener, long timeout, TimeUnit timeUnit)
+  protected void genericSend(Message aMessage, EventListener<?, ?> listener, long timeout, TimeUnit timeUnit)
       throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
+    IMessage message = prepareSend(aMessage, listener, timeout, timeUnit);
+    try {
+      container.sendMessage(message);
+    }
+    catch (RouteException e) {
+      message.clearTimer();
+      throw e;
+    }
+    catch (Exception e) {
+      message.clearTimer();
+      throw new InternalException(e);
+    }
+  }
+
+  /**
+   * Attaches the listener and system AVPs to the message and starts its answer timer
+   *
+   * @param aMessage the message to send
+   * @param listener listener for the answer
+   * @param timeout answer timeout
+   * @param timeUnit unit of the timeout
+   * @return the message ready to be sent
+   */
+  protected IMessage prepareSend(Message aMessage, EventListener<?, ?> listener, long timeout, TimeUnit timeUnit)
+      throws IllegalDiameterStateException {
     if (isValid) {
       setLastAccessTime();
 
       IMessage message = (IMessage) aMessage;
-      IEventListener localListener = createListenerWrapper(listener);
+      IEventListener localListener = createListenerWrapper(listener, message);
       if (message.isRequest()) {
         message.setListener(localListener);
 
@@ -198,26 +236,35 @@ public abstract class BaseSessionImpl implements BaseSession {
       }
 
       message.createTimer(container.getScheduledFacility(), timeout, timeUnit);
-      try {
-        container.sendMessage(message);
-      }
-      catch (RouteException e) {
-        message.clearTimer();
-        throw e;
-      }
-      catch (Exception e) {
-        message.clearTimer();
-        throw new InternalException(e);
-      }
+      return message;
     }
     else {
       throw new IllegalDiameterStateException("Session already released");
     }
   }
 
-  @SuppressWarnings("unchecked")
-  protected IEventListener createListenerWrapper(final EventListener listener) {
-    return listener == null ? null : new MyEventListener(this, listener);
+  protected IEventListener createListenerWrapper(final EventListener<?, ?> listener, IMessage message) {
+    if (listener == null) {
+      return null;
+    }
+    // application sessions deliver through their own mailbox
+    return new MyEventListener(this, listener, listener instanceof AppSession ? null : getListenerExecutor(message));
+  }
+
+  /**
+   * @param message the request sent
+   * @return executor delivering the answer and timeout of the request, null to deliver them on the calling thread
+   */
+  protected Executor getListenerExecutor(IMessage message) {
+    if (concurrentFactory == null) {
+      IAssembler assembler = container.getAssemblerFacility();
+      concurrentFactory = assembler != null ? assembler.getComponentInstance(IConcurrentFactory.class) : null;
+      if (concurrentFactory == null) {
+        return null;
+      }
+    }
+    // raw sessions carry the requests of many sessions
+    return concurrentFactory.getSessionListenerExecutor(sessionId != null ? sessionId : message.getSessionId());
   }
 
   public Future<Message> send(final Message message) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
@@ -233,6 +280,116 @@ public abstract class BaseSessionImpl implements BaseSession {
     return future;
   }
 
+  /**
+   * Sends the request and returns a future completed from the answer or timeout callback
+   *
+   * @param message the request
+   * @param timeout answer timeout
+   * @param timeUnit unit of the timeout
+   * @return future for the answer
+   */
+  protected <A extends Message> AnswerFuture<A> genericSendAsync(Message message, long timeout, TimeUnit timeUnit)
+      throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
+    AnswerFutureImpl<A> future = new AnswerFutureImpl<A>();
+    genericSend(message, createFutureListener(future), timeout, timeUnit);
+    future.setCanceller(createCanceller((IMessage) message));
+    return future;
+  }
+
+  /**
+   * Sends the requests as one batch, writing the requests routed to the same peer together
+   *
+   * @param messages the requests
+   * @param timeout answer timeout
+   * @param timeUnit unit of the timeout
+   * @return futures for the answers, in the order of the requests
+   */
+  protected <A extends Message> List<AnswerFuture<A>> genericSendBatch(Collection<? extends Message> messages, long timeout, TimeUnit timeUnit)
+      throws InternalException, IllegalDiameterStateException {
+    List<AnswerFuture<A>> futures = new ArrayList<AnswerFuture<A>>(messages.size());
+    Map<IMessage, AnswerFutureImpl<A>> pending = new IdentityHashMap<IMessage, AnswerFutureImpl<A>>();
+    List<IMessage> batch = new ArrayList<IMessage>(messages.size());
+    Map<IMessage, Exception> failed;
+    try {
+      for (Message message : messages) {
+        AnswerFutureImpl<A> future = new AnswerFutureImpl<A>();
+        IMessage request = prepareSend(message, createFutureListener(future), timeout, timeUnit);
+        future.setCanceller(createCanceller(request));
+        futures.add(future);
+        pending.put(request, future);
+        batch.add(request);
+      }
+      failed = container.sendMessages(batch);
+    }
+    catch (IllegalDiameterStateException e) {
+      abort(pending, e);
+      throw e;
+    }
+    catch (RuntimeException e) {
+      abort(pending, e);
+      throw e;
+    }
+    for (Map.Entry<IMessage, Exception> e : failed.entrySet()) {
+      e.getKey().clearTimer();
+      pending.get(e.getKey()).fail(e.getValue());
+    }
+    return futures;
+  }
+
+  /**
+   * Releases the requests of a batch which will not be sent, failing their futures
+   */
+  private static <A extends Message> void abort(Map<IMessage, AnswerFutureImpl<A>> pending, Exception cause) {
+    for (Map.Entry<IMessage, AnswerFutureImpl<A>> e : pending.entrySet()) {
+      e.getKey().clearTimer();
+      e.getValue().fail(cause);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private <A extends Message> IEventListener createFutureListener(final AnswerFutureImpl<A> future) {
+    return new IEventListener() {
+
+      @Override
+      public void setValid(boolean value) {
+      }
+
+      @Override
+      public boolean isValid() {
+        return !future.isDone();
+      }
+
+      @Override
+      public void receivedSuccessMessage(Request r, Answer a) {
+        future.complete((A) a);
+      }
+
+      @Override
+      public void timeoutExpired(Request r) {
+        future.fail(new TimeoutException("No answer received for request [" + r + "]"));
+      }
+    };
+  }
+
+  private Runnable createCanceller(final IMessage request) {
+    return new Runnable() {
+
+      @Override
+      public void run() {
+        // release the outstanding request so a late answer is dropped
+        request.clearTimer();
+        IEventListener listener = request.getEventListener();
+        if (listener != null) {
+          listener.setValid(false);
+        }
+        IPeer peer = request.getPeer();
+        if (peer != null) {
+          peer.remMessage(request);
+        }
+      }
+    };
+  }
+
   private class MyFuture implements Future<Message> {
 
     private boolean canceled;
@@ -412,13 +569,18 @@ public abstract class BaseSessionImpl implements BaseSession {
 
 class MyEventListener implements IEventListener {
 
-  BaseSessionImpl session;
-  EventListener listener;
-  boolean isValid = true;
+  // cleared when invalidated, possibly while an answer is being delivered
+  volatile BaseSessionImpl session;
+  volatile EventListener<Request, Answer> listener;
+  volatile boolean isValid = true;
+  // null to call the listener on the thread delivering the answer
+  final Executor executor;
 
-  MyEventListener(BaseSessionImpl session, EventListener listener) {
+  @SuppressWarnings("unchecked")
+  MyEventListener(BaseSessionImpl session, EventListener<?, ?> listener, Executor executor) {
     this.session = session;
-    this.listener = listener;
+    this.listener = (EventListener<Request, Answer>) listener;
+    this.executor = executor;
   }
 
   @Override
@@ -436,18 +598,48 @@ class MyEventListener implements IEventListener {
   }
 
   @Override
-  @SuppressWarnings("unchecked")
-  public void receivedSuccessMessage(Request request, Answer answer) {
-    if (isValid) {
+  public void receivedSuccessMessage(final Request request, final Answer answer) {
+    if (executor != null) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          deliverAnswer(request, answer);
+        }
+      });
+    }
+    else {
+      deliverAnswer(request, answer);
+    }
+  }
+
+  @Override
+  public void timeoutExpired(final Request message) {
+    if (executor != null) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          deliverTimeout(message);
+        }
+      });
+    }
+    else {
+      deliverTimeout(message);
+    }
+  }
+
+  private void deliverAnswer(Request request, Answer answer) {
+    BaseSessionImpl session = this.session;
+    EventListener<Request, Answer> listener = this.listener;
+    if (isValid && session != null && listener != null) {
       session.setLastAccessTime();
       listener.receivedSuccessMessage(request, answer);
     }
   }
 
-  @Override
-  @SuppressWarnings("unchecked")
-  public void timeoutExpired(Request message) {
-    if (isValid) {
+  private void deliverTimeout(Request message) {
+    BaseSessionImpl session = this.session;
+    EventListener<Request, Answer> listener = this.listener;
+    if (isValid && session != null && listener != null) {
       session.setLastAccessTime();
       listener.timeoutExpired(message);
     }
@@ -455,16 +647,19 @@ class MyEventListener implements IEventListener {
 
   @Override
   public int hashCode() {
+    EventListener<Request, Answer> listener = this.listener;
     return listener == null ? 0 : listener.hashCode();
   }
 
   @Override
   public boolean equals(Object obj) {
+    EventListener<Request, Answer> listener = this.listener;
     return listener != null && listener.equals(obj);
   }
 
   @Override
   public String toString() {
+    EventListener<Request, Answer> listener = this.listener;
     return listener == null ? "null" : listener.toString();
   }
 }
@@ -403,6 +403,10 @@ public class MetaDataImpl implements IMetaData {
     public void remMessage(IMessage message) {
     }
 
+    @Override
+    public void remExpiredMessage(IMessage message) {
+    }
+
     @Override
     public IMessage[] remAllMessage() {
       return new IMessage[0];
@@ -418,6 +422,15 @@ public class MetaDataImpl implements IMetaData {
       return false;
     }
 
+    @Override
+    public boolean sendMessages(List<IMessage> messages) throws TransportException, OverloadException {
+      boolean rc = true;
+      for (IMessage message : messages) {
+        rc &= sendMessage(message);
+      }
+      return rc;
+    }
+
     @Override
     public boolean hasValidConnection() {
       return false;
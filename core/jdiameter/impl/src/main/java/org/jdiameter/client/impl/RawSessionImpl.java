@@ -42,8 +42,13 @@
 
 package org.jdiameter.client.impl;
 
+import static org.jdiameter.client.impl.helpers.Parameters.MessageTimeOut;
+
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import org.jdiameter.api.AnswerFuture;
 import org.jdiameter.api.ApplicationId;
 import org.jdiameter.api.Avp;
 import org.jdiameter.api.EventListener;
@@ -132,6 +137,37 @@ public class RawSessionImpl extends BaseSessionImpl implements RawSession {
     }
   }
 
+  @Override
+  public AnswerFuture<Message> sendAsync(Message message)
+      throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
+    if (!isValid) {
+      throw new IllegalDiameterStateException("Session already released");
+    }
+    long timeOut = container.getConfiguration().getLongValue(MessageTimeOut.ordinal(), (Long) MessageTimeOut.defValue());
+    return genericSendAsync(message, timeOut, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public AnswerFuture<Message> sendAsync(Message message, long timeOut, TimeUnit timeUnit)
+      throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
+    return genericSendAsync(message, timeOut, timeUnit);
+  }
+
+  @Override
+  public List<AnswerFuture<Message>> sendBatch(Collection<? extends Message> messages) throws InternalException, IllegalDiameterStateException {
+    if (!isValid) {
+      throw new IllegalDiameterStateException("Session already released");
+    }
+    long timeOut = container.getConfiguration().getLongValue(MessageTimeOut.ordinal(), (Long) MessageTimeOut.defValue());
+    return genericSendBatch(messages, timeOut, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public List<AnswerFuture<Message>> sendBatch(Collection<? extends Message> messages, long timeOut, TimeUnit timeUnit)
+      throws InternalException, IllegalDiameterStateException {
+    return genericSendBatch(messages, timeOut, timeUnit);
+  }
+
   @Override
   public void send(Message message, EventListener<Message, Message> listener)
       throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
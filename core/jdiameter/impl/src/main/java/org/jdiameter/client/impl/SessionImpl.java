@@ -42,10 +42,13 @@
 
 package org.jdiameter.client.impl;
 
+import static org.jdiameter.client.impl.helpers.Parameters.MessageTimeOut;
+
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import org.jdiameter.api.Answer;
+import org.jdiameter.api.AnswerFuture;
 import org.jdiameter.api.ApplicationId;
 import org.jdiameter.api.Avp;
 import org.jdiameter.api.EventListener;
@@ -104,6 +107,22 @@ public class SessionImpl extends BaseSessionImpl implements ISession {
     }
   }
 
+  @Override
+  public AnswerFuture<Answer> sendAsync(Message message)
+      throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
+    if (!isValid) {
+      throw new IllegalDiameterStateException("Session already released");
+    }
+    long timeOut = container.getConfiguration().getLongValue(MessageTimeOut.ordinal(), (Long) MessageTimeOut.defValue());
+    return genericSendAsync(message, timeOut, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public AnswerFuture<Answer> sendAsync(Message message, long timeOut, TimeUnit timeUnit)
+      throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
+    return genericSendAsync(message, timeOut, timeUnit);
+  }
+
   @Override
   public void send(Message message, EventListener<Request, Answer> listener)
       throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
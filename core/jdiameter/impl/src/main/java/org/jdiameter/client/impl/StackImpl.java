@@ -50,6 +50,7 @@ import static org.jdiameter.common.api.concurrent.IConcurrentFactory.ScheduledEx
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -471,6 +472,11 @@ public class StackImpl implements IContainer, StackImplMBean {
     peerManager.sendMessage(message);
   }
 
+  @Override
+  public Map<IMessage, Exception> sendMessages(List<IMessage> messages) throws IllegalDiameterStateException {
+    return peerManager.sendMessages(messages);
+  }
+
   @Override
   public void addSessionListener(String sessionId, NetworkReqListener listener) {
     peerManager.addSessionReqListener(sessionId, listener);
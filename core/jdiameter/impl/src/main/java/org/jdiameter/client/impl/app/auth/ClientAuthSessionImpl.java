@@ -50,7 +50,6 @@ import static org.jdiameter.common.api.app.auth.ClientAuthSessionState.PENDING;
 
 import java.io.Serializable;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.jdiameter.api.Answer;
 import org.jdiameter.api.Avp;
@@ -107,7 +106,7 @@ public class ClientAuthSessionImpl extends AppAuthSessionImpl implements ClientA
   // Session State Handling ---------------------------------------------------
   //protected boolean stateless = false;
   //protected ClientAuthSessionState state = IDLE;
-  protected Lock sendAndStateLock = new ReentrantLock();
+  protected Lock sendAndStateLock = mailbox.getLock();
 
   // Factories and Listeners --------------------------------------------------
   protected transient IAuthMessageFactory factory;
@@ -529,7 +528,7 @@ public class ClientAuthSessionImpl extends AppAuthSessionImpl implements ClientA
     ad.session = this;
     ad.request = request;
     ad.answer = answer;
-    super.scheduler.execute(ad);
+    super.mailbox.execute(ad);
   }
 
   @Override
@@ -552,7 +551,7 @@ public class ClientAuthSessionImpl extends AppAuthSessionImpl implements ClientA
     RequestDelivery rd = new RequestDelivery();
     rd.session = this;
     rd.request = request;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
 
     return null;
   }
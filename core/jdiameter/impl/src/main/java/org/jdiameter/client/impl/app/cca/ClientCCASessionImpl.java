@@ -48,7 +48,6 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.jdiameter.api.Answer;
 import org.jdiameter.api.AvpDataException;
@@ -99,7 +98,7 @@ public class ClientCCASessionImpl extends AppCCASessionImpl implements ClientCCA
 
   // Session State Handling ---------------------------------------------------
 
-  protected Lock sendAndStateLock = new ReentrantLock();
+  protected Lock sendAndStateLock = mailbox.getLock();
   // Session Based Queue
   protected ArrayList<Event> eventQueue = new ArrayList<Event>(); //FIXME: this is not replicable?
   // Factories and Listeners --------------------------------------------------
@@ -565,7 +564,7 @@ public class ClientCCASessionImpl extends AppCCASessionImpl implements ClientCCA
     RequestDelivery rd = new RequestDelivery();
     rd.session = this;
     rd.request = request;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
     return null;
   }
 
@@ -575,7 +574,7 @@ public class ClientCCASessionImpl extends AppCCASessionImpl implements ClientCCA
     ad.session = this;
     ad.request = request;
     ad.answer = answer;
-    super.scheduler.execute(ad);
+    super.mailbox.execute(ad);
 
   }
 
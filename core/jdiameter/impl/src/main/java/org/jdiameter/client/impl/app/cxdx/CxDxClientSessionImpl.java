@@ -127,7 +127,7 @@ public class CxDxClientSessionImpl extends CxDxSession implements ClientCxDxSess
     RequestDelivery rd  = new RequestDelivery();
     rd.session = this;
     rd.request = request;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
     return null;
   }
 
@@ -200,7 +200,7 @@ public class CxDxClientSessionImpl extends CxDxSession implements ClientCxDxSess
     rd.session = this;
     rd.request = request;
     rd.answer = answer;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
   }
 
   /*
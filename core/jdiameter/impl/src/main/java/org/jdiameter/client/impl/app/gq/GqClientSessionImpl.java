@@ -50,7 +50,6 @@ import static org.jdiameter.common.api.app.auth.ClientAuthSessionState.PENDING;
 
 import java.io.Serializable;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.jdiameter.api.Answer;
 import org.jdiameter.api.Avp;
@@ -106,7 +105,7 @@ public class GqClientSessionImpl extends AppAuthSessionImpl implements GqClientS
   protected static final Logger logger = LoggerFactory.getLogger(GqClientSessionImpl.class);
 
   // Session State Handling ---------------------------------------------------
-  protected Lock sendAndStateLock = new ReentrantLock();
+  protected Lock sendAndStateLock = mailbox.getLock();
 
   // Factories and Listeners --------------------------------------------------
   protected transient IAuthMessageFactory factory;
@@ -501,7 +500,7 @@ public class GqClientSessionImpl extends AppAuthSessionImpl implements GqClientS
     ad.session = this;
     ad.request = request;
     ad.answer = answer;
-    super.scheduler.execute(ad);
+    super.mailbox.execute(ad);
   }
 
   @Override
@@ -520,7 +519,7 @@ public class GqClientSessionImpl extends AppAuthSessionImpl implements GqClientS
     RequestDelivery rd = new RequestDelivery();
     rd.session = this;
     rd.request = request;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
 
     return null;
   }
@@ -48,7 +48,6 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.jdiameter.api.Answer;
 import org.jdiameter.api.AvpDataException;
@@ -97,7 +96,7 @@ public class ClientGxSessionImpl extends AppGxSessionImpl implements ClientGxSes
   private static final Logger logger = LoggerFactory.getLogger(ClientGxSessionImpl.class);
   protected IClientGxSessionData sessionData;
   // Session State Handling ---------------------------------------------------
-  protected Lock sendAndStateLock = new ReentrantLock();
+  protected Lock sendAndStateLock = mailbox.getLock();
   // Factories and Listeners --------------------------------------------------
   protected IGxMessageFactory factory;
   protected ClientGxSessionListener listener;
@@ -550,7 +549,7 @@ public class ClientGxSessionImpl extends AppGxSessionImpl implements ClientGxSes
     RequestDelivery rd = new RequestDelivery();
     rd.session = this;
     rd.request = request;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
     return null;
   }
 
@@ -560,7 +559,7 @@ public class ClientGxSessionImpl extends AppGxSessionImpl implements ClientGxSes
     ad.session = this;
     ad.request = request;
     ad.answer = answer;
-    super.scheduler.execute(ad);
+    super.mailbox.execute(ad);
 
   }
 
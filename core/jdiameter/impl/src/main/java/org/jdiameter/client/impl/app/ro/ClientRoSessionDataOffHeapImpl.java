@@ -0,0 +1,56 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.app.ro;
+
+import org.jdiameter.api.app.AppSession;
+import org.jdiameter.api.ro.ClientRoSession;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.common.api.app.ro.ClientRoSessionState;
+import org.jdiameter.common.impl.app.cca.ClientCreditControlSessionDataOffHeapImpl;
+import org.jdiameter.common.impl.data.OffHeapSlab;
+
+/**
+ * {@link IClientRoSessionData} kept in an {@link OffHeapSlab} record, see {@link ClientCreditControlSessionDataOffHeapImpl}.
+ */
+public class ClientRoSessionDataOffHeapImpl extends ClientCreditControlSessionDataOffHeapImpl implements IClientRoSessionData {
+
+  private static final ClientRoSessionState[] STATES = ClientRoSessionState.values();
+
+  public ClientRoSessionDataOffHeapImpl(OffHeapSlab slab, IMessageParser messageParser) {
+    super(slab, messageParser);
+    setClientRoSessionState(ClientRoSessionState.IDLE);
+  }
+
+  @Override
+  public Class<? extends AppSession> getAppSessionIface() {
+    return ClientRoSession.class;
+  }
+
+  @Override
+  public ClientRoSessionState getClientRoSessionState() {
+    return getState(STATES, ClientRoSessionState.IDLE);
+  }
+
+  @Override
+  public void setClientRoSessionState(ClientRoSessionState state) {
+    setState(state);
+  }
+
+}
@@ -49,7 +49,6 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.jdiameter.api.Answer;
 import org.jdiameter.api.AvpDataException;
@@ -100,7 +99,7 @@ public class ClientRoSessionImpl extends AppRoSessionImpl implements ClientRoSes
 
   // Session State Handling ---------------------------------------------------
   protected IClientRoSessionData sessionData;
-  protected Lock sendAndStateLock = new ReentrantLock();
+  protected Lock sendAndStateLock = mailbox.getLock();
 
   // Factories and Listeners --------------------------------------------------
   protected transient IRoMessageFactory factory;
@@ -577,7 +576,7 @@ public class ClientRoSessionImpl extends AppRoSessionImpl implements ClientRoSes
     RequestDelivery rd = new RequestDelivery();
     rd.session = this;
     rd.request = request;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
     return null;
   }
 
@@ -587,7 +586,7 @@ public class ClientRoSessionImpl extends AppRoSessionImpl implements ClientRoSes
     ad.session = this;
     ad.request = request;
     ad.answer = answer;
-    super.scheduler.execute(ad);
+    super.mailbox.execute(ad);
 
   }
 
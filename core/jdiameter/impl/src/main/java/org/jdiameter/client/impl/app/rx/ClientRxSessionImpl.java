@@ -49,7 +49,6 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.jdiameter.api.Answer;
 import org.jdiameter.api.AvpDataException;
@@ -108,7 +107,7 @@ public class ClientRxSessionImpl extends AppRxSessionImpl implements ClientRxSes
   //protected boolean isEventBased = true;
   //protected boolean requestTypeSet = false;
   //protected ClientRxSessionState state = ClientRxSessionState.IDLE;
-  protected Lock sendAndStateLock = new ReentrantLock();
+  protected Lock sendAndStateLock = mailbox.getLock();
 
   // Factories and Listeners --------------------------------------------------
   protected transient IRxMessageFactory factory;
@@ -543,7 +542,7 @@ public class ClientRxSessionImpl extends AppRxSessionImpl implements ClientRxSes
     RequestDelivery rd = new RequestDelivery();
     rd.session = this;
     rd.request = request;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
     return null;
   }
 
@@ -553,7 +552,7 @@ public class ClientRxSessionImpl extends AppRxSessionImpl implements ClientRxSes
     ad.session = this;
     ad.request = request;
     ad.answer = answer;
-    super.scheduler.execute(ad);
+    super.mailbox.execute(ad);
 
   }
 
@@ -79,7 +79,7 @@ public class S13ClientSessionImpl extends S13Session implements ClientS13Session
     RequestDelivery rd = new RequestDelivery();
     rd.session = this;
     rd.request = request;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
     return null;
   }
 
@@ -96,7 +96,7 @@ public class S13ClientSessionImpl extends S13Session implements ClientS13Session
     rd.session = this;
     rd.request = request;
     rd.answer = answer;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
   }
 
   @Override
@@ -130,7 +130,7 @@ public class S6aClientSessionImpl extends S6aSession implements ClientS6aSession
     RequestDelivery rd  = new RequestDelivery();
     rd.session = this;
     rd.request = request;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
     return null;
   }
 
@@ -189,7 +189,7 @@ public class S6aClientSessionImpl extends S6aSession implements ClientS6aSession
     rd.session = this;
     rd.request = request;
     rd.answer = answer;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
   }
 
   /*
@@ -43,7 +43,6 @@
 package org.jdiameter.client.impl.app.sh;
 
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.jdiameter.api.Answer;
 import org.jdiameter.api.EventListener;
@@ -93,7 +92,7 @@ public class ShClientSessionImpl extends ShSession implements ClientShSession, E
   private Logger logger = LoggerFactory.getLogger(ShClientSessionImpl.class);
 
   // Session State Handling ---------------------------------------------------
-  protected Lock sendAndStateLock = new ReentrantLock();
+  protected Lock sendAndStateLock = mailbox.getLock();
 
   // Factories and Listeners --------------------------------------------------
   protected transient IShMessageFactory factory = null;
@@ -119,7 +118,7 @@ public class ShClientSessionImpl extends ShSession implements ClientShSession, E
     RequestDelivery rd = new RequestDelivery();
     rd.session = this;
     rd.request = request;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
     return null;
   }
 
@@ -231,7 +230,7 @@ public class ShClientSessionImpl extends ShSession implements ClientShSession, E
     rd.session = this;
     rd.request = request;
     rd.answer = answer;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
   }
 
   @Override
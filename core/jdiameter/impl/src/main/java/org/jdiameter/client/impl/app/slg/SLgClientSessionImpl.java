@@ -88,7 +88,7 @@ public class SLgClientSessionImpl extends SLgSession
     RequestDelivery rd = new RequestDelivery();
     rd.session = this;
     rd.request = request;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
     return null;
   }
 
@@ -107,7 +107,7 @@ public class SLgClientSessionImpl extends SLgSession
     rd.session = this;
     rd.request = request;
     rd.answer = answer;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
   }
 
   public void timeoutExpired(Request request) {
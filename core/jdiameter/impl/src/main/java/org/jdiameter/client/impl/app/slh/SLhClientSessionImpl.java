@@ -84,7 +84,7 @@ public class SLhClientSessionImpl extends SLhSession
     RequestDelivery rd = new RequestDelivery();
     rd.session = this;
     rd.request = request;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
     return null;
   }
 
@@ -98,7 +98,7 @@ public class SLhClientSessionImpl extends SLhSession
     rd.session = this;
     rd.request = request;
     rd.answer = answer;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
   }
 
   public void timeoutExpired(Request request) {
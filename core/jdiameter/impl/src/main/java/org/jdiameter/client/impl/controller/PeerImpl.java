@@ -50,11 +50,13 @@ import static org.jdiameter.api.Avp.DISCONNECT_CAUSE;
 import static org.jdiameter.api.Avp.ERROR_MESSAGE;
 import static org.jdiameter.api.Avp.FIRMWARE_REVISION;
 import static org.jdiameter.api.Avp.HOST_IP_ADDRESS;
+import static org.jdiameter.api.Avp.OC_SUPPORTED_FEATURES;
 import static org.jdiameter.api.Avp.ORIGIN_HOST;
 import static org.jdiameter.api.Avp.ORIGIN_REALM;
 import static org.jdiameter.api.Avp.ORIGIN_STATE_ID;
 import static org.jdiameter.api.Avp.PRODUCT_NAME;
 import static org.jdiameter.api.Avp.RESULT_CODE;
+import static org.jdiameter.api.Avp.SESSION_ID;
 import static org.jdiameter.api.Avp.SUPPORTED_VENDOR_ID;
 import static org.jdiameter.api.Avp.VENDOR_ID;
 import static org.jdiameter.api.Avp.VENDOR_SPECIFIC_APPLICATION_ID;
@@ -72,6 +74,8 @@ import static org.jdiameter.client.api.fsm.EventTypes.DWR_EVENT;
 import static org.jdiameter.client.api.fsm.EventTypes.INTERNAL_ERROR;
 import static org.jdiameter.client.api.fsm.EventTypes.RECEIVE_MSG_EVENT;
 import static org.jdiameter.client.api.fsm.EventTypes.STOP_EVENT;
+import static org.jdiameter.client.impl.helpers.Parameters.DoicSupport;
+import static org.jdiameter.client.impl.helpers.Parameters.MessagePriorities;
 import static org.jdiameter.client.impl.helpers.Parameters.SecurityRef;
 import static org.jdiameter.client.impl.helpers.Parameters.UseUriAsFqdn;
 
@@ -79,6 +83,7 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -86,6 +91,7 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.jdiameter.api.ApplicationId;
@@ -104,6 +110,7 @@ import org.jdiameter.api.PeerStateListener;
 import org.jdiameter.api.ResultCode;
 import org.jdiameter.api.RouteException;
 import org.jdiameter.api.URI;
+import org.jdiameter.api.app.AppSession;
 import org.jdiameter.api.app.StateChangeListener;
 import org.jdiameter.api.validation.Dictionary;
 import org.jdiameter.client.api.IMessage;
@@ -117,6 +124,7 @@ import org.jdiameter.client.api.fsm.IFsmFactory;
 import org.jdiameter.client.api.fsm.IStateMachine;
 import org.jdiameter.client.api.io.IConnection;
 import org.jdiameter.client.api.io.IConnectionListener;
+import org.jdiameter.client.api.io.IIngressListener;
 import org.jdiameter.client.api.io.ITransportLayerFactory;
 import org.jdiameter.client.api.io.TransportError;
 import org.jdiameter.client.api.io.TransportException;
@@ -124,11 +132,16 @@ import org.jdiameter.client.api.parser.IMessageParser;
 import org.jdiameter.client.api.router.IRouter;
 import org.jdiameter.client.impl.AbstractStateChangeListener;
 import org.jdiameter.client.impl.DictionarySingleton;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.jdiameter.client.impl.router.OverloadReport;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.jdiameter.common.api.data.ISessionDatasource;
+import org.jdiameter.common.api.statistic.IHistogram;
+import org.jdiameter.common.api.statistic.IMessageTracer;
 import org.jdiameter.common.api.statistic.IStatistic;
 import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
+import org.jdiameter.common.impl.jfr.DiameterEvents;
 import org.jdiameter.common.impl.controller.AbstractPeer;
 import org.jdiameter.server.impl.MutablePeerTableImpl;
 import org.slf4j.Logger;
@@ -168,13 +181,17 @@ public class PeerImpl extends AbstractPeer implements IPeer {
   protected IMessageParser parser;
   // Feature
   protected boolean useUriAsFQDN = false; // Use URI as origin host name into CER command
+  protected boolean doicSupport = false; // DOIC (RFC 7683) reacting and reporting node
+  protected PriorityClassifier priorityClassifier;
 
   //session store and data
   protected ISessionDatasource sessionDataSource;
+  // runs listeners of plain sessions when configured
+  protected IConcurrentFactory concurrentFactory;
 
   // Transport layer
   protected IConnection connection;
-  protected IConnectionListener connListener = new IConnectionListener() {
+  protected IConnectionListener connListener = new IIngressListener() {
 
     @Override
     public void connectionOpened(String connKey) {
@@ -195,7 +212,7 @@ public class PeerImpl extends AbstractPeer implements IPeer {
           request.setReTransmitted(true);
           request.setState(IMessage.STATE_NOT_SENT);
           try {
-            peerRequests.remove(request.getHopByHopIdentifier());
+            removePeerRequest(request.getHopByHopIdentifier());
             table.sendMessage(request);
           }
           catch (Throwable exc) {
@@ -228,6 +245,13 @@ public class PeerImpl extends AbstractPeer implements IPeer {
             fsm.handleEvent(new FsmEvent(req ? DPR_EVENT : DPA_EVENT, message));
             break;
           default:
+            statisticFactory.getMessageTracer().start(message, IMessageTracer.Stage.Decoded);
+            if (req) {
+              message.setPriority(priorityClassifier.classify(message));
+              if (doicSupport) {
+                message.setOverloadFeatures(OverloadReport.getFeatureVector(message) & OverloadReport.LOSS_ALGORITHM);
+              }
+            }
             fsm.handleEvent(new FsmEvent(RECEIVE_MSG_EVENT, message));
             break;
         }
@@ -248,6 +272,23 @@ public class PeerImpl extends AbstractPeer implements IPeer {
       }
     }
 
+    @Override
+    public boolean rejectBeforeDecode(String connKey, byte[] message) {
+      // only new requests are shed, answers and base protocol messages always go through
+      if (!fsm.isIngressOverloaded() || message.length < 20 || (message[4] & 0x80) == 0) {
+        return false;
+      }
+      int commandCode = ((message[5] & 0xFF) << 16) | ((message[6] & 0xFF) << 8) | (message[7] & 0xFF);
+      if (commandCode == CAPABILITIES_EXCHANGE_REQUEST || commandCode == DEVICE_WATCHDOG_REQUEST || commandCode == DISCONNECT_PEER_REQUEST) {
+        return false;
+      }
+      if (!fsm.shedIngressRequest(priorityClassifier.classify(message))) {
+        return false;
+      }
+      sendIngressOverloadAnswer(message, commandCode);
+      return true;
+    }
+
     @Override
     public void internalError(String connKey, IMessage message, TransportException cause) {
       try {
@@ -278,6 +319,10 @@ public class PeerImpl extends AbstractPeer implements IPeer {
     this.metaData = metaData;
     // XXX: FT/HA // this.slc = table.getSessionReqListeners();
     this.sessionDataSource = sessionDataSource;
+    this.concurrentFactory = concurrentFactory;
+    // read before any connection can deliver messages
+    this.doicSupport = config.getBooleanValue(DoicSupport.ordinal(), (Boolean) DoicSupport.defValue());
+    this.priorityClassifier = new PriorityClassifier(config.getStringValue(MessagePriorities.ordinal(), (String) MessagePriorities.defValue()));
 
     int port = remotePeer.getPort();
     InetAddress remoteAddress;
@@ -297,6 +342,12 @@ public class PeerImpl extends AbstractPeer implements IPeer {
             if (PeerState.DOWN.equals(s)) {
               stopping = false;
             }
+            else if (PeerState.OKAY.equals(s)) {
+              okayTime = System.nanoTime();
+            }
+            if (router != null) {
+              router.invalidatePeerCandidates();
+            }
           }
         }
     );
@@ -557,21 +608,40 @@ public class PeerImpl extends AbstractPeer implements IPeer {
 
   @Override
   public void addMessage(IMessage message) {
-    peerRequests.put(message.getHopByHopIdentifier(), message);
+    if (peerRequests.put(message.getHopByHopIdentifier(), message) == null) {
+      outstandingRequests.incrementAndGet();
+    }
   }
 
   @Override
   public void remMessage(IMessage message) {
-    peerRequests.remove(message.getHopByHopIdentifier());
+    removePeerRequest(message.getHopByHopIdentifier());
+  }
+
+  @Override
+  public void remExpiredMessage(IMessage message) {
+    if (removePeerRequest(message.getHopByHopIdentifier()) != null) {
+      lastTimeoutTime = System.nanoTime();
+    }
   }
 
   @Override
   public IMessage[] remAllMessage() {
     IMessage[] m = peerRequests.values().toArray(new IMessage[peerRequests.size()]);
-    peerRequests.clear();
+    for (IMessage message : m) {
+      removePeerRequest(message.getHopByHopIdentifier());
+    }
     return m;
   }
 
+  protected IMessage removePeerRequest(long hopByHopId) {
+    IMessage request = peerRequests.remove(hopByHopId);
+    if (request != null) {
+      outstandingRequests.decrementAndGet();
+    }
+    return request;
+  }
+
   @Override
   public boolean handleMessage(EventTypes type, IMessage message, String key) throws TransportException, OverloadException, InternalException {
     return !stopping && fsm.handleEvent(new FsmEvent(type, message, key));
@@ -579,13 +649,30 @@ public class PeerImpl extends AbstractPeer implements IPeer {
 
   @Override
   public boolean sendMessage(IMessage message) throws TransportException, OverloadException, InternalException {
+    statisticFactory.getMessageTracer().start(message, IMessageTracer.Stage.Sent);
     if (dictionary != null && dictionary.isEnabled()) {
       logger.debug("Message validation is ENABLED. Going to validate message before sending.");
       dictionary.validate(message, false);
+      message.stamp(IMessageTracer.Stage.Validated);
     }
     return !stopping && fsm.handleEvent(new FsmEvent(EventTypes.SEND_MSG_EVENT, message));
   }
 
+  @Override
+  public boolean sendMessages(List<IMessage> messages) throws TransportException, OverloadException, InternalException {
+    IMessageTracer tracer = statisticFactory.getMessageTracer();
+    for (IMessage message : messages) {
+      tracer.start(message, IMessageTracer.Stage.Sent);
+    }
+    if (dictionary != null && dictionary.isEnabled()) {
+      for (IMessage message : messages) {
+        dictionary.validate(message, false);
+        message.stamp(IMessageTracer.Stage.Validated);
+      }
+    }
+    return !stopping && fsm.handleEvent(new FsmEvent(EventTypes.SEND_MSG_EVENT, messages));
+  }
+
   @Override
   public boolean hasValidConnection() {
     return connection != null && connection.isConnected();
@@ -675,6 +762,26 @@ public class PeerImpl extends AbstractPeer implements IPeer {
 
   protected void sendErrorAnswer(IRequest request, String errorMessage, int resultCode, Avp ...avpsToAdd) {
     logger.debug("Could not process request. Result Code = [{}], Error Message: [{}]", resultCode, errorMessage);
+    makeErrorAnswer(request, errorMessage, resultCode, avpsToAdd);
+    try {
+      logger.debug("Sending response indicating we could not process request");
+      sendMessage((IMessage) request);
+      if (statistic.isEnabled()) {
+        statistic.getRecordByName(IStatisticRecord.Counters.SysGenResponse).inc();
+      }
+    }
+    catch (Exception e) {
+      logger.debug("Unable to send answer", e);
+    }
+    if (statistic.isEnabled()) {
+      statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedRequest).inc();
+    }
+  }
+
+  /**
+   * Turns a request which could not be processed into its error answer, originated by the local peer.
+   */
+  protected void makeErrorAnswer(IRequest request, String errorMessage, int resultCode, Avp ...avpsToAdd) {
     request.setRequest(false);
     // Not setting error flag, depends on error code. Will be set @ PeerImpl.ActionContext.sendMessage(IMessage)
     // request.setError(true);
@@ -697,21 +804,53 @@ public class PeerImpl extends AbstractPeer implements IPeer {
     // Remove trash avp
     request.getAvps().removeAvp(DESTINATION_HOST);
     request.getAvps().removeAvp(DESTINATION_REALM);
+  }
+
+
+  /**
+   * Answers an encoded request with DIAMETER_TOO_BUSY straight from its header, without decoding it
+   * or passing it through the FSM queue.
+   */
+  protected void sendIngressOverloadAnswer(byte[] request, int commandCode) {
+    ByteBuffer header = ByteBuffer.wrap(request);
+    IMessage answer = parser.createEmptyMessage(commandCode, header.getInt(8) & 0xFFFFFFFFL);
+    answer.setRequest(false);
+    answer.setError(true);
+    answer.setProxiable((request[4] & 0x40) != 0);
+    answer.setHopByHopIdentifier(header.getInt(12) & 0xFFFFFFFFL);
+    answer.setEndToEndIdentifier(header.getInt(16) & 0xFFFFFFFFL);
+    String sessionId = MessageParser.peekSessionId(request);
+    if (sessionId != null) {
+      answer.getAvps().addAvp(SESSION_ID, sessionId, true, false, false);
+    }
+    answer.getAvps().addAvp(RESULT_CODE, ResultCode.TOO_BUSY, true, false, true);
+    answer.getAvps().addAvp(ORIGIN_HOST, metaData.getLocalPeer().getUri().getFQDN(), true, false, true);
+    answer.getAvps().addAvp(ORIGIN_REALM, metaData.getLocalPeer().getRealmName(), true, false, true);
     try {
-      logger.debug("Sending response indicating we could not process request");
-      sendMessage((IMessage) request);
+      logger.debug("Rejecting request [{}] from peer [{}], ingress queue delay above target", commandCode, uri);
+      connection.sendMessage(answer);
       if (statistic.isEnabled()) {
-        statistic.getRecordByName(IStatisticRecord.Counters.SysGenResponse.name()).inc();
+        statistic.getRecordByName(IStatisticRecord.Counters.SysGenResponse).inc();
       }
     }
     catch (Exception e) {
       logger.debug("Unable to send answer", e);
     }
     if (statistic.isEnabled()) {
-      statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedRequest.name()).inc();
+      statistic.getRecordByName(IStatisticRecord.Counters.ShedRequest).inc();
     }
+    DiameterEvents.overloadRejected(answer, ResultCode.TOO_BUSY, "Ingress queue delay");
   }
 
+  /**
+   * Adds DOIC (RFC 7683) information to an answer whose request came from a node supporting overload control.
+   * Only the supported features are echoed here, overload reports are added by subclasses that know the local load.
+   */
+  protected void appendOverloadReport(IMessage answer) {
+    if (answer.getAvps().getAvp(OC_SUPPORTED_FEATURES) == null) {
+      OverloadReport.addSupportedFeatures(answer, answer.getOverloadFeatures());
+    }
+  }
 
   protected class ActionContext implements IContext {
 
@@ -757,6 +896,11 @@ public class PeerImpl extends AbstractPeer implements IPeer {
       return uri.toString();
     }
 
+    @Override
+    public IHistogram getHistogram(IHistogram.Type type, Message message) {
+      return histograms.get(type, message.getApplicationId(), message.getCommandCode());
+    }
+
     @Override
     public boolean isConnected() {
       return (connection != null) && connection.isConnected();
@@ -764,6 +908,58 @@ public class PeerImpl extends AbstractPeer implements IPeer {
 
     @Override
     public boolean sendMessage(IMessage message) throws TransportException, OverloadException {
+      if (!prepareMessage(message)) {
+        return false;
+      }
+      logger.debug("Calling connection to send message [{}] to peer [{}] over the network", message, getUri());
+      Object jfrEvent = DiameterEvents.MESSAGE_SENT.begin();
+      connection.sendMessage(message);
+      DiameterEvents.commitMessage(DiameterEvents.MESSAGE_SENT, jfrEvent, uri, message);
+      logger.debug("Connection sent message [{}] to peer [{}] over the network", message, getUri());
+      message.stamp(IMessageTracer.Stage.Written);
+      statisticFactory.getMessageTracer().complete(message);
+
+      return true;
+    }
+
+    @Override
+    public void sendMessages(List<IMessage> messages) throws TransportException, OverloadException {
+      List<IMessage> ready = new ArrayList<IMessage>(messages.size());
+      for (IMessage message : messages) {
+        if (prepareMessage(message)) {
+          ready.add(message);
+        }
+      }
+      if (!ready.isEmpty()) {
+        logger.debug("Calling connection to send [{}] messages to peer [{}] over the network", ready.size(), getUri());
+        // one event per message, all covering the batch write
+        Object[] jfrEvents = null;
+        if (DiameterEvents.MESSAGE_SENT.isEnabled()) {
+          jfrEvents = new Object[ready.size()];
+          for (int i = 0; i < jfrEvents.length; i++) {
+            jfrEvents[i] = DiameterEvents.MESSAGE_SENT.begin();
+          }
+        }
+        connection.sendMessages(ready);
+        if (jfrEvents != null) {
+          for (int i = 0; i < jfrEvents.length; i++) {
+            DiameterEvents.commitMessage(DiameterEvents.MESSAGE_SENT, jfrEvents[i], uri, ready.get(i));
+          }
+        }
+        for (IMessage message : ready) {
+          message.stamp(IMessageTracer.Stage.Written);
+          statisticFactory.getMessageTracer().complete(message);
+        }
+      }
+    }
+
+    /**
+     * Checks the message can be sent and marks it as sent
+     *
+     * @param message the message
+     * @return false if the message should be skipped
+     */
+    protected boolean prepareMessage(IMessage message) {
       // Check message
       if (message.isTimeOut()) {
         logger.debug("Message {} skipped (timeout)", message);
@@ -795,11 +991,20 @@ public class PeerImpl extends AbstractPeer implements IPeer {
             if (peerTable.isDuplicateProtection()) {
               String[] originInfo = router.getRequestRouteInfo(message);
               if (originInfo != null) {
-                // message.getDuplicationKey() doesn't work because it's answer
-                peerTable.saveToDuplicate(message.getDuplicationKey(originInfo[0], message.getEndToEndIdentifier()), message);
+                // the answer carries our Origin-Host, the request one comes from the route info
+                peerTable.saveToDuplicate(originInfo[0], message.getEndToEndIdentifier(), message);
               }
             }
           }
+          if (message.getOverloadFeatures() != 0) {
+            appendOverloadReport(message);
+          }
+        }
+      }
+      else if (doicSupport && message.getAvps().getAvp(OC_SUPPORTED_FEATURES) == null) {
+        int commandCode = message.getCommandCode();
+        if (commandCode != 257 && commandCode != 280 && commandCode != 282) {
+          OverloadReport.addSupportedFeatures(message, OverloadReport.LOSS_ALGORITHM);
         }
       }
       // PCB added this
@@ -807,10 +1012,7 @@ public class PeerImpl extends AbstractPeer implements IPeer {
 
       // Send to network
       message.setState(IMessage.STATE_SENT);
-      logger.debug("Calling connection to send message [{}] to peer [{}] over the network", message, getUri());
-      connection.sendMessage(message);
-      logger.debug("Connection sent message [{}] to peer [{}] over the network", message, getUri());
-
+      message.setSendTime(System.nanoTime());
       return true;
     }
 
@@ -977,6 +1179,25 @@ public class PeerImpl extends AbstractPeer implements IPeer {
       return rc;
     }
 
+    @Override
+    public void rejectMessage(IMessage request, int resultCode) {
+      logger.debug("Rejecting request [{}] from peer [{}] with Result Code [{}]", new Object[] {request, uri, resultCode});
+      makeErrorAnswer(request, null, resultCode);
+      try {
+        // straight to the connection, the FSM queue is the one which is full
+        sendMessage(request);
+        if (statistic.isEnabled()) {
+          statistic.getRecordByName(IStatisticRecord.Counters.SysGenResponse).inc();
+        }
+      }
+      catch (Exception e) {
+        logger.debug("Unable to send answer", e);
+      }
+      if (statistic.isEnabled()) {
+        statistic.getRecordByName(IStatisticRecord.Counters.ShedRequest).inc();
+      }
+    }
+
     @Override
     public boolean receiveMessage(IMessage message) {
       logger.debug("Receiving message in client.");
@@ -993,28 +1214,33 @@ public class PeerImpl extends AbstractPeer implements IPeer {
           NetworkReqListener listener = sessionDataSource.getSessionListener(avpSessionId);
           if (listener != null) {
             router.registerRequestRouteInfo(message);
-
-            IMessage answer = (IMessage) listener.processRequest(message);
-            if (answer != null) {
-              try {
-                sendMessage(answer);
-                if (statistic.isEnabled()) {
-                  statistic.getRecordByName(IStatisticRecord.Counters.AppGenResponse.name()).inc();
+            message.stamp(IMessageTracer.Stage.Routed);
+
+            // application sessions deliver through their own mailbox
+            Executor executor = listener instanceof AppSession || concurrentFactory == null ? null
+                : concurrentFactory.getSessionListenerExecutor(avpSessionId);
+            if (executor != null) {
+              final NetworkReqListener sessionListener = listener;
+              final IMessage request = message;
+              executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                  deliverRequest(sessionListener, request);
                 }
-              }
-              catch (Exception e) {
-                logger.warn("Unable to send immediate answer {}", answer);
-              }
+              });
+            }
+            else {
+              deliverRequest(listener, message);
             }
 
             if (statistic.isEnabled()) {
-              statistic.getRecordByName(IStatisticRecord.Counters.NetGenRequest.name()).inc();
+              statistic.getRecordByName(IStatisticRecord.Counters.NetGenRequest).inc();
             }
             isProcessed = true;
           }
           else {
             if (statistic.isEnabled()) {
-              statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedRequest.name()).inc();
+              statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedRequest).inc();
             }
           }
         }
@@ -1023,10 +1249,19 @@ public class PeerImpl extends AbstractPeer implements IPeer {
         logger.debug("Message is an answer");
 
         //TODO: check REALMs here?
-        IMessage request = peerRequests.remove(message.getHopByHopIdentifier());
+        IMessage request = removePeerRequest(message.getHopByHopIdentifier());
         if (request != null && !request.isTimeOut()) {
           request.clearTimer();
           request.setState(IMessage.STATE_ANSWERED);
+          message.stamp(IMessageTracer.Stage.Routed);
+          if (request.getSendTime() != 0) {
+            long rtt = System.nanoTime() - request.getSendTime();
+            updateAnswerLatency(rtt);
+            recordLatency(IHistogram.Type.RoundTripTime, request, rtt);
+          }
+          if (doicSupport) {
+            router.processOverloadReport(request, message);
+          }
           Avp avpResCode = message.getAvps().getAvp(RESULT_CODE);
           if (isRedirectAnswer(avpResCode, message)) {
             message.setListener(request.getEventListener());
@@ -1037,35 +1272,62 @@ public class PeerImpl extends AbstractPeer implements IPeer {
 
           if (message != null) {
             if (request.getEventListener() != null) {
+              Object jfrEvent = DiameterEvents.MESSAGE_RECEIVED.begin();
+              long started = System.nanoTime();
               request.getEventListener().receivedSuccessMessage(request, message);
+              recordLatency(IHistogram.Type.ListenerExecTime, request, System.nanoTime() - started);
+              DiameterEvents.commitMessage(DiameterEvents.MESSAGE_RECEIVED, jfrEvent, uri, message);
+              message.stamp(IMessageTracer.Stage.Processed);
+              statisticFactory.getMessageTracer().complete(message);
             }
             else {
               logger.debug("Unable to call answer listener for request {} because listener is not set", message);
               if (statistic.isEnabled()) {
-                statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedResponse.name()).inc();
+                statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedResponse).inc();
               }
             }
 
             isProcessed = true;
             if (statistic.isEnabled()) {
-              statistic.getRecordByName(IStatisticRecord.Counters.NetGenResponse.name()).inc();
+              statistic.getRecordByName(IStatisticRecord.Counters.NetGenResponse).inc();
             }
           }
           else {
             if (statistic.isEnabled()) {
-              statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedResponse.name()).inc();
+              statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedResponse).inc();
             }
           }
         }
         else {
           if (statistic.isEnabled()) {
-            statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedResponse.name()).inc();
+            statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedResponse).inc();
           }
         }
       }
       return isProcessed;
     }
 
+    private void deliverRequest(NetworkReqListener listener, IMessage message) {
+      Object jfrEvent = DiameterEvents.MESSAGE_RECEIVED.begin();
+      long started = System.nanoTime();
+      IMessage answer = (IMessage) listener.processRequest(message);
+      recordLatency(IHistogram.Type.ListenerExecTime, message, System.nanoTime() - started);
+      DiameterEvents.commitMessage(DiameterEvents.MESSAGE_RECEIVED, jfrEvent, uri, message);
+      message.stamp(IMessageTracer.Stage.Processed);
+      continueTrace(message, answer);
+      if (answer != null) {
+        try {
+          sendMessage(answer);
+          if (statistic.isEnabled()) {
+            statistic.getRecordByName(IStatisticRecord.Counters.AppGenResponse).inc();
+          }
+        }
+        catch (Exception e) {
+          logger.warn("Unable to send immediate answer {}", answer);
+        }
+      }
+    }
+
     @Override
     public int processDwrMessage(IMessage iMessage) {
       return ResultCode.SUCCESS;
@@ -52,6 +52,9 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.UnknownServiceException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -231,12 +234,12 @@ public class PeerTableImpl implements IPeerTable {
         logger.debug("Message was submitted to be sent, now adding statistics");
         if (message.isRequest()) {
           if (peer.getStatistic().isEnabled()) {
-            peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenRequest.name()).inc();
+            peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenRequest).inc();
           }
         }
         else {
           if (peer.getStatistic().isEnabled()) {
-            peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenResponse.name()).inc();
+            peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenResponse).inc();
           }
         }
       }
@@ -245,12 +248,12 @@ public class PeerTableImpl implements IPeerTable {
       logger.error("Can not send message", e);
       if (message.isRequest()) {
         if (peer.getStatistic().isEnabled()) {
-          peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenRejectedRequest.name()).inc();
+          peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenRejectedRequest).inc();
         }
       }
       else {
         if (peer.getStatistic().isEnabled()) {
-          peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenRejectedResponse.name()).inc();
+          peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenRejectedResponse).inc();
         }
       }
 
@@ -263,6 +266,78 @@ public class PeerTableImpl implements IPeerTable {
     }
   }
 
+  @Override
+  public Map<IMessage, Exception> sendMessages(List<IMessage> messages) throws IllegalDiameterStateException {
+    if (!isStarted) {
+      throw new IllegalDiameterStateException("Stack is down");
+    }
+    Map<IMessage, Exception> failed = new IdentityHashMap<IMessage, Exception>();
+
+    // route each request on its own, as sendMessage does, and group them by the selected peer;
+    // anything else goes the usual way
+    Map<IPeer, List<IMessage>> groups = new LinkedHashMap<IPeer, List<IMessage>>();
+    for (IMessage message : messages) {
+      try {
+        if (!message.isRequest()) {
+          sendMessage(message);
+          continue;
+        }
+        router.updateRoute(message);
+        IPeer peer = router.getPeer(message, this);
+        if (peer == metaData.getLocalPeer()) {
+          // already routed, the local service takes it right away
+          logger.debug("Request [{}] will be processed by local service", message);
+          sendGroup(peer, Collections.singletonList(message), failed);
+          continue;
+        }
+        // registered right away, so balancing sees the requests of the batch already routed
+        message.setHopByHopIdentifier(peer.getHopByHopIdentifier());
+        peer.addMessage(message);
+        message.setPeer(peer);
+        List<IMessage> group = groups.get(peer);
+        if (group == null) {
+          group = new ArrayList<IMessage>();
+          groups.put(peer, group);
+        }
+        group.add(message);
+      }
+      catch (Exception e) {
+        failed.put(message, e);
+      }
+    }
+
+    for (Map.Entry<IPeer, List<IMessage>> entry : groups.entrySet()) {
+      logger.debug("Selected peer [{}] for sending [{}] messages", entry.getKey(), entry.getValue().size());
+      sendGroup(entry.getKey(), entry.getValue(), failed);
+    }
+    return failed;
+  }
+
+  /**
+   * Sends routed requests through the peer, a failure fails all of them
+   */
+  private void sendGroup(IPeer peer, List<IMessage> group, Map<IMessage, Exception> failed) {
+    boolean enabled = peer.getStatistic().isEnabled();
+    try {
+      if (!peer.sendMessages(group)) {
+        throw new IOException("Can not send messages");
+      }
+      if (enabled) {
+        peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenRequest).inc(group.size());
+      }
+    }
+    catch (Exception e) {
+      logger.error("Can not send messages", e);
+      for (IMessage message : group) {
+        peer.remMessage(message);
+        failed.put(message, e);
+      }
+      if (enabled) {
+        peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenRejectedRequest).inc(group.size());
+      }
+    }
+  }
+
   @Override
   public void addSessionReqListener(String sessionId, NetworkReqListener listener) {
     // XXX: FT/HA // sessionReqListeners.put(sessionId, listener);
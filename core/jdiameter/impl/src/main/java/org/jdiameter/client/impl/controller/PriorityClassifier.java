@@ -0,0 +1,176 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.client.impl.controller;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.AvpDataException;
+import org.jdiameter.api.Message;
+import org.jdiameter.client.api.IMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Assigns DRMP (RFC 7944) priorities to requests. The DRMP AVP is used when present, otherwise the configured
+ * default for the application and command code, optionally refined by CC-Request-Type, so that for example
+ * a CCR-T can be ranked above a CCR-I.
+ */
+public class PriorityClassifier {
+
+  private static final Logger logger = LoggerFactory.getLogger(PriorityClassifier.class);
+
+  public static final int HIGHEST_PRIORITY = 0;
+  public static final int LOWEST_PRIORITY = 15;
+
+  private final Map<Long, Integer> priorities = new HashMap<Long, Integer>();
+  // application and command code pairs with CC-Request-Type specific entries
+  private final Set<Long> byRequestType = new HashSet<Long>();
+
+  /**
+   * @param entries comma separated applicationId:commandCode[:CC-Request-Type]=priority entries
+   */
+  public PriorityClassifier(String entries) {
+    if (entries == null) {
+      return;
+    }
+    for (String entry : entries.split(",")) {
+      entry = entry.trim();
+      if (entry.length() == 0) {
+        continue;
+      }
+      try {
+        int eq = entry.indexOf('=');
+        String[] key = entry.substring(0, eq).trim().split(":");
+        int priority = Integer.parseInt(entry.substring(eq + 1).trim());
+        if (key.length < 2 || key.length > 3 || priority < HIGHEST_PRIORITY || priority > LOWEST_PRIORITY) {
+          throw new IllegalArgumentException();
+        }
+        long appId = Long.parseLong(key[0].trim());
+        int commandCode = Integer.parseInt(key[1].trim());
+        int requestType = key.length == 3 ? Integer.parseInt(key[2].trim()) : 0;
+        priorities.put(key(appId, commandCode, requestType), priority);
+        if (requestType != 0) {
+          byRequestType.add(key(appId, commandCode, 0));
+        }
+      }
+      catch (Exception e) {
+        logger.warn("Ignoring malformed message priority entry [{}]", entry);
+      }
+    }
+  }
+
+  /**
+   * @param message received or sent request
+   * @return priority from 0 (highest) to 15 (lowest)
+   */
+  public int classify(Message message) {
+    Avp drmp = message.getAvps().getAvp(Avp.DRMP);
+    if (drmp != null) {
+      try {
+        int priority = drmp.getInteger32();
+        if (priority >= HIGHEST_PRIORITY && priority <= LOWEST_PRIORITY) {
+          return priority;
+        }
+      }
+      catch (AvpDataException e) {
+        logger.debug("Unable to read DRMP AVP, using default priority", e);
+      }
+    }
+    if (priorities.isEmpty()) {
+      return IMessage.DEFAULT_PRIORITY;
+    }
+    int requestType = 0;
+    if (byRequestType.contains(key(message.getApplicationId(), message.getCommandCode(), 0))) {
+      Avp avp = message.getAvps().getAvp(Avp.CC_REQUEST_TYPE);
+      if (avp != null) {
+        try {
+          requestType = avp.getInteger32();
+        }
+        catch (AvpDataException e) {
+          logger.debug("Unable to read CC-Request-Type AVP", e);
+        }
+      }
+    }
+    return lookup(message.getApplicationId(), message.getCommandCode(), requestType);
+  }
+
+  /**
+   * Classifies an encoded request from its header and top level AVPs, so ingress overload control
+   * can rank it before it is decoded.
+   *
+   * @param message encoded request
+   * @return priority from 0 (highest) to 15 (lowest)
+   */
+  public int classify(byte[] message) {
+    int requestType = 0;
+    int offset = 20;
+    while (offset + 8 <= message.length) {
+      int code = readInt(message, offset);
+      boolean vendorSpecific = (message[offset + 4] & 0x80) != 0;
+      int length = ((message[offset + 5] & 0xFF) << 16) | ((message[offset + 6] & 0xFF) << 8) | (message[offset + 7] & 0xFF);
+      int header = vendorSpecific ? 12 : 8;
+      if (length < header || offset + length > message.length) {
+        break;
+      }
+      if (!vendorSpecific && length == header + 4) {
+        if (code == Avp.DRMP) {
+          int priority = readInt(message, offset + header);
+          if (priority >= HIGHEST_PRIORITY && priority <= LOWEST_PRIORITY) {
+            return priority;
+          }
+        }
+        else if (code == Avp.CC_REQUEST_TYPE) {
+          requestType = readInt(message, offset + header);
+        }
+      }
+      offset += (length + 3) & ~3;
+    }
+    if (priorities.isEmpty() || message.length < 20) {
+      return IMessage.DEFAULT_PRIORITY;
+    }
+    int commandCode = ((message[5] & 0xFF) << 16) | ((message[6] & 0xFF) << 8) | (message[7] & 0xFF);
+    return lookup(readInt(message, 8) & 0xFFFFFFFFL, commandCode, requestType);
+  }
+
+  private int lookup(long appId, int commandCode, int requestType) {
+    long key = key(appId, commandCode, 0);
+    if (requestType != 0 && byRequestType.contains(key)) {
+      Integer priority = priorities.get(key(appId, commandCode, requestType));
+      if (priority != null) {
+        return priority;
+      }
+    }
+    Integer priority = priorities.get(key);
+    return priority != null ? priority : IMessage.DEFAULT_PRIORITY;
+  }
+
+  private static int readInt(byte[] data, int offset) {
+    return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+  }
+
+  private static long key(long appId, int commandCode, int requestType) {
+    return (appId << 32) | ((long) (commandCode & 0xFFFFFF) << 8) | (requestType & 0xFF);
+  }
+}
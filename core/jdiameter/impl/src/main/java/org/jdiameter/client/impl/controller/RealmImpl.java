@@ -45,6 +45,7 @@ package org.jdiameter.client.impl.controller;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jdiameter.api.ApplicationId;
 import org.jdiameter.api.LocalAction;
@@ -66,6 +67,9 @@ public class RealmImpl implements IRealm {
   protected boolean dynamic;
   protected long expirationTime;
   protected Collection<String> hosts = new ConcurrentLinkedQueue<String>();
+  protected final AtomicInteger peerNamesVersion = new AtomicInteger();
+  // peer names version of the table holding this realm, shared by its realms
+  protected volatile AtomicInteger tablePeerNamesVersion;
   protected IAgent agent;
   protected IAgentConfiguration agentConfiguration;
   public RealmImpl(String name, ApplicationId applicationId, LocalAction localAction,
@@ -130,6 +134,7 @@ public class RealmImpl implements IRealm {
   public void addPeerName(String name) {
     if (!hasPeerName(name)) {
       hosts.add(name);
+      peerNamesChanged();
     }
   }
 
@@ -141,7 +146,17 @@ public class RealmImpl implements IRealm {
    */
   @Override
   public void removePeerName(String s) {
-    hosts.remove(name);
+    if (hosts.remove(s)) {
+      peerNamesChanged();
+    }
+  }
+
+  private void peerNamesChanged() {
+    peerNamesVersion.incrementAndGet();
+    AtomicInteger tableVersion = tablePeerNamesVersion;
+    if (tableVersion != null) {
+      tableVersion.incrementAndGet();
+    }
   }
 
   /**
@@ -169,6 +184,11 @@ public class RealmImpl implements IRealm {
     return this.hosts.contains(name);
   }
 
+  @Override
+  public int getPeerNamesVersion() {
+    return peerNamesVersion.get();
+  }
+
   @Override
   public IAgent getAgent() {
     return agent;
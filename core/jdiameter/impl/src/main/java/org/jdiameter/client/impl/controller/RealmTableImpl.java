@@ -43,12 +43,14 @@
 package org.jdiameter.client.impl.controller;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jdiameter.api.ApplicationId;
 import org.jdiameter.api.Avp;
@@ -80,11 +82,19 @@ public class RealmTableImpl implements IRealmTable {
   private static final Logger logger = LoggerFactory.getLogger(RealmTableImpl.class);
 
   // maps name->realms (cause there might be more than one realm defined, with different app id.
-  protected Map<String, RealmSet> realmNameToRealmSet = new HashMap<String, RealmSet>();
+  // only changed while holding the table lock, readers use the snapshot
+  protected Map<String, RealmSet> realmNameToRealmSet = new LinkedHashMap<String, RealmSet>();
 
   // "cache" so we don't have to combine all realms
   protected List<String> allRealmsSet = new ArrayList<String>();
 
+  // incremented by the realms of this table on every change of their peer names
+  protected final AtomicInteger peerNamesVersion = new AtomicInteger();
+
+  // immutable view of the table used for lookups, replaced as a whole on every change
+  protected volatile RealmSnapshot snapshot = new RealmSnapshot(Collections.<String, RealmSet>emptyMap(), Collections.<String>emptyList(),
+      peerNamesVersion);
+
   protected String localRealmName;
   protected String localHost;
 
@@ -97,7 +107,8 @@ public class RealmTableImpl implements IRealmTable {
   @Override
   public boolean realmExists(String realmName) {
     // NOTE: this is still valid for local realm
-    return (this.realmNameToRealmSet.containsKey(realmName) &&  this.realmNameToRealmSet.get(realmName).size() > 0);
+    Map<ApplicationId, Realm> realms = this.snapshot.realms.get(realmName);
+    return realms != null && realms.size() > 0;
   }
 
   @Override
@@ -142,8 +153,8 @@ public class RealmTableImpl implements IRealmTable {
    */
   @Override
   public Realm getRealm(String realmName, ApplicationId applicationId) {
-    RealmSet rs = this.realmNameToRealmSet.get(realmName);
-    return rs == null ? null : rs.getRealm(applicationId);
+    Map<ApplicationId, Realm> realms = this.snapshot.realms.get(realmName);
+    return realms == null ? null : realms.get(applicationId);
   }
 
   /*
@@ -151,7 +162,7 @@ public class RealmTableImpl implements IRealmTable {
    * @see org.jdiameter.client.api.controller.IRealmTable#removeRealmApplicationId(java.lang.String, org.jdiameter.api.ApplicationId)
    */
   @Override
-  public Realm removeRealmApplicationId(String realmName, ApplicationId appId) {
+  public synchronized Realm removeRealmApplicationId(String realmName, ApplicationId appId) {
     RealmSet set = this.realmNameToRealmSet.get(realmName);
 
     if (set != null) {
@@ -161,6 +172,7 @@ public class RealmTableImpl implements IRealmTable {
         this.realmNameToRealmSet.remove(realmName);
         this.allRealmsSet.remove(realmName);
       }
+      publish();
       return r;
     }
 
@@ -172,7 +184,7 @@ public class RealmTableImpl implements IRealmTable {
    * @see org.jdiameter.client.api.controller.IRealmTable#removeRealms(java.lang.String)
    */
   @Override
-  public Collection<Realm> removeRealm(String realmName) {
+  public synchronized Collection<Realm> removeRealm(String realmName) {
     RealmSet set = null;
     if (realmName.equals(this.localRealmName)) {
       set = this.realmNameToRealmSet.get(realmName);
@@ -182,6 +194,7 @@ public class RealmTableImpl implements IRealmTable {
       if (set != null) {
         Collection<Realm> present = set.values();
         allRealmsSet.remove(realmName);
+        publish();
         return new ArrayList<Realm>(present);
       }
     }
@@ -195,10 +208,9 @@ public class RealmTableImpl implements IRealmTable {
    */
   @Override
   public Collection<Realm> getRealms(String realmName) {
-    RealmSet set = this.realmNameToRealmSet.get(realmName);
-    if (set != null) {
-      Collection<Realm> present = set.values();
-      return new ArrayList<Realm>(present);
+    Map<ApplicationId, Realm> realms = this.snapshot.realms.get(realmName);
+    if (realms != null) {
+      return new ArrayList<Realm>(realms.values());
     }
     return new ArrayList<Realm>(0);
   }
@@ -209,14 +221,7 @@ public class RealmTableImpl implements IRealmTable {
    */
   @Override
   public Collection<Realm> getRealms() {
-    ArrayList<Realm> rss = new ArrayList<Realm>();
-
-    Set<String> keys = new HashSet<String>(this.realmNameToRealmSet.keySet());
-    for (String key : keys) {
-      RealmSet rs = this.realmNameToRealmSet.get(key);
-      rss.addAll(rs.values());
-    }
-    return rss;
+    return new ArrayList<Realm>(Arrays.asList(this.snapshot.allRealms));
   }
 
   /*
@@ -239,6 +244,15 @@ public class RealmTableImpl implements IRealmTable {
     return null;
   }
 
+  /*
+   * (non-Javadoc)
+   * @see org.jdiameter.client.api.controller.IRealmTable#matchRealm(org.jdiameter.client.api.IRequest, java.lang.String)
+   */
+  @Override
+  public Realm matchRealm(IRequest request, String destRealm) {
+    return this.matchRealm((IMessage) request, destRealm);
+  }
+
   /*
    * (non-Javadoc)
    * @see org.jdiameter.client.api.controller.IRealmTable#matchRealm(org.jdiameter.client.api.IAnswer, java.lang.String)
@@ -254,41 +268,51 @@ public class RealmTableImpl implements IRealmTable {
    */
   @Override
   public String getRealmForPeer(String fqdn) {
-    //
-    Collection<Realm> realms = getRealms();
-    for (Realm r : realms) {
-      IRealm ir = (IRealm) r;
-      if (ir.hasPeerName(fqdn)) {
-        return ir.getName();
+    RealmSnapshot s = this.snapshot;
+    if (!s.isPeerIndexValid()) {
+      // peer names were changed directly on a realm, rebuild the index
+      synchronized (this) {
+        s = this.snapshot;
+        if (!s.isPeerIndexValid()) {
+          publish();
+          s = this.snapshot;
+        }
       }
     }
-    return null;
+    return s.peerToRealm.get(fqdn);
   }
 
   /**
    * @param appId
    */
   @Override
-  public void addLocalApplicationId(ApplicationId appId) {
+  public synchronized void addLocalApplicationId(ApplicationId appId) {
     RealmSet rs = getRealmSet(localRealmName, false);
-    rs.addRealm(new RealmImpl(localRealmName, appId, LocalAction.LOCAL, null, null, true, -1, this.localHost) {
+    RealmImpl realm = new RealmImpl(localRealmName, appId, LocalAction.LOCAL, null, null, true, -1, this.localHost) {
       @Override
       public boolean isLocal() {
         return true;
       }
-    });
+    };
+    realm.tablePeerNamesVersion = peerNamesVersion;
+    rs.addRealm(realm);
+    publish();
   }
 
   /**
    * @param appId
+   * @return the removed realm entry or null if none was removed
    */
   @Override
-  public void removeLocalApplicationId(ApplicationId appId) {
+  public synchronized Realm removeLocalApplicationId(ApplicationId appId) {
     RealmSet rs = getRealmSet(localRealmName, false);
     Realm realm = rs.getRealm(appId);
     if (realm.isDynamic()) {
       rs.removeRealm(appId);
+      publish();
+      return realm;
     }
+    return null;
   }
 
   /**
@@ -296,23 +320,26 @@ public class RealmTableImpl implements IRealmTable {
    * @param fqdn
    */
   @Override
-  public void addLocalRealm(String localRealm, String fqdn) {
+  public synchronized void addLocalRealm(String localRealm, String fqdn) {
     this.localRealmName = localRealm;
     this.localHost = fqdn;
     getRealmSet(localRealm, true /* adds realm if not present  */);
+    publish();
   }
 
   // -------------------- helper methods --------------------
 
   protected Realm matchRealm(IMessage message, String realm) {
-    if (realmExists(realm)) {
+    Map<ApplicationId, Realm> realms = this.snapshot.realms.get(realm);
+    if (realms != null && realms.size() > 0) {
       ApplicationId singleId = message.getSingleApplicationId();
       // check on single app id, than we iterate.
-      Realm r = getRealm(realm, singleId);
+      Realm r = singleId != null ? realms.get(singleId) : null;
       if (r == null) {
+        // application ids are cached by the message, no need to decode them again
         List<ApplicationId> appIds = message.getApplicationIdAvps();
         for (int index = 0; index < appIds.size(); index++) {
-          r = getRealm(realm, appIds.get(index));
+          r = realms.get(appIds.get(index));
           if (r != null) {
             break;
           }
@@ -324,10 +351,21 @@ public class RealmTableImpl implements IRealmTable {
     return null;
   }
 
-  protected void addRealm(Realm realm) throws InternalException {
+  protected synchronized void addRealm(Realm realm) throws InternalException {
+    if (realm instanceof RealmImpl && ((RealmImpl) realm).tablePeerNamesVersion == null) {
+      ((RealmImpl) realm).tablePeerNamesVersion = peerNamesVersion;
+    }
     RealmSet rs = getRealmSet(realm.getName(), true);
     rs.addRealm(realm);
     allRealmsSet.add(realm.getName());
+    publish();
+  }
+
+  /**
+   * Replaces the lookup snapshot with one built from the current table, must be called holding the table lock.
+   */
+  protected void publish() {
+    this.snapshot = new RealmSnapshot(realmNameToRealmSet, allRealmsSet, peerNamesVersion);
   }
 
   protected RealmSet getRealmSet(String pKey, boolean create) {
@@ -445,7 +483,74 @@ public class RealmTableImpl implements IRealmTable {
 
   @Override
   public List<String> getAllRealmSet() {
-    return allRealmsSet;
+    return this.snapshot.allRealmNames;
+  }
+
+  /**
+   * Immutable copy of the realm table with the lookups precomputed, shared by all readers without locking.
+   */
+  protected static final class RealmSnapshot {
+
+    // realm name -> application id -> realm
+    final Map<String, Map<ApplicationId, Realm>> realms;
+    final Realm[] allRealms;
+    final List<String> allRealmNames;
+    // peer fqdn -> name of the first realm listing it, valid while the peer names versions did not change
+    final Map<String, String> peerToRealm;
+    final AtomicInteger tableVersion;
+    final int tableVersionSeen;
+    // realms not reporting their changes to the table, checked one by one
+    final IRealm[] untracked;
+    final int[] untrackedVersions;
+
+    RealmSnapshot(Map<String, RealmSet> realmSets, List<String> realmNames, AtomicInteger tableVersion) {
+      Map<String, Map<ApplicationId, Realm>> realms = new HashMap<String, Map<ApplicationId, Realm>>(realmSets.size() * 2);
+      List<Realm> allRealms = new ArrayList<Realm>();
+      for (Map.Entry<String, RealmSet> e : realmSets.entrySet()) {
+        Map<ApplicationId, Realm> byApplication = new HashMap<ApplicationId, Realm>(e.getValue().appIdToRealm);
+        realms.put(e.getKey(), Collections.unmodifiableMap(byApplication));
+        allRealms.addAll(byApplication.values());
+      }
+      this.realms = Collections.unmodifiableMap(realms);
+      this.allRealms = allRealms.toArray(new Realm[allRealms.size()]);
+      this.allRealmNames = Collections.unmodifiableList(new ArrayList<String>(realmNames));
+
+      // versions are read before the names, so a concurrent change is caught by isPeerIndexValid
+      this.tableVersion = tableVersion;
+      this.tableVersionSeen = tableVersion.get();
+      List<IRealm> untracked = new ArrayList<IRealm>();
+      for (Realm r : this.allRealms) {
+        if (!(r instanceof RealmImpl) || ((RealmImpl) r).tablePeerNamesVersion != tableVersion) {
+          untracked.add((IRealm) r);
+        }
+      }
+      this.untracked = untracked.toArray(new IRealm[untracked.size()]);
+      this.untrackedVersions = new int[this.untracked.length];
+      for (int i = 0; i < this.untracked.length; i++) {
+        this.untrackedVersions[i] = this.untracked[i].getPeerNamesVersion();
+      }
+      Map<String, String> peerToRealm = new HashMap<String, String>();
+      for (Realm r : this.allRealms) {
+        for (String peerName : ((IRealm) r).getPeerNames()) {
+          if (!peerToRealm.containsKey(peerName)) {
+            peerToRealm.put(peerName, r.getName());
+          }
+        }
+      }
+      this.peerToRealm = Collections.unmodifiableMap(peerToRealm);
+    }
+
+    boolean isPeerIndexValid() {
+      if (tableVersionSeen != tableVersion.get()) {
+        return false;
+      }
+      for (int i = 0; i < untracked.length; i++) {
+        if (untrackedVersions[i] != untracked[i].getPeerNamesVersion()) {
+          return false;
+        }
+      }
+      return true;
+    }
   }
 
 }
@@ -48,13 +48,15 @@ import static org.jdiameter.client.impl.helpers.Parameters.CeaTimeOut;
 import static org.jdiameter.client.impl.helpers.Parameters.DpaTimeOut;
 import static org.jdiameter.client.impl.helpers.Parameters.DwaTimeOut;
 import static org.jdiameter.client.impl.helpers.Parameters.IacTimeOut;
+import static org.jdiameter.client.impl.helpers.Parameters.IngressDelayInterval;
+import static org.jdiameter.client.impl.helpers.Parameters.IngressDelayTarget;
 import static org.jdiameter.client.impl.helpers.Parameters.PeerFSMThreadCount;
 import static org.jdiameter.client.impl.helpers.Parameters.QueueSize;
 import static org.jdiameter.client.impl.helpers.Parameters.RecTimeOut;
 
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
@@ -65,6 +67,7 @@ import org.jdiameter.api.DisconnectCause;
 import org.jdiameter.api.Message;
 import org.jdiameter.api.OverloadException;
 import org.jdiameter.api.PeerState;
+import org.jdiameter.api.ResultCode;
 import org.jdiameter.api.app.State;
 import org.jdiameter.api.app.StateChangeListener;
 import org.jdiameter.api.app.StateEvent;
@@ -76,11 +79,15 @@ import org.jdiameter.client.api.fsm.EventTypes;
 import org.jdiameter.client.api.fsm.FsmEvent;
 import org.jdiameter.client.api.fsm.IContext;
 import org.jdiameter.client.api.fsm.IStateMachine;
+import org.jdiameter.client.api.io.TransportException;
 import org.jdiameter.client.impl.DictionarySingleton;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.api.statistic.IHistogram;
+import org.jdiameter.common.api.statistic.IMessageTracer;
 import org.jdiameter.common.api.statistic.IStatistic;
 import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
+import org.jdiameter.common.impl.jfr.DiameterEvents;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -97,7 +104,7 @@ public class PeerFSMImpl implements IStateMachine {
   protected final Dictionary dictionary = DictionarySingleton.getDictionary();
 
   protected ConcurrentLinkedQueue<StateChangeListener> listeners;
-  protected LinkedBlockingQueue<StateEvent> eventQueue;
+  protected PriorityEventQueue eventQueue;
 
   protected FsmState state = FsmState.DOWN;
   protected boolean watchdogSent;
@@ -120,6 +127,7 @@ public class PeerFSMImpl implements IStateMachine {
   protected IStatistic queueStat;
   protected IStatisticRecord timeSumm;
   protected IStatisticRecord timeCount;
+  protected QueueDelayController ingressController;
 
   //PCB changed for multi-thread
   protected boolean mustRun = false;
@@ -131,7 +139,18 @@ public class PeerFSMImpl implements IStateMachine {
     this.predefSize = config.getIntValue(QueueSize.ordinal(), (Integer) QueueSize.defValue());
     //PCB added logging
     logger.debug("Maximum FSM Queue size is [{}]", predefSize);
-    this.eventQueue = new LinkedBlockingQueue<StateEvent>(predefSize);
+    this.eventQueue = new PriorityEventQueue(predefSize, new PriorityEventQueue.EvictionListener() {
+      @Override
+      public void evicted(StateEvent event) {
+        rejectEvicted(event);
+      }
+    });
+    long ingressTarget = config.getLongValue(IngressDelayTarget.ordinal(), (Long) IngressDelayTarget.defValue());
+    if (ingressTarget > 0) {
+      this.ingressController = new QueueDelayController(ingressTarget,
+          config.getLongValue(IngressDelayInterval.ordinal(), (Long) IngressDelayInterval.defValue()));
+      logger.debug("Ingress overload control enabled: {}", ingressController);
+    }
     this.listeners = new ConcurrentLinkedQueue<StateChangeListener>();
     loadTimeOuts(config);
     this.concurrentFactory = concurrentFactory;
@@ -183,7 +202,7 @@ public class PeerFSMImpl implements IStateMachine {
               if (queueStat == null) {
                 return 0;
               }
-              IStatisticRecord mpta = queueStat.getRecordByName(IStatisticRecord.Counters.MessageProcessingTime.name());
+              IStatisticRecord mpta = queueStat.getRecordByName(IStatisticRecord.Counters.MessageProcessingTime);
               org.jdiameter.api.StatisticRecord[] children = mpta.getChilds();
               if (children.length == 2 && children[1].getValueAsLong() != 0) {
                 long count = children[1].getValueAsLong();
@@ -231,6 +250,13 @@ public class PeerFSMImpl implements IStateMachine {
                   timeSumm.inc(System.currentTimeMillis() - ((FsmEvent) event).getCreatedTime());
                   timeCount.inc();
                 }
+                if (event instanceof FsmEvent && statisticFactory.isOn()) {
+                  recordQueueWait((FsmEvent) event);
+                }
+                if (event instanceof FsmEvent && ingressController != null) {
+                  long now = System.nanoTime();
+                  ingressController.dequeued(now - ((FsmEvent) event).getCreatedNanoTime(), now, eventQueue.isEmpty());
+                }
                 logger.debug("Process event [{}]. Peer State is [{}]", event, state);
                 getStates()[state.ordinal()].processEvent(event);
               }
@@ -288,6 +314,48 @@ public class PeerFSMImpl implements IStateMachine {
     return eventQueue.size() * 1.0 / predefSize;
   }
 
+  @Override
+  public boolean isIngressOverloaded() {
+    return ingressController != null && ingressController.isOverloaded();
+  }
+
+  @Override
+  public boolean shedIngressRequest(int priority) {
+    return ingressController != null && ingressController.shed(priority);
+  }
+
+  /**
+   * @return the ingress controller, or null if ingress overload control is disabled
+   */
+  public QueueDelayController getIngressController() {
+    return ingressController;
+  }
+
+  /**
+   * Answers a received request pushed out of the full queue by a higher priority one.
+   */
+  protected void rejectEvicted(StateEvent event) {
+    IMessage request = (IMessage) event.getData();
+    logger.debug("Request [{}] evicted from FSM queue by a higher priority event", request);
+    DiameterEvents.overloadRejected(request, ResultCode.TOO_BUSY, "FSM queue priority eviction");
+    context.rejectMessage(request, ResultCode.TOO_BUSY);
+  }
+
+  private void recordQueueWait(FsmEvent event) {
+    long wait = System.nanoTime() - event.getCreatedNanoTime();
+    if (event.getMessages() != null) {
+      for (IMessage message : event.getMessages()) {
+        message.stamp(IMessageTracer.Stage.Dequeued);
+        context.getHistogram(IHistogram.Type.QueueWaitTime, message).record(wait);
+      }
+    }
+    else if (event.getData() instanceof IMessage) {
+      IMessage message = (IMessage) event.getData();
+      message.stamp(IMessageTracer.Stage.Dequeued);
+      context.getHistogram(IHistogram.Type.QueueWaitTime, message).record(wait);
+    }
+  }
+
   protected void loadTimeOuts(Configuration config) {
     CEA_TIMEOUT = config.getLongValue(CeaTimeOut.ordinal(), (Long) CeaTimeOut.defValue());
     IAC_TIMEOUT = config.getLongValue(IacTimeOut.ordinal(), (Long) IacTimeOut.defValue());
@@ -316,6 +384,9 @@ public class PeerFSMImpl implements IStateMachine {
         l.stateChanged(state.getPublicState(), newState.getPublicState());
       }
     }
+    if (DiameterEvents.PEER_STATE_CHANGE.isEnabled()) {
+      DiameterEvents.PEER_STATE_CHANGE.emit(context.getPeerDescription(), state.name(), newState.name());
+    }
     getStates()[state.ordinal()].exitAction();
     if (logger.isDebugEnabled()) {
       logger.debug("{} FSM switch state: {} -> {}", new Object[] {context.getPeerDescription(), state, newState});
@@ -345,6 +416,9 @@ public class PeerFSMImpl implements IStateMachine {
         // outgoing are done elsewhere: see BaseSessionImpl
         try {
           dictionary.validate((Message) event.getData(), incoming);
+          if (event.getData() instanceof IMessage) {
+            ((IMessage) event.getData()).stamp(IMessageTracer.Stage.Validated);
+          }
         }
         catch (AvpNotAllowedException e) {
           logger.error("Failed to validate incoming message.", e);
@@ -360,7 +434,7 @@ public class PeerFSMImpl implements IStateMachine {
     boolean rc = false;
     try {
       if (logger.isDebugEnabled()) {
-        logger.debug("Placing event [{}] into linked blocking queue with remaining capacity: [{}].", event, eventQueue.remainingCapacity());
+        logger.debug("Placing event [{}] into priority event queue with remaining capacity: [{}].", event, eventQueue.remainingCapacity());
         //PCB added logging
         //int queueSize = eventQueue.size();
         //if (System.currentTimeMillis() - lastLogged > 1000) {
@@ -377,6 +451,9 @@ public class PeerFSMImpl implements IStateMachine {
       throw new InternalError("Can not put event '" + event.toString() + "' to FSM " + this.toString());
     }
     if (!rc) {
+      if (event.getData() instanceof Message) {
+        DiameterEvents.overloadRejected((Message) event.getData(), 0, "FSM queue full");
+      }
       throw new OverloadException("FSM overloaded");
     }
     return true;
@@ -444,6 +521,16 @@ public class PeerFSMImpl implements IStateMachine {
       return ((FsmEvent) event).getMessage();
     }
 
+    protected void sendMessage(StateEvent event) throws TransportException, OverloadException {
+      List<IMessage> messages = ((FsmEvent) event).getMessages();
+      if (messages != null) {
+        context.sendMessages(messages);
+      }
+      else {
+        context.sendMessage(message(event));
+      }
+    }
+
     protected EventTypes type(StateEvent event) {
       return (EventTypes) event.getType();
     }
@@ -539,7 +626,7 @@ public class PeerFSMImpl implements IStateMachine {
                   break;
                 case SEND_MSG_EVENT:
                   try {
-                    context.sendMessage(message(event));
+                    sendMessage(event);
                   }
                   catch (Throwable e) {
                     logger.debug("Can not send message", e);
@@ -0,0 +1,185 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.client.impl.fsm;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jdiameter.api.app.StateEvent;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.fsm.EventTypes;
+import org.jdiameter.client.impl.controller.PriorityClassifier;
+
+/**
+ * Bounded FSM event queue ordered by DRMP (RFC 7944) priority.
+ *
+ * Received requests are kept in one band per priority, everything else (answers, outgoing messages, connection
+ * and timer events) in a band above all of them. Events are taken from the highest non empty band, FIFO within
+ * a band. When the queue is full a received request of higher priority than the lowest queued one replaces it,
+ * the replaced request is handed to the {@link EvictionListener}.
+ */
+public class PriorityEventQueue {
+
+  /**
+   * Receives requests pushed out of a full queue by higher priority ones.
+   */
+  public interface EvictionListener {
+
+    void evicted(StateEvent event);
+  }
+
+  // band 0 is never evicted, received requests go to band 1 + priority
+  private static final int BANDS = PriorityClassifier.LOWEST_PRIORITY + 2;
+
+  private final Band[] bands;
+  private final int capacity;
+  private final EvictionListener evictionListener;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+
+  // guarded by lock, one bit per non empty band
+  private int mask;
+  private volatile int count;
+
+  public PriorityEventQueue(int capacity, EvictionListener evictionListener) {
+    this.capacity = capacity;
+    this.evictionListener = evictionListener;
+    this.bands = new Band[BANDS];
+    for (int i = 0; i < BANDS; i++) {
+      bands[i] = new Band();
+    }
+  }
+
+  /**
+   * Inserts the event, waiting up to timeout for space unless a lower priority request can be evicted.
+   *
+   * @return false if the queue stayed full
+   */
+  public boolean offer(StateEvent event, long timeout, TimeUnit unit) throws InterruptedException {
+    int band = getBand(event);
+    long nanos = unit.toNanos(timeout);
+    StateEvent evicted = null;
+    lock.lockInterruptibly();
+    try {
+      while (count == capacity) {
+        int lowest = 31 - Integer.numberOfLeadingZeros(mask);
+        if (lowest > band) {
+          evicted = take(lowest, false);
+          break;
+        }
+        if (nanos <= 0) {
+          return false;
+        }
+        nanos = notFull.awaitNanos(nanos);
+      }
+      bands[band].addLast(event);
+      mask |= 1 << band;
+      count++;
+      notEmpty.signal();
+    }
+    finally {
+      lock.unlock();
+    }
+    if (evicted != null) {
+      evictionListener.evicted(evicted);
+    }
+    return true;
+  }
+
+  /**
+   * Takes the oldest event of the highest priority, waiting up to timeout for one.
+   *
+   * @return the event or null if none arrived in time
+   */
+  public StateEvent poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (count == 0) {
+        if (nanos <= 0) {
+          return null;
+        }
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+      StateEvent event = take(Integer.numberOfTrailingZeros(mask), true);
+      notFull.signal();
+      return event;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private StateEvent take(int band, boolean first) {
+    StateEvent event = first ? bands[band].pollFirst() : bands[band].pollLast();
+    if (bands[band].isEmpty()) {
+      mask &= ~(1 << band);
+    }
+    count--;
+    return event;
+  }
+
+  public int size() {
+    return count;
+  }
+
+  public boolean isEmpty() {
+    return count == 0;
+  }
+
+  public int remainingCapacity() {
+    return capacity - count;
+  }
+
+  public void clear() {
+    lock.lock();
+    try {
+      for (Band b : bands) {
+        b.clear();
+      }
+      mask = 0;
+      count = 0;
+      notFull.signalAll();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  protected int getBand(StateEvent event) {
+    if (event.getType() == EventTypes.RECEIVE_MSG_EVENT && event.getData() instanceof IMessage) {
+      IMessage message = (IMessage) event.getData();
+      if (message.isRequest()) {
+        return 1 + Math.min(Math.max(message.getPriority(), PriorityClassifier.HIGHEST_PRIORITY), PriorityClassifier.LOWEST_PRIORITY);
+      }
+    }
+    return 0;
+  }
+
+  // named type, so the bands can be held in an array without raw types
+  @SuppressWarnings("serial")
+  private static final class Band extends ArrayDeque<StateEvent> {
+  }
+}
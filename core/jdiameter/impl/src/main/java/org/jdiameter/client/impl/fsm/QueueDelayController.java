@@ -0,0 +1,329 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.client.impl.fsm;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.jdiameter.client.impl.controller.PriorityClassifier;
+
+/**
+ * Adaptive ingress controller driven by the time events spend in the peer FSM queue.
+ *
+ * Overload is detected as in CoDel (RFC 8289): a short burst that drains quickly is tolerated, but once the
+ * queue delay stays above the target for a whole interval the controller starts shedding. Diameter clients do
+ * not back off when requests are rejected, so shedding is not paced by drop times. Instead a shed fraction of
+ * the arriving requests is set every tenth of an interval. The lowest delay seen since the last update tells
+ * how far the queue is above the target. The queue is then given a rate to drain the excess delay over about
+ * an interval, or over the delay itself if that is longer. The fraction is what must be shed from the arrival
+ * rate to admit no more than the measured departure rate minus that drain rate. Below the target the admitted
+ * rate may exceed the departure rate, so the fraction falls back. Shedding ends once the fraction stayed at
+ * zero for an interval.
+ *
+ * The fraction is applied lowest DRMP priority first: arrivals are counted per priority over the current and
+ * last interval, and each priority is shed only with the part of the fraction its lower priorities can not absorb.
+ * The intervals roll with the arrivals, shedding or not, so an episode starts from the recent priority mix.
+ */
+public class QueueDelayController {
+
+  static final int UPDATES_PER_INTERVAL = 10;
+
+  private static final int PRIORITIES = PriorityClassifier.LOWEST_PRIORITY - PriorityClassifier.HIGHEST_PRIORITY + 1;
+
+  private final long target;
+  private final long interval;
+  private final long updatePeriod;
+
+  // guarded by this
+  private long firstAboveTime;
+  private long lastUpdate;
+  private long nextUpdate;
+  private long idleSince;
+  private long minDelay = Long.MAX_VALUE;
+  private long departures;
+  private long arrivalsAtUpdate;
+  private double fraction;
+  private final long[] lastArrivals = new long[PRIORITIES];
+
+  private volatile boolean dropping;
+  // end of the current arrival counting interval, changed under this
+  private volatile long windowEnd;
+  // shed probability per priority, replaced as a whole on every update
+  private volatile double[] probabilities = new double[PRIORITIES];
+  private final AtomicLongArray arrivals = new AtomicLongArray(PRIORITIES);
+
+  private final AtomicLong episodes = new AtomicLong();
+  private final AtomicLong drops = new AtomicLong();
+
+  /**
+   * @param target queue delay target in milliseconds
+   * @param interval time in milliseconds the delay must stay above target
+   */
+  public QueueDelayController(long target, long interval) {
+    this.target = TimeUnit.MILLISECONDS.toNanos(target);
+    this.interval = TimeUnit.MILLISECONDS.toNanos(interval);
+    this.updatePeriod = Math.max(1, this.interval / UPDATES_PER_INTERVAL);
+  }
+
+  /**
+   * Feeds the delay of an event just taken from the queue.
+   *
+   * @param delay time in nanoseconds the event spent in the queue
+   * @param now current {@link System#nanoTime()}
+   * @param drained true if the queue is empty after taking the event
+   */
+  public synchronized void dequeued(long delay, long now, boolean drained) {
+    departures++;
+    // an event leaving the queue empty did not wait behind a standing queue
+    long sample = drained ? 0 : delay;
+    if (!dropping && isWindowEnded(now)) {
+      roll(now);
+    }
+    if (dropping) {
+      if (sample < minDelay) {
+        minDelay = sample;
+      }
+      if (now - nextUpdate >= 0) {
+        update(now);
+      }
+      return;
+    }
+    if (sample < target) {
+      firstAboveTime = 0;
+    }
+    else if (firstAboveTime == 0) {
+      firstAboveTime = now + interval;
+    }
+    else if (now - firstAboveTime >= 0) {
+      dropping = true;
+      episodes.incrementAndGet();
+      // no arrival rate is known yet, start by draining the excess delay alone
+      fraction = drainShare(sample);
+      departures = 0;
+      arrivalsAtUpdate = arrivalCount();
+      idleSince = 0;
+      lastUpdate = now;
+      nextUpdate = now + updatePeriod;
+      probabilities = spread(fraction);
+    }
+  }
+
+  private synchronized void idle(long now) {
+    if (dropping && now - nextUpdate >= updatePeriod) {
+      update(now);
+    }
+  }
+
+  private void update(long now) {
+    // no event taken from the queue since the last update means nothing is waiting in it
+    long delay = minDelay == Long.MAX_VALUE ? 0 : minDelay;
+    long elapsed = Math.max(1, now - lastUpdate);
+    long arrivalCount = arrivalCount();
+    double arrivalRate = (double) (arrivalCount - arrivalsAtUpdate) / elapsed;
+    double departureRate = (double) departures / elapsed;
+    if (arrivalRate > 0) {
+      double admitted;
+      if (delay > target) {
+        admitted = departureRate * (1 - drainShare(delay));
+      }
+      else {
+        // room left below the target, also lets the fraction fall back when the queue is empty
+        admitted = Math.max(departureRate, arrivalRate * (1 - fraction)) * (1 + (double) (target - delay) / interval);
+      }
+      fraction = Math.min(Math.max(1 - admitted / arrivalRate, 0), 1);
+    }
+    if (isWindowEnded(now)) {
+      roll(now);
+      arrivalCount = 0;
+    }
+    minDelay = Long.MAX_VALUE;
+    departures = 0;
+    arrivalsAtUpdate = arrivalCount;
+    lastUpdate = now;
+    nextUpdate = now + updatePeriod;
+    if (fraction > 0 || delay >= target) {
+      idleSince = 0;
+    }
+    else if (idleSince == 0) {
+      idleSince = now;
+    }
+    else if (now - idleSince >= interval) {
+      firstAboveTime = 0;
+      dropping = false;
+    }
+    probabilities = spread(fraction);
+  }
+
+  /**
+   * @return true once the arrival counting interval is over, also before the first one was started
+   */
+  private boolean isWindowEnded(long now) {
+    return now - windowEnd >= 0 || windowEnd - now > interval;
+  }
+
+  /**
+   * Starts a new arrival counting interval, the current one becomes the last.
+   */
+  private void roll(long now) {
+    for (int i = 0; i < PRIORITIES; i++) {
+      lastArrivals[i] = arrivals.getAndSet(i, 0);
+    }
+    windowEnd = now + interval;
+  }
+
+  private synchronized void rollIdle(long now) {
+    // while shedding the interval is rolled by the updates, which keep the arrival rate from the counts
+    if (!dropping && isWindowEnded(now)) {
+      roll(now);
+    }
+  }
+
+  /**
+   * @return share of the departure rate spent draining the delay above the target
+   */
+  private double drainShare(long delay) {
+    return delay <= target ? 0 : (double) (delay - target) / (Math.max(delay, interval) + target);
+  }
+
+  private long arrivalCount() {
+    long count = 0;
+    for (int i = 0; i < PRIORITIES; i++) {
+      count += arrivals.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * @return shed probability of each priority, taking the fraction from the lowest priorities first
+   */
+  private double[] spread(double fraction) {
+    double[] shares = new double[PRIORITIES];
+    long total = 0;
+    for (int i = 0; i < PRIORITIES; i++) {
+      shares[i] = lastArrivals[i] + arrivals.get(i);
+      total += shares[i];
+    }
+    double[] result = new double[PRIORITIES];
+    if (total == 0) {
+      // nothing seen yet, shed evenly
+      for (int i = 0; i < PRIORITIES; i++) {
+        result[i] = fraction;
+      }
+      return result;
+    }
+    double remaining = fraction;
+    for (int i = PRIORITIES - 1; i >= 0 && remaining > 0; i--) {
+      double share = shares[i] / total;
+      if (share == 0) {
+        continue;
+      }
+      result[i] = Math.min(1, remaining / share);
+      remaining -= share;
+    }
+    // priorities not seen lately take the probability of the next lower one, they may arrive before the next update
+    for (int i = PRIORITIES - 2; i >= 0; i--) {
+      if (shares[i] == 0) {
+        result[i] = result[i + 1];
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Decides if an arriving request is shed.
+   *
+   * @param priority DRMP priority of the request, 0 is the highest
+   * @return true if the request should be rejected
+   */
+  public boolean shed(int priority) {
+    return shed(priority, System.nanoTime());
+  }
+
+  /**
+   * Decides if an arriving request is shed.
+   *
+   * @param priority DRMP priority of the request, 0 is the highest
+   * @param now current {@link System#nanoTime()}
+   * @return true if the request should be rejected
+   */
+  public boolean shed(int priority, long now) {
+    int p = Math.min(Math.max(priority, PriorityClassifier.HIGHEST_PRIORITY), PriorityClassifier.LOWEST_PRIORITY);
+    arrivals.incrementAndGet(p);
+    if (!dropping) {
+      if (isWindowEnded(now)) {
+        rollIdle(now);
+      }
+      return false;
+    }
+    if (now - nextUpdate >= updatePeriod) {
+      // requests are all shed and the queue is empty, so updates are no longer driven by dequeued events
+      idle(now);
+    }
+    double probability = probabilities[p];
+    if (probability <= 0 || (probability < 1 && ThreadLocalRandom.current().nextDouble() >= probability)) {
+      return false;
+    }
+    drops.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * @param priority DRMP priority, 0 is the highest
+   * @return probability a request of the priority is currently shed with
+   */
+  public double getShedProbability(int priority) {
+    int p = Math.min(Math.max(priority, PriorityClassifier.HIGHEST_PRIORITY), PriorityClassifier.LOWEST_PRIORITY);
+    return dropping ? probabilities[p] : 0;
+  }
+
+  /**
+   * @return true while the controller is shedding requests
+   */
+  public boolean isOverloaded() {
+    return dropping;
+  }
+
+  /**
+   * @return fraction of arriving requests currently shed
+   */
+  public synchronized double getShedFraction() {
+    return dropping ? fraction : 0;
+  }
+
+  public long getOverloadCount() {
+    return episodes.get();
+  }
+
+  /**
+   * @return count of requests shed by the controller
+   */
+  public long getDropCount() {
+    return drops.get();
+  }
+
+  @Override
+  public String toString() {
+    return "QueueDelayController [target=" + TimeUnit.NANOSECONDS.toMillis(target) + "ms, interval=" + TimeUnit.NANOSECONDS.toMillis(interval)
+        + "ms, overloaded=" + dropping + ", episodes=" + episodes.get() + ", drops=" + drops.get() + "]";
+  }
+}
@@ -94,6 +94,28 @@ public class Parameters extends Ordinal {
    */
   public static final Parameters QueueSize = new Parameters("QueueSize", Integer.class,   10000);
 
+  /**
+   * Target FSM queue delay in milliseconds, zero disables. While the delay stays above it new requests are rejected
+   * with DIAMETER_TOO_BUSY, shedding the fraction of arrivals needed to drain the queue, lowest DRMP priorities first
+   */
+  public static final Parameters IngressDelayTarget = new Parameters("IngressDelayTarget", Long.class, 0L);
+
+  /**
+   * Time in milliseconds the queue delay must stay above target before requests are rejected
+   */
+  public static final Parameters IngressDelayInterval = new Parameters("IngressDelayInterval", Long.class, 100L);
+
+  /**
+   * DOIC (RFC 7683) overload control, as reacting and reporting node, property
+   */
+  public static final Parameters DoicSupport = new Parameters("DoicSupport", Boolean.class, false);
+
+  /**
+   * DRMP (RFC 7944) priorities of requests without DRMP AVP, as comma separated
+   * applicationId:commandCode[:CC-Request-Type]=priority entries, property
+   */
+  public static final Parameters MessagePriorities = new Parameters("MessagePriorities", String.class, "");
+
   /**
    * Message time out  property
    */
@@ -127,6 +149,22 @@ public class Parameters extends Ordinal {
    * Idle session time out property
    */
   public static final Parameters SessionTimeOut = new Parameters("SessionTimeOut", Long.class, 0L);
+  /**
+   * Maximum number of sessions held by the local session datasource property, zero for unlimited
+   */
+  public static final Parameters SessionStoreCapacity = new Parameters("SessionStoreCapacity", Integer.class, 0);
+  /**
+   * Session journal file of the persistent session datasource property
+   */
+  public static final Parameters SessionJournalFile = new Parameters("SessionJournalFile", String.class, "jdiameter-sessions.journal");
+  /**
+   * Size in bytes of each session journal segment property
+   */
+  public static final Parameters SessionJournalSize = new Parameters("SessionJournalSize", Long.class, 64L * 1024 * 1024);
+  /**
+   * Period in milliseconds between session journal checkpoints property
+   */
+  public static final Parameters SessionJournalCheckpointPeriod = new Parameters("SessionJournalCheckpointPeriod", Long.class, 60000L);
 
   /**
    * Peer FSM Thread Count property
@@ -357,6 +395,26 @@ public class Parameters extends Ordinal {
    */
   public static final Parameters StatisticsActiveList = new Parameters("StatisticsActiveList", String.class, false);
 
+  /**
+   * Port of embedded OpenMetrics (Prometheus) scrape endpoint, 0 disables it.
+   */
+  public static final Parameters StatisticsMetricsPort = new Parameters("StatisticsMetricsPort", Integer.class, 0);
+
+  /**
+   * Address on which the OpenMetrics endpoint listens.
+   */
+  public static final Parameters StatisticsMetricsAddress = new Parameters("StatisticsMetricsAddress", String.class, "0.0.0.0");
+
+  /**
+   * Message lifecycle tracing samples 1 in N messages, 0 disables it.
+   */
+  public static final Parameters StatisticsTraceSampling = new Parameters("StatisticsTraceSampling", Integer.class, 0);
+
+  /**
+   * Number of slowest message traces kept.
+   */
+  public static final Parameters StatisticsTraceSlowest = new Parameters("StatisticsTraceSlowest", Integer.class, 32);
+
   /**
    * Concurrent configuration root point
    */
@@ -377,6 +435,11 @@ public class Parameters extends Ordinal {
    */
   public static final Parameters ConcurrentEntityPoolSize = new Parameters("ConcurrentEntityPoolSize", Integer.class, 4);
 
+  /**
+   * Concurrent entity threads, "pool" or "virtual" (tasks run on virtual threads, when the JVM has them)
+   */
+  public static final Parameters ConcurrentEntityThreads = new Parameters("ConcurrentEntityThreads", String.class, "pool");
+
   /**
    * Dictionary root
    */
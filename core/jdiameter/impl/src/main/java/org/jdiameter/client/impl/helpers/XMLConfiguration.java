@@ -70,19 +70,24 @@ import static org.jdiameter.client.impl.helpers.Parameters.Concurrent;
 import static org.jdiameter.client.impl.helpers.Parameters.ConcurrentEntityDescription;
 import static org.jdiameter.client.impl.helpers.Parameters.ConcurrentEntityName;
 import static org.jdiameter.client.impl.helpers.Parameters.ConcurrentEntityPoolSize;
+import static org.jdiameter.client.impl.helpers.Parameters.ConcurrentEntityThreads;
 import static org.jdiameter.client.impl.helpers.Parameters.Dictionary;
 import static org.jdiameter.client.impl.helpers.Parameters.DictionaryClass;
 import static org.jdiameter.client.impl.helpers.Parameters.DictionaryEnabled;
 import static org.jdiameter.client.impl.helpers.Parameters.DictionaryReceiveLevel;
 import static org.jdiameter.client.impl.helpers.Parameters.DictionarySendLevel;
+import static org.jdiameter.client.impl.helpers.Parameters.DoicSupport;
 import static org.jdiameter.client.impl.helpers.Parameters.DpaTimeOut;
 import static org.jdiameter.client.impl.helpers.Parameters.DwaTimeOut;
 import static org.jdiameter.client.impl.helpers.Parameters.IacTimeOut;
+import static org.jdiameter.client.impl.helpers.Parameters.IngressDelayInterval;
+import static org.jdiameter.client.impl.helpers.Parameters.IngressDelayTarget;
 import static org.jdiameter.client.impl.helpers.Parameters.KDFile;
 import static org.jdiameter.client.impl.helpers.Parameters.KDManager;
 import static org.jdiameter.client.impl.helpers.Parameters.KDPwd;
 import static org.jdiameter.client.impl.helpers.Parameters.KDStore;
 import static org.jdiameter.client.impl.helpers.Parameters.KeyData;
+import static org.jdiameter.client.impl.helpers.Parameters.MessagePriorities;
 import static org.jdiameter.client.impl.helpers.Parameters.MessageTimeOut;
 import static org.jdiameter.client.impl.helpers.Parameters.OwnDiameterURI;
 import static org.jdiameter.client.impl.helpers.Parameters.OwnFirmwareRevision;
@@ -109,11 +114,19 @@ import static org.jdiameter.client.impl.helpers.Parameters.SDProtocol;
 import static org.jdiameter.client.impl.helpers.Parameters.SDUseClientMode;
 import static org.jdiameter.client.impl.helpers.Parameters.Security;
 import static org.jdiameter.client.impl.helpers.Parameters.SecurityRef;
+import static org.jdiameter.client.impl.helpers.Parameters.SessionJournalCheckpointPeriod;
+import static org.jdiameter.client.impl.helpers.Parameters.SessionJournalFile;
+import static org.jdiameter.client.impl.helpers.Parameters.SessionJournalSize;
+import static org.jdiameter.client.impl.helpers.Parameters.SessionStoreCapacity;
 import static org.jdiameter.client.impl.helpers.Parameters.Statistics;
 import static org.jdiameter.client.impl.helpers.Parameters.StatisticsActiveList;
 import static org.jdiameter.client.impl.helpers.Parameters.StatisticsEnabled;
 import static org.jdiameter.client.impl.helpers.Parameters.StatisticsLoggerDelay;
 import static org.jdiameter.client.impl.helpers.Parameters.StatisticsLoggerPause;
+import static org.jdiameter.client.impl.helpers.Parameters.StatisticsMetricsAddress;
+import static org.jdiameter.client.impl.helpers.Parameters.StatisticsMetricsPort;
+import static org.jdiameter.client.impl.helpers.Parameters.StatisticsTraceSampling;
+import static org.jdiameter.client.impl.helpers.Parameters.StatisticsTraceSlowest;
 import static org.jdiameter.client.impl.helpers.Parameters.StopTimeOut;
 import static org.jdiameter.client.impl.helpers.Parameters.TDFile;
 import static org.jdiameter.client.impl.helpers.Parameters.TDManager;
@@ -344,9 +357,33 @@ public class XMLConfiguration extends EmptyConfiguration {
       else if (nodeName.equals("QueueSize")) {
         add(QueueSize, getIntValue(c.item(i)));
       }
+      else if (nodeName.equals("IngressDelayTarget")) {
+        add(IngressDelayTarget, getLongValue(c.item(i)));
+      }
+      else if (nodeName.equals("IngressDelayInterval")) {
+        add(IngressDelayInterval, getLongValue(c.item(i)));
+      }
+      else if (nodeName.equals("DoicSupport")) {
+        add(DoicSupport, Boolean.valueOf(getValue(c.item(i))));
+      }
+      else if (nodeName.equals("MessagePriorities")) {
+        add(MessagePriorities, getValue(c.item(i)));
+      }
       else if (nodeName.equals("MessageTimeOut")) {
         add(MessageTimeOut, getLongValue(c.item(i)));
       }
+      else if (nodeName.equals("SessionStoreCapacity")) {
+        add(SessionStoreCapacity, getIntValue(c.item(i)));
+      }
+      else if (nodeName.equals("SessionJournalFile")) {
+        add(SessionJournalFile, getValue(c.item(i)));
+      }
+      else if (nodeName.equals("SessionJournalSize")) {
+        add(SessionJournalSize, getLongValue(c.item(i)));
+      }
+      else if (nodeName.equals("SessionJournalCheckpointPeriod")) {
+        add(SessionJournalCheckpointPeriod, getLongValue(c.item(i)));
+      }
       else if (nodeName.equals("StopTimeOut")) {
         add(StopTimeOut, getLongValue(c.item(i)));
       }
@@ -407,6 +444,9 @@ public class XMLConfiguration extends EmptyConfiguration {
       String size = node.getAttributes().getNamedItem("size").getNodeValue();
       cfg.add(ConcurrentEntityPoolSize, Integer.parseInt(size));
     }
+    if (node.getAttributes().getNamedItem("threads") != null) {
+      cfg.add(ConcurrentEntityThreads, node.getAttributes().getNamedItem("threads").getNodeValue());
+    }
     items.add(cfg);
   }
 
@@ -421,11 +461,31 @@ public class XMLConfiguration extends EmptyConfiguration {
     else {
       active_records = (String) StatisticsActiveList.defValue();
     }
+    int metrics_port = (Integer) StatisticsMetricsPort.defValue();
+    if (node.getAttributes().getNamedItem("metrics_port") != null) {
+      metrics_port = Integer.parseInt(node.getAttributes().getNamedItem("metrics_port").getNodeValue());
+    }
+    String metrics_address = (String) StatisticsMetricsAddress.defValue();
+    if (node.getAttributes().getNamedItem("metrics_address") != null) {
+      metrics_address = node.getAttributes().getNamedItem("metrics_address").getNodeValue();
+    }
+    int trace_sampling = (Integer) StatisticsTraceSampling.defValue();
+    if (node.getAttributes().getNamedItem("trace_sampling") != null) {
+      trace_sampling = Integer.parseInt(node.getAttributes().getNamedItem("trace_sampling").getNodeValue());
+    }
+    int trace_slowest = (Integer) StatisticsTraceSlowest.defValue();
+    if (node.getAttributes().getNamedItem("trace_slowest") != null) {
+      trace_slowest = Integer.parseInt(node.getAttributes().getNamedItem("trace_slowest").getNodeValue());
+    }
 
     add(name, getInstance().add(StatisticsLoggerPause, Long.parseLong(pause))
         .add(StatisticsLoggerDelay, Long.parseLong(delay))
         .add(StatisticsEnabled, Boolean.parseBoolean(enabled))
-        .add(StatisticsActiveList, active_records));
+        .add(StatisticsActiveList, active_records)
+        .add(StatisticsMetricsPort, metrics_port)
+        .add(StatisticsMetricsAddress, metrics_address)
+        .add(StatisticsTraceSampling, trace_sampling)
+        .add(StatisticsTraceSlowest, trace_slowest));
   }
 
   protected void addDictionary(org.jdiameter.client.impl.helpers.Parameters name, Node node) {
@@ -59,6 +59,7 @@ import org.jdiameter.client.api.IEventListener;
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.controller.IPeer;
 import org.jdiameter.client.impl.router.RouterImpl;
+import org.jdiameter.common.api.statistic.IMessageTracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -89,6 +90,12 @@ public class MessageImpl implements IMessage {
   boolean isNetworkRequest = false;
 
   transient IPeer peer;
+  transient long sendTime;
+  transient long receiveTime;
+  transient int size;
+  transient long overloadFeatures;
+  transient int priority = DEFAULT_PRIORITY;
+  transient long[] trace;
   transient TimerTask timerTask;
   transient IEventListener listener;
 
@@ -160,6 +167,8 @@ public class MessageImpl implements IMessage {
     this(request.getCommandCode(), request.getHeaderApplicationId());
     copyHeader(request);
     setRequest(false);
+    overloadFeatures = request.overloadFeatures;
+    priority = request.priority;
     parser.copyBasicAvps(this, request, true);
     // if we set REQUEST_TABLE_SIZE to 0, we store routing info at answer
     if (RouterImpl.REQUEST_TABLE_SIZE == 0) {
@@ -502,6 +511,69 @@ public class MessageImpl implements IMessage {
     return state;
   }
 
+  @Override
+  public long getSendTime() {
+    return sendTime;
+  }
+
+  @Override
+  public void setSendTime(long nanoTime) {
+    this.sendTime = nanoTime;
+  }
+
+  @Override
+  public long getReceiveTime() {
+    return receiveTime;
+  }
+
+  @Override
+  public void setReceiveTime(long nanoTime) {
+    this.receiveTime = nanoTime;
+  }
+
+  @Override
+  public int getSize() {
+    return size;
+  }
+
+  @Override
+  public int getPriority() {
+    return priority;
+  }
+
+  @Override
+  public void setPriority(int priority) {
+    this.priority = priority;
+  }
+
+  @Override
+  public long getOverloadFeatures() {
+    return overloadFeatures;
+  }
+
+  @Override
+  public void setOverloadFeatures(long features) {
+    this.overloadFeatures = features;
+  }
+
+  @Override
+  public long[] getTrace() {
+    return trace;
+  }
+
+  @Override
+  public void setTrace(long[] trace) {
+    this.trace = trace;
+  }
+
+  @Override
+  public void stamp(IMessageTracer.Stage stage) {
+    long[] t = trace;
+    if (t != null && t[stage.ordinal()] == 0) {
+      t[stage.ordinal()] = System.nanoTime();
+    }
+  }
+
   @Override
   public long getHeaderApplicationId() {
     return applicationId;
@@ -632,14 +704,15 @@ public class MessageImpl implements IMessage {
     public void run() {
       try {
         if (message != null && message.state != STATE_ANSWERED) {
+          // always release the request from peer, even without a valid listener, so it is no longer outstanding
+          if (message.peer != null) {
+            message.peer.remExpiredMessage(message);
+          }
           IEventListener listener = null;
           if (message.listener  instanceof IEventListener) {
             listener = message.listener;
           }
           if (listener != null && listener.isValid()) {
-            if (message.peer != null) {
-              message.peer.remMessage(message);
-            }
             message.listener.timeoutExpired(message);
           }
         }
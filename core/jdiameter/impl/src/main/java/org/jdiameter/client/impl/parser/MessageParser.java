@@ -51,6 +51,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.TimeUnit;
 
@@ -115,7 +116,9 @@ public class MessageParser extends ElementParser implements IMessageParser {
       // AvpSetImpl avpSet = decodeAvpSet(body);
       AvpSetImpl avpSet = decodeAvpSet(message, 20);
 
-      return new MessageImpl(commandCode, applicationId, flags, hopByHopId, endToEndId, avpSet);
+      MessageImpl result = new MessageImpl(commandCode, applicationId, flags, hopByHopId, endToEndId, avpSet);
+      result.size = message.length;
+      return result;
     }
     catch (Exception exc) {
       throw new AvpDataException(exc);
@@ -128,6 +131,36 @@ public class MessageParser extends ElementParser implements IMessageParser {
     return createMessage(message);
   }
 
+  /**
+   * Finds the Session-Id of an encoded message by walking the AVP headers, without decoding the message.
+   *
+   * @param message encoded message
+   * @return value of the first top level Session-Id AVP, or null if none is present or the message is malformed
+   */
+  public static String peekSessionId(byte[] message) {
+    int offset = 20;
+    while (offset + 8 <= message.length) {
+      int code = ((message[offset] & 0xFF) << 24) | ((message[offset + 1] & 0xFF) << 16) | ((message[offset + 2] & 0xFF) << 8)
+          | (message[offset + 3] & 0xFF);
+      boolean vendorSpecific = (message[offset + 4] & 0x80) != 0;
+      int length = ((message[offset + 5] & 0xFF) << 16) | ((message[offset + 6] & 0xFF) << 8) | (message[offset + 7] & 0xFF);
+      int header = vendorSpecific ? 12 : 8;
+      if (length < header || offset + length > message.length) {
+        return null;
+      }
+      if (code == SESSION_ID && !vendorSpecific) {
+        try {
+          return new String(message, offset + header, length - header, "UTF-8");
+        }
+        catch (UnsupportedEncodingException e) {
+          return null;
+        }
+      }
+      offset += (length + 3) & ~3;
+    }
+    return null;
+  }
+
   @Override
   public <T> T createMessage(Class<?> iface, ByteBuffer data) throws AvpDataException {
     if (iface == IMessage.class) {
@@ -304,6 +337,9 @@ public class MessageParser extends ElementParser implements IMessageParser {
       data.write(toBytes(message.getHopByHopIdentifier()));
       data.write(toBytes(message.getEndToEndIdentifier()));
       data.write(rawData);
+      if (message instanceof MessageImpl) {
+        ((MessageImpl) message).size = 20 + rawData.length;
+      }
     }
     catch (Exception e) {
       //logger.debug("Error during encode message", e);
@@ -0,0 +1,218 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.router;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jdiameter.api.Configuration;
+import org.jdiameter.api.MetaData;
+import org.jdiameter.client.api.IContainer;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.controller.IPeer;
+import org.jdiameter.client.api.controller.IRealm;
+import org.jdiameter.client.api.controller.IRealmTable;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.server.api.IRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Session sticky router implementation, using consistent hashing<br/><br/>
+ *
+ * The peers of a realm entry are placed on a hash ring, each with {@link #VIRTUAL_NODES} points per unit
+ * of rating. A request is sent to the first available peer found clockwise from the hash of its Session-Id,
+ * so all requests of a session go to the same peer even when no Destination-Host is present. All peers of
+ * the realm entry are placed on the ring regardless of their state: when a peer fails only the sessions
+ * owned by it move to the next peer on the ring, and they move back once it recovers. Lookup is a binary
+ * search over the ring points. The ring of a realm entry is kept until its peers or their ratings change,
+ * so peer state changes do not rebuild it.
+ * <p>
+ * Messages without Session-Id are balanced as by {@link RouterImpl}.
+ *
+ * <pre>
+ *   ...
+ *   <Extensions>
+ *   <RouterEngine value="org.jdiameter.client.impl.router.ConsistentHashRouter" />
+ *   </Extensions>
+ * </pre>
+ */
+public class ConsistentHashRouter extends RouterImpl implements IRouter {
+
+  private static final Logger logger = LoggerFactory.getLogger(ConsistentHashRouter.class);
+
+  public static final int VIRTUAL_NODES = 100;
+  public static final int MAX_VIRTUAL_NODES = 10000;
+
+  protected ConsistentHashRouter(IRealmTable table, Configuration config) {
+    super(null, null, table, config, null);
+  }
+
+  public ConsistentHashRouter(IContainer container, IConcurrentFactory concurrentFactory,
+                              IRealmTable realmTable, Configuration config, MetaData aMetaData) {
+    super(container, concurrentFactory, realmTable, config, aMetaData);
+  }
+
+  @Override
+  protected PeerCandidates newPeerCandidates(IRealm realm, PeerCandidates previous, IPeer[] realmPeers, IPeer[] availablePeers,
+      int peerNamesCount, int generation, int peerNamesVersion) {
+    // the ring lives in the cached set of the realm entry, so it is dropped along with it
+    HashRing ring = previous instanceof RingCandidates ? ((RingCandidates) previous).ring : null;
+    if (ring == null || !ring.isBuiltFrom(realmPeers)) {
+      ring = new HashRing(realmPeers);
+    }
+    return new RingCandidates(realmPeers, availablePeers, peerNamesCount, generation, peerNamesVersion, ring);
+  }
+
+  @Override
+  protected IPeer selectPeer(IMessage message, PeerCandidates candidates) {
+    String sessionId = message.getSessionId();
+    if (sessionId == null || !(candidates instanceof RingCandidates)) {
+      return super.selectPeer(message, candidates);
+    }
+    return selectPeer(sessionId, ((RingCandidates) candidates).ring);
+  }
+
+  /**
+   * Select the first available peer clockwise from the session hash.
+   *
+   * @param sessionId the session id of the message
+   * @param ring hash ring of the realm entry peers
+   * @return the selected peer or null if no peer on the ring is available
+   */
+  protected IPeer selectPeer(String sessionId, HashRing ring) {
+    int size = ring.points.length;
+    if (size == 0) {
+      return null;
+    }
+    int index = ring.indexOf(hash(sessionId));
+    for (int i = 0; i < size; i++) {
+      IPeer peer = ring.peers[index];
+      if (isAvailable(peer)) {
+        return peer;
+      }
+      if (++index == size) {
+        index = 0;
+      }
+    }
+    logger.debug("No available peer on hash ring for session [{}]", sessionId);
+    return null;
+  }
+
+  /**
+   * 64 bit FNV-1a hash of the characters, finished with the MurmurHash3 mixer to spread similar keys.
+   */
+  protected static long hash(CharSequence key) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < key.length(); i++) {
+      h ^= key.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * Immutable hash ring, points sorted ascending with the owning peer at the same index.
+   */
+  protected static final class HashRing {
+
+    final long[] points;
+    final IPeer[] peers;
+    // peers and ratings the ring was built from
+    private final IPeer[] members;
+    private final int[] ratings;
+
+    protected HashRing(IPeer[] realmPeers) {
+      members = realmPeers.clone();
+      ratings = new int[realmPeers.length];
+      for (int i = 0; i < realmPeers.length; i++) {
+        ratings[i] = realmPeers[i].getRating();
+      }
+      // points are derived from the peer uri only, so the ring is the same on every node and across restarts
+      TreeMap<Long, IPeer> ring = new TreeMap<Long, IPeer>();
+      StringBuilder key = new StringBuilder();
+      for (int p = 0; p < members.length; p++) {
+        IPeer peer = members[p];
+        String uri = peer.getUri().toString();
+        int nodes = (int) Math.min(MAX_VIRTUAL_NODES, (long) VIRTUAL_NODES * Math.max(1, ratings[p]));
+        for (int i = 0; i < nodes; i++) {
+          key.setLength(0);
+          key.append(uri).append('#').append(i);
+          ring.put(hash(key), peer);
+        }
+      }
+      points = new long[ring.size()];
+      peers = new IPeer[ring.size()];
+      int i = 0;
+      for (Map.Entry<Long, IPeer> e : ring.entrySet()) {
+        points[i] = e.getKey();
+        peers[i++] = e.getValue();
+      }
+    }
+
+    /**
+     * @return true if the ring was built from the same peers, in the same order and with the same ratings
+     */
+    boolean isBuiltFrom(IPeer[] realmPeers) {
+      if (realmPeers.length != members.length) {
+        return false;
+      }
+      for (int i = 0; i < members.length; i++) {
+        if (realmPeers[i] != members[i] || realmPeers[i].getRating() != ratings[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    int indexOf(long hash) {
+      int low = 0;
+      int high = points.length - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        if (points[mid] < hash) {
+          low = mid + 1;
+        }
+        else if (points[mid] > hash) {
+          high = mid - 1;
+        }
+        else {
+          return mid;
+        }
+      }
+      return low == points.length ? 0 : low;
+    }
+  }
+
+  protected static final class RingCandidates extends PeerCandidates {
+
+    final HashRing ring;
+
+    RingCandidates(IPeer[] realmPeers, IPeer[] peers, int peerNamesCount, int generation, int peerNamesVersion, HashRing ring) {
+      super(realmPeers, peers, peerNamesCount, generation, peerNamesVersion);
+      this.ring = ring;
+    }
+  }
+}
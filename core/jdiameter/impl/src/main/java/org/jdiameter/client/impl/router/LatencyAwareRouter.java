@@ -0,0 +1,146 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.router;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.api.Configuration;
+import org.jdiameter.api.MetaData;
+import org.jdiameter.api.PeerState;
+import org.jdiameter.client.api.IContainer;
+import org.jdiameter.client.api.controller.IPeer;
+import org.jdiameter.client.api.controller.IRealmTable;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.server.api.IRouter;
+
+/**
+ * Latency aware router implementation, using the power of two choices<br/><br/>
+ *
+ * For every request two distinct peers are picked at random and the one with the lower cost is selected.
+ * The cost of a peer is its smoothed answer latency multiplied by its outstanding requests plus one, divided
+ * by its rating, so a peer that slows down (GC pause, database compaction) quickly gets less traffic, while
+ * the random pick keeps all peers in use and avoids herding on the single best one.
+ * <p>
+ * The cost is further multiplied by a penalty which decays linearly over a window:
+ * <ul>
+ *   <li>after a request to the peer timed out, starting at {@link #TIMEOUT_PENALTY};</li>
+ *   <li>after the peer (re)entered {@link PeerState#OKAY OKAY} state, starting at {@link #RECOVERY_PENALTY},
+ *   so a recovered peer is ramped up instead of receiving a burst.</li>
+ * </ul>
+ * Peers with no latency measurement yet are costed as the other candidate. Peers with no rating (zero) are
+ * treated as rated one.
+ *
+ * <pre>
+ *   ...
+ *   <Extensions>
+ *   <RouterEngine value="org.jdiameter.client.impl.router.LatencyAwareRouter" />
+ *   </Extensions>
+ * </pre>
+ *
+ * @see <a href="https://www.eecs.harvard.edu/~michaelm/postscripts/mythesis.pdf">The Power of Two Choices in Randomized Load Balancing</a>
+ */
+public class LatencyAwareRouter extends RouterImpl implements IRouter {
+
+  public static final double TIMEOUT_PENALTY = 8.0;
+  public static final long TIMEOUT_PENALTY_WINDOW = TimeUnit.SECONDS.toNanos(30);
+  public static final double RECOVERY_PENALTY = 4.0;
+  public static final long RECOVERY_PENALTY_WINDOW = TimeUnit.SECONDS.toNanos(10);
+
+  protected LatencyAwareRouter(IRealmTable table, Configuration config) {
+    super(null, null, table, config, null);
+  }
+
+  public LatencyAwareRouter(IContainer container, IConcurrentFactory concurrentFactory,
+                            IRealmTable realmTable, Configuration config, MetaData aMetaData) {
+    super(container, concurrentFactory, realmTable, config, aMetaData);
+  }
+
+  /**
+   * Select the cheaper of two randomly picked peers.
+   *
+   * @param availablePeers list of peers that are in {@link PeerState#OKAY OKAY} state
+   * @return the selected peer according to algorithm
+   */
+  @Override
+  public IPeer selectPeer(List<IPeer> availablePeers) {
+    int peerSize = availablePeers != null ? availablePeers.size() : 0;
+
+    // Return none if empty, or first if only one member found
+    if (peerSize <= 0) {
+      return null;
+    }
+    if (peerSize == 1) {
+      return availablePeers.get(0);
+    }
+
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int i = random.nextInt(peerSize);
+    int j = random.nextInt(peerSize - 1);
+    if (j >= i) {
+      j++;
+    }
+    IPeer first = availablePeers.get(i);
+    IPeer second = availablePeers.get(j);
+
+    long now = System.nanoTime();
+    long firstLatency = first.getAnswerLatency();
+    long secondLatency = second.getAnswerLatency();
+    if (firstLatency == 0) {
+      firstLatency = secondLatency;
+    }
+    else if (secondLatency == 0) {
+      secondLatency = firstLatency;
+    }
+
+    return getCost(first, firstLatency, now) <= getCost(second, secondLatency, now) ? first : second;
+  }
+
+  /**
+   * Return the cost of sending one more request to the peer, lower is better.
+   *
+   * @param peer the candidate peer
+   * @param latency answer latency to assume for the peer, in nanoseconds
+   * @param now current System.nanoTime()
+   * @return peer cost
+   */
+  protected double getCost(IPeer peer, long latency, long now) {
+    double cost = (double) Math.max(1, latency) * (peer.getOutstandingRequests() + 1) / Math.max(1, peer.getRating());
+    cost *= getPenalty(peer.getLastTimeoutTime(), now, TIMEOUT_PENALTY, TIMEOUT_PENALTY_WINDOW);
+    cost *= getPenalty(peer.getOkayTime(), now, RECOVERY_PENALTY, RECOVERY_PENALTY_WINDOW);
+    return cost;
+  }
+
+  /**
+   * Return a penalty factor decaying linearly from the given maximum at the event time to one at the end of the window.
+   * An event time of {@link Long#MIN_VALUE} means the event never happened.
+   */
+  protected double getPenalty(long eventTime, long now, double penalty, long window) {
+    if (eventTime == Long.MIN_VALUE) {
+      return 1.0;
+    }
+    long elapsed = now - eventTime;
+    if (elapsed < 0 || elapsed >= window) {
+      return 1.0;
+    }
+    return 1.0 + (penalty - 1.0) * (window - elapsed) / window;
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.router;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdiameter.api.Configuration;
+import org.jdiameter.api.MetaData;
+import org.jdiameter.api.PeerState;
+import org.jdiameter.client.api.IContainer;
+import org.jdiameter.client.api.controller.IPeer;
+import org.jdiameter.client.api.controller.IRealmTable;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.server.api.IRouter;
+
+/**
+ * Weighted Least-Outstanding-Requests router implementation<br/><br/>
+ *
+ * Selects the peer with the lowest ratio of outstanding requests (sent but not yet answered or timed out) to
+ * its rating. Outstanding requests are tracked by each peer when a request is stored for answer matching and
+ * released on answer, timeout or retransmission, so this router does not depend on {@link
+ * org.jdiameter.common.api.statistic.IStatistic Statistics} being enabled.
+ *
+ * <pre>
+ *   ...
+ *   <Extensions>
+ *   <RouterEngine value="org.jdiameter.client.impl.router.LeastOutstandingRequestsRouter" />
+ *   </Extensions>
+ * </pre>
+ *
+ * @see WeightedLeastConnectionsRouter
+ */
+public class LeastOutstandingRequestsRouter extends RouterImpl implements IRouter {
+
+  // rotates the scan start so that equally loaded peers share traffic instead of the first one taking it all
+  private final AtomicInteger scanStart = new AtomicInteger();
+
+  protected LeastOutstandingRequestsRouter(IRealmTable table, Configuration config) {
+    super(null, null, table, config, null);
+  }
+
+  public LeastOutstandingRequestsRouter(IContainer container, IConcurrentFactory concurrentFactory,
+                                        IRealmTable realmTable, Configuration config, MetaData aMetaData) {
+    super(container, concurrentFactory, realmTable, config, aMetaData);
+  }
+
+  /**
+   * Return peer with the least outstanding requests per rating unit.
+   * <p>
+   * Peer m is preferred over peer i when O(Sm) * W(Si) < O(Si) * W(Sm), where O is the number of outstanding
+   * requests and W the rating. Peers with rating zero are only selected if no peer has a positive rating.
+   *
+   * @param availablePeers list of peers that are in {@link PeerState#OKAY OKAY} state
+   * @return the selected peer according to algorithm
+   */
+  @Override
+  public IPeer selectPeer(List<IPeer> availablePeers) {
+    int peerSize = availablePeers != null ? availablePeers.size() : 0;
+
+    // Return none if empty, or first if only one member found
+    if (peerSize <= 0) {
+      return null;
+    }
+    if (peerSize == 1) {
+      return availablePeers.get(0);
+    }
+
+    int start = (scanStart.getAndIncrement() & Integer.MAX_VALUE) % peerSize;
+    IPeer selected = null;
+    long selectedOutstanding = 0;
+    long selectedRating = 0;
+    for (int n = 0; n < peerSize; n++) {
+      IPeer candidate = availablePeers.get((start + n) % peerSize);
+      long rating = candidate.getRating();
+      if (rating <= 0 && selectedRating > 0) {
+        continue;
+      }
+      long outstanding = candidate.getOutstandingRequests();
+      if (selected == null || (rating > 0 && selectedRating <= 0)) {
+        selected = candidate;
+        selectedOutstanding = outstanding;
+        selectedRating = rating;
+      }
+      else if (rating <= 0) {
+        // no rated peer so far, fall back to plain least outstanding
+        if (outstanding < selectedOutstanding) {
+          selected = candidate;
+          selectedOutstanding = outstanding;
+        }
+      }
+      else if (outstanding * selectedRating < selectedOutstanding * rating) {
+        selected = candidate;
+        selectedOutstanding = outstanding;
+        selectedRating = rating;
+      }
+    }
+
+    return selected;
+  }
+}
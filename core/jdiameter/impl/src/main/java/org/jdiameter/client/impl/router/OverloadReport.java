@@ -0,0 +1,165 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.client.impl.router;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.AvpDataException;
+import org.jdiameter.api.AvpSet;
+import org.jdiameter.api.Message;
+
+/**
+ * DOIC (RFC 7683) overload report received in an OC-OLR AVP, together with helpers to read and write
+ * the overload control AVPs.
+ */
+public class OverloadReport {
+
+  /**
+   * OLR_DEFAULT_ALGO bit of OC-Feature-Vector, the loss abatement algorithm
+   */
+  public static final long LOSS_ALGORITHM = 1L;
+
+  public static final int HOST_REPORT = 0;
+  public static final int REALM_REPORT = 1;
+
+  /**
+   * Validity of a report in seconds when OC-Validity-Duration is absent
+   */
+  public static final int DEFAULT_VALIDITY_DURATION = 30;
+  public static final int MAX_VALIDITY_DURATION = 86400;
+
+  private final long sequenceNumber;
+  private final int type;
+  private final int reduction;
+  private final long expiryTime;
+
+  public OverloadReport(long sequenceNumber, int type, int reduction, int validityDuration) {
+    this.sequenceNumber = sequenceNumber;
+    this.type = type;
+    this.reduction = reduction;
+    this.expiryTime = System.nanoTime() + TimeUnit.SECONDS.toNanos(validityDuration);
+  }
+
+  public long getSequenceNumber() {
+    return sequenceNumber;
+  }
+
+  public int getType() {
+    return type;
+  }
+
+  /**
+   * @return percentage of traffic the reporting node asks to abate
+   */
+  public int getReduction() {
+    return reduction;
+  }
+
+  public boolean isExpired(long now) {
+    return now - expiryTime >= 0;
+  }
+
+  /**
+   * Applies the loss algorithm to one request.
+   *
+   * @return true if the request must be throttled
+   */
+  public boolean abate() {
+    return reduction >= 100 || (reduction > 0 && ThreadLocalRandom.current().nextInt(100) < reduction);
+  }
+
+  /**
+   * Reads the OC-Feature-Vector of a message.
+   *
+   * @param message message to check
+   * @return feature bits or 0 if OC-Supported-Features is absent
+   */
+  public static long getFeatureVector(Message message) {
+    Avp features = message.getAvps().getAvp(Avp.OC_SUPPORTED_FEATURES);
+    if (features == null) {
+      return 0;
+    }
+    try {
+      Avp vector = features.getGrouped().getAvp(Avp.OC_FEATURE_VECTOR);
+      // a node that supports DOIC always supports the loss algorithm
+      return vector != null ? vector.getUnsigned64() | LOSS_ALGORITHM : LOSS_ALGORITHM;
+    }
+    catch (AvpDataException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Adds OC-Supported-Features with the given feature bits.
+   */
+  public static void addSupportedFeatures(Message message, long features) {
+    AvpSet set = message.getAvps().addGroupedAvp(Avp.OC_SUPPORTED_FEATURES, false, false);
+    set.addAvp(Avp.OC_FEATURE_VECTOR, features, false, false);
+  }
+
+  /**
+   * Adds an OC-OLR describing the local overload.
+   */
+  public static void addReport(Message message, long sequenceNumber, int type, int reduction, int validityDuration) {
+    AvpSet set = message.getAvps().addGroupedAvp(Avp.OC_OLR, false, false);
+    set.addAvp(Avp.OC_SEQUENCE_NUMBER, sequenceNumber, false, false);
+    set.addAvp(Avp.OC_REPORT_TYPE, type, false, false);
+    set.addAvp(Avp.OC_REDUCTION_PERCENTAGE, reduction, false, false, true);
+    set.addAvp(Avp.OC_VALIDITY_DURATION, validityDuration, false, false, true);
+  }
+
+  /**
+   * Reads the OC-OLR of an answer.
+   *
+   * @param answer received answer
+   * @return the report or null if the answer has none or it is malformed
+   */
+  public static OverloadReport getReport(Message answer) {
+    Avp olr = answer.getAvps().getAvp(Avp.OC_OLR);
+    if (olr == null) {
+      return null;
+    }
+    try {
+      AvpSet set = olr.getGrouped();
+      Avp sequence = set.getAvp(Avp.OC_SEQUENCE_NUMBER);
+      Avp type = set.getAvp(Avp.OC_REPORT_TYPE);
+      if (sequence == null || type == null) {
+        return null;
+      }
+      Avp reduction = set.getAvp(Avp.OC_REDUCTION_PERCENTAGE);
+      Avp validity = set.getAvp(Avp.OC_VALIDITY_DURATION);
+      long validityDuration = validity != null ? validity.getUnsigned32() : DEFAULT_VALIDITY_DURATION;
+      return new OverloadReport(sequence.getUnsigned64(), type.getInteger32(), reduction != null ? (int) Math.min(reduction.getUnsigned32(), 100) : 0,
+          (int) Math.min(validityDuration, MAX_VALIDITY_DURATION));
+    }
+    catch (AvpDataException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "OverloadReport [sequenceNumber=" + sequenceNumber + ", type=" + (type == REALM_REPORT ? "REALM" : "HOST") + ", reduction="
+        + reduction + "%]";
+  }
+}
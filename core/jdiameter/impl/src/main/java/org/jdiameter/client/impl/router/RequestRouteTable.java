@@ -0,0 +1,529 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.router;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jdiameter.api.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Table of route back information for received requests, keyed by End-to-End and Hop-by-Hop identifiers.<br/><br/>
+ *
+ * Hop-by-Hop identifiers are assigned per connection, so requests received from different peers can carry the
+ * same identifier pair. Every entry also keeps a discriminator (the Session-Id) which must match on lookup and
+ * removal, entries with the same identifiers but different discriminators are kept side by side.
+ * <p>
+ * Entries are kept in a ring of {@link #BUCKETS} time buckets, new entries always go to the newest one.
+ * The ring is rotated as time passes (checked on insertion, no timer thread is needed), dropping the oldest
+ * bucket as a whole, so every entry lives at least the configured expiry time and expiry costs O(1) no matter
+ * how many entries are dropped. The newest bucket takes at most 1/({@link #BUCKETS} - 1) of the capacity, a burst
+ * that fills it faster rotates the ring early. When the table is full the oldest non empty bucket other than the
+ * newest is evicted early, eviction drops the oldest entries a bucket at a time.
+ * <p>
+ * Every insertion reserves its place in the table before it is made, and a thread finding the table full waits
+ * for the rotation lock to evict, so the capacity is a hard bound even under concurrent insertion.
+ * Entries dropped by expiry and dropped before their expiry time are counted separately.
+ * <p>
+ * Each bucket is split in segments, open addressing tables holding keys in a <code>long[]</code> next to the
+ * discriminators and values, so the identifiers are never boxed and there is no node object per entry.
+ *
+ * @param <V> the route information type
+ */
+public class RequestRouteTable<V> {
+
+  private static final Logger logger = LoggerFactory.getLogger(RequestRouteTable.class);
+
+  public static final int BUCKETS = 8;
+  public static final long DEFAULT_EXPIRY = 60000L;
+
+  private static final long EVICTION_LOG_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
+  private static final int SEGMENTS = 16;
+  private static final int SEGMENT_SHIFT = 32 - Integer.numberOfTrailingZeros(SEGMENTS);
+  private static final int MIN_SEGMENT_SIZE = 8;
+  // marks a removed slot in the values, compared by identity
+  private static final Object REMOVED = new Object();
+  // count of a bucket dropped from the ring, entries removed from it afterwards are no longer counted
+  private static final int CLOSED = Integer.MIN_VALUE;
+
+  private final int capacity;
+  // entries the newest bucket takes before it is rotated early
+  private final int bucketCapacity;
+  private final long bucketTime;
+
+  // newest bucket first, replaced as a whole on rotation
+  private volatile Bucket[] ring;
+  private final ReentrantLock rotationLock = new ReentrantLock();
+  // entries in the buckets of the ring plus places reserved by insertions in progress
+  private final AtomicInteger size = new AtomicInteger();
+
+  private final AtomicLong expiredCount = new AtomicLong();
+  private final AtomicLong evictedCount = new AtomicLong();
+  // guarded by rotationLock
+  private long lastEvictionLog;
+  private long evictedSinceLog;
+
+  /**
+   * @param capacity maximum number of entries held by the table
+   * @param expiry minimum time to keep entries, in milliseconds
+   */
+  public RequestRouteTable(int capacity, long expiry) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Request table capacity must be positive: " + capacity);
+    }
+    if (expiry <= 0) {
+      throw new IllegalArgumentException("Request table expiry must be positive: " + expiry);
+    }
+    this.capacity = capacity;
+    this.bucketCapacity = (capacity + BUCKETS - 2) / (BUCKETS - 1);
+    // an entry added at the end of the newest bucket survives BUCKETS - 1 rotations
+    this.bucketTime = Math.max(1, TimeUnit.MILLISECONDS.toNanos(expiry) / (BUCKETS - 1));
+    long now = System.nanoTime();
+    Bucket[] buckets = new Bucket[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = new Bucket(now);
+    }
+    this.ring = buckets;
+    this.lastEvictionLog = now - EVICTION_LOG_INTERVAL;
+  }
+
+  /**
+   * Return the key of a message: the End-to-End identifier in the high and the Hop-by-Hop identifier in the
+   * low 32 bits.
+   */
+  public static long key(Message message) {
+    return (message.getEndToEndIdentifier() << 32) | (message.getHopByHopIdentifier() & 0xFFFFFFFFL);
+  }
+
+  /**
+   * @param key identifiers of the request, see {@link #key(Message)}
+   * @param discriminator value telling apart requests with the same identifiers, may be null
+   * @param value route information, not null
+   */
+  public void put(long key, Object discriminator, V value) {
+    if (value == null) {
+      throw new IllegalArgumentException("Request table value must not be null");
+    }
+    if (System.nanoTime() - ring[0].startTime >= bucketTime) {
+      rotate(false);
+    }
+    if (ring[0].count.get() >= bucketCapacity) {
+      rotate(true);
+    }
+    int hash = hash(key);
+    reserve();
+    while (true) {
+      Bucket bucket = ring[0];
+      Segment segment = bucket.segmentFor(hash);
+      synchronized (segment) {
+        if (segment.replace(key, hash, discriminator, value)) {
+          // same request stored again, it keeps its place
+          size.decrementAndGet();
+          return;
+        }
+        if (bucket.acquire()) {
+          segment.insert(key, hash, discriminator, value);
+          return;
+        }
+      }
+      // the bucket was dropped from the ring meanwhile, try the new newest one
+    }
+  }
+
+  /**
+   * @return route information stored for the identifiers and discriminator or null if there is none
+   */
+  @SuppressWarnings("unchecked")
+  public V get(long key, Object discriminator) {
+    int hash = hash(key);
+    Bucket[] buckets = ring;
+    for (Bucket bucket : buckets) {
+      Segment segment = bucket.segmentFor(hash);
+      synchronized (segment) {
+        int index = segment.indexOf(key, hash, discriminator);
+        if (index >= 0) {
+          return (V) segment.values[index];
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return route information removed for the identifiers and discriminator or null if there was none
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(long key, Object discriminator) {
+    int hash = hash(key);
+    Bucket[] buckets = ring;
+    for (Bucket bucket : buckets) {
+      Segment segment = bucket.segmentFor(hash);
+      Object value;
+      synchronized (segment) {
+        int index = segment.indexOf(key, hash, discriminator);
+        if (index < 0) {
+          continue;
+        }
+        value = segment.values[index];
+        segment.delete(index);
+      }
+      // counted per bucket, so removal from a bucket rotated out meanwhile does not skew the size
+      if (bucket.release()) {
+        size.decrementAndGet();
+      }
+      return (V) value;
+    }
+    return null;
+  }
+
+  public void clear() {
+    rotationLock.lock();
+    try {
+      long now = System.nanoTime();
+      for (int i = 0; i < BUCKETS; i++) {
+        rotate(now);
+      }
+    }
+    finally {
+      rotationLock.unlock();
+    }
+  }
+
+  public int size() {
+    return size.get();
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @return number of entries dropped because they were not removed within the expiry time
+   */
+  public long getExpiredCount() {
+    return expiredCount.get();
+  }
+
+  /**
+   * @return number of entries dropped before expiry because the table was full
+   */
+  public long getEvictedCount() {
+    return evictedCount.get();
+  }
+
+  /**
+   * Reserve the place of a new entry, evicting the oldest entries if the table is full.
+   */
+  private void reserve() {
+    while (true) {
+      int current = size.get();
+      if (current < capacity) {
+        if (size.compareAndSet(current, current + 1)) {
+          return;
+        }
+        continue;
+      }
+      int evicted = 0;
+      rotationLock.lock();
+      try {
+        // another thread may have made room while we waited for the lock
+        if (size.get() >= capacity) {
+          long now = System.nanoTime();
+          evicted = evictOldest();
+          if (evicted == 0 && ring[0].count.get() > 0) {
+            // the newest bucket alone holds the capacity, start a new one so it becomes evictable
+            evicted = drop(rotate(now), now) + evictOldest();
+          }
+          evicted(evicted, now);
+        }
+      }
+      finally {
+        rotationLock.unlock();
+      }
+      if (evicted == 0) {
+        // the table is full of places reserved by insertions still in progress
+        Thread.yield();
+      }
+    }
+  }
+
+  private void rotate(boolean overflow) {
+    if (!rotationLock.tryLock()) {
+      // someone else is rotating, no need to stall traffic for it
+      return;
+    }
+    try {
+      long now = System.nanoTime();
+      int evicted = 0;
+      if (overflow) {
+        if (ring[0].count.get() >= bucketCapacity) {
+          // bursts fill buckets faster than time passes, start a new one so eviction stays a fraction of the table
+          evicted += drop(rotate(now), now);
+        }
+      }
+      else {
+        long expired = 0;
+        long elapsed = now - ring[0].startTime;
+        for (int i = 0; i < BUCKETS && elapsed >= bucketTime; i++) {
+          Bucket dropped = rotate(now);
+          expired += dropped.dropped;
+          evicted += drop(dropped, now);
+          elapsed -= bucketTime;
+        }
+        expired -= evicted;
+        if (expired > 0) {
+          expiredCount.addAndGet(expired);
+          logger.debug("Request table expired [{}] entries", expired);
+        }
+      }
+      evicted(evicted, now);
+    }
+    finally {
+      rotationLock.unlock();
+    }
+  }
+
+  /**
+   * Count and report entries dropped before their expiry time, must be called with the rotation lock held.
+   */
+  private void evicted(int evicted, long now) {
+    if (evicted > 0) {
+      evictedCount.addAndGet(evicted);
+      evictedSinceLog += evicted;
+      if (now - lastEvictionLog >= EVICTION_LOG_INTERVAL) {
+        logger.warn("Request table is full [{}], evicted [{}] oldest entries since last report. Total evicted so far is [{}]",
+            new Object[] {capacity, evictedSinceLog, evictedCount.get()});
+        lastEvictionLog = now;
+        evictedSinceLog = 0;
+      }
+    }
+  }
+
+  /**
+   * @return number of entries of a bucket rotated out that were dropped before their expiry time
+   */
+  private int drop(Bucket bucket, long now) {
+    return now - bucket.startTime < bucketTime * (BUCKETS - 1) ? bucket.dropped : 0;
+  }
+
+  /**
+   * Drop the oldest bucket and add a new empty one, must be called with the rotation lock held.
+   *
+   * @return the bucket dropped
+   */
+  private Bucket rotate(long now) {
+    Bucket[] current = ring;
+    Bucket[] next = new Bucket[BUCKETS];
+    next[0] = new Bucket(now);
+    System.arraycopy(current, 0, next, 1, BUCKETS - 1);
+    ring = next;
+    close(current[BUCKETS - 1]);
+    return current[BUCKETS - 1];
+  }
+
+  /**
+   * Empty the oldest non empty bucket except the newest one, must be called with the rotation lock held.
+   *
+   * @return number of entries dropped
+   */
+  private int evictOldest() {
+    Bucket[] current = ring;
+    for (int i = BUCKETS - 1; i > 0; i--) {
+      if (current[i].count.get() > 0) {
+        Bucket[] next = current.clone();
+        next[i] = new Bucket(current[i].startTime);
+        ring = next;
+        close(current[i]);
+        return current[i].dropped;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Take a bucket dropped from the ring out of the table size, must be called with the rotation lock held.
+   */
+  private void close(Bucket bucket) {
+    int count = bucket.count.getAndSet(CLOSED);
+    bucket.dropped = count;
+    size.addAndGet(-count);
+  }
+
+  private static int hash(long key) {
+    // MurmurHash3 finalizer, identifiers of one peer only differ in their low bits
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+
+  private static final class Bucket {
+
+    final long startTime;
+    final Segment[] segments = new Segment[SEGMENTS];
+    // entries of the bucket, CLOSED once it is dropped from the ring
+    final AtomicInteger count = new AtomicInteger();
+    // entries the bucket held when it was dropped, guarded by rotationLock
+    int dropped;
+
+    Bucket(long startTime) {
+      this.startTime = startTime;
+      for (int i = 0; i < SEGMENTS; i++) {
+        segments[i] = new Segment();
+      }
+    }
+
+    Segment segmentFor(int hash) {
+      // segments are selected by the high bits, slots by the low bits of the hash
+      return segments[hash >>> SEGMENT_SHIFT];
+    }
+
+    /**
+     * @return false if the bucket is already dropped from the ring
+     */
+    boolean acquire() {
+      while (true) {
+        int current = count.get();
+        if (current < 0) {
+          return false;
+        }
+        if (count.compareAndSet(current, current + 1)) {
+          return true;
+        }
+      }
+    }
+
+    /**
+     * @return false if the bucket is already dropped from the ring and the entry is no longer counted
+     */
+    boolean release() {
+      while (true) {
+        int current = count.get();
+        if (current < 0) {
+          return false;
+        }
+        if (count.compareAndSet(current, current - 1)) {
+          return true;
+        }
+      }
+    }
+  }
+
+  /**
+   * Open addressing table with linear probing, guarded by its own monitor. Entries sharing the identifiers
+   * take a slot each and are told apart by their discriminator.
+   */
+  private static final class Segment {
+
+    long[] keys = new long[MIN_SEGMENT_SIZE];
+    Object[] discriminators = new Object[MIN_SEGMENT_SIZE];
+    // null for a free slot, REMOVED for a removed one
+    Object[] values = new Object[MIN_SEGMENT_SIZE];
+    // live entries, and live plus removed slots
+    int count;
+    int used;
+
+    int indexOf(long key, int hash, Object discriminator) {
+      int mask = values.length - 1;
+      for (int i = hash & mask; ; i = (i + 1) & mask) {
+        Object value = values[i];
+        if (value == null) {
+          return -1;
+        }
+        if (value != REMOVED && keys[i] == key && matches(discriminators[i], discriminator)) {
+          return i;
+        }
+      }
+    }
+
+    boolean replace(long key, int hash, Object discriminator, Object value) {
+      int index = indexOf(key, hash, discriminator);
+      if (index < 0) {
+        return false;
+      }
+      values[index] = value;
+      return true;
+    }
+
+    void insert(long key, int hash, Object discriminator, Object value) {
+      if ((used + 1) * 4 > values.length * 3) {
+        // rehash, growing only if removed slots are not enough to make room
+        resize(count * 4 >= values.length ? values.length * 2 : values.length);
+      }
+      int i = freeSlot(hash);
+      if (values[i] == null) {
+        used++;
+      }
+      keys[i] = key;
+      discriminators[i] = discriminator;
+      values[i] = value;
+      count++;
+    }
+
+    void delete(int index) {
+      discriminators[index] = null;
+      values[index] = REMOVED;
+      count--;
+      if (values.length > MIN_SEGMENT_SIZE && count * 8 < values.length) {
+        resize(values.length / 2);
+      }
+    }
+
+    private int freeSlot(int hash) {
+      int mask = values.length - 1;
+      int i = hash & mask;
+      Object value;
+      while ((value = values[i]) != null && value != REMOVED) {
+        i = (i + 1) & mask;
+      }
+      return i;
+    }
+
+    private void resize(int length) {
+      long[] oldKeys = keys;
+      Object[] oldDiscriminators = discriminators;
+      Object[] oldValues = values;
+      keys = new long[length];
+      discriminators = new Object[length];
+      values = new Object[length];
+      for (int j = 0; j < oldValues.length; j++) {
+        Object value = oldValues[j];
+        if (value != null && value != REMOVED) {
+          int i = freeSlot(hash(oldKeys[j]));
+          keys[i] = oldKeys[j];
+          discriminators[i] = oldDiscriminators[j];
+          values[i] = value;
+        }
+      }
+      used = count;
+    }
+
+    private static boolean matches(Object discriminator, Object other) {
+      return discriminator == null ? other == null : discriminator.equals(other);
+    }
+  }
+}
@@ -50,6 +50,7 @@ import static org.jdiameter.client.impl.helpers.Parameters.OwnRealm;
 import static org.jdiameter.client.impl.helpers.Parameters.RealmEntry;
 import static org.jdiameter.client.impl.helpers.Parameters.RealmTable;
 import static org.jdiameter.client.impl.helpers.Parameters.VendorId;
+import static org.jdiameter.common.api.concurrent.IConcurrentFactory.ScheduledExecServices.RedirectMessageTimer;
 import static org.jdiameter.server.impl.helpers.Parameters.RealmEntryExpTime;
 import static org.jdiameter.server.impl.helpers.Parameters.RealmEntryIsDynamic;
 import static org.jdiameter.server.impl.helpers.Parameters.RealmHosts;
@@ -57,6 +58,7 @@ import static org.jdiameter.server.impl.helpers.Parameters.RealmLocalAction;
 import static org.jdiameter.server.impl.helpers.Parameters.RealmName;
 import static org.jdiameter.server.impl.helpers.Parameters.RequestTable;
 import static org.jdiameter.server.impl.helpers.Parameters.RequestTableClearSize;
+import static org.jdiameter.server.impl.helpers.Parameters.RequestTableExpiry;
 import static org.jdiameter.server.impl.helpers.Parameters.RequestTableSize;
 
 import java.io.IOException;
@@ -64,14 +66,15 @@ import java.net.URISyntaxException;
 import java.net.UnknownServiceException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 //PCB added for thread safe
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jdiameter.api.ApplicationId;
 import org.jdiameter.api.Avp;
@@ -81,9 +84,9 @@ import org.jdiameter.api.Configuration;
 import org.jdiameter.api.IllegalDiameterStateException;
 import org.jdiameter.api.InternalException;
 import org.jdiameter.api.LocalAction;
-import org.jdiameter.api.Message;
 import org.jdiameter.api.MetaData;
 import org.jdiameter.api.PeerState;
+import org.jdiameter.api.Realm;
 import org.jdiameter.api.RouteException;
 import org.jdiameter.api.URI;
 import org.jdiameter.client.api.IAnswer;
@@ -99,6 +102,7 @@ import org.jdiameter.client.impl.helpers.AppConfiguration;
 import org.jdiameter.client.impl.helpers.Parameters;
 import org.jdiameter.client.impl.parser.MessageImpl;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.impl.jfr.DiameterEvents;
 import org.jdiameter.server.api.agent.IAgentConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -126,28 +130,47 @@ public class RouterImpl implements IRouter {
   protected IRealmTable realmTable;
   // Redirection feature
   public final int REDIRECT_TABLE_SIZE = 1024;
-  //TODO: index it differently.
-  protected List<RedirectEntry> redirectTable = new ArrayList<RedirectEntry>(REDIRECT_TABLE_SIZE);
+  public static final long REDIRECT_TABLE_CLEANUP_PERIOD = 1000;
+  // cached redirects, one index per Redirect-Host-Usage value, keyed as per RedirectKey.of(..)
+  protected final RedirectTable[] redirectTables = new RedirectTable[ALL_USER + 1];
+  protected final AtomicInteger redirectCount = new AtomicInteger();
+  protected ScheduledExecutorService redirectScheduler;
+  protected ScheduledFuture<?> redirectEntryHandler;
   protected IConcurrentFactory concurrentFactory;
 
   protected IContainer container;
 
   // Answer routing feature
   public static int REQUEST_TABLE_SIZE = 10 * 1024;
+  /**
+   * @deprecated the request table no longer gets cleared, entries expire after {@link #REQUEST_TABLE_EXPIRY} instead
+   */
+  @Deprecated
   public static int REQUEST_TABLE_CLEAR_SIZE = 2 * 1024;
+  public static long REQUEST_TABLE_EXPIRY = RequestRouteTable.DEFAULT_EXPIRY;
 
-  protected Lock requestEntryTableLock = new ReentrantLock();
-  protected ReadWriteLock redirectTableLock = new ReentrantReadWriteLock();
-  //PCB added
-  protected Map<String, AnswerEntry> requestEntryMap;
+  protected RequestRouteTable<AnswerEntry> requestEntryTable;
   //protected List<Long> requestSortedEntryTable = new ArrayList<Long>();
   protected boolean isStopped = true;
 
+  // Realm routing feature: available peers per realm entry (realm name + application id), rebuilt on change only
+  protected final ConcurrentHashMap<IRealm, PeerCandidates> peerCandidates = new ConcurrentHashMap<IRealm, PeerCandidates>();
+  protected final AtomicInteger peerCandidatesGeneration = new AtomicInteger();
+  // bumped whenever the set of a single realm entry is dropped, a set built across it is not kept
+  protected final AtomicInteger peerCandidatesRemovals = new AtomicInteger();
+
+  // DOIC overload reports, by reporting host and by realm
+  protected final ConcurrentHashMap<String, OverloadReport> hostReports = new ConcurrentHashMap<String, OverloadReport>();
+  protected final ConcurrentHashMap<String, OverloadReport> realmReports = new ConcurrentHashMap<String, OverloadReport>();
+
   public RouterImpl(IContainer container, IConcurrentFactory concurrentFactory, IRealmTable realmTable, Configuration config, MetaData aMetaData) {
     this.concurrentFactory = concurrentFactory;
     this.metaData = aMetaData;
     this.realmTable = realmTable;
     this.container = container;
+    for (int usage = ALL_SESSION; usage <= ALL_USER; usage++) {
+      redirectTables[usage] = new RedirectTable();
+    }
     logger.debug("Constructor for RouterImpl: Calling loadConfiguration");
     loadConfiguration(config);
   }
@@ -170,18 +193,20 @@ public class RouterImpl implements IRouter {
       AppConfiguration requestTableConfig = (AppConfiguration) config.getChildren(org.jdiameter.server.impl.helpers.Parameters.RequestTable.ordinal())[0];
       int tSize = requestTableConfig.getIntValue(RequestTableSize.ordinal(),(Integer) RequestTableSize.defValue());
       int tClearSize = requestTableConfig.getIntValue(RequestTableClearSize.ordinal(),(Integer) RequestTableClearSize.defValue());
-      if (tSize > 0 && tClearSize >= tSize) {
-        logger.warn("Configuration entry RequestTable, attribute 'clear_size' [{}] should not be greater than 'size' [{}]. Adjusting.", tSize, tClearSize);
-        while (tClearSize >= tSize) {
-          tSize *= 10;
-        }
+      long tExpiry = requestTableConfig.getLongValue(RequestTableExpiry.ordinal(),(Long) RequestTableExpiry.defValue());
+      if (tExpiry <= 0) {
+        logger.warn("Configuration entry RequestTable, attribute 'expiry' [{}] should be positive. Using default [{}].", tExpiry,
+            RequestTableExpiry.defValue());
+        tExpiry = (Long) RequestTableExpiry.defValue();
       }
       REQUEST_TABLE_SIZE = tSize;
       REQUEST_TABLE_CLEAR_SIZE = tClearSize;
+      REQUEST_TABLE_EXPIRY = tExpiry;
     }
-    //PCB added thread safety
-    this.requestEntryMap = new ConcurrentHashMap<String, AnswerEntry>(REQUEST_TABLE_SIZE);
-    logger.debug("Configured Request Table with size[{}] and clear size[{}].", REQUEST_TABLE_SIZE, REQUEST_TABLE_CLEAR_SIZE);
+    if (REQUEST_TABLE_SIZE > 0) {
+      this.requestEntryTable = new RequestRouteTable<AnswerEntry>(REQUEST_TABLE_SIZE, REQUEST_TABLE_EXPIRY);
+    }
+    logger.debug("Configured Request Table with size[{}] and expiry[{}].", REQUEST_TABLE_SIZE, REQUEST_TABLE_EXPIRY);
 
     //add realms based on realm table.
     if (config.getChildren(RealmTable.ordinal()) != null) {
@@ -252,8 +277,6 @@ public class RouterImpl implements IRouter {
     }
 
     try {
-      // PCB removed lock
-      // requestEntryTableLock.writeLock().lock();
       long hopByHopId = request.getHopByHopIdentifier();
       Avp hostAvp = request.getAvps().getAvp(Avp.ORIGIN_HOST);
       // we store the peer FQDN instead of Origin-Host as we want to route back to it, in case of proxied requests this
@@ -278,56 +301,17 @@ public class RouterImpl implements IRouter {
         entry = new AnswerEntry(hopByHopId, host, realmAvp != null ? realmAvp.getDiameterIdentity() : null);
       }
 
-      int s = requestEntryMap.size();
-      // PCB added logging
-      logger.debug("RequestRoute map size is [{}]", s);
-
-      //PCB added
-      if (s > REQUEST_TABLE_CLEAR_SIZE) {
-        try {
-          requestEntryTableLock.lock();
-          s = requestEntryMap.size();
-          logger.debug("After 'lock', RequestRoute map size is [{}]", s);
-          // The double-check with a gap is in case while about to clear the map, it drops below REQUEST_TABLE_SIZE due to a
-          // response being sent, and then the lock might not be in effect for another thread
-          // Hence lock at REQUEST_TABLE_CLEAR_SIZE and clear at REQUEST_TABLE_SIZE so that all threads would be locked not
-          // just the first to reach REQUEST_TABLE_SIZE
-          if (s > REQUEST_TABLE_SIZE) {
-            // Going to clear it out and suffer the consequences of some messages possibly not being routed back the clients..
-            logger.warn("RequestRoute map size is [{}]. There's probably a leak. Cleaning up after a short wait...", s);
-            // Lets do our best to avoid lost messages by locking table from writes (as this is the only code writing to it),
-            // sleeping for a while for responses to be sent and then clearing it
-            Thread.sleep(5000);
-            logger.warn("RequestRoute map size is now [{}] after sleeping. Clearing it!", requestEntryMap.size());
-            requestEntryMap.clear();
-          }
-        }
-        catch (Exception e) {
-          logger.warn("Failure trying to clear RequestRoute map", e);
-        }
-        finally {
-          requestEntryTableLock.unlock();
-        }
+      // a full table evicts its oldest entries and expired ones are dropped as time passes, see RequestRouteTable
+      long messageKey = RequestRouteTable.key(request);
+      if (logger.isDebugEnabled()) {
+        logger.debug("Adding request key [{}] to RequestRoute table with entry [{}] for routing answers back to the requesting peer. Table size is [{}]",
+            new Object[] {Long.toHexString(messageKey), entry, requestEntryTable.size()});
       }
-
-      String messageKey = makeRoutingKey(request);
-      logger.debug("Adding request key [{}] to RequestRoute map with entry [{}] for routing answers back to the requesting peer", messageKey, entry);
-      requestEntryMap.put(messageKey, entry);
-      // requestSortedEntryTable.add(hopByHopId);
+      requestEntryTable.put(messageKey, request.getSessionId(), entry);
     }
     catch (Exception e) {
       logger.warn("Unable to store route info", e);
     }
-    finally {
-      // requestEntryTableLock.writeLock().unlock();
-    }
-  }
-
-  // PCB - Made better routing algorithm that should not grow all the time
-  private String makeRoutingKey(Message message) {
-    String sessionId = message.getSessionId();
-    return new StringBuilder(sessionId != null ? sessionId : "null").append(message.getEndToEndIdentifier())
-        .append(message.getHopByHopIdentifier()).toString();
   }
 
   private String[] getRequestRouteInfoAndCopyProxyAvps(IMessage message, boolean copy) {
@@ -337,11 +321,12 @@ public class RouterImpl implements IRouter {
     }
 
     // using request table
-    String messageKey = makeRoutingKey(message);
-    AnswerEntry ans = requestEntryMap.get(messageKey);
+    long messageKey = RequestRouteTable.key(message);
+    AnswerEntry ans = requestEntryTable.get(messageKey, message.getSessionId());
     if (ans != null) {
       if (logger.isDebugEnabled()) {
-        logger.debug("getRequestRouteInfo found host [{}] and realm [{}] for Message key Id [{}]", new Object[]{ans.getHost(), ans.getRealm(), messageKey});
+        logger.debug("getRequestRouteInfo found host [{}] and realm [{}] for Message key Id [{}]",
+            new Object[]{ans.getHost(), ans.getRealm(), Long.toHexString(messageKey)});
       }
       if (ans.getRouteRecords() != null && ans.getRouteRecords().size() > 0) {
         AvpSet msgRouteRecords = message.getAvps().getAvps(Avp.ROUTE_RECORD);
@@ -358,7 +343,7 @@ public class RouterImpl implements IRouter {
     }
     else {
       if (logger.isWarnEnabled()) {
-        logger.warn("Could not find route info for message key [{}]. Table size is [{}]", messageKey, requestEntryMap.size());
+        logger.warn("Could not find route info for message key [{}]. Table size is [{}]", Long.toHexString(messageKey), requestEntryTable.size());
       }
       return null;
     }
@@ -376,8 +361,7 @@ public class RouterImpl implements IRouter {
       return; // we don't have anything to do as we are storing routing info at answer message
     }
 
-    String messageKey = makeRoutingKey(message);
-    requestEntryMap.remove(messageKey);
+    requestEntryTable.remove(RequestRouteTable.key(message), message.getSessionId());
   }
 
   @Override
@@ -389,6 +373,8 @@ public class RouterImpl implements IRouter {
     String destHost = null;
     IRealm matchedRealm = null;
     String[] info = null;
+    // read before the realm is matched, so a realm entry removed meanwhile does not get its peers cached again
+    int removals = peerCandidatesRemovals.get();
     // Get destination information
     if (message.isRequest()) {
       Avp avpRealm = message.getAvps().getAvp(Avp.DESTINATION_REALM);
@@ -405,7 +391,7 @@ public class RouterImpl implements IRouter {
         logger.debug("Looking up peer for request: [{}], DestHost=[{}], DestRealm=[{}]", new Object[] {message, destHost, destRealm});
       }
 
-      matchedRealm = (IRealm) this.realmTable.matchRealm(message);
+      matchedRealm = (IRealm) this.realmTable.matchRealm((IRequest) message, destRealm);
     }
     else {
       //answer, search
@@ -466,48 +452,28 @@ public class RouterImpl implements IRouter {
     if (c != null && c.hasValidConnection()) {
       logger.debug("Found a peer using destination host avp [{}] peer is [{}] with a valid connection.", destHost, c);
       //here matchedRealm MAY
+      if (message.isRequest()) {
+        abateOverload(message, destHost, destRealm);
+      }
       return c;
     }
     else {
       logger.debug("Finding peer by destination host avp [host={}] did not find anything. Now going to try finding one by destination realm [{}]",
           destHost, destRealm);
-      String[] peers = matchedRealm.getPeerNames();
-      if (peers == null || peers.length == 0) {
+      PeerCandidates candidates = matchedRealm != null ? getPeerCandidates(matchedRealm, manager, removals) : null;
+      if (candidates == null || candidates.peerNamesCount == 0) {
         throw new RouteException("Unable to find context by route information [" + destRealm + " ," + destHost + "]");
       }
 
-      // Collect peers
-      ArrayList<IPeer> availablePeers = new ArrayList<IPeer>(5);
-      logger.debug("Looping through peers in realm [{}]", destRealm);
-      for (String peerName : peers) {
-        IPeer localPeer = manager.getPeer(peerName);
-        if (logger.isDebugEnabled()) {
-          logger.debug("Checking peer [{}] for name [{}]", new Object[]{localPeer, peerName});
-        }
-        // ammendonca: added peer state check.. should not be needed but
-        // hasValidConnection is returning true for disconnected peers in *FTFlowTests
-        if (localPeer != null && localPeer.getState(PeerState.class) == PeerState.OKAY) {
-          if (localPeer.hasValidConnection()) {
-            if (logger.isDebugEnabled()) {
-              logger.debug("Found available peer to add to available peer list with uri [{}] with a valid connection", localPeer.getUri().toString());
-            }
-            availablePeers.add(localPeer);
-          }
-          else {
-            if (logger.isDebugEnabled()) {
-              logger.debug("Found a peer with uri [{}] with no valid connection", localPeer.getUri());
-            }
-          }
-        }
-      }
-
-      if (logger.isDebugEnabled()) {
-        logger.debug("Performing Realm routing. Realm [{}] has the following peers available [{}] from list [{}]",
-            new Object[] {destRealm, availablePeers, Arrays.asList(peers)});
-      }
-
       // Balancing
-      IPeer peer = selectPeer(availablePeers);
+      IPeer peer = selectPeer(message, candidates);
+      if (peer != null && !isAvailable(peer)) {
+        // the peer went away since the candidate set was built and we were not (yet) notified, rebuild and retry once
+        logger.debug("Selected peer [{}] is no longer available. Rebuilding available peers for realm [{}]", peer, destRealm);
+        invalidatePeerCandidates(matchedRealm);
+        candidates = getPeerCandidates(matchedRealm, manager, removals);
+        peer = selectPeer(message, candidates);
+      }
       if (peer == null) {
         throw new RouteException("Unable to find valid connection to peer[" + destHost + "] in realm[" + destRealm + "]");
       }
@@ -516,11 +482,137 @@ public class RouterImpl implements IRouter {
           logger.debug("Load balancing selected peer with uri [{}]", peer.getUri());
         }
       }
+      if (message.isRequest()) {
+        if (destHost != null) {
+          abateOverload(message, destHost, destRealm);
+        }
+        else {
+          peer = abateOverload(message, candidates, peer, destRealm);
+        }
+      }
 
       return peer;
     }
   }
 
+  /**
+   * Returns the available peers for the given realm entry, building and caching them when the cached set is
+   * missing or stale. A cached set becomes stale when {@link #invalidatePeerCandidates()} is called or when the
+   * realm peer names change, {@link #invalidatePeerCandidates(IRealm)} drops it for a single realm entry.
+   *
+   * @param realm the matched realm entry
+   * @param manager the peer table to look up peers in
+   * @return the available peers for the realm entry
+   */
+  protected PeerCandidates getPeerCandidates(IRealm realm, IPeerTable manager) {
+    return getPeerCandidates(realm, manager, peerCandidatesRemovals.get());
+  }
+
+  /**
+   * Returns the available peers for the given realm entry, see {@link #getPeerCandidates(IRealm, IPeerTable)}. A set
+   * built while a realm entry set was dropped, which may have been this one, is returned but not cached.
+   *
+   * @param realm the matched realm entry
+   * @param manager the peer table to look up peers in
+   * @param removals value of {@link #peerCandidatesRemovals} read before the realm entry was matched
+   * @return the available peers for the realm entry
+   */
+  protected PeerCandidates getPeerCandidates(IRealm realm, IPeerTable manager, int removals) {
+    int generation = peerCandidatesGeneration.get();
+    PeerCandidates candidates = peerCandidates.get(realm);
+    if (candidates != null && candidates.generation == generation && candidates.peerNamesVersion == realm.getPeerNamesVersion()) {
+      return candidates;
+    }
+
+    int peerNamesVersion = realm.getPeerNamesVersion();
+    String[] peers = realm.getPeerNames();
+    List<IPeer> realmPeers = new ArrayList<IPeer>(peers.length);
+    List<IPeer> availablePeers = new ArrayList<IPeer>(peers.length);
+    logger.debug("Looping through peers in realm [{}]", realm.getName());
+    for (String peerName : peers) {
+      IPeer localPeer = manager.getPeer(peerName);
+      if (logger.isDebugEnabled()) {
+        logger.debug("Checking peer [{}] for name [{}]", new Object[]{localPeer, peerName});
+      }
+      if (localPeer != null) {
+        realmPeers.add(localPeer);
+      }
+      // ammendonca: added peer state check.. should not be needed but
+      // hasValidConnection is returning true for disconnected peers in *FTFlowTests
+      if (localPeer != null && localPeer.getState(PeerState.class) == PeerState.OKAY) {
+        if (localPeer.hasValidConnection()) {
+          if (logger.isDebugEnabled()) {
+            logger.debug("Found available peer to add to available peer list with uri [{}] with a valid connection", localPeer.getUri().toString());
+          }
+          availablePeers.add(localPeer);
+        }
+        else {
+          if (logger.isDebugEnabled()) {
+            logger.debug("Found a peer with uri [{}] with no valid connection", localPeer.getUri());
+          }
+        }
+      }
+    }
+
+    if (logger.isDebugEnabled()) {
+      logger.debug("Performing Realm routing. Realm [{}] has the following peers available [{}] from list [{}]",
+          new Object[] {realm.getName(), availablePeers, Arrays.asList(peers)});
+    }
+
+    candidates = newPeerCandidates(realm, candidates, realmPeers.toArray(new IPeer[realmPeers.size()]),
+        availablePeers.toArray(new IPeer[availablePeers.size()]), peers.length, generation, peerNamesVersion);
+    peerCandidates.put(realm, candidates);
+    // checked after the put: a drop either sees the new set or happened before this check
+    if (peerCandidatesRemovals.get() != removals) {
+      peerCandidates.remove(realm, candidates);
+    }
+    return candidates;
+  }
+
+  /**
+   * Creates the cached peer set of a realm entry. Routers that need extra per realm data (e.g. a hash ring) can
+   * override this and return a subclass, carrying over what is still valid from the previous set.
+   *
+   * @param realm the realm entry the set is built for
+   * @param previous the outdated set cached for the realm entry, or null
+   * @param realmPeers all peers of the realm entry present in the peer table, regardless of their state
+   * @param availablePeers peers of the realm entry that can be used for routing
+   * @param peerNamesCount number of peer names configured for the realm entry
+   * @param generation router generation the set was built for
+   * @param peerNamesVersion realm peer names version the set was built for
+   * @return new peer set
+   */
+  protected PeerCandidates newPeerCandidates(IRealm realm, PeerCandidates previous, IPeer[] realmPeers, IPeer[] availablePeers,
+      int peerNamesCount, int generation, int peerNamesVersion) {
+    return new PeerCandidates(realmPeers, availablePeers, peerNamesCount, generation, peerNamesVersion);
+  }
+
+  protected boolean isAvailable(IPeer peer) {
+    return peer.getState(PeerState.class) == PeerState.OKAY && peer.hasValidConnection();
+  }
+
+  @Override
+  public void invalidatePeerCandidates() {
+    // outdated sets are kept until rebuilt, so that they can hand their data over to the new ones
+    peerCandidatesGeneration.incrementAndGet();
+  }
+
+  /**
+   * Drops the cached peer set of a single realm entry, other realm entries keep theirs.
+   *
+   * @param realm the realm entry
+   */
+  protected void invalidatePeerCandidates(IRealm realm) {
+    peerCandidatesRemovals.incrementAndGet();
+    peerCandidates.remove(realm);
+  }
+
+  @Override
+  public void realmRemoved(Realm realm) {
+    peerCandidatesRemovals.incrementAndGet();
+    peerCandidates.remove(realm);
+  }
+
   @Override
   public IRealmTable getRealmTable() {
     return this.realmTable;
@@ -555,7 +647,7 @@ public class RouterImpl implements IRouter {
         redirectUsage = redirectHostUsageAvp.getInteger32();
       }
 
-      if (redirectUsage != DONT_CACHE) {
+      if (redirectUsage > DONT_CACHE && redirectUsage <= ALL_USER) {
         long redirectCacheTime = 0;
         Avp redirectCacheMaxTimeAvp = answer.getAvps().getAvp(Avp.REDIRECT_MAX_CACHE_TIME);
         if (redirectCacheMaxTimeAvp != null) {
@@ -593,19 +685,16 @@ public class RouterImpl implements IRouter {
             break;
         }
         //
-        if (redirectTable.size() > REDIRECT_TABLE_SIZE) {
-          try {
-            //yes, possible that this will trigger this procedure twice, but thats worst than locking always.
-            redirectTableLock.writeLock().lock();
-            trimRedirectTable();
-          }
-          finally {
-            redirectTableLock.writeLock().unlock();
-          }
+        Object key = RedirectKey.of(redirectUsage, primaryKey, secondaryKey);
+        if (redirectCount.get() >= REDIRECT_TABLE_SIZE) {
+          //yes, possible that this will trigger this procedure twice, but it's cheaper than locking always.
+          trimRedirectTable();
         }
-        if (REDIRECT_TABLE_SIZE > redirectTable.size()) {
+        if (key != null && redirectHosts != null && redirectHosts.length > 0 && REDIRECT_TABLE_SIZE > redirectCount.get()) {
           RedirectEntry e = new RedirectEntry(primaryKey, secondaryKey, redirectCacheTime, redirectUsage, redirectHosts, destinationRealm);
-          redirectTable.add(e);
+          if (redirectTables[redirectUsage].put(key, e) == null) {
+            redirectCount.incrementAndGet();
+          }
           //redirectProcessing(answer, destRealm.getOctetString(), destHost !=null ? destHost.getOctetString():null);
           //we dont have to elect?
           updateRoute(request, e.getRedirectHost());
@@ -639,22 +728,181 @@ public class RouterImpl implements IRouter {
     }
   }
 
+  @Override
+  public void processOverloadReport(IRequest request, IAnswer answer) {
+    OverloadReport report = OverloadReport.getReport(answer);
+    if (report == null) {
+      return;
+    }
+    String key;
+    ConcurrentHashMap<String, OverloadReport> reports;
+    try {
+      if (report.getType() == OverloadReport.REALM_REPORT) {
+        Avp destRealm = request.getAvps().getAvp(Avp.DESTINATION_REALM);
+        key = destRealm != null ? destRealm.getDiameterIdentity() : null;
+        reports = realmReports;
+      }
+      else if (report.getType() == OverloadReport.HOST_REPORT) {
+        Avp originHost = answer.getAvps().getAvp(Avp.ORIGIN_HOST);
+        key = originHost != null ? originHost.getDiameterIdentity() : null;
+        reports = hostReports;
+      }
+      else {
+        return;
+      }
+    }
+    catch (AvpDataException e) {
+      logger.debug("Unable to read overload report key", e);
+      return;
+    }
+    if (key == null) {
+      return;
+    }
+    // a report only replaces one with a lower sequence number, reduction 0 or zero validity ends the overload
+    boolean ended = report.getReduction() == 0 || report.isExpired(System.nanoTime());
+    while (true) {
+      OverloadReport current = reports.get(key);
+      if (current == null) {
+        if (ended || reports.putIfAbsent(key, report) == null) {
+          break;
+        }
+      }
+      else if (report.getSequenceNumber() <= current.getSequenceNumber() && !current.isExpired(System.nanoTime())) {
+        return;
+      }
+      else if (ended ? reports.remove(key, current) : reports.replace(key, current, report)) {
+        break;
+      }
+    }
+    logger.debug("Overload report for [{}] updated to [{}]", key, report);
+  }
+
   /**
+   * Applies the loss algorithm of a DOIC host report for the destination host, or of a realm report
+   * for the destination realm, failing the request locally if it has to be throttled.
+   */
+  protected void abateOverload(IMessage request, String host, String realm) throws RouteException {
+    if (hostReports.isEmpty() && realmReports.isEmpty()) {
+      return;
+    }
+    long now = System.nanoTime();
+    OverloadReport report = getOverloadReport(hostReports, host, now);
+    if (report == null && request.getAvps().getAvp(Avp.DESTINATION_HOST) == null) {
+      report = getOverloadReport(realmReports, realm, now);
+    }
+    if (report != null && report.abate()) {
+      throw throttled(request, report, report.getType() == OverloadReport.REALM_REPORT ? realm : host);
+    }
+  }
+
+  /**
+   * Applies DOIC overload reports to a request routed by realm. A request the host report of the selected peer asks
+   * to abate is diverted to a candidate without a host report, it is only throttled when there is none. The realm
+   * report applies to the request wherever it goes.
    *
+   * @param request the request being routed
+   * @param candidates the peers of the matched realm entry
+   * @param peer the selected peer
+   * @param realm the destination realm
+   * @return the peer to send the request to
+   */
+  protected IPeer abateOverload(IMessage request, PeerCandidates candidates, IPeer peer, String realm) throws RouteException {
+    if (hostReports.isEmpty() && realmReports.isEmpty()) {
+      return peer;
+    }
+    long now = System.nanoTime();
+    String host = peer.getUri().getFQDN();
+    OverloadReport report = getOverloadReport(hostReports, host, now);
+    if (report != null && report.abate()) {
+      List<IPeer> others = new ArrayList<IPeer>(candidates.peers.size());
+      for (IPeer candidate : candidates.peers) {
+        if (getOverloadReport(hostReports, candidate.getUri().getFQDN(), now) == null) {
+          others.add(candidate);
+        }
+      }
+      IPeer other = others.isEmpty() ? null : selectPeer(others);
+      if (other == null) {
+        throw throttled(request, report, host);
+      }
+      logger.debug("Diverting request from overloaded peer [{}] to [{}]", host, other.getUri());
+      peer = other;
+    }
+    report = getOverloadReport(realmReports, realm, now);
+    if (report != null && report.abate()) {
+      throw throttled(request, report, realm);
+    }
+    return peer;
+  }
+
+  private RouteException throttled(IMessage request, OverloadReport report, String key) {
+    DiameterEvents.overloadRejected(request, 0, "DOIC overload report");
+    return new RouteException("Request throttled, [" + key + "] reported " + report.getReduction() + "% overload reduction");
+  }
+
+  /**
+   * Returns the unexpired overload report for the key, removing it if expired.
+   */
+  private OverloadReport getOverloadReport(ConcurrentHashMap<String, OverloadReport> reports, String key, long now) {
+    if (key == null) {
+      return null;
+    }
+    OverloadReport report = reports.get(key);
+    if (report != null && report.isExpired(now)) {
+      reports.remove(key, report);
+      return null;
+    }
+    return report;
+  }
+
+  /**
+   * Removes expired overload reports.
+   */
+  protected void trimOverloadReports() {
+    long now = System.nanoTime();
+    for (Map.Entry<String, OverloadReport> entry : hostReports.entrySet()) {
+      if (entry.getValue().isExpired(now)) {
+        hostReports.remove(entry.getKey(), entry.getValue());
+      }
+    }
+    for (Map.Entry<String, OverloadReport> entry : realmReports.entrySet()) {
+      if (entry.getValue().isExpired(now)) {
+        realmReports.remove(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Removes expired entries from the redirect tables.
    */
-  private void trimRedirectTable() {
-    for (int index = 0; index < redirectTable.size(); index++) {
-      try {
-        if (redirectTable.get(index).getExpiredTime() <= System.currentTimeMillis()) {
-          redirectTable.remove(index);
-          index--; //a trick :)
+  protected void trimRedirectTable() {
+    if (redirectCount.get() == 0) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    for (int usage = ALL_SESSION; usage <= ALL_USER; usage++) {
+      for (Map.Entry<Object, RedirectEntry> entry : redirectTables[usage].entrySet()) {
+        if (entry.getValue().getExpiredTime() <= now && redirectTables[usage].remove(entry.getKey(), entry.getValue())) {
+          redirectCount.decrementAndGet();
         }
       }
-      catch (Exception e) {
-        logger.debug("Error in redirect task cleanup.", e);
-        break;
+    }
+  }
+
+  /**
+   * Returns the unexpired redirect entry for the key, removing it if expired.
+   */
+  private RedirectEntry getRedirectEntry(int usage, Object key, long now) {
+    if (key == null) {
+      return null;
+    }
+    RedirectEntry e = redirectTables[usage].get(key);
+    if (e != null && e.getExpiredTime() <= now) {
+      if (redirectTables[usage].remove(key, e)) {
+        redirectCount.decrementAndGet();
       }
+      return null;
     }
+    return e;
   }
 
   /**
@@ -669,69 +917,56 @@ public class RouterImpl implements IRouter {
 
   @Override
   public boolean updateRoute(IRequest message) throws RouteException, AvpDataException {
+    if (redirectCount.get() == 0) {
+      // nothing cached, don't even look at the message
+      return false;
+    }
     AvpSet set = message.getAvps();
     Avp destRealmAvp = set.getAvp(Avp.DESTINATION_REALM);
-    Avp destHostAvp = set.getAvp(Avp.DESTINATION_HOST);
-
     if (destRealmAvp == null) {
       throw new RouteException("Request does not have Destination-Realm AVP!");
     }
 
-    String destRealm = destRealmAvp.getDiameterIdentity();
-    String destHost = destHostAvp != null ? destHostAvp.getDiameterIdentity() : null;
-
-    boolean matchedEntry = false;
-    String userName = null;
-    // get Session id
-    String sessionId = message.getSessionId();
-    //
-    Avp avpUserName = message.getAvps().getAvp(Avp.USER_NAME);
-    // Get application id
-    ApplicationId appId = ((IMessage) message).getSingleApplicationId();
-    // User name
-    if (avpUserName != null) {
-      userName = avpUserName.getUTF8String();
-    }
-    // Processing table
-    try {
-      redirectTableLock.readLock().lock();
-
-      for (int index = 0; index < redirectTable.size(); index++) {
-        RedirectEntry e = redirectTable.get(index);
-        switch (e.getUsageType()) {
-          case ALL_SESSION: // Usage type: ALL SESSION
-            matchedEntry = sessionId != null && e.primaryKey != null & sessionId.equals(e.primaryKey);
-            break;
-          case ALL_REALM: // Usage type: ALL REALM
-            matchedEntry = destRealm != null && e.primaryKey != null & destRealm.equals(e.primaryKey);
-            break;
-          case REALM_AND_APPLICATION: // Usage type: REALM AND APPLICATION
-            matchedEntry = destRealm != null & appId != null & e.primaryKey != null & e.secondaryKey != null & destRealm.equals(e.primaryKey)
-              & appId.equals(e.secondaryKey);
-            break;
-          case ALL_APPLICATION: // Usage type: ALL APPLICATION
-            matchedEntry = appId != null & e.secondaryKey != null & appId.equals(e.secondaryKey);
-            break;
-          case ALL_HOST: // Usage type: ALL HOST
-            matchedEntry = destHost != null & e.primaryKey != null & destHost.equals(e.primaryKey);
-            break;
-          case ALL_USER: // Usage type: ALL USER
-            matchedEntry = userName != null & e.primaryKey != null & userName.equals(e.primaryKey);
-            break;
-        }
-        // Update message redirect information
-        if (matchedEntry) {
-          String newDestHost = e.getRedirectHost();
-          //String newDestRealm = getRealmForPeer(destHost);
-          //setRouteInfo(message, destRealm, newDestHost);
-          updateRoute(message, newDestHost);
-          logger.debug("Redirect message from host={}; to new-host={}, realm={} ", new Object[] { destHost, newDestHost, destRealm});
-          return true;
-        }
+    // Processing tables in order of precedence (RFC 6733, 6.13), only decoding what a non empty table needs
+    long now = System.currentTimeMillis();
+    RedirectEntry e = null;
+    if (!redirectTables[ALL_SESSION].isEmpty()) {
+      e = getRedirectEntry(ALL_SESSION, message.getSessionId(), now);
+    }
+    if (e == null && !redirectTables[ALL_USER].isEmpty()) {
+      Avp avpUserName = set.getAvp(Avp.USER_NAME);
+      if (avpUserName != null) {
+        e = getRedirectEntry(ALL_USER, avpUserName.getUTF8String(), now);
+      }
+    }
+    String destRealm = null;
+    if (e == null && !(redirectTables[REALM_AND_APPLICATION].isEmpty() && redirectTables[ALL_REALM].isEmpty())) {
+      destRealm = destRealmAvp.getDiameterIdentity();
+      if (!redirectTables[REALM_AND_APPLICATION].isEmpty()) {
+        e = getRedirectEntry(REALM_AND_APPLICATION,
+            RedirectKey.of(REALM_AND_APPLICATION, destRealm, ((IMessage) message).getSingleApplicationId()), now);
+      }
+      if (e == null) {
+        e = getRedirectEntry(ALL_REALM, destRealm, now);
+      }
+    }
+    if (e == null && !redirectTables[ALL_APPLICATION].isEmpty()) {
+      e = getRedirectEntry(ALL_APPLICATION, ((IMessage) message).getSingleApplicationId(), now);
+    }
+    String destHost = null;
+    if (e == null && !redirectTables[ALL_HOST].isEmpty()) {
+      Avp destHostAvp = set.getAvp(Avp.DESTINATION_HOST);
+      if (destHostAvp != null) {
+        destHost = destHostAvp.getDiameterIdentity();
+        e = getRedirectEntry(ALL_HOST, destHost, now);
       }
     }
-    finally {
-      redirectTableLock.readLock().unlock();
+    // Update message redirect information
+    if (e != null) {
+      String newDestHost = e.getRedirectHost();
+      updateRoute(message, newDestHost);
+      logger.debug("Redirect message from host={}; to new-host={}, realm={} ", new Object[] { destHost, newDestHost, destRealm});
+      return true;
     }
     return false;
   }
@@ -743,8 +978,23 @@ public class RouterImpl implements IRouter {
   @Override
   public void start() {
     if (isStopped) {
-      //redirectScheduler = concurrentFactory.getScheduledExecutorService(RedirectMessageTimer.name());
-      //redirectEntryHandler = redirectScheduler.scheduleAtFixedRate(redirectTask, 1, 1, TimeUnit.SECONDS);
+      if (concurrentFactory != null) {
+        redirectScheduler = concurrentFactory.getScheduledExecutorService(RedirectMessageTimer.name());
+        Runnable redirectTask = new Runnable() {
+          @Override
+          public void run() {
+            try {
+              trimRedirectTable();
+              trimOverloadReports();
+            }
+            catch (Exception e) {
+              logger.debug("Error in redirect task cleanup.", e);
+            }
+          }
+        };
+        redirectEntryHandler = redirectScheduler.scheduleAtFixedRate(redirectTask, REDIRECT_TABLE_CLEANUP_PERIOD, REDIRECT_TABLE_CLEANUP_PERIOD,
+            TimeUnit.MILLISECONDS);
+      }
       isStopped = false;
     }
   }
@@ -752,22 +1002,28 @@ public class RouterImpl implements IRouter {
   @Override
   public void stop() {
     isStopped = true;
-    // if (redirectEntryHandler != null) {
-    //  redirectEntryHandler.cancel(true);
-    //}
-    if (redirectTable != null) {
-      redirectTable.clear();
+    if (redirectEntryHandler != null) {
+      redirectEntryHandler.cancel(true);
+      redirectEntryHandler = null;
     }
-    if (requestEntryMap != null) {
-      requestEntryMap.clear();
+    if (redirectScheduler != null) {
+      concurrentFactory.shutdownNow(redirectScheduler);
+      redirectScheduler = null;
     }
+    for (int usage = ALL_SESSION; usage <= ALL_USER; usage++) {
+      redirectTables[usage].clear();
+    }
+    redirectCount.set(0);
+    hostReports.clear();
+    realmReports.clear();
+    if (requestEntryTable != null) {
+      requestEntryTable.clear();
+    }
+    invalidatePeerCandidates();
     //PCB removed
     //if (requestSortedEntryTable != null) {
     //  requestSortedEntryTable.clear();
     //}
-    //if (redirectScheduler != null) {
-    //  concurrentFactory.shutdownNow(redirectScheduler);
-    //}
   }
 
   @Override
@@ -781,10 +1037,19 @@ public class RouterImpl implements IRouter {
       logger.error("Unable to stop router", exc);
     }
 
-    //redirectEntryHandler = null;
-    //redirectScheduler = null;
-    redirectTable = null;
-    requestEntryMap = null;
+    requestEntryTable = null;
+  }
+
+  /**
+   * Selects the peer for a message out of the available peers of its realm entry. By default the message
+   * content is ignored and the selection is delegated to {@link #selectPeer(List)}.
+   *
+   * @param message the message being routed
+   * @param candidates the peers of the matched realm entry
+   * @return the selected peer or null if none is available
+   */
+  protected IPeer selectPeer(IMessage message, PeerCandidates candidates) {
+    return selectPeer(candidates.peers);
   }
 
   protected IPeer selectPeer(List<IPeer> availablePeers) {
@@ -869,6 +1134,13 @@ public class RouterImpl implements IRouter {
   //        return null;
   //    }
 
+  /**
+   * Redirect cache of one Redirect-Host-Usage, a named type so the tables can be held in an array
+   */
+  @SuppressWarnings("serial")
+  protected static class RedirectTable extends ConcurrentHashMap<Object, RedirectEntry> {
+  }
+
   protected class RedirectEntry {
 
     final long createTime = System.currentTimeMillis();
@@ -941,6 +1213,71 @@ public class RouterImpl implements IRouter {
     }
   }
 
+  /**
+   * Key of the realm and application redirect table. Other tables are keyed by the String or ApplicationId directly.
+   */
+  protected static final class RedirectKey {
+
+    final String realm;
+    final ApplicationId applicationId;
+
+    RedirectKey(String realm, ApplicationId applicationId) {
+      this.realm = realm;
+      this.applicationId = applicationId;
+    }
+
+    /**
+     * Returns the redirect table key for the usage type, or null if the key values are missing.
+     */
+    static Object of(int usage, String primaryKey, ApplicationId secondaryKey) {
+      switch (usage) {
+        case REALM_AND_APPLICATION:
+          return primaryKey != null && secondaryKey != null ? new RedirectKey(primaryKey, secondaryKey) : null;
+        case ALL_APPLICATION:
+          return secondaryKey;
+        default:
+          return primaryKey;
+      }
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * realm.hashCode() + applicationId.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (other == this) {
+        return true;
+      }
+      if (other instanceof RedirectKey) {
+        RedirectKey that = (RedirectKey) other;
+        return realm.equals(that.realm) && applicationId.equals(that.applicationId);
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Immutable set of available peers for one realm entry, tagged with the versions it was built from.
+   */
+  protected static class PeerCandidates {
+
+    protected final IPeer[] realmPeers;
+    protected final List<IPeer> peers;
+    final int peerNamesCount;
+    final int generation;
+    final int peerNamesVersion;
+
+    protected PeerCandidates(IPeer[] realmPeers, IPeer[] peers, int peerNamesCount, int generation, int peerNamesVersion) {
+      this.realmPeers = realmPeers;
+      this.peers = Collections.unmodifiableList(Arrays.asList(peers));
+      this.peerNamesCount = peerNamesCount;
+      this.generation = generation;
+      this.peerNamesVersion = peerNamesVersion;
+    }
+  }
+
   protected class AnswerEntry {
 
     final long createTime = System.nanoTime();
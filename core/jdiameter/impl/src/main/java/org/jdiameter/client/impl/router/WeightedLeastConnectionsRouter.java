@@ -135,7 +135,7 @@ public class WeightedLeastConnectionsRouter extends RouterImpl implements IRoute
       return availablePeers.iterator().next();
     }
 
-    for (int m = 0; m < peerSize; peerSize++) {
+    for (int m = 0; m < peerSize; m++) {
       IPeer peerM = availablePeers.get(m);
       if (peerM.getRating() > 0) {
         for (int i = m + 1; i < peerSize; i++) {
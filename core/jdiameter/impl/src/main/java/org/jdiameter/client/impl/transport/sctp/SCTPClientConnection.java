@@ -26,6 +26,7 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.locks.Lock;
@@ -38,6 +39,7 @@ import org.jdiameter.api.OverloadException;
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.io.IConnection;
 import org.jdiameter.client.api.io.IConnectionListener;
+import org.jdiameter.client.api.io.IIngressListener;
 import org.jdiameter.client.api.io.TransportError;
 import org.jdiameter.client.api.io.TransportException;
 import org.jdiameter.client.api.parser.IMessageParser;
@@ -150,6 +152,13 @@ public class SCTPClientConnection implements IConnection {
     }
   }
 
+  @Override
+  public void sendMessages(List<IMessage> messages) throws TransportException, OverloadException {
+    for (IMessage message : messages) {
+      sendMessage(message);
+    }
+  }
+
   protected SCTPTransportClient getClient() {
     return client;
   }
@@ -280,6 +289,10 @@ public class SCTPClientConnection implements IConnection {
               listener.connectionClosed(getKey(), null);
               break;
             case MESSAGE_RECEIVED:
+              if (listener instanceof IIngressListener
+                  && ((IIngressListener) listener).rejectBeforeDecode(getKey(), event.message.array())) {
+                break;
+              }
               listener.messageReceived(getKey(), parser.createMessage(event.message));
               break;
             case DATA_EXCEPTION:
@@ -47,6 +47,7 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 // FIXME : requires JDK6 : import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -60,11 +61,13 @@ import org.jdiameter.api.OverloadException;
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.io.IConnection;
 import org.jdiameter.client.api.io.IConnectionListener;
+import org.jdiameter.client.api.io.IIngressListener;
 import org.jdiameter.client.api.io.TransportError;
 import org.jdiameter.client.api.io.TransportException;
 import org.jdiameter.client.api.parser.IMessageParser;
 import org.jdiameter.client.impl.parser.MessageParser;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.api.statistic.IMessageTracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -183,7 +186,9 @@ public class TCPClientConnection implements IConnection {
         //    logger.warn("Diameter Message processing took [{}]ms", millis);
         //  }
         //}
-        getClient().sendMessage(parser.encodeMessage(message));
+        ByteBuffer bytes = parser.encodeMessage(message);
+        message.stamp(IMessageTracer.Stage.Encoded);
+        getClient().sendMessage(bytes);
         //PCB added logging
         //if (receivedAt != null) {
         //  long millis = System.currentTimeMillis() - receivedAt;
@@ -198,6 +203,31 @@ public class TCPClientConnection implements IConnection {
     }
   }
 
+  @Override
+  public void sendMessages(List<IMessage> messages) throws TransportException, OverloadException {
+    try {
+      if (getClient() != null) {
+        // encode the whole batch into one buffer, so it goes out with a single write
+        ByteBuffer[] encoded = new ByteBuffer[messages.size()];
+        int size = 0;
+        for (int i = 0; i < encoded.length; i++) {
+          encoded[i] = parser.encodeMessage(messages.get(i));
+          messages.get(i).stamp(IMessageTracer.Stage.Encoded);
+          size += encoded[i].remaining();
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(size);
+        for (ByteBuffer b : encoded) {
+          bytes.put(b);
+        }
+        bytes.flip();
+        getClient().sendMessage(bytes);
+      }
+    }
+    catch (Exception e) {
+      throw new TransportException("Cannot send messages: ", TransportError.FailedSendMessage, e);
+    }
+  }
+
   protected TCPTransportClient getClient() {
     return client;
   }
@@ -349,8 +379,14 @@ public class TCPClientConnection implements IConnection {
               listener.connectionClosed(getKey(), null);
               break;
             case MESSAGE_RECEIVED:
+              if (listener instanceof IIngressListener
+                  && ((IIngressListener) listener).rejectBeforeDecode(getKey(), event.message.array())) {
+                break;
+              }
               //PCB added
+              long received = System.nanoTime();
               IMessage msg = parser.createMessage(event.message);
+              msg.setReceiveTime(received);
               //timerMap.put(msg.getEndToEndIdentifier() + "_"+ msg.getHopByHopIdentifier(), System.currentTimeMillis());
               listener.messageReceived(getKey(), msg);
               break;
@@ -22,6 +22,7 @@ package org.jdiameter.client.impl.transport.tcp.netty;
 import java.util.List;
 
 import org.jdiameter.api.AvpDataException;
+import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.parser.IMessageParser;
 
 import io.netty.buffer.ByteBuf;
@@ -55,11 +56,17 @@ public class DiameterMessageDecoder extends ByteToMessageDecoder {
         return;
       }
 
+      long received = System.nanoTime();
       byte[] bytes = new byte[messageLength];
       in.readBytes(bytes);
+      if (this.parentConnection.rejectBeforeDecode(bytes)) {
+        return;
+      }
 
       try {
-        out.add(this.parser.createMessage(bytes));
+        IMessage message = this.parser.createMessage(bytes);
+        message.setReceiveTime(received);
+        out.add(message);
       } catch (AvpDataException e) {
         this.parentConnection.onAvpDataException(e);
       }
@@ -21,6 +21,7 @@ package org.jdiameter.client.impl.transport.tcp.netty;
 
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.common.api.statistic.IMessageTracer;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
@@ -41,6 +42,7 @@ public class DiameterMessageEncoder extends MessageToByteEncoder<IMessage> {
   @Override
   protected void encode(ChannelHandlerContext ctx, IMessage msg, ByteBuf out) throws Exception {
     out.writeBytes(Unpooled.wrappedBuffer(parser.encodeMessage(msg)));
+    msg.stamp(IMessageTracer.Stage.Encoded);
   }
 
 }
@@ -22,6 +22,7 @@ package org.jdiameter.client.impl.transport.tcp.netty;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 // FIXME : requires JDK6 : import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -35,6 +36,7 @@ import org.jdiameter.api.OverloadException;
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.io.IConnection;
 import org.jdiameter.client.api.io.IConnectionListener;
+import org.jdiameter.client.api.io.IIngressListener;
 import org.jdiameter.client.api.io.TransportError;
 import org.jdiameter.client.api.io.TransportException;
 import org.jdiameter.client.api.parser.IMessageParser;
@@ -132,6 +134,16 @@ public class TCPClientConnection implements IConnection {
     }
   }
 
+  public void sendMessages(List<IMessage> messages) throws TransportException, OverloadException {
+    try {
+      if (this.client != null) {
+        this.client.sendMessages(messages);
+      }
+    } catch (Exception e) {
+      throw new TransportException("Cannot send messages: ", TransportError.FailedSendMessage, e);
+    }
+  }
+
   protected TCPTransportClient getClient() {
     return this.client;
   }
@@ -219,6 +231,15 @@ public class TCPClientConnection implements IConnection {
     onEvent(new Event(EventType.MESSAGE_RECEIVED, message));
   }
 
+  protected boolean rejectBeforeDecode(byte[] message) {
+    for (IConnectionListener listener : listeners) {
+      if (listener instanceof IIngressListener && ((IIngressListener) listener).rejectBeforeDecode(getKey(), message)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   protected void onAvpDataException(AvpDataException e) {
     try {
       onEvent(new Event(EventType.DATA_EXCEPTION, e));
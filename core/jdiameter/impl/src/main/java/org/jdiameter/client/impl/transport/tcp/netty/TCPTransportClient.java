@@ -21,6 +21,7 @@ package org.jdiameter.client.impl.transport.tcp.netty;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.List;
 
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.parser.IMessageParser;
@@ -189,6 +190,17 @@ public class TCPTransportClient {
     channel.writeAndFlush(message);
   }
 
+  public void sendMessages(List<IMessage> messages) {
+    if (!isConnected()) {
+      throw new IllegalStateException("TCP transport is stopped on socket " + socketDescription);
+    }
+    // single flush for the whole batch
+    for (IMessage message : messages) {
+      channel.write(message);
+    }
+    channel.flush();
+  }
+
   public String toString() {
     StringBuffer buffer = new StringBuffer();
     buffer.append("Transport to ");
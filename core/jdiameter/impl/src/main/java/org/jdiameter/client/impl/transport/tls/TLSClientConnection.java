@@ -46,6 +46,7 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.locks.Lock;
@@ -61,6 +62,7 @@ import org.jdiameter.api.OverloadException;
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.io.IConnection;
 import org.jdiameter.client.api.io.IConnectionListener;
+import org.jdiameter.client.api.io.IIngressListener;
 import org.jdiameter.client.api.io.TransportError;
 import org.jdiameter.client.api.io.TransportException;
 import org.jdiameter.client.api.parser.IMessageParser;
@@ -323,6 +325,13 @@ public class TLSClientConnection implements IConnection {
     }
   }
 
+  @Override
+  public void sendMessages(List<IMessage> messages) throws TransportException, OverloadException {
+    for (IMessage message : messages) {
+      sendMessage(message);
+    }
+  }
+
   protected void onDisconnect() throws AvpDataException {
     onEvent(new Event(EventType.DISCONNECTED));
   }
@@ -334,6 +343,15 @@ public class TLSClientConnection implements IConnection {
     onEvent(new Event(EventType.MESSAGE_RECEIVED, message));
   }
 
+  protected boolean rejectBeforeDecode(byte[] message) {
+    for (IConnectionListener listener : listeners) {
+      if (listener instanceof IIngressListener && ((IIngressListener) listener).rejectBeforeDecode(getKey(), message)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   protected void onAvpDataException(AvpDataException e) {
     try {
       onEvent(new Event(EventType.DATA_EXCEPTION, e));
@@ -383,6 +383,9 @@ public class TLSTransportClient {
       if (logger.isDebugEnabled()) {
         logger.debug("Received message of size [{}]", data.length);
       }
+      if (isExchangeAllowed() && getParent().rejectBeforeDecode(data)) {
+        return true;
+      }
 
       IMessage message = this.parser.createMessage(messageBuffer);
       // check if
@@ -65,6 +65,9 @@ public class DiameterMessageDecoder extends ByteToMessageDecoder {
 
       byte[] bytes = new byte[messageLength];
       in.readBytes(bytes);
+      if (this.parentConnection.rejectBeforeDecode(bytes)) {
+        return;
+      }
       try {
         out.add(this.parser.createMessage(bytes));
       } catch (AvpDataException e) {
@@ -22,6 +22,7 @@ package org.jdiameter.client.impl.transport.tls.netty;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.locks.Lock;
@@ -36,6 +37,7 @@ import org.jdiameter.api.OverloadException;
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.io.IConnection;
 import org.jdiameter.client.api.io.IConnectionListener;
+import org.jdiameter.client.api.io.IIngressListener;
 import org.jdiameter.client.api.io.TransportError;
 import org.jdiameter.client.api.io.TransportException;
 import org.jdiameter.client.api.parser.IMessageParser;
@@ -246,6 +248,12 @@ public class TLSClientConnection implements IConnection {
     }
   }
 
+  public void sendMessages(List<IMessage> messages) throws TransportException, OverloadException {
+    for (IMessage message : messages) {
+      sendMessage(message);
+    }
+  }
+
   protected void onDisconnect() throws AvpDataException {
     onEvent(new Event(EventType.DISCONNECTED));
   }
@@ -257,6 +265,15 @@ public class TLSClientConnection implements IConnection {
     onEvent(new Event(EventType.MESSAGE_RECEIVED, message));
   }
 
+  protected boolean rejectBeforeDecode(byte[] message) {
+    for (IConnectionListener listener : listeners) {
+      if (listener instanceof IIngressListener && ((IIngressListener) listener).rejectBeforeDecode(getKey(), message)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   protected void onAvpDataException(AvpDataException e) {
     try {
       onEvent(new Event(EventType.DATA_EXCEPTION, e));
@@ -45,8 +45,12 @@ package org.jdiameter.common.api.concurrent;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jdiameter.common.api.statistic.IStatistic;
 
@@ -58,6 +62,9 @@ import org.jdiameter.common.api.statistic.IStatistic;
  */
 public class DummyConcurrentFactory implements IConcurrentFactory {
 
+  private volatile ExecutorService executorService;
+  private final AtomicInteger threadCount = new AtomicInteger();
+
   @Override
   public Thread getThread(Runnable runnuble) {
     return new Thread(runnuble);
@@ -92,6 +99,34 @@ public class DummyConcurrentFactory implements IConcurrentFactory {
   public void shutdownNow(ScheduledExecutorService service) {
   }
 
+  @Override
+  public ExecutorService getExecutorService(String name) {
+    // shared by all callers, created on first use
+    ExecutorService service = executorService;
+    if (service == null) {
+      synchronized (this) {
+        service = executorService;
+        if (service == null) {
+          service = Executors.newFixedThreadPool(4, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "DummyConcurrentFactory-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+          executorService = service;
+        }
+      }
+    }
+    return service;
+  }
+
+  @Override
+  public Executor getSessionListenerExecutor(String sessionId) {
+    return null;
+  }
+
   @Override
   public IStatistic getStatistic() {
     return null;
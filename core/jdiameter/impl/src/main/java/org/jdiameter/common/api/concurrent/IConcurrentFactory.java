@@ -44,6 +44,8 @@ package org.jdiameter.common.api.concurrent;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.jdiameter.common.api.statistic.IStatistic;
@@ -63,7 +65,13 @@ public interface IConcurrentFactory {
     PeerOverloadTimer,
     ConnectionTimer,
     StatisticTimer,
-    ApplicationSession
+    ApplicationSession,
+    SessionJournalTimer
+  }
+
+  enum ExecServices {
+    ApplicationSessionMailbox,
+    SessionListener
   }
 
   // Thread
@@ -82,6 +90,12 @@ public interface IConcurrentFactory {
 
   void shutdownNow(ScheduledExecutorService service);
 
+  // ExecutorService, shared by serial executors: a work stealing pool or virtual threads
+  ExecutorService getExecutorService(String name);
+
+  // Runs listener callbacks of plain sessions in order per session, null when SessionListener is not configured
+  Executor getSessionListenerExecutor(String sessionId);
+
   // Common
   IStatistic getStatistic();
 
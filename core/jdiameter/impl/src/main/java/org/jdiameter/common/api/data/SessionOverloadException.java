@@ -0,0 +1,55 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.api.data;
+
+/**
+ * Thrown by an {@link ISessionDatasource} when a new session can not be stored because the configured
+ * session capacity has been reached. Requests creating sessions should be answered with DIAMETER_TOO_BUSY.
+ */
+public class SessionOverloadException extends IllegalStateException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final int capacity;
+
+  public SessionOverloadException(String sessionId, int capacity) {
+    super("Unable to add session with id: " + sessionId + ", session capacity [" + capacity + "] reached");
+    this.capacity = capacity;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Check if the throwable or one of its causes is a session overload.
+   *
+   * @param t the throwable to check
+   * @return true if caused by a session overload
+   */
+  public static boolean isCausedBy(Throwable t) {
+    for (int i = 0; t != null && i < 16; i++, t = t.getCause()) {
+      if (t instanceof SessionOverloadException) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
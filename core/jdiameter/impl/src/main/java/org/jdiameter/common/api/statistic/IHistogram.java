@@ -0,0 +1,104 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.api.statistic;
+
+/**
+ * Latency distribution for one (type, peer, application, command code) tuple.
+ * Samples are recorded in nanoseconds, while percentiles are reported in
+ * microseconds for the last closed interval (see {@link #rotate()}).
+ */
+public interface IHistogram {
+
+  enum Type {
+
+    RoundTripTime("Request to answer round trip time"),
+    QueueWaitTime("Time spent by an event in the peer FSM queue"),
+    ListenerExecTime("Time spent in application listener callbacks");
+
+    private String description;
+
+    Type(String description) {
+      this.description = description;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+  }
+
+  Type getType();
+
+  String getPeer();
+
+  long getApplicationId();
+
+  int getCommandCode();
+
+  /**
+   * @return name of the histogram, Type.peer.applicationId.commandCode
+   */
+  String getName();
+
+  /**
+   * Records one sample
+   *
+   * @param nanos measured duration in nanoseconds
+   */
+  void record(long nanos);
+
+  /**
+   * Closes the current interval, making its content available through the
+   * accessor methods and starting a new, empty interval.
+   */
+  void rotate();
+
+  /**
+   * @return count of samples in the last closed interval
+   */
+  long getCount();
+
+  /**
+   * @return sum in microseconds of samples in the last closed interval
+   */
+  long getSum();
+
+  /**
+   * @return count of samples in all closed intervals since the histogram was created
+   */
+  long getTotalCount();
+
+  /**
+   * @return sum in microseconds of samples in all closed intervals since the histogram was created
+   */
+  long getTotalSum();
+
+  /**
+   * @param percentile value between 0 and 100
+   * @return value in microseconds below which the given percentage of samples of last interval fall
+   */
+  long getValueAtPercentile(double percentile);
+
+  /**
+   * @return maximal value in microseconds recorded in the last closed interval
+   */
+  long getMaxValue();
+
+}
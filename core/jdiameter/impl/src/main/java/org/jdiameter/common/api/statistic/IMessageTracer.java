@@ -0,0 +1,85 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.api.statistic;
+
+import org.jdiameter.client.api.IMessage;
+
+/**
+ * Samples messages and follows them through the stack, collecting a
+ * System.nanoTime() stamp each time a message reaches one of the {@link Stage}s.
+ * Completed traces feed per stage histograms and a list of the slowest traces.
+ */
+public interface IMessageTracer {
+
+  /**
+   * Points of message lifecycle, in the order they are passed. Time spent in a
+   * stage is the time since the previous stage stamped on the same trace.
+   */
+  enum Stage {
+    Received("Bytes of message read by transport"),
+    Decoded("Message decoded and passed to peer"),
+    Sent("Message passed to peer for sending"),
+    Validated("Message validated against dictionary"),
+    Dequeued("Message taken from peer FSM queue"),
+    Routed("Listener or pending request found for message"),
+    Processed("Listener returned"),
+    Encoded("Message encoded by transport"),
+    Written("Message written to connection");
+
+    private String description;
+
+    Stage(String description) {
+      this.description = description;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+  }
+
+  /**
+   * @return true if messages are being sampled
+   */
+  boolean isEnabled();
+
+  /**
+   * Decides whether message should be traced and if so attaches a new trace
+   * stamped with given stage. Messages which already carry a trace are left
+   * untouched.
+   *
+   * @param message message entering the stack
+   * @param stage first stage of the trace
+   */
+  void start(IMessage message, Stage stage);
+
+  /**
+   * Detaches trace from message, if any, and accounts it
+   *
+   * @param message message leaving the stack
+   */
+  void complete(IMessage message);
+
+  /**
+   * Closes current histogram interval
+   */
+  void rotate();
+
+}
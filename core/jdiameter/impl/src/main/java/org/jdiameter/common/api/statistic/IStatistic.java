@@ -78,6 +78,11 @@ public interface IStatistic extends Statistic {
    */
   void appendCounter(IStatisticRecord... rec);
 
+  /**
+   * @return group of this statistic, null if not grouped
+   */
+  Groups getGroup();
+
   IStatisticRecord getRecordByName(String name);
 
   IStatisticRecord getRecordByName(IStatisticRecord.Counters name);
@@ -79,6 +79,12 @@ public interface IStatisticManager {
 
   void removeStatistic(IStatistic stat);
 
+  /**
+   * Returns latency histogram for given key, creating it on first access. When
+   * statistics are off a shared histogram which ignores samples is returned.
+   */
+  IHistogram getHistogram(IHistogram.Type type, String peer, long applicationId, int commandCode);
+
   // --- non factory methods, metadata access
   boolean isOn();
 
@@ -94,4 +100,8 @@ public interface IStatisticManager {
 
   List<IStatistic> getStatistic();
 
+  List<IHistogram> getHistograms();
+
+  IMessageTracer getMessageTracer();
+
 }
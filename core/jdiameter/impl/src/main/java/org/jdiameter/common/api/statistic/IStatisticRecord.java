@@ -64,6 +64,7 @@ public interface IStatisticRecord extends StatisticRecord {
     NetGenResponse("Count of network generated processed responses"),
     NetGenRejectedResponse("Count of network generated rejected responses"),
     SysGenResponse("Count of platform generated responses"),
+    ShedRequest("Count of requests rejected by ingress overload control"),
 
     AppGenRequestPerSecond("Count of app generated request per second"),
     AppGenResponsePerSecond("Count of app generated responses per second"),
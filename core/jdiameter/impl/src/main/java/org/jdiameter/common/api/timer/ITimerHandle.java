@@ -0,0 +1,38 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.api.timer;
+
+/**
+ * Optionally implemented by the ids returned from {@link ITimerFacility#schedule(String, String, long)}, so
+ * a running timer can be persisted and scheduled again after a restart.
+ */
+public interface ITimerHandle {
+
+  String getSessionId();
+
+  String getTimerName();
+
+  /**
+   * @return milliseconds left before the timer expires, zero or less when expired or cancelled
+   */
+  long getDelay();
+
+}
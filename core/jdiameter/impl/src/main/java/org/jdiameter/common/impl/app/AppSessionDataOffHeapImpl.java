@@ -0,0 +1,289 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.app;
+
+import java.nio.ByteBuffer;
+
+import org.jdiameter.api.ApplicationId;
+import org.jdiameter.api.AvpDataException;
+import org.jdiameter.api.Request;
+import org.jdiameter.api.app.AppSession;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.client.api.parser.ParseException;
+import org.jdiameter.common.api.app.AppSessionDataLocalImpl;
+import org.jdiameter.common.api.timer.ITimerFacility;
+import org.jdiameter.common.api.timer.ITimerHandle;
+import org.jdiameter.common.impl.data.OffHeapSlab;
+import org.jdiameter.common.impl.data.SessionJournal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base for application session data kept in a record of an {@link OffHeapSlab}. Subclasses map their fixed
+ * size fields to offsets of the record, buffered requests are kept encoded as data of its reference slots,
+ * off heap as well. A request is decoded on its first read and kept on heap until overwritten, so only
+ * sessions reading their requests hold them on heap.
+ * <p>
+ * On heap each session keeps this object, the slab's owner reference of its record, which frees a record
+ * never removed, and its reference slots.
+ * <p>
+ * The record is freed on {@link #remove()}, afterwards reads return the initial values and writes are dropped.
+ * A record never removed is reclaimed by the slab once this data is garbage collected.
+ * When attached to a {@link SessionJournal} every change is also appended to it.
+ */
+public abstract class AppSessionDataOffHeapImpl extends AppSessionDataLocalImpl {
+
+  private static final Logger logger = LoggerFactory.getLogger(AppSessionDataOffHeapImpl.class);
+
+  protected final OffHeapSlab slab;
+  protected final IMessageParser messageParser;
+
+  private int handle;
+  private SessionJournal journal;
+  // decoded requests by reference slot, created on first read
+  private Request[] requests;
+
+  public AppSessionDataOffHeapImpl(OffHeapSlab slab, IMessageParser messageParser) {
+    this.slab = slab;
+    this.messageParser = messageParser;
+    this.handle = slab.allocate(this);
+  }
+
+  /**
+   * @return interface of the application session this data belongs to
+   */
+  public abstract Class<? extends AppSession> getAppSessionIface();
+
+  @Override
+  public synchronized void setApplicationId(ApplicationId applicationId) {
+    super.setApplicationId(applicationId);
+    if (journal != null && handle >= 0) {
+      journal.session(getSessionId(), getClass().getName(), applicationId);
+    }
+  }
+
+  @Override
+  public synchronized boolean remove() {
+    if (handle >= 0) {
+      slab.free(handle);
+      handle = -1;
+      requests = null;
+      if (journal != null) {
+        journal.remove(getSessionId());
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Journal further changes. The current state is written first, unless it is already in the journal.
+   */
+  public synchronized void attach(SessionJournal journal, boolean journaled) {
+    this.journal = journal;
+    if (!journaled && handle >= 0) {
+      journal.session(getSessionId(), getClass().getName(), getApplicationId());
+      journal.record(getSessionId(), slab, handle);
+      for (int i = 0; i < slab.getReferences(); i++) {
+        journal(i, slab.hasData(handle, i) ? slab.getData(handle, i) : slab.getReference(handle, i));
+      }
+    }
+  }
+
+  /**
+   * Restore the state of a journal image, scheduling its timers again with their remaining time.
+   */
+  public synchronized void restore(SessionJournal.Image image, ITimerFacility timerFacility) {
+    restore(image);
+    restoreTimers(image, timerFacility);
+  }
+
+  /**
+   * Restore the state of a journal image, except its timers which are left unset.
+   */
+  public synchronized void restore(SessionJournal.Image image) {
+    if (handle < 0) {
+      return;
+    }
+    if (image.getRecord() != null && image.getRecord().length == slab.getRecordSize()) {
+      slab.putBytes(handle, image.getRecord());
+    }
+    requests = null;
+    Object[] references = image.getReferences();
+    for (int i = 0; i < references.length && i < slab.getReferences(); i++) {
+      Object reference = references[i];
+      if (reference instanceof SessionJournal.TimerEntry) {
+        slab.setReference(handle, i, null);
+      }
+      else if (reference instanceof byte[]) {
+        slab.putData(handle, i, (byte[]) reference);
+      }
+      else {
+        slab.setReference(handle, i, reference);
+      }
+    }
+  }
+
+  /**
+   * Schedule the timers of a journal image again with their remaining time, expired ones fire right away. The
+   * session must already be found by its id, as the timers look it up when they fire.
+   */
+  public synchronized void restoreTimers(SessionJournal.Image image, ITimerFacility timerFacility) {
+    if (handle < 0 || timerFacility == null) {
+      return;
+    }
+    Object[] references = image.getReferences();
+    for (int i = 0; i < references.length && i < slab.getReferences(); i++) {
+      if (references[i] instanceof SessionJournal.TimerEntry) {
+        SessionJournal.TimerEntry timer = (SessionJournal.TimerEntry) references[i];
+        long delay = Math.max(0, timer.getExpiryTime() - System.currentTimeMillis());
+        slab.setReference(handle, i, timerFacility.schedule(getSessionId(), timer.getTimerName(), delay));
+      }
+    }
+  }
+
+  private void journal(int index, Object value) {
+    if (value == null) {
+      journal.clear(getSessionId(), index);
+    }
+    else if (value instanceof byte[]) {
+      journal.request(getSessionId(), index, (byte[]) value);
+    }
+    else if (value instanceof ITimerHandle) {
+      ITimerHandle timer = (ITimerHandle) value;
+      journal.timer(getSessionId(), index, timer.getTimerName(), System.currentTimeMillis() + timer.getDelay());
+    }
+    else {
+      logger.debug("Reference {} of Session ID '{}' can not be journaled: {}", new Object[]{index, getSessionId(), value});
+    }
+  }
+
+  protected synchronized boolean isReleased() {
+    return handle < 0;
+  }
+
+  protected synchronized boolean getFlag(int offset, int mask, boolean def) {
+    return handle < 0 ? def : (slab.getByte(handle, offset) & mask) != 0;
+  }
+
+  protected synchronized void setFlag(int offset, int mask, boolean value) {
+    if (handle >= 0) {
+      byte flags = slab.getByte(handle, offset);
+      flags = (byte) (value ? flags | mask : flags & ~mask);
+      slab.putByte(handle, offset, flags);
+      if (journal != null) {
+        journal.field(getSessionId(), offset, flags);
+      }
+    }
+  }
+
+  protected synchronized byte getByte(int offset, byte def) {
+    return handle < 0 ? def : slab.getByte(handle, offset);
+  }
+
+  protected synchronized void putByte(int offset, byte value) {
+    if (handle >= 0) {
+      slab.putByte(handle, offset, value);
+      if (journal != null) {
+        journal.field(getSessionId(), offset, value);
+      }
+    }
+  }
+
+  protected synchronized int getInt(int offset, int def) {
+    return handle < 0 ? def : slab.getInt(handle, offset);
+  }
+
+  protected synchronized void putInt(int offset, int value) {
+    if (handle >= 0) {
+      slab.putInt(handle, offset, value);
+      if (journal != null) {
+        journal.field(getSessionId(), offset, value);
+      }
+    }
+  }
+
+  protected synchronized Object getReference(int index) {
+    return handle < 0 ? null : slab.getReference(handle, index);
+  }
+
+  protected synchronized void setReference(int index, Object value) {
+    if (handle >= 0) {
+      slab.setReference(handle, index, value);
+      if (requests != null) {
+        requests[index] = null;
+      }
+      if (journal != null) {
+        journal(index, value);
+      }
+    }
+  }
+
+  /**
+   * @return request decoded from the data of the reference slot, null if none
+   */
+  protected synchronized Request getRequest(int index) {
+    if (handle < 0) {
+      return null;
+    }
+    if (requests != null && requests[index] != null) {
+      return requests[index];
+    }
+    byte[] data = slab.getData(handle, index);
+    if (data != null) {
+      try {
+        if (requests == null) {
+          requests = new Request[slab.getReferences()];
+        }
+        requests[index] = messageParser.createMessage(ByteBuffer.wrap(data));
+        return requests[index];
+      }
+      catch (AvpDataException e) {
+        logger.error("Unable to decode request for Session ID '" + getSessionId() + "'", e);
+      }
+    }
+    return null;
+  }
+
+  protected void setRequest(int index, Request request) {
+    byte[] data = null;
+    if (request != null) {
+      try {
+        data = messageParser.encodeMessage((IMessage) request).array();
+      }
+      catch (ParseException e) {
+        throw new IllegalArgumentException("Unable to encode request for Session ID '" + getSessionId() + "'", e);
+      }
+    }
+    synchronized (this) {
+      if (handle >= 0) {
+        slab.putData(handle, index, data);
+        if (requests != null) {
+          requests[index] = null;
+        }
+        if (journal != null) {
+          journal(index, data);
+        }
+      }
+    }
+  }
+
+}
@@ -47,6 +47,7 @@ import static org.jdiameter.client.impl.helpers.Parameters.SessionTimeOut;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.jdiameter.api.ApplicationId;
@@ -57,6 +58,8 @@ import org.jdiameter.client.api.ISessionFactory;
 import org.jdiameter.common.api.app.IAppSessionData;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.jdiameter.common.api.timer.ITimerFacility;
+import org.jdiameter.common.impl.concurrent.SerialExecutor;
+import org.jdiameter.common.impl.jfr.DiameterEvents;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -80,6 +83,9 @@ public abstract class AppSessionImpl implements AppSession {
 
   protected ScheduledExecutorService scheduler = null;
 
+  // runs deliveries to this session in order, one at a time, its lock serializes sends and timers with them
+  protected SerialExecutor mailbox = null;
+
   protected ITimerFacility timerFacility;
 
   protected long maxIdleTime = 0;
@@ -95,8 +101,10 @@ public abstract class AppSessionImpl implements AppSession {
       this.sf = sf;
       this.appSessionData = appSessionData;
       IAssembler assembler = ( this.sf).getContainer().getAssemblerFacility();
-      this.scheduler = assembler.getComponentInstance(IConcurrentFactory.class).
-          getScheduledExecutorService(IConcurrentFactory.ScheduledExecServices.ApplicationSession.name());
+      IConcurrentFactory concurrentFactory = assembler.getComponentInstance(IConcurrentFactory.class);
+      this.scheduler = concurrentFactory.getScheduledExecutorService(IConcurrentFactory.ScheduledExecServices.ApplicationSession.name());
+      ExecutorService pool = concurrentFactory.getExecutorService(IConcurrentFactory.ExecServices.ApplicationSessionMailbox.name());
+      this.mailbox = new SerialExecutor(pool != null ? pool : this.scheduler);
       this.timerFacility = assembler.getComponentInstance(ITimerFacility.class);
       this.maxIdleTime = this.sf.getContainer().getConfiguration().getLongValue(SessionTimeOut.ordinal(), (Long) SessionTimeOut.defValue());
       this.session = this.sf.getNewSession(this.appSessionData.getSessionId());
@@ -104,6 +112,9 @@ public abstract class AppSessionImpl implements AppSession {
       ArrayList<Session> list = new ArrayList<Session>();
       list.add(this.session);
       this.sessions = Collections.unmodifiableList(list);
+      if (DiameterEvents.SESSION_CREATED.isEnabled()) {
+        DiameterEvents.SESSION_CREATED.emit(getSessionId(), String.valueOf(getSessionAppId()), getClass().getSimpleName());
+      }
     }
     catch (Exception e) {
       throw new IllegalArgumentException(e);
@@ -138,6 +149,10 @@ public abstract class AppSessionImpl implements AppSession {
   @Override
   public void release() {
     logger.debug("Releasing application session for Session ID '{}' ({}).", getSessionId(), getSessionAppId());
+    if (DiameterEvents.SESSION_RELEASED.isEnabled()) {
+      DiameterEvents.SESSION_RELEASED.emit(getSessionId(), String.valueOf(getSessionAppId()), getClass().getSimpleName(),
+          System.currentTimeMillis() - getCreationTime());
+    }
     this.session.setRequestListener(null);
     this.session.release();
     this.appSessionData.remove();
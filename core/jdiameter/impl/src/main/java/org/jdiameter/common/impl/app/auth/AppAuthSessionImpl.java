@@ -45,7 +45,6 @@ package org.jdiameter.common.impl.app.auth;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.jdiameter.api.ApplicationId;
 import org.jdiameter.api.NetworkReqListener;
@@ -61,7 +60,7 @@ import org.jdiameter.common.impl.app.AppSessionImpl;
  */
 public abstract class AppAuthSessionImpl extends AppSessionImpl implements NetworkReqListener, org.jdiameter.api.app.StateMachine {
 
-  protected Lock sendAndStateLock = new ReentrantLock();
+  protected Lock sendAndStateLock = mailbox.getLock();
   protected ApplicationId appId;
 
   protected transient List<StateChangeListener> stateListeners = new CopyOnWriteArrayList<StateChangeListener>();
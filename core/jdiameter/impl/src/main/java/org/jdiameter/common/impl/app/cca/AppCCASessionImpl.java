@@ -45,7 +45,6 @@ package org.jdiameter.common.impl.app.cca;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.jdiameter.api.NetworkReqListener;
 import org.jdiameter.api.app.StateChangeListener;
@@ -61,7 +60,7 @@ import org.jdiameter.common.impl.app.AppSessionImpl;
  */
 public abstract class AppCCASessionImpl extends AppSessionImpl implements CCASession, NetworkReqListener {
 
-  protected Lock sendAndStateLock = new ReentrantLock();
+  protected Lock sendAndStateLock = mailbox.getLock();
 
   //FIXME: those must be recreated from local resources!
   //FIXME: change this to single ref!
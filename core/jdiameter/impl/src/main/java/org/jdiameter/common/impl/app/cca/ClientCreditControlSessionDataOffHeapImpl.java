@@ -0,0 +1,132 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.app.cca;
+
+import java.io.Serializable;
+
+import org.jdiameter.api.Request;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.common.api.app.IAppSessionData;
+import org.jdiameter.common.impl.app.AppSessionDataOffHeapImpl;
+import org.jdiameter.common.impl.data.OffHeapSlab;
+
+/**
+ * Client credit control session data kept in an {@link OffHeapSlab} record, see {@link AppSessionDataOffHeapImpl}.
+ * Holds the fields shared by the credit control applications (Ro, Gx), subclasses bind them to the session data
+ * interface of their application and map its state enumeration with {@link #getState(Enum[], Enum)}.
+ */
+public abstract class ClientCreditControlSessionDataOffHeapImpl extends AppSessionDataOffHeapImpl {
+
+  // record layout
+  private static final int FLAGS = 0;
+  private static final int STATE = 1;
+  private static final int GRA = 4;
+  private static final int GCCFH = 8;
+  private static final int GDDFH = 12;
+
+  private static final int EVENT_BASED = 0x01;
+  private static final int REQUEST_TYPE_SET = 0x02;
+
+  // reference slots
+  private static final int TX_TIMER_ID = 0;
+  private static final int TX_TIMER_REQUEST = 1;
+  private static final int BUFFER = 2;
+
+  public ClientCreditControlSessionDataOffHeapImpl(OffHeapSlab slab, IMessageParser messageParser) {
+    super(slab, messageParser);
+    setEventBased(true);
+    setGatheredRequestedAction(IAppSessionData.NON_INITIALIZED);
+    setGatheredCCFH(IAppSessionData.NON_INITIALIZED);
+    setGatheredDDFH(IAppSessionData.NON_INITIALIZED);
+  }
+
+  protected <E extends Enum<E>> E getState(E[] states, E def) {
+    return states[getByte(STATE, (byte) def.ordinal())];
+  }
+
+  protected void setState(Enum<?> state) {
+    putByte(STATE, (byte) state.ordinal());
+  }
+
+  public boolean isEventBased() {
+    return getFlag(FLAGS, EVENT_BASED, true);
+  }
+
+  public void setEventBased(boolean isEventBased) {
+    setFlag(FLAGS, EVENT_BASED, isEventBased);
+  }
+
+  public boolean isRequestTypeSet() {
+    return getFlag(FLAGS, REQUEST_TYPE_SET, false);
+  }
+
+  public void setRequestTypeSet(boolean requestTypeSet) {
+    setFlag(FLAGS, REQUEST_TYPE_SET, requestTypeSet);
+  }
+
+  public Serializable getTxTimerId() {
+    return (Serializable) getReference(TX_TIMER_ID);
+  }
+
+  public void setTxTimerId(Serializable txTimerId) {
+    setReference(TX_TIMER_ID, txTimerId);
+  }
+
+  public Request getTxTimerRequest() {
+    return getRequest(TX_TIMER_REQUEST);
+  }
+
+  public void setTxTimerRequest(Request txTimerRequest) {
+    setRequest(TX_TIMER_REQUEST, txTimerRequest);
+  }
+
+  public Request getBuffer() {
+    return getRequest(BUFFER);
+  }
+
+  public void setBuffer(Request buffer) {
+    setRequest(BUFFER, buffer);
+  }
+
+  public int getGatheredRequestedAction() {
+    return getInt(GRA, IAppSessionData.NON_INITIALIZED);
+  }
+
+  public void setGatheredRequestedAction(int gatheredRequestedAction) {
+    putInt(GRA, gatheredRequestedAction);
+  }
+
+  public int getGatheredCCFH() {
+    return getInt(GCCFH, IAppSessionData.NON_INITIALIZED);
+  }
+
+  public void setGatheredCCFH(int gatheredCCFH) {
+    putInt(GCCFH, gatheredCCFH);
+  }
+
+  public int getGatheredDDFH() {
+    return getInt(GDDFH, IAppSessionData.NON_INITIALIZED);
+  }
+
+  public void setGatheredDDFH(int gatheredDDFH) {
+    putInt(GDDFH, gatheredDDFH);
+  }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.app.cca;
+
+import org.jdiameter.api.app.AppSession;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.common.api.app.IAppSessionData;
+import org.jdiameter.common.api.app.IAppSessionDataFactory;
+import org.jdiameter.common.impl.app.AppSessionDataOffHeapImpl;
+import org.jdiameter.common.impl.data.OffHeapDataSource;
+import org.jdiameter.common.impl.data.OffHeapSlab;
+
+/**
+ * Creates the client and server session data of a credit control application (Ro, Gx) in the off heap slab of
+ * an {@link OffHeapDataSource}, taking over the data restored by it first.
+ */
+public abstract class CreditControlOffHeapSessionDataFactory<T extends IAppSessionData> implements IAppSessionDataFactory<T> {
+
+  protected final OffHeapDataSource dataSource;
+  private final Class<T> dataIface;
+  private final Class<? extends AppSession> clientSessionIface;
+  private final Class<? extends AppSession> serverSessionIface;
+
+  protected CreditControlOffHeapSessionDataFactory(OffHeapDataSource dataSource, Class<T> dataIface,
+      Class<? extends AppSession> clientSessionIface, Class<? extends AppSession> serverSessionIface) {
+    this.dataSource = dataSource;
+    this.dataIface = dataIface;
+    this.clientSessionIface = clientSessionIface;
+    this.serverSessionIface = serverSessionIface;
+  }
+
+  /**
+   * @return class of the client, or server, session data
+   */
+  protected abstract Class<? extends AppSessionDataOffHeapImpl> getDataClass(boolean client);
+
+  /**
+   * @return new client, or server, session data in the given slab
+   */
+  protected abstract AppSessionDataOffHeapImpl newData(boolean client, OffHeapSlab slab, IMessageParser messageParser);
+
+  /* (non-Javadoc)
+   * @see org.jdiameter.common.api.app.IAppSessionDataFactory#getAppSessionData(java.lang.Class, java.lang.String)
+   */
+  @Override
+  public T getAppSessionData(Class<? extends AppSession> clazz, String sessionId) {
+    if (clazz.equals(clientSessionIface)) {
+      return getAppSessionData(true, sessionId);
+    }
+    else if (clazz.equals(serverSessionIface)) {
+      return getAppSessionData(false, sessionId);
+    }
+    throw new IllegalArgumentException(clazz.toString());
+  }
+
+  private T getAppSessionData(boolean client, String sessionId) {
+    AppSessionDataOffHeapImpl data = dataSource.getRestoredData(sessionId, getDataClass(client));
+    if (data == null) {
+      data = newData(client, dataSource.getSlab(), dataSource.getMessageParser());
+      data.setSessionId(sessionId);
+      dataSource.dataCreated(data);
+    }
+    return dataIface.cast(data);
+  }
+
+}
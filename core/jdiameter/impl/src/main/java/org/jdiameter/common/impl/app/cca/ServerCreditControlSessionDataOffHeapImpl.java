@@ -0,0 +1,73 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.app.cca;
+
+import java.io.Serializable;
+
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.common.impl.app.AppSessionDataOffHeapImpl;
+import org.jdiameter.common.impl.data.OffHeapSlab;
+
+/**
+ * Server credit control session data kept in an {@link OffHeapSlab} record, see {@link AppSessionDataOffHeapImpl}.
+ * Holds the fields shared by the credit control applications (Ro, Gx), subclasses bind them to the session data
+ * interface of their application and map its state enumeration with {@link #getState(Enum[], Enum)}.
+ */
+public abstract class ServerCreditControlSessionDataOffHeapImpl extends AppSessionDataOffHeapImpl {
+
+  // record layout
+  private static final int FLAGS = 0;
+  private static final int STATE = 1;
+
+  private static final int STATELESS = 0x01;
+
+  // reference slots
+  private static final int TCC_TIMER_ID = 0;
+
+  public ServerCreditControlSessionDataOffHeapImpl(OffHeapSlab slab, IMessageParser messageParser) {
+    super(slab, messageParser);
+    setStateless(true);
+  }
+
+  protected <E extends Enum<E>> E getState(E[] states, E def) {
+    return states[getByte(STATE, (byte) def.ordinal())];
+  }
+
+  protected void setState(Enum<?> state) {
+    putByte(STATE, (byte) state.ordinal());
+  }
+
+  public boolean isStateless() {
+    return getFlag(FLAGS, STATELESS, true);
+  }
+
+  public void setStateless(boolean stateless) {
+    setFlag(FLAGS, STATELESS, stateless);
+  }
+
+  public Serializable getTccTimerId() {
+    return (Serializable) getReference(TCC_TIMER_ID);
+  }
+
+  public void setTccTimerId(Serializable tccTimerId) {
+    setReference(TCC_TIMER_ID, tccTimerId);
+  }
+
+}
@@ -45,7 +45,6 @@ package org.jdiameter.common.impl.app.gx;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.jdiameter.api.NetworkReqListener;
 import org.jdiameter.api.app.StateChangeListener;
@@ -59,7 +58,7 @@ import org.jdiameter.common.impl.app.AppSessionImpl;
  */
 public abstract class AppGxSessionImpl extends AppSessionImpl implements NetworkReqListener, StateMachine {
 
-  protected Lock sendAndStateLock = new ReentrantLock();
+  protected Lock sendAndStateLock = mailbox.getLock();
   //FIXME: those must be recreated from local resources!
   //FIXME: change this to single ref!
   protected transient List<StateChangeListener> stateListeners = new CopyOnWriteArrayList<StateChangeListener>();
@@ -0,0 +1,52 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.app.gx;
+
+import org.jdiameter.api.gx.ClientGxSession;
+import org.jdiameter.api.gx.ServerGxSession;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.client.impl.app.gx.ClientGxSessionDataOffHeapImpl;
+import org.jdiameter.common.api.app.gx.IGxSessionData;
+import org.jdiameter.common.impl.app.AppSessionDataOffHeapImpl;
+import org.jdiameter.common.impl.app.cca.CreditControlOffHeapSessionDataFactory;
+import org.jdiameter.common.impl.data.OffHeapDataSource;
+import org.jdiameter.common.impl.data.OffHeapSlab;
+import org.jdiameter.server.impl.app.gx.ServerGxSessionDataOffHeapImpl;
+
+/**
+ * Creates Gx session data in the off heap slab of an {@link OffHeapDataSource}.
+ */
+public class GxOffHeapSessionDataFactory extends CreditControlOffHeapSessionDataFactory<IGxSessionData> {
+
+  public GxOffHeapSessionDataFactory(OffHeapDataSource dataSource) {
+    super(dataSource, IGxSessionData.class, ClientGxSession.class, ServerGxSession.class);
+  }
+
+  @Override
+  protected Class<? extends AppSessionDataOffHeapImpl> getDataClass(boolean client) {
+    return client ? ClientGxSessionDataOffHeapImpl.class : ServerGxSessionDataOffHeapImpl.class;
+  }
+
+  @Override
+  protected AppSessionDataOffHeapImpl newData(boolean client, OffHeapSlab slab, IMessageParser messageParser) {
+    return client ? new ClientGxSessionDataOffHeapImpl(slab, messageParser) : new ServerGxSessionDataOffHeapImpl(slab, messageParser);
+  }
+
+}
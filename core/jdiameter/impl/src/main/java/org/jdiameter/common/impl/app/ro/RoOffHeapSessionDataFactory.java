@@ -0,0 +1,52 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.app.ro;
+
+import org.jdiameter.api.ro.ClientRoSession;
+import org.jdiameter.api.ro.ServerRoSession;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.client.impl.app.ro.ClientRoSessionDataOffHeapImpl;
+import org.jdiameter.common.api.app.ro.IRoSessionData;
+import org.jdiameter.common.impl.app.AppSessionDataOffHeapImpl;
+import org.jdiameter.common.impl.app.cca.CreditControlOffHeapSessionDataFactory;
+import org.jdiameter.common.impl.data.OffHeapDataSource;
+import org.jdiameter.common.impl.data.OffHeapSlab;
+import org.jdiameter.server.impl.app.ro.ServerRoSessionDataOffHeapImpl;
+
+/**
+ * Creates Ro session data in the off heap slab of an {@link OffHeapDataSource}.
+ */
+public class RoOffHeapSessionDataFactory extends CreditControlOffHeapSessionDataFactory<IRoSessionData> {
+
+  public RoOffHeapSessionDataFactory(OffHeapDataSource dataSource) {
+    super(dataSource, IRoSessionData.class, ClientRoSession.class, ServerRoSession.class);
+  }
+
+  @Override
+  protected Class<? extends AppSessionDataOffHeapImpl> getDataClass(boolean client) {
+    return client ? ClientRoSessionDataOffHeapImpl.class : ServerRoSessionDataOffHeapImpl.class;
+  }
+
+  @Override
+  protected AppSessionDataOffHeapImpl newData(boolean client, OffHeapSlab slab, IMessageParser messageParser) {
+    return client ? new ClientRoSessionDataOffHeapImpl(slab, messageParser) : new ServerRoSessionDataOffHeapImpl(slab, messageParser);
+  }
+
+}
@@ -73,7 +73,7 @@ abstract class AbstractTask<L> {
   }
 
   protected IStatisticRecord getCounter(IStatisticRecord.Counters counter) {
-    return statistic.getRecordByName(counter.name());
+    return statistic.getRecordByName(counter);
   }
 
   protected void updateTimeStatistic(long time, long waitTime) {
@@ -106,7 +106,7 @@ abstract class AbstractTask<L> {
 
     public double getValueAsDouble() {
 
-      IStatisticRecord record = statistic.getRecordByName(counter.name());
+      IStatisticRecord record = statistic.getRecordByName(counter);
       if (statistic.isEnabled() && (record.getChilds().length == 2 || record.getChilds()[1].getValueAsLong() != 0) ) {
         long count = record.getChilds()[1].getValueAsLong();
         return ((float) record.getChilds()[0].getValueAsLong()) / ((float) (count != 0 ? count : 1));
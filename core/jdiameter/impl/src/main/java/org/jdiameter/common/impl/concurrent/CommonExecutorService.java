@@ -0,0 +1,118 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.concurrent;
+
+import static org.jdiameter.common.api.statistic.IStatistic.Groups.ScheduledExecService;
+import static org.jdiameter.common.api.statistic.IStatisticRecord.Counters.BrokenTasks;
+import static org.jdiameter.common.api.statistic.IStatisticRecord.Counters.RejectedTasks;
+import static org.jdiameter.common.api.statistic.IStatisticRecord.Counters.WorkingThread;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.common.api.concurrent.IConcurrentEntityFactory;
+import org.jdiameter.common.api.statistic.IStatistic;
+import org.jdiameter.common.api.statistic.IStatisticManager;
+import org.jdiameter.common.api.statistic.IStatisticRecord;
+
+/**
+ * Not scheduled executor service over a work stealing pool or virtual threads, keeping the statistics of
+ * {@link CommonScheduledExecutorService}.
+ */
+class CommonExecutorService extends AbstractExecutorService {
+
+  private final ExecutorService executor;
+  private final IStatistic statistic;
+  private final IConcurrentEntityFactory entityFactory;
+  private final IStatisticManager statisticFactory;
+  private final IStatisticRecord rejectedCount;
+  private final IStatisticRecord execTimeSumm;
+  private final IStatisticRecord execTimeCount;
+  private final IStatisticRecord waitTimeSumm;
+  private final IStatisticRecord waitTimeCount;
+
+  CommonExecutorService(String name, ExecutorService executor, IConcurrentEntityFactory entityFactory, IStatisticManager statisticFactory) {
+    this.executor = executor;
+    this.entityFactory = entityFactory;
+    this.statisticFactory = statisticFactory;
+    rejectedCount = statisticFactory.newCounterRecord(RejectedTasks);
+    execTimeSumm = statisticFactory.newCounterRecord("TimeSumm", "TimeSumm");
+    execTimeCount = statisticFactory.newCounterRecord("TimeCount", "TimeCount");
+    waitTimeSumm = statisticFactory.newCounterRecord("TimeSumm", "TimeSumm");
+    waitTimeCount = statisticFactory.newCounterRecord("TimeCount", "TimeCount");
+    statistic = statisticFactory.newStatistic(name, ScheduledExecService, rejectedCount);
+
+    final IStatisticRecord execTimeCounter = statisticFactory.newCounterRecord(IStatisticRecord.Counters.ExecTimeTask, new AbstractTask.AverageValueHolder(
+        statistic, IStatisticRecord.Counters.ExecTimeTask), execTimeSumm, execTimeCount);
+
+    final IStatisticRecord waitTimeCounter = statisticFactory.newCounterRecord(IStatisticRecord.Counters.WaitTimeTask, new AbstractTask.AverageValueHolder(
+        statistic, IStatisticRecord.Counters.WaitTimeTask), waitTimeSumm, waitTimeCount);
+
+    statistic.appendCounter(statisticFactory.newCounterRecord(WorkingThread), statisticFactory.newCounterRecord(BrokenTasks), execTimeCounter,
+        waitTimeCounter);
+  }
+
+  @Override
+  public void execute(Runnable runnable) {
+    try {
+      executor.execute(entityFactory.newDefaultRunnable(runnable, statistic, execTimeSumm, execTimeCount, waitTimeSumm, waitTimeCount));
+    }
+    catch (RejectedExecutionException e) {
+      rejectedCount.inc();
+      throw e;
+    }
+  }
+
+  public IStatistic getStatistic() {
+    return statistic;
+  }
+
+  @Override
+  public void shutdown() {
+    this.statisticFactory.removeStatistic(statistic);
+    executor.shutdown();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    this.statisticFactory.removeStatistic(statistic);
+    return executor.shutdownNow();
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return executor.isShutdown();
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return executor.isTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return executor.awaitTermination(timeout, unit);
+  }
+
+}
@@ -48,8 +48,13 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 
 import org.jdiameter.api.Configuration;
 import org.jdiameter.client.impl.helpers.Parameters;
@@ -58,6 +63,8 @@ import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.jdiameter.common.api.statistic.IStatistic;
 import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  *
@@ -66,9 +73,19 @@ import org.jdiameter.common.api.statistic.IStatisticRecord;
  */
 public class ConcurrentFactory implements IConcurrentFactory {
 
+  private static final Logger logger = LoggerFactory.getLogger(ConcurrentFactory.class);
+
+  public static final String THREADS_VIRTUAL = "virtual";
+
+  // sessions sharing a stripe are delivered one after the other, a power of two
+  private static final int LISTENER_STRIPES = 256;
+
   private BaseThreadFactory threadFactory;
 
   private Map<String, CommonScheduledExecutorService> scheduledExecutorServices;
+  private Map<String, CommonExecutorService> executorServices = new ConcurrentHashMap<String, CommonExecutorService>();
+  // empty when plain session listeners are called inline
+  private volatile SerialExecutor[] listenerExecutors;
   private Configuration[] config;
   private IStatisticManager statisticFactory;
   private IStatistic statistic;
@@ -193,6 +210,93 @@ public class ConcurrentFactory implements IConcurrentFactory {
     }
   }
 
+  @Override
+  public ExecutorService getExecutorService(String name) {
+    CommonExecutorService service = executorServices.get(name);
+    if (service == null) {
+      synchronized (ConcurrentFactory.class) {
+        service = executorServices.get(name);
+        if (service == null) {
+          Configuration c = getConfigByName(name);
+          String threads = c != null ? c.getStringValue(Parameters.ConcurrentEntityThreads.ordinal(), "") : "";
+          String threadName = c != null ? c.getStringValue(Parameters.ConcurrentEntityDescription.ordinal(), name) : name;
+          int size = c != null ? c.getIntValue(Parameters.ConcurrentEntityPoolSize.ordinal(), 0) : 0;
+          size = size > 0 ? size : Runtime.getRuntime().availableProcessors();
+          ExecutorService executor;
+          if (THREADS_VIRTUAL.equalsIgnoreCase(threads)) {
+            executor = newVirtualThreadExecutor(threadName, size);
+          }
+          else {
+            executor = newWorkStealingPool(threadName, size);
+          }
+          service = new CommonExecutorService(name, executor, entityFactory, statisticFactory);
+          executorServices.put(name, service);
+        }
+      }
+    }
+    return service;
+  }
+
+  @Override
+  public Executor getSessionListenerExecutor(String sessionId) {
+    SerialExecutor[] executors = listenerExecutors;
+    if (executors == null) {
+      synchronized (this) {
+        executors = listenerExecutors;
+        if (executors == null) {
+          String name = ExecServices.SessionListener.name();
+          if (getConfigByName(name) == null) {
+            executors = new SerialExecutor[0];
+          }
+          else {
+            ExecutorService service = getExecutorService(name);
+            executors = new SerialExecutor[LISTENER_STRIPES];
+            for (int i = 0; i < executors.length; i++) {
+              executors[i] = new SerialExecutor(service);
+            }
+          }
+          listenerExecutors = executors;
+        }
+      }
+    }
+    if (executors.length == 0) {
+      return null;
+    }
+    int h = sessionId == null ? 0 : sessionId.hashCode();
+    return executors[(h ^ (h >>> 16)) & (executors.length - 1)];
+  }
+
+  private static ExecutorService newWorkStealingPool(final String threadName, int size) {
+    // asynchronous (FIFO) mode, tasks are never joined
+    return new ForkJoinPool(size, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+      @Override
+      public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) { };
+        thread.setName(threadName + "-" + thread.getPoolIndex());
+        return thread;
+      }
+    }, null, true);
+  }
+
+  /**
+   * A thread per task executor over virtual threads, looked up by reflection since they are not part of the
+   * platform this is built for. Falls back to the work stealing pool of the given size.
+   */
+  private static ExecutorService newVirtualThreadExecutor(String threadName, int size) {
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadName + "-", 0L);
+      ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+      return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+    }
+    catch (Exception e) {
+      logger.warn("Virtual threads are not available in this JVM, [{}] tasks run on a work stealing pool of {} threads",
+          threadName, size);
+      return newWorkStealingPool(threadName, size);
+    }
+  }
+
   @Override
   public IStatistic getStatistic() {
     return statistic;
@@ -205,6 +309,9 @@ public class ConcurrentFactory implements IConcurrentFactory {
     for (CommonScheduledExecutorService e : scheduledExecutorServices.values()) {
       statistics.add(e.getStatistic());
     }
+    for (CommonExecutorService e : executorServices.values()) {
+      statistics.add(e.getStatistic());
+    }
     return statistics;
   }
 
@@ -214,6 +321,10 @@ public class ConcurrentFactory implements IConcurrentFactory {
       ExecutorService e = scheduledExecutorServices.remove(name);
       e.shutdownNow();
     }
+    for (String name : executorServices.keySet()) {
+      executorServices.remove(name).shutdownNow();
+    }
+    listenerExecutors = null;
 
   }
 }
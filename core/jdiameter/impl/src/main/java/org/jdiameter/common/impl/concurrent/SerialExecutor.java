@@ -0,0 +1,414 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Mailbox running its tasks in submission order, one at a time, on a shared executor.<br/><br/>
+ *
+ * A mailbox holds no thread: when a task is submitted to an idle mailbox a drain task is handed to the shared
+ * executor, which runs up to {@link #BATCH_SIZE} tasks and then yields the thread back if more are queued.
+ * So a busy mailbox never blocks pool threads waiting for its turn.
+ * <p>
+ * Threads outside the mailbox (application threads sending, timers) join the same serialization through
+ * {@link #getLock()}. Holding the lock makes the caller the running task of the mailbox: it runs inline if the
+ * mailbox is idle, otherwise it waits for the batch being drained. Tasks submitted meanwhile are only queued,
+ * so pool threads never park behind the lock holder. The lock is reentrant, and tasks run by the mailbox
+ * already hold it. Waiting on a condition of the lock gives the mailbox up until the waiter is signalled.
+ */
+public class SerialExecutor implements Executor {
+
+  private static final Logger logger = LoggerFactory.getLogger(SerialExecutor.class);
+
+  public static final int BATCH_SIZE = 32;
+
+  private final Executor executor;
+  private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+  // threads waiting for the lock, handed the mailbox in turn with drain batches
+  private final Queue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+  // set while a drain is scheduled or running, or the lock is held
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+  private volatile Thread owner;
+  // touched by the owner only
+  private int holds;
+
+  private final Lock lock = new MailboxLock();
+
+  private final Runnable drain = new Runnable() {
+    @Override
+    public void run() {
+      drain();
+    }
+  };
+
+  public SerialExecutor(Executor executor) {
+    if (executor == null) {
+      throw new IllegalArgumentException("Executor must not be null");
+    }
+    this.executor = executor;
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    if (task == null) {
+      throw new NullPointerException();
+    }
+    tasks.offer(task);
+    if (scheduled.compareAndSet(false, true)) {
+      try {
+        executor.execute(drain);
+      }
+      catch (RejectedExecutionException e) {
+        tasks.clear();
+        release();
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * @return lock serializing its holder with the tasks of this mailbox
+   */
+  public Lock getLock() {
+    return lock;
+  }
+
+  private void drain() {
+    owner = Thread.currentThread();
+    holds = 1;
+    int count = 0;
+    Runnable task;
+    try {
+      while (count < BATCH_SIZE && (task = tasks.poll()) != null) {
+        try {
+          task.run();
+        }
+        catch (Throwable t) {
+          logger.warn("Task failed in serial executor", t);
+        }
+        count++;
+      }
+    }
+    finally {
+      holds = 0;
+      release(true);
+    }
+  }
+
+  private void release() {
+    release(false);
+  }
+
+  /**
+   * Hand the mailbox to the next lock waiter or drain, or make it idle. Called by the owner only.
+   *
+   * @param waitersFirst true to let a waiting thread in before the next drain batch
+   */
+  private void release(boolean waitersFirst) {
+    while (true) {
+      Thread next = waitersFirst || tasks.isEmpty() ? waiters.poll() : null;
+      if (next != null) {
+        owner = next;
+        LockSupport.unpark(next);
+        return;
+      }
+      owner = null;
+      if (!tasks.isEmpty()) {
+        try {
+          executor.execute(drain);
+          return;
+        }
+        catch (RejectedExecutionException e) {
+          logger.debug("Serial executor tasks dropped, executor is shut down");
+          tasks.clear();
+        }
+      }
+      scheduled.set(false);
+      // tasks or waiters that came after the checks above
+      if ((tasks.isEmpty() && waiters.isEmpty()) || !scheduled.compareAndSet(false, true)) {
+        return;
+      }
+      owner = Thread.currentThread();
+      waitersFirst = true;
+    }
+  }
+
+  /**
+   * @return number of queued tasks
+   */
+  public int getQueueSize() {
+    return tasks.size();
+  }
+
+  public boolean isScheduled() {
+    return scheduled.get();
+  }
+
+  private final class MailboxLock implements Lock {
+
+    @Override
+    public void lock() {
+      acquire(false, 0);
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+      if (!acquire(true, 0)) {
+        throw new InterruptedException();
+      }
+    }
+
+    @Override
+    public boolean tryLock() {
+      Thread current = Thread.currentThread();
+      if (owner == current) {
+        holds++;
+        return true;
+      }
+      if (scheduled.compareAndSet(false, true)) {
+        owner = current;
+        holds = 1;
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      return acquire(true, System.nanoTime() + Math.max(1, unit.toNanos(time)));
+    }
+
+    @Override
+    public void unlock() {
+      if (owner != Thread.currentThread()) {
+        throw new IllegalMonitorStateException();
+      }
+      if (--holds == 0) {
+        release(false);
+      }
+    }
+
+    @Override
+    public Condition newCondition() {
+      return new MailboxCondition();
+    }
+
+    /**
+     * @param interruptible true to give up when interrupted
+     * @param deadline {@link System#nanoTime()} to give up at, zero to wait for ever
+     * @return true if the lock was taken
+     */
+    private boolean acquire(boolean interruptible, long deadline) {
+      if (tryLock()) {
+        return true;
+      }
+      Thread current = Thread.currentThread();
+      waiters.offer(current);
+      boolean interrupted = false;
+      while (true) {
+        if (owner == current) {
+          // handed over by the previous owner
+          holds = 1;
+          break;
+        }
+        if (scheduled.compareAndSet(false, true)) {
+          waiters.remove(current);
+          owner = current;
+          holds = 1;
+          break;
+        }
+        long remaining = deadline == 0 ? 0 : deadline - System.nanoTime();
+        if ((interruptible && Thread.interrupted()) || (deadline != 0 && remaining <= 0)) {
+          if (!waiters.remove(current)) {
+            // already handed over, pass it on
+            while (owner != current) {
+              Thread.yield();
+            }
+            release(false);
+          }
+          return false;
+        }
+        if (deadline == 0) {
+          LockSupport.park(this);
+        }
+        else {
+          LockSupport.parkNanos(this, remaining);
+        }
+        if (!interruptible && Thread.interrupted()) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        current.interrupt();
+      }
+      return true;
+    }
+  }
+
+  private final class MailboxCondition implements Condition {
+
+    // touched by the owner only
+    private final Queue<Waiter> waiting = new ArrayDeque<Waiter>();
+
+    @Override
+    public void await() throws InterruptedException {
+      await(true, 0);
+    }
+
+    @Override
+    public void awaitUninterruptibly() {
+      try {
+        await(false, 0);
+      }
+      catch (InterruptedException e) {
+        // not thrown when uninterruptible
+      }
+    }
+
+    @Override
+    public long awaitNanos(long nanosTimeout) throws InterruptedException {
+      long deadline = System.nanoTime() + Math.max(1, nanosTimeout);
+      await(true, deadline);
+      return deadline - System.nanoTime();
+    }
+
+    @Override
+    public boolean await(long time, TimeUnit unit) throws InterruptedException {
+      return await(true, System.nanoTime() + Math.max(1, unit.toNanos(time)));
+    }
+
+    @Override
+    public boolean awaitUntil(Date deadline) throws InterruptedException {
+      return await(deadline.getTime() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void signal() {
+      if (owner != Thread.currentThread()) {
+        throw new IllegalMonitorStateException();
+      }
+      Waiter waiter = waiting.poll();
+      if (waiter != null) {
+        waiter.signal();
+      }
+    }
+
+    @Override
+    public void signalAll() {
+      if (owner != Thread.currentThread()) {
+        throw new IllegalMonitorStateException();
+      }
+      Waiter waiter;
+      while ((waiter = waiting.poll()) != null) {
+        waiter.signal();
+      }
+    }
+
+    /**
+     * Gives the mailbox up until signalled, then takes it back with the holds the caller had.
+     *
+     * @param interruptible true to give up when interrupted
+     * @param deadline {@link System#nanoTime()} to give up at, zero to wait for ever
+     * @return true if signalled
+     */
+    private boolean await(boolean interruptible, long deadline) throws InterruptedException {
+      Thread current = Thread.currentThread();
+      if (owner != current) {
+        throw new IllegalMonitorStateException();
+      }
+      if (interruptible && Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      Waiter waiter = new Waiter(current);
+      waiting.offer(waiter);
+      int saved = holds;
+      holds = 0;
+      release(false);
+
+      boolean interrupted = false;
+      while (!waiter.signalled) {
+        if (Thread.interrupted()) {
+          interrupted = true;
+          if (interruptible) {
+            break;
+          }
+        }
+        long remaining = deadline == 0 ? 0 : deadline - System.nanoTime();
+        if (deadline != 0 && remaining <= 0) {
+          break;
+        }
+        if (deadline == 0) {
+          LockSupport.park(this);
+        }
+        else {
+          LockSupport.parkNanos(this, remaining);
+        }
+      }
+
+      lock.lock();
+      holds = saved;
+      // a signal that came after giving up is taken, as if given up after it
+      boolean signalled = waiter.signalled;
+      if (!signalled) {
+        waiting.remove(waiter);
+        if (interrupted && interruptible) {
+          throw new InterruptedException();
+        }
+      }
+      if (interrupted) {
+        current.interrupt();
+      }
+      return signalled;
+    }
+  }
+
+  private static final class Waiter {
+
+    private final Thread thread;
+    private volatile boolean signalled;
+
+    Waiter(Thread thread) {
+      this.thread = thread;
+    }
+
+    void signal() {
+      signalled = true;
+      LockSupport.unpark(thread);
+    }
+  }
+}
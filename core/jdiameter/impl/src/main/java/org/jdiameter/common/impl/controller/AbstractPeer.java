@@ -44,17 +44,23 @@ package org.jdiameter.common.impl.controller;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.jdiameter.api.IllegalDiameterStateException;
 import org.jdiameter.api.InternalException;
+import org.jdiameter.api.Message;
 import org.jdiameter.api.Peer;
 import org.jdiameter.api.URI;
+import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.impl.helpers.UIDGenerator;
+import org.jdiameter.common.api.statistic.IHistogram;
 import org.jdiameter.common.api.statistic.IStatistic;
 import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
+import org.jdiameter.common.impl.statistic.HistogramCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -75,6 +81,15 @@ public class AbstractPeer implements Comparable<Peer> {
   protected List<IStatisticRecord> perSecondRecords = new ArrayList<IStatisticRecord>();
   protected URI uri;
   protected IStatisticManager statisticFactory;
+  protected final HistogramCache histograms;
+
+  // Requests sent and still waiting for answer, kept apart from statistics as routers depend on it
+  protected final AtomicInteger outstandingRequests = new AtomicInteger();
+  // Answer latency EWMA and timing of last timeout/recovery, in System.nanoTime() units.
+  // Long.MIN_VALUE until it happens, any other value may be a genuine nanoTime
+  protected final AtomicLong answerLatency = new AtomicLong();
+  protected volatile long lastTimeoutTime = Long.MIN_VALUE;
+  protected volatile long okayTime = Long.MIN_VALUE;
 
   //Added locks to make statistics creation and removal thread safe
   private Lock statisticsLock = new ReentrantLock();
@@ -82,6 +97,7 @@ public class AbstractPeer implements Comparable<Peer> {
   public AbstractPeer(URI uri, IStatisticManager statisticFactory) {
     this.uri = uri;
     this.statisticFactory = statisticFactory;
+    this.histograms = new HistogramCache(statisticFactory, uri == null ? "local" : uri.toString());
   }
 
   protected void createPeerStatistics() {
@@ -123,13 +139,14 @@ public class AbstractPeer implements Comparable<Peer> {
       perSecondRecords.add(netGenCPSResponseCounter);
 
       IStatisticRecord sysGenResponseCounter = statisticFactory.newCounterRecord(IStatisticRecord.Counters.SysGenResponse);
+      IStatisticRecord shedRequestCounter = statisticFactory.newCounterRecord(IStatisticRecord.Counters.ShedRequest);
 
       this.statistic = statisticFactory.newStatistic(uriString, IStatistic.Groups.Peer,
           appGenRequestCounter, appGenCPSRequestCounter, appGenRejectedRequestCounter,
           appGenResponseCounter, appGenCPSResponseCounter, appGenRejectedResponseCounter,
           netGenRequestCounter, netGenCPSRequestCounter, netGenRejectedRequestCounter,
           netGenResponseCounter, netGenCPSResponseCounter, netGenRejectedResponseCounter,
-          sysGenResponseCounter
+          sysGenResponseCounter, shedRequestCounter
           );
     }
     finally {
@@ -165,6 +182,89 @@ public class AbstractPeer implements Comparable<Peer> {
     }
   }
 
+  /**
+   * Return number of requests sent to this peer which are still waiting for an answer
+   *
+   * @return number of outstanding requests
+   */
+  public int getOutstandingRequests() {
+    return outstandingRequests.get();
+  }
+
+  /**
+   * Return smoothed time between sending a request to this peer and receiving its answer
+   *
+   * @return answer latency in nanoseconds or 0 if unknown
+   */
+  public long getAnswerLatency() {
+    return answerLatency.get();
+  }
+
+  /**
+   * Return the time of the last request to this peer which expired without answer
+   *
+   * @return System.nanoTime() of last timeout or Long.MIN_VALUE if none
+   */
+  public long getLastTimeoutTime() {
+    return lastTimeoutTime;
+  }
+
+  /**
+   * Return the time when this peer last entered OKAY state
+   *
+   * @return System.nanoTime() of last transition to OKAY or Long.MIN_VALUE if never
+   */
+  public long getOkayTime() {
+    return okayTime;
+  }
+
+  /**
+   * Add an answer latency sample to the moving average. New samples weigh 1/8, as for TCP smoothed RTT.
+   *
+   * @param latency time between request sending and answer reception, in nanoseconds
+   */
+  protected void updateAnswerLatency(long latency) {
+    long sample = Math.max(1, latency);
+    long current;
+    long updated;
+    do {
+      current = answerLatency.get();
+      updated = current == 0 ? sample : current + ((sample - current) >> 3);
+    } while (!answerLatency.compareAndSet(current, updated));
+  }
+
+  /**
+   * Add a sample to the latency histogram of this peer for application and command of given message
+   *
+   * @param type kind of measured latency
+   * @param message message identifying application id and command code
+   * @param nanos measured duration, in nanoseconds
+   */
+  protected void recordLatency(IHistogram.Type type, Message message, long nanos) {
+    if (statisticFactory.isOn()) {
+      histograms.get(type, message.getApplicationId(), message.getCommandCode()).record(nanos);
+    }
+  }
+
+  /**
+   * Hands lifecycle trace of a processed request over to its answer, so the trace ends when the answer is written.
+   * Without an immediate answer the trace of the request is completed.
+   *
+   * @param request processed request
+   * @param answer answer returned by listener or null
+   */
+  protected void continueTrace(IMessage request, IMessage answer) {
+    if (request.getTrace() != null) {
+      if (answer != null) {
+        answer.setTrace(request.getTrace());
+        request.setTrace(null);
+      }
+      else {
+        statisticFactory.getMessageTracer().complete(request);
+      }
+    }
+  }
+
   @Override
   public int compareTo(Peer o) {
     return uri.compareTo(o.getUri());
@@ -42,13 +42,14 @@
 
 package org.jdiameter.common.impl.data;
 
+import static org.jdiameter.client.impl.helpers.Parameters.SessionStoreCapacity;
+
 import java.util.HashMap;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.jdiameter.api.BaseSession;
+import org.jdiameter.api.Configuration;
 import org.jdiameter.api.NetworkReqListener;
 import org.jdiameter.client.api.IContainer;
-import org.jdiameter.client.api.ISession;
 import org.jdiameter.common.api.app.IAppSessionData;
 import org.jdiameter.common.api.app.IAppSessionDataFactory;
 import org.jdiameter.common.api.app.acc.IAccSessionData;
@@ -93,11 +94,24 @@ public class LocalDataSource implements ISessionDatasource {
   protected HashMap<Class<? extends IAppSessionData>, IAppSessionDataFactory<? extends IAppSessionData>> appSessionDataFactories =
       new HashMap<Class<? extends IAppSessionData>, IAppSessionDataFactory<? extends IAppSessionData>>();
 
-  private ConcurrentHashMap<String, SessionEntry> sessionIdToEntry = new ConcurrentHashMap<String, LocalDataSource.SessionEntry>();
+  // sessions and their listeners, see SessionStore
+  private final SessionStore sessions;
 
   private static final Logger logger = LoggerFactory.getLogger(LocalDataSource.class);
 
   public LocalDataSource() {
+    this(0);
+  }
+
+  public LocalDataSource(IContainer container) {
+    this(getCapacity(container));
+  }
+
+  /**
+   * @param capacity maximum number of sessions, zero or less for unlimited
+   */
+  public LocalDataSource(int capacity) {
+    sessions = new SessionStore(SessionStore.DEFAULT_STRIPES, capacity);
     appSessionDataFactories.put(ICCASessionData.class, new CCALocalSessionDataFactory());
     appSessionDataFactories.put(IRoSessionData.class, new RoLocalSessionDataFactory());
     appSessionDataFactories.put(IRfSessionData.class, new RfLocalSessionDataFactory());
@@ -113,83 +127,65 @@ public class LocalDataSource implements ISessionDatasource {
     appSessionDataFactories.put(ISLgSessionData.class, new SLgLocalSessionDataFactory());
   }
 
-  public LocalDataSource(IContainer container) {
-    this();
+  private static int getCapacity(IContainer container) {
+    Configuration config = container != null ? container.getConfiguration() : null;
+    return config != null ? config.getIntValue(SessionStoreCapacity.ordinal(), (Integer) SessionStoreCapacity.defValue()) :
+      (Integer) SessionStoreCapacity.defValue();
   }
 
   @Override
   public boolean exists(String sessionId) {
-    return this.sessionIdToEntry.containsKey(sessionId);
+    return this.sessions.contains(sessionId);
   }
 
   @Override
   public void setSessionListener(String sessionId, NetworkReqListener data) {
     logger.debug("setSessionListener({}, {})", sessionId, data);
 
-    SessionEntry se = sessionIdToEntry.get(sessionId);
-    if (se != null) {
-      se.listener = data;
-    }
-    else {
+    if (!sessions.setListener(sessionId, data)) {
       throw new IllegalArgumentException("No Session entry for id: " + sessionId);
     }
   }
 
   @Override
   public NetworkReqListener getSessionListener(String sessionId) {
-    SessionEntry se = sessionIdToEntry.get(sessionId);
-    logger.debug("getSessionListener({}) => {}", sessionId, se);
-    return se != null ? se.listener : null;
+    NetworkReqListener lst = sessions.getListener(sessionId);
+    logger.debug("getSessionListener({}) => {}", sessionId, lst);
+    return lst;
   }
 
   @Override
   public NetworkReqListener removeSessionListener(String sessionId) {
-    SessionEntry se = sessionIdToEntry.get(sessionId);
-    logger.debug("removeSessionListener({}) => {}", sessionId, se);
-    if (se != null) {
-      NetworkReqListener lst = se.listener;
-      se.listener = null;
-      return lst;
-    }
-    else {
-      return null;
-    }
+    NetworkReqListener lst = sessions.removeListener(sessionId);
+    logger.debug("removeSessionListener({}) => {}", sessionId, lst);
+    return lst;
   }
 
   @Override
   public void addSession(BaseSession session) {
     logger.debug("addSession({})", session);
-    SessionEntry se = null;
-
-    String sessionId = session.getSessionId();
     //FIXME: check here replicable vs not replicable?
-    if (this.sessionIdToEntry.containsKey(sessionId)) {
-      se = this.sessionIdToEntry.get(sessionId);
-      if ( !(se.session instanceof ISession) || se.session.isReplicable()) { //must be not replicable so we can "overwrite"
-        throw new IllegalArgumentException("Sessin with id: " + sessionId + ", already exists!");
-      }
-      else {
-        this.sessionIdToEntry.put(sessionId, se);
-      }
-    }
-    else {
-      se = new SessionEntry();
-    }
-    se.session = session;
-    this.sessionIdToEntry.put(session.getSessionId(), se);
+    this.sessions.add(session);
   }
 
   @Override
   public BaseSession getSession(String sessionId) {
-    SessionEntry se = sessionIdToEntry.get(sessionId);
-    logger.debug("getSession({}) => {}", sessionId, se);
-    return se != null ? se.session : null;
+    BaseSession session = sessions.getSession(sessionId);
+    logger.debug("getSession({}) => {}", sessionId, session);
+    return session;
   }
 
   @Override
   public void removeSession(String sessionId) {
-    SessionEntry se = this.sessionIdToEntry.remove(sessionId);
-    logger.debug("removeSession({}) => {}", sessionId, se);
+    BaseSession session = this.sessions.remove(sessionId);
+    logger.debug("removeSession({}) => {}", sessionId, session);
+  }
+
+  /**
+   * @return the session store, to read its size, per stripe statistics and rejected sessions count
+   */
+  public SessionStore getSessionStore() {
+    return sessions;
   }
 
 
@@ -219,18 +215,7 @@ public class LocalDataSource implements ISessionDatasource {
 
   @Override
   public String toString() {
-    return "LocalDataSource [sessionIdToEntry=" + sessionIdToEntry + "]";
-  }
-
-  //simple class to reduce collections overhead.
-  private class SessionEntry {
-    BaseSession session;
-    NetworkReqListener listener;
-
-    @Override
-    public String toString() {
-      return "SessionEntry [session=" + session + ", listener=" + listener + "]";
-    }
+    return "LocalDataSource [sessions=" + sessions + "]";
   }
 
   /*
@@ -0,0 +1,99 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.data;
+
+import org.jdiameter.client.api.IContainer;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.common.api.app.gx.IGxSessionData;
+import org.jdiameter.common.api.app.ro.IRoSessionData;
+import org.jdiameter.common.impl.app.AppSessionDataOffHeapImpl;
+import org.jdiameter.common.impl.app.gx.GxOffHeapSessionDataFactory;
+import org.jdiameter.common.impl.app.ro.RoOffHeapSessionDataFactory;
+
+/**
+ * {@link LocalDataSource} which keeps the data of credit control sessions (Ro, Gx) in an {@link OffHeapSlab}
+ * instead of heap objects, so the heap used per session no longer depends on its state. Other applications
+ * use the local factories. Enabled in the extensions section of the configuration:
+ *
+ * <pre>
+ * &lt;SessionDatasource value="org.jdiameter.common.impl.data.OffHeapDataSource"/&gt;
+ * </pre>
+ */
+public class OffHeapDataSource extends LocalDataSource {
+
+  private final OffHeapSlab slab = new OffHeapSlab();
+  protected final IContainer container;
+  private volatile IMessageParser messageParser;
+
+  public OffHeapDataSource(IContainer container) {
+    super(container);
+    this.container = container;
+    registerFactories();
+  }
+
+  /**
+   * @param capacity maximum number of sessions, zero or less for unlimited
+   * @param messageParser parser used to encode buffered requests
+   */
+  public OffHeapDataSource(int capacity, IMessageParser messageParser) {
+    super(capacity);
+    this.container = null;
+    this.messageParser = messageParser;
+    registerFactories();
+  }
+
+  private void registerFactories() {
+    appSessionDataFactories.put(IRoSessionData.class, new RoOffHeapSessionDataFactory(this));
+    appSessionDataFactories.put(IGxSessionData.class, new GxOffHeapSessionDataFactory(this));
+  }
+
+  public OffHeapSlab getSlab() {
+    return slab;
+  }
+
+  /**
+   * @return data of the session restored by this datasource and not yet claimed, null if none
+   */
+  public <T extends AppSessionDataOffHeapImpl> T getRestoredData(String sessionId, Class<T> dataClass) {
+    return null;
+  }
+
+  /**
+   * Called by the off heap factories for each new session data.
+   */
+  public void dataCreated(AppSessionDataOffHeapImpl data) {
+    // NOP
+  }
+
+  public IMessageParser getMessageParser() {
+    // the parser may not be assembled yet when the datasource is created
+    if (messageParser == null && container != null) {
+      messageParser = container.getAssemblerFacility().getComponentInstance(IMessageParser.class);
+    }
+    return messageParser;
+  }
+
+  @Override
+  public String toString() {
+    return "OffHeapDataSource [sessions=" + getSessionStore() + ", slab=" + slab + "]";
+  }
+
+}
@@ -0,0 +1,435 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.data;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Allocator of fixed size records kept outside of the java heap, addressed by an int handle.<br/><br/>
+ *
+ * Records live in direct buffers of {@link #SEGMENT_RECORDS} records each, segments are added as the slab
+ * grows and never returned, freed handles are reused. Next to its bytes each record has a few reference
+ * slots for values which can not be stored off heap (timer handles). A slot may instead hold variable length
+ * data (encoded messages), kept off heap as well in a chain of {@link #CHUNK_SIZE} byte chunks.
+ * <p>
+ * A record allocated for an owner object is reclaimed once the owner is garbage collected without having
+ * freed it, so a lost owner does not leak its record: reclaimed records are counted by {@link #getReclaimed()}
+ * and swept on allocation or by {@link #reclaim()}.
+ * <p>
+ * Allocation and release are synchronized, record access is not: a handle must be accessed by its owner only.
+ */
+public class OffHeapSlab {
+
+  public static final int DEFAULT_RECORD_SIZE = 16;
+  public static final int DEFAULT_REFERENCES = 3;
+
+  public static final int SEGMENT_SHIFT = 12;
+  public static final int SEGMENT_RECORDS = 1 << SEGMENT_SHIFT;
+  private static final int SEGMENT_MASK = SEGMENT_RECORDS - 1;
+
+  public static final int CHUNK_SIZE = 256;
+  private static final int CHUNK_SEGMENT_SHIFT = 10;
+  private static final int CHUNK_SEGMENT_CHUNKS = 1 << CHUNK_SEGMENT_SHIFT;
+  private static final int CHUNK_SEGMENT_MASK = CHUNK_SEGMENT_CHUNKS - 1;
+  // each chunk starts with its next chunk + 1, zero for the last one
+  private static final int CHUNK_PAYLOAD = CHUNK_SIZE - 4;
+
+  // per reference slot, first chunk + 1 and data length + 1, both zero when the slot holds no data
+  private static final int LINK_SIZE = 8;
+
+  private final int recordSize;
+  private final int references;
+
+  private volatile ByteBuffer[] segments = new ByteBuffer[0];
+  private volatile Object[][] referenceSegments = new Object[0][];
+  private volatile ByteBuffer[] linkSegments = new ByteBuffer[0];
+  private volatile ByteBuffer[] chunkSegments = new ByteBuffer[0];
+
+  // stack of freed handles
+  private int[] free = new int[SEGMENT_RECORDS];
+  private int freeCount;
+  // first never allocated handle
+  private int top;
+
+  // stack of freed chunks
+  private int[] freeChunks = new int[CHUNK_SEGMENT_CHUNKS];
+  private int freeChunkCount;
+  // first never allocated chunk
+  private int topChunk;
+
+  // owners of allocated records, by handle
+  private Owner[] owners = new Owner[0];
+  private final ReferenceQueue<Object> ownerQueue = new ReferenceQueue<Object>();
+  private long reclaimed;
+
+  public OffHeapSlab() {
+    this(DEFAULT_RECORD_SIZE, DEFAULT_REFERENCES);
+  }
+
+  /**
+   * @param recordSize size of each record, in bytes
+   * @param references number of reference slots of each record
+   */
+  public OffHeapSlab(int recordSize, int references) {
+    if (recordSize <= 0 || references < 0) {
+      throw new IllegalArgumentException("Invalid record size " + recordSize + " or references " + references);
+    }
+    this.recordSize = recordSize;
+    this.references = references;
+  }
+
+  /**
+   * @return handle of a zeroed record
+   */
+  public synchronized int allocate() {
+    reclaim();
+    if (freeCount > 0) {
+      return free[--freeCount];
+    }
+    int handle = top;
+    if ((handle >>> SEGMENT_SHIFT) == segments.length) {
+      grow();
+    }
+    top++;
+    return handle;
+  }
+
+  /**
+   * @param owner object the record belongs to, the record is reclaimed once it is garbage collected
+   * @return handle of a zeroed record
+   */
+  public synchronized int allocate(Object owner) {
+    int handle = allocate();
+    if (handle >= owners.length) {
+      owners = Arrays.copyOf(owners, getCapacity());
+    }
+    owners[handle] = new Owner(owner, handle, ownerQueue);
+    return handle;
+  }
+
+  /**
+   * Free the records of owners which were garbage collected without freeing them.
+   *
+   * @return number of records freed
+   */
+  public synchronized int reclaim() {
+    int count = 0;
+    Reference<?> reference;
+    while ((reference = ownerQueue.poll()) != null) {
+      Owner owner = (Owner) reference;
+      // the handle may have been freed, and allocated again, since
+      if (owner.handle < owners.length && owners[owner.handle] == owner) {
+        free(owner.handle);
+        count++;
+      }
+    }
+    reclaimed += count;
+    return count;
+  }
+
+  /**
+   * Zero the record and its reference slots, free their data and make the handle available again.
+   */
+  public synchronized void free(int handle) {
+    if (handle < 0 || handle >= top) {
+      throw new IllegalArgumentException("Invalid handle " + handle);
+    }
+    if (handle < owners.length && owners[handle] != null) {
+      owners[handle].clear();
+      owners[handle] = null;
+    }
+    ByteBuffer segment = segments[handle >>> SEGMENT_SHIFT];
+    int offset = (handle & SEGMENT_MASK) * recordSize;
+    for (int i = 0; i < recordSize; i++) {
+      segment.put(offset + i, (byte) 0);
+    }
+    if (references > 0) {
+      Arrays.fill(referenceSegments[handle >>> SEGMENT_SHIFT], (handle & SEGMENT_MASK) * references,
+          ((handle & SEGMENT_MASK) + 1) * references, null);
+      for (int i = 0; i < references; i++) {
+        freeData(handle, i);
+      }
+    }
+    if (freeCount == free.length) {
+      free = Arrays.copyOf(free, free.length << 1);
+    }
+    free[freeCount++] = handle;
+  }
+
+  private void grow() {
+    int n = segments.length;
+    ByteBuffer[] newSegments = Arrays.copyOf(segments, n + 1);
+    newSegments[n] = ByteBuffer.allocateDirect(SEGMENT_RECORDS * recordSize);
+    Object[][] newReferenceSegments = Arrays.copyOf(referenceSegments, n + 1);
+    newReferenceSegments[n] = new Object[SEGMENT_RECORDS * references];
+    ByteBuffer[] newLinkSegments = Arrays.copyOf(linkSegments, n + 1);
+    newLinkSegments[n] = ByteBuffer.allocateDirect(SEGMENT_RECORDS * references * LINK_SIZE);
+    // references first, a reader which sees the new segment also sees its reference slots
+    referenceSegments = newReferenceSegments;
+    linkSegments = newLinkSegments;
+    segments = newSegments;
+  }
+
+  private int allocateChunk() {
+    if (freeChunkCount > 0) {
+      return freeChunks[--freeChunkCount];
+    }
+    int chunk = topChunk;
+    if ((chunk >>> CHUNK_SEGMENT_SHIFT) == chunkSegments.length) {
+      ByteBuffer[] newChunkSegments = Arrays.copyOf(chunkSegments, chunkSegments.length + 1);
+      newChunkSegments[chunkSegments.length] = ByteBuffer.allocateDirect(CHUNK_SEGMENT_CHUNKS * CHUNK_SIZE);
+      chunkSegments = newChunkSegments;
+    }
+    topChunk++;
+    return chunk;
+  }
+
+  private void freeData(int handle, int index) {
+    ByteBuffer links = linkSegments[handle >>> SEGMENT_SHIFT];
+    int position = link(handle, index);
+    int chunk = links.getInt(position) - 1;
+    while (chunk >= 0) {
+      if (freeChunkCount == freeChunks.length) {
+        freeChunks = Arrays.copyOf(freeChunks, freeChunks.length << 1);
+      }
+      freeChunks[freeChunkCount++] = chunk;
+      chunk = chunkSegments[chunk >>> CHUNK_SEGMENT_SHIFT].getInt((chunk & CHUNK_SEGMENT_MASK) * CHUNK_SIZE) - 1;
+    }
+    links.putInt(position, 0);
+    links.putInt(position + 4, 0);
+  }
+
+  public byte getByte(int handle, int offset) {
+    return segments[handle >>> SEGMENT_SHIFT].get(position(handle, offset, 1));
+  }
+
+  public void putByte(int handle, int offset, byte value) {
+    segments[handle >>> SEGMENT_SHIFT].put(position(handle, offset, 1), value);
+  }
+
+  public int getInt(int handle, int offset) {
+    return segments[handle >>> SEGMENT_SHIFT].getInt(position(handle, offset, 4));
+  }
+
+  public void putInt(int handle, int offset, int value) {
+    segments[handle >>> SEGMENT_SHIFT].putInt(position(handle, offset, 4), value);
+  }
+
+  public long getLong(int handle, int offset) {
+    return segments[handle >>> SEGMENT_SHIFT].getLong(position(handle, offset, 8));
+  }
+
+  public void putLong(int handle, int offset, long value) {
+    segments[handle >>> SEGMENT_SHIFT].putLong(position(handle, offset, 8), value);
+  }
+
+  /**
+   * Copy the whole record to the given array, of at least record size length.
+   */
+  public void getBytes(int handle, byte[] dst) {
+    ByteBuffer segment = segments[handle >>> SEGMENT_SHIFT].duplicate();
+    segment.position(position(handle, 0, recordSize));
+    segment.get(dst, 0, recordSize);
+  }
+
+  /**
+   * Copy the whole record to the given buffer, at its position.
+   */
+  public void getBytes(int handle, ByteBuffer dst) {
+    ByteBuffer segment = segments[handle >>> SEGMENT_SHIFT].duplicate();
+    int position = position(handle, 0, recordSize);
+    segment.limit(position + recordSize);
+    segment.position(position);
+    dst.put(segment);
+  }
+
+  /**
+   * Overwrite the whole record with the given array, of at least record size length.
+   */
+  public void putBytes(int handle, byte[] src) {
+    ByteBuffer segment = segments[handle >>> SEGMENT_SHIFT].duplicate();
+    segment.position(position(handle, 0, recordSize));
+    segment.put(src, 0, recordSize);
+  }
+
+  /**
+   * @return object of the reference slot, null if it holds data
+   */
+  public Object getReference(int handle, int index) {
+    return referenceSegments[handle >>> SEGMENT_SHIFT][reference(handle, index)];
+  }
+
+  /**
+   * Set the object of the reference slot, freeing the data it held.
+   */
+  public void setReference(int handle, int index, Object value) {
+    if (hasData(handle, index)) {
+      synchronized (this) {
+        freeData(handle, index);
+      }
+    }
+    referenceSegments[handle >>> SEGMENT_SHIFT][reference(handle, index)] = value;
+  }
+
+  /**
+   * @return true if the reference slot holds data, possibly empty
+   */
+  public boolean hasData(int handle, int index) {
+    return linkSegments[handle >>> SEGMENT_SHIFT].getInt(link(handle, index) + 4) != 0;
+  }
+
+  /**
+   * @return copy of the data of the reference slot, null if it holds none
+   */
+  public byte[] getData(int handle, int index) {
+    ByteBuffer links = linkSegments[handle >>> SEGMENT_SHIFT];
+    int position = link(handle, index);
+    int length = links.getInt(position + 4) - 1;
+    if (length < 0) {
+      return null;
+    }
+    byte[] data = new byte[length];
+    int chunk = links.getInt(position) - 1;
+    for (int offset = 0; offset < length; offset += CHUNK_PAYLOAD) {
+      ByteBuffer segment = chunkSegments[chunk >>> CHUNK_SEGMENT_SHIFT].duplicate();
+      segment.position((chunk & CHUNK_SEGMENT_MASK) * CHUNK_SIZE);
+      chunk = segment.getInt() - 1;
+      segment.get(data, offset, Math.min(CHUNK_PAYLOAD, length - offset));
+    }
+    return data;
+  }
+
+  /**
+   * Copy the data to chunks of the reference slot, replacing the data or object it held.
+   *
+   * @param data data to keep, null to free the slot
+   */
+  public synchronized void putData(int handle, int index, byte[] data) {
+    referenceSegments[handle >>> SEGMENT_SHIFT][reference(handle, index)] = null;
+    freeData(handle, index);
+    if (data == null) {
+      return;
+    }
+    int first = 0;
+    int previous = -1;
+    for (int offset = 0; offset < data.length; offset += CHUNK_PAYLOAD) {
+      int chunk = allocateChunk();
+      if (previous < 0) {
+        first = chunk + 1;
+      }
+      else {
+        chunkSegments[previous >>> CHUNK_SEGMENT_SHIFT].putInt((previous & CHUNK_SEGMENT_MASK) * CHUNK_SIZE, chunk + 1);
+      }
+      ByteBuffer segment = chunkSegments[chunk >>> CHUNK_SEGMENT_SHIFT].duplicate();
+      segment.position((chunk & CHUNK_SEGMENT_MASK) * CHUNK_SIZE);
+      segment.putInt(0);
+      segment.put(data, offset, Math.min(CHUNK_PAYLOAD, data.length - offset));
+      previous = chunk;
+    }
+    ByteBuffer links = linkSegments[handle >>> SEGMENT_SHIFT];
+    int position = link(handle, index);
+    links.putInt(position, first);
+    links.putInt(position + 4, data.length + 1);
+  }
+
+  private int position(int handle, int offset, int length) {
+    if (offset < 0 || offset + length > recordSize) {
+      throw new IndexOutOfBoundsException("Offset " + offset + " out of record of size " + recordSize);
+    }
+    return (handle & SEGMENT_MASK) * recordSize + offset;
+  }
+
+  private int reference(int handle, int index) {
+    if (index < 0 || index >= references) {
+      throw new IndexOutOfBoundsException("Reference " + index + " out of " + references);
+    }
+    return (handle & SEGMENT_MASK) * references + index;
+  }
+
+  private int link(int handle, int index) {
+    return reference(handle, index) * LINK_SIZE;
+  }
+
+  public int getRecordSize() {
+    return recordSize;
+  }
+
+  public int getReferences() {
+    return references;
+  }
+
+  /**
+   * @return number of allocated records
+   */
+  public synchronized int size() {
+    return top - freeCount;
+  }
+
+  /**
+   * @return number of records reclaimed from garbage collected owners, leaked by them
+   */
+  public synchronized long getReclaimed() {
+    return reclaimed;
+  }
+
+  /**
+   * @return number of records the current segments can hold
+   */
+  public int getCapacity() {
+    return segments.length * SEGMENT_RECORDS;
+  }
+
+  /**
+   * @return number of allocated data chunks
+   */
+  public synchronized int getChunks() {
+    return topChunk - freeChunkCount;
+  }
+
+  /**
+   * @return bytes reserved outside of the heap, for records and data
+   */
+  public long getOffHeapBytes() {
+    return (long) segments.length * SEGMENT_RECORDS * (recordSize + references * LINK_SIZE)
+        + (long) chunkSegments.length * CHUNK_SEGMENT_CHUNKS * CHUNK_SIZE;
+  }
+
+  @Override
+  public String toString() {
+    return "OffHeapSlab [size=" + size() + ", capacity=" + getCapacity() + ", chunks=" + getChunks()
+        + ", offHeapBytes=" + getOffHeapBytes() + ", reclaimed=" + getReclaimed() + "]";
+  }
+
+  private static final class Owner extends PhantomReference<Object> {
+
+    private final int handle;
+
+    Owner(Object owner, int handle, ReferenceQueue<Object> queue) {
+      super(owner, queue);
+      this.handle = handle;
+    }
+  }
+
+}
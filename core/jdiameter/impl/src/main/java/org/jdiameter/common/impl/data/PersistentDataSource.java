@@ -0,0 +1,304 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.data;
+
+import static org.jdiameter.client.impl.helpers.Parameters.SessionJournalCheckpointPeriod;
+import static org.jdiameter.client.impl.helpers.Parameters.SessionJournalFile;
+import static org.jdiameter.client.impl.helpers.Parameters.SessionJournalSize;
+import static org.jdiameter.common.api.concurrent.IConcurrentFactory.ScheduledExecServices.SessionJournalTimer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.api.BaseSession;
+import org.jdiameter.api.Configuration;
+import org.jdiameter.api.IllegalDiameterStateException;
+import org.jdiameter.api.NetworkReqListener;
+import org.jdiameter.api.app.AppSession;
+import org.jdiameter.client.api.IContainer;
+import org.jdiameter.client.api.ISessionFactory;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.common.api.app.IAppSessionFactory;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.api.timer.ITimerFacility;
+import org.jdiameter.common.impl.app.AppSessionDataOffHeapImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link OffHeapDataSource} which journals every change of the off heap session data to a memory mapped
+ * {@link SessionJournal}, compacted in the background periodically and when a segment is full. On start the sessions found in the journal are restored and
+ * their timers scheduled again with the remaining time, so a restarted node keeps its credit control sessions
+ * without a cluster. A restored session is rebuilt by its application session factory on first use (message,
+ * listener lookup or timer), as done by the replicated datasource. Enabled in the extensions section:
+ *
+ * <pre>
+ * &lt;SessionDatasource value="org.jdiameter.common.impl.data.PersistentDataSource"/&gt;
+ * </pre>
+ */
+public class PersistentDataSource extends OffHeapDataSource {
+
+  private static final Logger logger = LoggerFactory.getLogger(PersistentDataSource.class);
+
+  private final SessionJournal journal;
+  private final long checkpointPeriod;
+
+  // restored sessions not yet claimed by their application session factory
+  private final ConcurrentHashMap<String, AppSessionDataOffHeapImpl> restored = new ConcurrentHashMap<String, AppSessionDataOffHeapImpl>();
+
+  private ScheduledExecutorService checkpointScheduler;
+  private ScheduledFuture<?> checkpointHandler;
+
+  public PersistentDataSource(IContainer container) {
+    super(container);
+    Configuration config = container.getConfiguration();
+    String file = (String) SessionJournalFile.defValue();
+    long size = (Long) SessionJournalSize.defValue();
+    long period = (Long) SessionJournalCheckpointPeriod.defValue();
+    if (config != null) {
+      file = config.getStringValue(SessionJournalFile.ordinal(), file);
+      size = config.getLongValue(SessionJournalSize.ordinal(), size);
+      period = config.getLongValue(SessionJournalCheckpointPeriod.ordinal(), period);
+    }
+    this.journal = new SessionJournal(new File(file), size, getSlab().getReferences());
+    this.checkpointPeriod = period;
+  }
+
+  /**
+   * @param capacity maximum number of sessions, zero or less for unlimited
+   * @param messageParser parser used to encode buffered requests
+   * @param journal journal to restore the sessions from and append to
+   */
+  public PersistentDataSource(int capacity, IMessageParser messageParser, SessionJournal journal) {
+    super(capacity, messageParser);
+    this.journal = journal;
+    this.checkpointPeriod = 0;
+  }
+
+  @Override
+  public void start() {
+    super.start();
+    if (journal.isOpen()) {
+      return;
+    }
+    try {
+      restore(journal.open());
+    }
+    catch (IOException e) {
+      logger.error("Unable to open session journal [" + journal.getFile() + "], sessions will not be persisted", e);
+      return;
+    }
+    IConcurrentFactory concurrentFactory = container != null ? container.getConcurrentFactory() : null;
+    if (concurrentFactory != null) {
+      checkpointScheduler = concurrentFactory.getScheduledExecutorService(SessionJournalTimer.name());
+      // full segments are compacted next to the periodic checkpoints
+      journal.setExecutor(checkpointScheduler);
+    }
+    if (checkpointScheduler != null && checkpointPeriod > 0) {
+      Runnable checkpointTask = new Runnable() {
+        @Override
+        public void run() {
+          checkpoint();
+        }
+      };
+      checkpointHandler = checkpointScheduler.scheduleAtFixedRate(checkpointTask, checkpointPeriod, checkpointPeriod, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (checkpointHandler != null) {
+      checkpointHandler.cancel(false);
+      checkpointHandler = null;
+    }
+    if (checkpointScheduler != null) {
+      journal.setExecutor(null);
+      container.getConcurrentFactory().shutdownNow(checkpointScheduler);
+      checkpointScheduler = null;
+    }
+    checkpoint();
+    journal.close();
+    super.stop();
+  }
+
+  private void restore(Collection<SessionJournal.Image> images) {
+    ITimerFacility timerFacility = container != null ? container.getAssemblerFacility().getComponentInstance(ITimerFacility.class) : null;
+    Map<AppSessionDataOffHeapImpl, SessionJournal.Image> timers = new HashMap<AppSessionDataOffHeapImpl, SessionJournal.Image>();
+    for (SessionJournal.Image image : images) {
+      String sessionId = image.getSessionId();
+      if (super.exists(sessionId) || restored.containsKey(sessionId)) {
+        continue;
+      }
+      try {
+        Class<?> dataClass = Class.forName(image.getDataClass(), true, getClass().getClassLoader());
+        AppSessionDataOffHeapImpl data = (AppSessionDataOffHeapImpl) dataClass.getConstructor(OffHeapSlab.class, IMessageParser.class)
+            .newInstance(getSlab(), getMessageParser());
+        data.setSessionId(sessionId);
+        data.setApplicationId(image.getApplicationId());
+        data.restore(image);
+        data.attach(journal, true);
+        restored.put(sessionId, data);
+        timers.put(data, image);
+      }
+      catch (Exception e) {
+        logger.warn("Unable to restore session [" + sessionId + "] of type [" + image.getDataClass() + "] from journal", e);
+        journal.remove(sessionId);
+      }
+    }
+    // timers look up their session when they fire, expired ones right away, so they are armed once all are visible
+    for (Map.Entry<AppSessionDataOffHeapImpl, SessionJournal.Image> entry : timers.entrySet()) {
+      entry.getKey().restoreTimers(entry.getValue(), timerFacility);
+    }
+    logger.info("Restored {} sessions from session journal [{}]", timers.size(), journal.getFile());
+  }
+
+  /**
+   * Compact the journal now.
+   */
+  public void checkpoint() {
+    try {
+      journal.checkpoint();
+    }
+    catch (IOException e) {
+      logger.error("Failed to checkpoint session journal [" + journal.getFile() + "]", e);
+    }
+  }
+
+  public SessionJournal getJournal() {
+    return journal;
+  }
+
+  /**
+   * @return number of restored sessions not yet used
+   */
+  public int getRestoredCount() {
+    return restored.size();
+  }
+
+  @Override
+  public <T extends AppSessionDataOffHeapImpl> T getRestoredData(String sessionId, Class<T> dataClass) {
+    AppSessionDataOffHeapImpl data = restored.get(sessionId);
+    if (dataClass.isInstance(data) && restored.remove(sessionId, data)) {
+      return dataClass.cast(data);
+    }
+    return null;
+  }
+
+  @Override
+  public void dataCreated(AppSessionDataOffHeapImpl data) {
+    data.attach(journal, false);
+  }
+
+  @Override
+  public boolean exists(String sessionId) {
+    return super.exists(sessionId) || restored.containsKey(sessionId);
+  }
+
+  @Override
+  public BaseSession getSession(String sessionId) {
+    if (!super.exists(sessionId) && restored.containsKey(sessionId)) {
+      makeLocal(sessionId);
+    }
+    return super.getSession(sessionId);
+  }
+
+  @Override
+  public NetworkReqListener getSessionListener(String sessionId) {
+    if (!super.exists(sessionId) && restored.containsKey(sessionId)) {
+      makeLocal(sessionId);
+    }
+    return super.getSessionListener(sessionId);
+  }
+
+  @Override
+  public void setSessionListener(String sessionId, NetworkReqListener data) {
+    if (!super.exists(sessionId) && restored.containsKey(sessionId)) {
+      makeLocal(sessionId);
+    }
+    super.setSessionListener(sessionId, data);
+  }
+
+  @Override
+  public void removeSession(String sessionId) {
+    super.removeSession(sessionId);
+    AppSessionDataOffHeapImpl data = restored.remove(sessionId);
+    if (data != null) {
+      data.remove();
+    }
+  }
+
+  /**
+   * Rebuild a restored session through its application session factory.
+   */
+  private synchronized void makeLocal(String sessionId) {
+    AppSessionDataOffHeapImpl data = restored.get(sessionId);
+    if (data == null) {
+      // claimed meanwhile
+      return;
+    }
+    Class<? extends AppSession> appSessionIface = data.getAppSessionIface();
+    IAppSessionFactory fct = getAppSessionFactory(appSessionIface);
+    if (fct == null) {
+      // kept until the application registers its factory
+      logger.warn("Session with id:{}, is in session journal, but no Application Session Factory for:{}.", sessionId, appSessionIface);
+      return;
+    }
+    try {
+      AppSession session = fct.getSession(sessionId, appSessionIface);
+      if (session != null) {
+        super.addSession(session);
+        super.setSessionListener(sessionId, (NetworkReqListener) session);
+      }
+    }
+    catch (Exception e) {
+      logger.error("Failed to rebuild session [" + sessionId + "] restored from session journal", e);
+    }
+    finally {
+      // not claimed by the factory, it will not be
+      if (restored.remove(sessionId, data)) {
+        data.remove();
+      }
+    }
+  }
+
+  private IAppSessionFactory getAppSessionFactory(Class<? extends AppSession> appSessionIface) {
+    try {
+      ISessionFactory sessionFactory = container != null ? (ISessionFactory) container.getSessionFactory() : null;
+      return sessionFactory != null ? sessionFactory.getAppSessionFactory(appSessionIface) : null;
+    }
+    catch (IllegalDiameterStateException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "PersistentDataSource [sessions=" + getSessionStore() + ", slab=" + getSlab() + ", journal=" + journal.getFile() + "]";
+  }
+
+}
@@ -0,0 +1,922 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.data;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdiameter.api.ApplicationId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append only journal of application session data changes, kept in memory mapped files.<br/><br/>
+ *
+ * Changes are appended to the current segment file, named after the journal file with its generation as
+ * suffix. Each entry is its length followed by type, session id and body. The room of an entry is marked with
+ * its negated length once reserved, and the length is written last, so an entry torn by a crash is skipped
+ * instead of corrupting the segment or hiding the entries appended after it.
+ * <p>
+ * Appending takes no lock: each writer reserves the room of its entry with a compare and set of the segment
+ * position and writes it concurrently with the others. Only moving to a new segment is done under the journal
+ * monitor, and a sealed segment is compacted once its last writer committed its entry.
+ * <p>
+ * A full segment is sealed and appending goes on in a new one, while the sealed segments are compacted in the
+ * background: the journal file and the sealed segments are replayed into one {@link Image} per live session,
+ * which are written to a new journal file replacing the current one, and the sealed segments are deleted. The
+ * header of the journal file records the last segment it includes, so a crash at any point of the compaction
+ * replays each change once. Writers never wait for a compaction. Nothing is kept on heap between compactions.
+ */
+public class SessionJournal {
+
+  private static final Logger logger = LoggerFactory.getLogger(SessionJournal.class);
+
+  public static final long DEFAULT_SIZE = 64L * 1024 * 1024;
+
+  private static final int MAGIC = 0x4A444A32;
+  // magic, references, generation
+  private static final int HEADER_SIZE = 16;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final byte SESSION = 1;
+  private static final byte RECORD = 2;
+  private static final byte REQUEST = 3;
+  private static final byte TIMER = 4;
+  private static final byte CLEAR = 5;
+  private static final byte REMOVE = 6;
+  private static final byte FIELD = 7;
+
+  private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+  private final File file;
+  private final int references;
+  private long size;
+
+  // current segment, null when closed, replaced under the journal monitor
+  private volatile Segment current;
+  // segments sealed and not yet compacted
+  private final List<Segment> sealed = new ArrayList<Segment>();
+  private long generation;
+  private boolean compacting;
+  private long checkpoints;
+  private Executor executor;
+
+  // held while compacting, never while holding the journal monitor
+  private final Object compaction = new Object();
+  // last segment included in the journal file
+  private long compacted;
+
+  /**
+   * @param file journal file, created if missing
+   * @param size size of each segment, doubled if an entry does not fit in it
+   * @param references number of reference slots of each session
+   */
+  public SessionJournal(File file, long size, int references) {
+    if (size <= HEADER_SIZE || size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Invalid journal size " + size);
+    }
+    this.file = file;
+    this.size = size;
+    this.references = references;
+  }
+
+  /**
+   * @param executor runs the compaction of full segments, if null they are compacted by the next checkpoint
+   */
+  public synchronized void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Replay and compact the journal file and its segments, and open a new segment for appending.
+   *
+   * @return sessions found in the journal
+   */
+  public Collection<Image> open() throws IOException {
+    synchronized (compaction) {
+      Map<String, Image> images = new LinkedHashMap<String, Image>();
+      long last = replay(file, images);
+      for (long segment : getSegments()) {
+        if (segment > last) {
+          replay(getSegment(segment), images);
+          last = segment;
+        }
+      }
+      writeJournal(images.values(), last);
+      synchronized (this) {
+        openSegment(last + 1);
+      }
+      logger.debug("Opened session journal [{}] with {} sessions", file, images.size());
+      return images.values();
+    }
+  }
+
+  /**
+   * Seal the current segment and compact the journal, dropping removed sessions and superseded changes.
+   * Appending goes on meanwhile.
+   */
+  public void checkpoint() throws IOException {
+    synchronized (this) {
+      Segment segment = current;
+      if (segment == null) {
+        return;
+      }
+      if (segment.position.get() > HEADER_SIZE) {
+        openSegment(generation + 1);
+      }
+    }
+    compact();
+  }
+
+  public synchronized void close() {
+    Segment segment = current;
+    if (segment != null) {
+      current = null;
+      segment.seal();
+      segment.awaitWriters();
+      segment.buffer.force();
+    }
+  }
+
+  public boolean isOpen() {
+    return current != null;
+  }
+
+  /**
+   * @return number of bytes reserved by entries of the current segment, including the header
+   */
+  public int getPosition() {
+    Segment segment = current;
+    return segment != null ? segment.position.get() : 0;
+  }
+
+  /**
+   * @return size of a segment
+   */
+  public synchronized long getSize() {
+    return size;
+  }
+
+  /**
+   * @return generation of the current segment
+   */
+  public synchronized long getGeneration() {
+    return generation;
+  }
+
+  public synchronized long getCheckpoints() {
+    return checkpoints;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public void session(String sessionId, String dataClass, ApplicationId applicationId) {
+    byte[] id = encode(sessionId);
+    byte[] type = encode(dataClass);
+    int length = 1 + 2 + id.length + 2 + type.length + 1 + (applicationId != null ? 24 : 0);
+    Append append = reserve(length);
+    if (append != null) {
+      try {
+        int start = begin(append.out, SESSION, id);
+        putSession(append.out, type, applicationId);
+        end(append.out, start);
+      }
+      finally {
+        append.release();
+      }
+    }
+  }
+
+  public void record(String sessionId, OffHeapSlab slab, int handle) {
+    byte[] id = encode(sessionId);
+    Append append = reserve(1 + 2 + id.length + 2 + slab.getRecordSize());
+    if (append != null) {
+      try {
+        int start = begin(append.out, RECORD, id);
+        append.out.putShort((short) slab.getRecordSize());
+        slab.getBytes(handle, append.out);
+        end(append.out, start);
+      }
+      finally {
+        append.release();
+      }
+    }
+  }
+
+  /**
+   * Journal a byte of the record written at the given offset.
+   */
+  public void field(String sessionId, int offset, byte value) {
+    byte[] id = encode(sessionId);
+    Append append = reserve(1 + 2 + id.length + 2 + 1 + 1);
+    if (append != null) {
+      try {
+        int start = begin(append.out, FIELD, id);
+        append.out.putShort((short) offset);
+        append.out.put((byte) 1);
+        append.out.put(value);
+        end(append.out, start);
+      }
+      finally {
+        append.release();
+      }
+    }
+  }
+
+  /**
+   * Journal an int of the record written at the given offset.
+   */
+  public void field(String sessionId, int offset, int value) {
+    byte[] id = encode(sessionId);
+    Append append = reserve(1 + 2 + id.length + 2 + 1 + 4);
+    if (append != null) {
+      try {
+        int start = begin(append.out, FIELD, id);
+        append.out.putShort((short) offset);
+        append.out.put((byte) 4);
+        append.out.putInt(value);
+        end(append.out, start);
+      }
+      finally {
+        append.release();
+      }
+    }
+  }
+
+  public void request(String sessionId, int index, byte[] data) {
+    byte[] id = encode(sessionId);
+    Append append = reserve(1 + 2 + id.length + 1 + 4 + data.length);
+    if (append != null) {
+      try {
+        int start = begin(append.out, REQUEST, id);
+        append.out.put((byte) index);
+        append.out.putInt(data.length);
+        append.out.put(data);
+        end(append.out, start);
+      }
+      finally {
+        append.release();
+      }
+    }
+  }
+
+  public void timer(String sessionId, int index, String timerName, long expiryTime) {
+    byte[] id = encode(sessionId);
+    byte[] name = encode(timerName);
+    Append append = reserve(1 + 2 + id.length + 1 + 2 + name.length + 8);
+    if (append != null) {
+      try {
+        int start = begin(append.out, TIMER, id);
+        append.out.put((byte) index);
+        putString(append.out, name);
+        append.out.putLong(expiryTime);
+        end(append.out, start);
+      }
+      finally {
+        append.release();
+      }
+    }
+  }
+
+  public void clear(String sessionId, int index) {
+    byte[] id = encode(sessionId);
+    Append append = reserve(1 + 2 + id.length + 1);
+    if (append != null) {
+      try {
+        int start = begin(append.out, CLEAR, id);
+        append.out.put((byte) index);
+        end(append.out, start);
+      }
+      finally {
+        append.release();
+      }
+    }
+  }
+
+  public void remove(String sessionId) {
+    byte[] id = encode(sessionId);
+    Append append = reserve(1 + 2 + id.length);
+    if (append != null) {
+      try {
+        end(append.out, begin(append.out, REMOVE, id));
+      }
+      finally {
+        append.release();
+      }
+    }
+  }
+
+  /**
+   * Reserve room for an entry of the given length in the current segment, moving to a new segment if needed.
+   * The entry is written to the returned buffer, positioned at its start, and the append released.
+   *
+   * @return null if the journal is closed
+   */
+  private Append reserve(int length) {
+    while (true) {
+      Segment segment = current;
+      if (segment == null) {
+        return null;
+      }
+      // registered before checking the seal, so a compaction either sees the writer or the writer the seal
+      segment.writers.incrementAndGet();
+      int start = segment.sealed ? -1 : segment.reserve(length);
+      if (start >= 0) {
+        ByteBuffer out = segment.buffer.duplicate();
+        out.limit(start + 4 + length);
+        out.position(start);
+        // lets a replay skip the entry if it is never committed
+        out.putInt(start, -length);
+        return new Append(segment, out);
+      }
+      segment.writers.decrementAndGet();
+      roll(segment, length);
+    }
+  }
+
+  /**
+   * Move to a new segment, unless the full one was already replaced.
+   */
+  private synchronized void roll(Segment full, int length) {
+    if (current != full) {
+      return;
+    }
+    try {
+      while (size - HEADER_SIZE < length + 8) {
+        if (size == Integer.MAX_VALUE) {
+          throw new IOException("Entry of " + length + " bytes does not fit");
+        }
+        size = Math.min(size * 2, Integer.MAX_VALUE);
+      }
+      openSegment(generation + 1);
+    }
+    catch (IOException e) {
+      logger.error("Unable to open a new segment of session journal [" + file + "], closing it", e);
+      current = null;
+      return;
+    }
+    if (!compacting && executor != null) {
+      compacting = true;
+      Runnable task = new Runnable() {
+        @Override
+        public void run() {
+          try {
+            compact();
+          }
+          catch (IOException e) {
+            logger.error("Unable to compact session journal [" + file + "]", e);
+          }
+          finally {
+            synchronized (SessionJournal.this) {
+              compacting = false;
+            }
+          }
+        }
+      };
+      try {
+        executor.execute(task);
+      }
+      catch (RejectedExecutionException e) {
+        logger.debug("Compaction of session journal [{}] rejected, left to the next checkpoint", file);
+        compacting = false;
+      }
+    }
+  }
+
+  /**
+   * Switch appending to a new, empty, segment of the given generation, sealing the current one.
+   */
+  private void openSegment(long generation) throws IOException {
+    File segment = getSegment(generation);
+    Segment previous = current;
+    // writers of the sealed segment wait on the journal monitor for the new one
+    if (previous != null && !previous.sealed) {
+      previous.seal();
+      sealed.add(previous);
+    }
+    RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+    MappedByteBuffer out;
+    try {
+      raf.setLength(0);
+      raf.setLength(size);
+      out = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+    finally {
+      raf.close();
+    }
+    putHeader(out, generation);
+    this.generation = generation;
+    this.current = new Segment(out, generation);
+  }
+
+  /**
+   * Fold the sealed segments into the journal file.
+   */
+  private void compact() throws IOException {
+    synchronized (compaction) {
+      long last;
+      List<Segment> segments;
+      synchronized (this) {
+        last = generation - 1;
+        segments = new ArrayList<Segment>(sealed);
+      }
+      if (last <= compacted) {
+        return;
+      }
+      // entries still being written to the sealed segments
+      for (Segment segment : segments) {
+        segment.awaitWriters();
+      }
+      Map<String, Image> images = new LinkedHashMap<String, Image>();
+      replay(file, images);
+      for (long segment : getSegments()) {
+        if (segment > compacted && segment <= last) {
+          replay(getSegment(segment), images);
+        }
+      }
+      writeJournal(images.values(), last);
+      synchronized (this) {
+        sealed.removeAll(segments);
+        checkpoints++;
+      }
+    }
+  }
+
+  /**
+   * Write the images to a new journal file replacing the current one, then delete the segments it includes.
+   */
+  private void writeJournal(Collection<Image> images, long last) throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    FileOutputStream stream = new FileOutputStream(tmp);
+    try {
+      FileChannel channel = stream.getChannel();
+      ByteBuffer out = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+      putHeader(out, last);
+      for (Image image : images) {
+        if (!write(out, image)) {
+          flush(channel, out);
+          // larger than the buffer
+          while (!write(out, image)) {
+            out = ByteBuffer.allocate(out.capacity() * 2);
+          }
+        }
+      }
+      flush(channel, out);
+      channel.force(true);
+    }
+    finally {
+      stream.close();
+    }
+    try {
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+    catch (AtomicMoveNotSupportedException e) {
+      logger.debug("Atomic move not supported for session journal [{}], replacing it", file);
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    compacted = last;
+    for (long segment : getSegments()) {
+      if (segment <= last && !getSegment(segment).delete()) {
+        logger.warn("Unable to delete segment [{}] of session journal", getSegment(segment));
+      }
+    }
+  }
+
+  private static void flush(FileChannel channel, ByteBuffer out) throws IOException {
+    out.flip();
+    while (out.hasRemaining()) {
+      channel.write(out);
+    }
+    out.clear();
+  }
+
+  private File getSegment(long generation) {
+    return new File(file.getPath() + "." + generation);
+  }
+
+  /**
+   * @return generations of the segment files, in order
+   */
+  private long[] getSegments() {
+    File dir = file.getAbsoluteFile().getParentFile();
+    final String prefix = file.getName() + ".";
+    String[] names = dir.list(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        if (!name.startsWith(prefix) || name.length() == prefix.length()) {
+          return false;
+        }
+        for (int i = prefix.length(); i < name.length(); i++) {
+          if (!Character.isDigit(name.charAt(i))) {
+            return false;
+          }
+        }
+        return true;
+      }
+    });
+    if (names == null) {
+      return new long[0];
+    }
+    long[] segments = new long[names.length];
+    for (int i = 0; i < names.length; i++) {
+      segments[i] = Long.parseLong(names[i].substring(prefix.length()));
+    }
+    Arrays.sort(segments);
+    return segments;
+  }
+
+  private void putHeader(ByteBuffer out, long generation) {
+    out.putInt(MAGIC);
+    out.putInt(references);
+    out.putLong(generation);
+  }
+
+  private static int begin(ByteBuffer out, byte type, byte[] sessionId) {
+    int start = out.position();
+    out.position(start + 4);
+    out.put(type);
+    putString(out, sessionId);
+    return start;
+  }
+
+  private static void end(ByteBuffer out, int start) {
+    int end = out.position();
+    // the length makes the entry visible
+    out.putInt(start, end - start - 4);
+  }
+
+  private static void putString(ByteBuffer out, byte[] value) {
+    out.putShort((short) value.length);
+    out.put(value);
+  }
+
+  private static void putSession(ByteBuffer out, byte[] dataClass, ApplicationId applicationId) {
+    putString(out, dataClass);
+    if (applicationId != null) {
+      out.put((byte) 1);
+      out.putLong(applicationId.getVendorId());
+      out.putLong(applicationId.getAuthAppId());
+      out.putLong(applicationId.getAcctAppId());
+    }
+    else {
+      out.put((byte) 0);
+    }
+  }
+
+  private static byte[] encode(String value) {
+    byte[] bytes = value.getBytes(UTF_8);
+    if (bytes.length > Short.MAX_VALUE) {
+      throw new IllegalArgumentException("Value too long for session journal: " + value);
+    }
+    return bytes;
+  }
+
+  private static String getString(ByteBuffer in) {
+    byte[] bytes = new byte[in.getShort()];
+    in.get(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  /**
+   * Apply the entries of a journal or segment file.
+   *
+   * @return generation of its header, zero if missing or invalid
+   */
+  private long replay(File source, Map<String, Image> images) throws IOException {
+    if (!source.exists() || source.length() == 0) {
+      return 0;
+    }
+    RandomAccessFile raf = new RandomAccessFile(source, "r");
+    try {
+      return replay(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()), source, images);
+    }
+    finally {
+      raf.close();
+    }
+  }
+
+  private long replay(ByteBuffer in, File source, Map<String, Image> images) {
+    if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC) {
+      logger.warn("Session journal [{}] has no valid header, ignoring its content", source);
+      return 0;
+    }
+    in.getInt(); // references of the writer
+    long generation = in.getLong();
+    int entries = 0;
+    int torn = 0;
+    try {
+      while (in.remaining() >= 4) {
+        int length = in.getInt();
+        if (length < 0 && -length <= in.remaining()) {
+          // reserved but not committed before a crash
+          in.position(in.position() - length);
+          torn++;
+          continue;
+        }
+        if (length <= 0 || length > in.remaining()) {
+          break;
+        }
+        ByteBuffer entry = in.slice();
+        entry.limit(length);
+        in.position(in.position() + length);
+        apply(entry, images);
+        entries++;
+      }
+    }
+    catch (BufferUnderflowException e) {
+      logger.warn("Session journal [{}] has a malformed entry after {} entries, ignoring the rest", source, entries);
+    }
+    if (torn > 0) {
+      logger.warn("Session journal [{}] has {} torn entries, skipped", source, torn);
+    }
+    return generation;
+  }
+
+  private void apply(ByteBuffer entry, Map<String, Image> images) {
+    byte type = entry.get();
+    String sessionId = getString(entry);
+    if (type == SESSION) {
+      Image image = images.get(sessionId);
+      if (image == null) {
+        image = new Image(sessionId, references);
+        images.put(sessionId, image);
+      }
+      image.dataClass = getString(entry);
+      if (entry.get() != 0) {
+        long vendorId = entry.getLong();
+        long authAppId = entry.getLong();
+        long acctAppId = entry.getLong();
+        image.applicationId = authAppId != ApplicationId.UNDEFINED_VALUE ?
+            ApplicationId.createByAuthAppId(vendorId, authAppId) : ApplicationId.createByAccAppId(vendorId, acctAppId);
+      }
+      return;
+    }
+    Image image = images.get(sessionId);
+    if (image == null) {
+      // changes of a session removed or not yet described
+      return;
+    }
+    switch (type) {
+      case RECORD:
+        image.record = new byte[entry.getShort()];
+        entry.get(image.record);
+        break;
+      case FIELD: {
+        int offset = entry.getShort();
+        int width = entry.get();
+        if (image.record == null || image.record.length < offset + width) {
+          image.record = image.record == null ? new byte[offset + width] : Arrays.copyOf(image.record, offset + width);
+        }
+        entry.get(image.record, offset, width);
+        break;
+      }
+      case REQUEST: {
+        int index = entry.get();
+        byte[] data = new byte[entry.getInt()];
+        entry.get(data);
+        image.setReference(index, data);
+        break;
+      }
+      case TIMER: {
+        int index = entry.get();
+        String timerName = getString(entry);
+        image.setReference(index, new TimerEntry(timerName, entry.getLong()));
+        break;
+      }
+      case CLEAR:
+        image.setReference(entry.get(), null);
+        break;
+      case REMOVE:
+        images.remove(sessionId);
+        break;
+      default:
+        logger.warn("Unknown entry type {} in session journal [{}]", type, file);
+    }
+  }
+
+  private static boolean write(ByteBuffer out, Image image) {
+    if (image.dataClass == null) {
+      return true;
+    }
+    int position = out.position();
+    try {
+      byte[] id = encode(image.sessionId);
+      int start = begin(out, SESSION, id);
+      putSession(out, encode(image.dataClass), image.applicationId);
+      end(out, start);
+      if (image.record != null) {
+        start = begin(out, RECORD, id);
+        out.putShort((short) image.record.length);
+        out.put(image.record);
+        end(out, start);
+      }
+      for (int i = 0; i < image.references.length; i++) {
+        Object reference = image.references[i];
+        if (reference instanceof byte[]) {
+          byte[] data = (byte[]) reference;
+          start = begin(out, REQUEST, id);
+          out.put((byte) i);
+          out.putInt(data.length);
+          out.put(data);
+          end(out, start);
+        }
+        else if (reference instanceof TimerEntry) {
+          TimerEntry timer = (TimerEntry) reference;
+          start = begin(out, TIMER, id);
+          out.put((byte) i);
+          putString(out, encode(timer.getTimerName()));
+          out.putLong(timer.getExpiryTime());
+          end(out, start);
+        }
+      }
+      return true;
+    }
+    catch (BufferOverflowException e) {
+      out.position(position);
+      return false;
+    }
+  }
+
+  /**
+   * Segment being appended to, or sealed and not yet compacted.
+   */
+  private static final class Segment {
+
+    private final MappedByteBuffer buffer;
+    private final long generation;
+    // start of the next entry
+    private final AtomicInteger position = new AtomicInteger(HEADER_SIZE);
+    // writers between their reservation and the release of their entry
+    private final AtomicInteger writers = new AtomicInteger();
+    private volatile boolean sealed;
+
+    Segment(MappedByteBuffer buffer, long generation) {
+      this.buffer = buffer;
+      this.generation = generation;
+    }
+
+    /**
+     * @return start of the room reserved for an entry of the given length, -1 if the segment is full
+     */
+    int reserve(int length) {
+      while (true) {
+        int start = position.get();
+        // entry length, entry and the terminating zero length
+        if (start + length + 8 > buffer.capacity()) {
+          return -1;
+        }
+        if (position.compareAndSet(start, start + 4 + length)) {
+          return start;
+        }
+      }
+    }
+
+    void seal() {
+      sealed = true;
+    }
+
+    /**
+     * Wait for the writers of the sealed segment, never blocked while writing, to release their entries.
+     */
+    void awaitWriters() {
+      while (writers.get() > 0) {
+        Thread.yield();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "Segment [generation=" + generation + ", position=" + position + ", writers=" + writers + "]";
+    }
+  }
+
+  /**
+   * Room reserved for an entry in a segment.
+   */
+  private static final class Append {
+
+    private final Segment segment;
+    private final ByteBuffer out;
+
+    Append(Segment segment, ByteBuffer out) {
+      this.segment = segment;
+      this.out = out;
+    }
+
+    void release() {
+      segment.writers.decrementAndGet();
+    }
+  }
+
+  /**
+   * Last known state of a session in the journal.
+   */
+  public static class Image {
+
+    private final String sessionId;
+    private String dataClass;
+    private ApplicationId applicationId;
+    private byte[] record;
+    private final Object[] references;
+
+    Image(String sessionId, int references) {
+      this.sessionId = sessionId;
+      this.references = new Object[references];
+    }
+
+    private void setReference(int index, Object value) {
+      if (index >= 0 && index < references.length) {
+        references[index] = value;
+      }
+    }
+
+    public String getSessionId() {
+      return sessionId;
+    }
+
+    public String getDataClass() {
+      return dataClass;
+    }
+
+    public ApplicationId getApplicationId() {
+      return applicationId;
+    }
+
+    public byte[] getRecord() {
+      return record;
+    }
+
+    /**
+     * @return per reference slot, the encoded request (byte[]), a {@link TimerEntry} or null
+     */
+    public Object[] getReferences() {
+      return references;
+    }
+
+  }
+
+  /**
+   * Timer journaled in a reference slot, with its absolute expiry time.
+   */
+  public static class TimerEntry {
+
+    private final String timerName;
+    private final long expiryTime;
+
+    public TimerEntry(String timerName, long expiryTime) {
+      this.timerName = timerName;
+      this.expiryTime = expiryTime;
+    }
+
+    public String getTimerName() {
+      return timerName;
+    }
+
+    public long getExpiryTime() {
+      return expiryTime;
+    }
+
+  }
+
+}
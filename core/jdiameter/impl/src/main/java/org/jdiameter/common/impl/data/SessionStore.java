@@ -0,0 +1,355 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.data;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.jdiameter.api.BaseSession;
+import org.jdiameter.api.NetworkReqListener;
+import org.jdiameter.client.api.ISession;
+import org.jdiameter.common.api.data.SessionOverloadException;
+
+/**
+ * Striped, open addressing table of sessions and their listeners, keyed by Session-Id.<br/><br/>
+ *
+ * Each stripe keeps its entries in three parallel arrays (session id, session, listener) with linear probing,
+ * so there is no wrapper or node object per session and the key is the session's own id string. Mutations
+ * lock a single stripe once, which makes insert, replacement and removal atomic. Lookups do not lock: slots
+ * are published with the id written last and removed with the id cleared first, and a lookup checks the
+ * slot still belongs to the id it found, so it never returns another session's entry.
+ * <p>
+ * The store can be given a capacity, new sessions beyond it are rejected with {@link SessionOverloadException}.
+ * Sessions are counted per stripe and the capacity is checked against the sum, so there is no shared counter
+ * written by every stripe. Concurrent additions to other stripes can take the store a few sessions over it.
+ */
+public class SessionStore {
+
+  public static final int DEFAULT_STRIPES = 64;
+
+  private static final int MIN_TABLE_SIZE = 16;
+  // marks a removed slot, compared by identity
+  private static final String REMOVED = new String("");
+
+  private final Stripe[] stripes;
+  private final int stripeShift;
+  private final int capacity;
+
+  /**
+   * @param stripes number of stripes, rounded up to a power of two
+   * @param capacity maximum number of sessions, zero or less for unlimited
+   */
+  public SessionStore(int stripes, int capacity) {
+    int n = 1;
+    while (n < stripes) {
+      n <<= 1;
+    }
+    this.stripes = new Stripe[n];
+    for (int i = 0; i < n; i++) {
+      this.stripes[i] = new Stripe();
+    }
+    // stripes are selected by the high bits, slots by the low bits of the hash
+    this.stripeShift = 32 - Integer.numberOfTrailingZeros(n);
+    this.capacity = capacity > 0 ? capacity : Integer.MAX_VALUE;
+  }
+
+  /**
+   * Add a session. An existing session with the same id is replaced, keeping its listener, only if it is
+   * a not replicable {@link ISession}.
+   *
+   * @throws IllegalArgumentException if a session with the same id exists and can not be replaced
+   * @throws SessionOverloadException if the store is full
+   */
+  public void add(BaseSession session) {
+    String sessionId = session.getSessionId();
+    int hash = hash(sessionId);
+    Stripe stripe = stripeFor(hash);
+    synchronized (stripe) {
+      Table table = stripe.table;
+      int index = table.indexOf(sessionId, hash);
+      if (index >= 0) {
+        BaseSession present = table.sessions.get(index);
+        if (!(present instanceof ISession) || present.isReplicable()) { //must be not replicable so we can "overwrite"
+          throw new IllegalArgumentException("Sessin with id: " + sessionId + ", already exists!");
+        }
+        table.sessions.set(index, session);
+        return;
+      }
+      if (capacity != Integer.MAX_VALUE && size() >= capacity) {
+        stripe.rejected++;
+        throw new SessionOverloadException(sessionId, capacity);
+      }
+      stripe.insert(sessionId, hash, session);
+    }
+  }
+
+  public BaseSession getSession(String sessionId) {
+    int hash = hash(sessionId);
+    Table table = stripeFor(hash).table;
+    int index = table.indexOf(sessionId, hash);
+    if (index < 0) {
+      return null;
+    }
+    BaseSession session = table.sessions.get(index);
+    // the slot may have been freed and reused since the id was found
+    return session != null && sessionId.equals(session.getSessionId()) ? session : null;
+  }
+
+  public boolean contains(String sessionId) {
+    int hash = hash(sessionId);
+    return stripeFor(hash).table.indexOf(sessionId, hash) >= 0;
+  }
+
+  public BaseSession remove(String sessionId) {
+    int hash = hash(sessionId);
+    Stripe stripe = stripeFor(hash);
+    synchronized (stripe) {
+      int index = stripe.table.indexOf(sessionId, hash);
+      if (index < 0) {
+        return null;
+      }
+      BaseSession session = stripe.table.sessions.get(index);
+      stripe.delete(index);
+      return session;
+    }
+  }
+
+  public NetworkReqListener getListener(String sessionId) {
+    int hash = hash(sessionId);
+    Table table = stripeFor(hash).table;
+    int index = table.indexOf(sessionId, hash);
+    if (index < 0) {
+      return null;
+    }
+    NetworkReqListener listener = table.listeners.get(index);
+    // the slot may have been freed and reused since the id was found
+    return table.matches(index, sessionId) ? listener : null;
+  }
+
+  /**
+   * Set the listener of a session.
+   *
+   * @return false if there is no session with the id
+   */
+  public boolean setListener(String sessionId, NetworkReqListener listener) {
+    int hash = hash(sessionId);
+    Stripe stripe = stripeFor(hash);
+    synchronized (stripe) {
+      int index = stripe.table.indexOf(sessionId, hash);
+      if (index < 0) {
+        return false;
+      }
+      stripe.table.listeners.set(index, listener);
+      return true;
+    }
+  }
+
+  public NetworkReqListener removeListener(String sessionId) {
+    int hash = hash(sessionId);
+    Stripe stripe = stripeFor(hash);
+    synchronized (stripe) {
+      int index = stripe.table.indexOf(sessionId, hash);
+      if (index < 0) {
+        return null;
+      }
+      return stripe.table.listeners.getAndSet(index, null);
+    }
+  }
+
+  public int size() {
+    int size = 0;
+    for (Stripe stripe : stripes) {
+      size += stripe.count;
+    }
+    return size;
+  }
+
+  /**
+   * @return configured capacity, {@link Integer#MAX_VALUE} if unlimited
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public int getStripeCount() {
+    return stripes.length;
+  }
+
+  /**
+   * @return number of sessions held by each stripe
+   */
+  public int[] getStripeSizes() {
+    int[] sizes = new int[stripes.length];
+    for (int i = 0; i < stripes.length; i++) {
+      sizes[i] = stripes[i].count;
+    }
+    return sizes;
+  }
+
+  /**
+   * @return number of sessions removed from each stripe
+   */
+  public long[] getStripeRemovals() {
+    long[] removals = new long[stripes.length];
+    for (int i = 0; i < stripes.length; i++) {
+      synchronized (stripes[i]) {
+        removals[i] = stripes[i].removed;
+      }
+    }
+    return removals;
+  }
+
+  /**
+   * @return number of sessions rejected because the store was full
+   */
+  public long getRejectedCount() {
+    long rejected = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        rejected += stripe.rejected;
+      }
+    }
+    return rejected;
+  }
+
+  @Override
+  public String toString() {
+    return "SessionStore [size=" + size() + ", stripes=" + stripes.length + ", capacity=" + capacity + "]";
+  }
+
+  private Stripe stripeFor(int hash) {
+    return stripes[stripeShift == 32 ? 0 : hash >>> stripeShift];
+  }
+
+  private static int hash(String sessionId) {
+    // MurmurHash3 finalizer, Session-Ids of one host only differ in their last characters
+    int h = sessionId.hashCode();
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  /**
+   * Entries of a stripe, mutated only under the stripe lock and replaced as a whole when resized.
+   */
+  private static final class Stripe {
+
+    volatile Table table = new Table(MIN_TABLE_SIZE);
+    // live entries, read without the lock to sum the store size, and live plus removed slots
+    volatile int count;
+    int used;
+    long removed;
+    long rejected;
+
+    void insert(String sessionId, int hash, BaseSession session) {
+      if ((used + 1) * 4 > table.length() * 3) {
+        // rehash, growing only if removed slots are not enough to make room
+        resize(count * 4 >= table.length() ? table.length() * 2 : table.length());
+      }
+      Table t = table;
+      int i = t.freeSlot(hash);
+      if (t.ids.get(i) == null) {
+        used++;
+      }
+      t.put(i, sessionId, session, null);
+      count++;
+    }
+
+    void delete(int index) {
+      Table t = table;
+      // id first, so lookups stop matching before the slot is cleared
+      t.ids.set(index, REMOVED);
+      t.sessions.set(index, null);
+      t.listeners.set(index, null);
+      count--;
+      removed++;
+      if (t.length() > MIN_TABLE_SIZE && count * 8 < t.length()) {
+        resize(t.length() / 2);
+      }
+    }
+
+    private void resize(int length) {
+      Table old = table;
+      Table t = new Table(length);
+      for (int j = 0; j < old.length(); j++) {
+        String id = old.ids.get(j);
+        if (id != null && id != REMOVED) {
+          t.put(t.freeSlot(hash(id)), id, old.sessions.get(j), old.listeners.get(j));
+        }
+      }
+      used = count;
+      table = t;
+    }
+  }
+
+  private static final class Table {
+
+    final AtomicReferenceArray<String> ids;
+    final AtomicReferenceArray<BaseSession> sessions;
+    final AtomicReferenceArray<NetworkReqListener> listeners;
+
+    Table(int length) {
+      ids = new AtomicReferenceArray<String>(length);
+      sessions = new AtomicReferenceArray<BaseSession>(length);
+      listeners = new AtomicReferenceArray<NetworkReqListener>(length);
+    }
+
+    int length() {
+      return ids.length();
+    }
+
+    int indexOf(String sessionId, int hash) {
+      int mask = ids.length() - 1;
+      for (int i = hash & mask; ; i = (i + 1) & mask) {
+        String id = ids.get(i);
+        if (id == null) {
+          return -1;
+        }
+        if (id != REMOVED && (id == sessionId || id.equals(sessionId))) {
+          return i;
+        }
+      }
+    }
+
+    boolean matches(int index, String sessionId) {
+      String id = ids.get(index);
+      return id != null && id != REMOVED && (id == sessionId || id.equals(sessionId));
+    }
+
+    int freeSlot(int hash) {
+      int mask = ids.length() - 1;
+      int i = hash & mask;
+      String id;
+      while ((id = ids.get(i)) != null && id != REMOVED) {
+        i = (i + 1) & mask;
+      }
+      return i;
+    }
+
+    void put(int index, String sessionId, BaseSession session, NetworkReqListener listener) {
+      // id last, so a lookup finding it sees the session as well
+      sessions.set(index, session);
+      listeners.set(index, listener);
+      ids.set(index, sessionId);
+    }
+  }
+}
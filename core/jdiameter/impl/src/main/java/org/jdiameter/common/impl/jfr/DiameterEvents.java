@@ -0,0 +1,95 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.jfr;
+
+import org.jdiameter.api.Message;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.controller.IPeer;
+
+/**
+ * Flight Recorder events of the stack. All of them are disabled by default,
+ * META-INF/jdiameter.jfc enables them, for example:
+ * <pre>
+ *   -XX:StartFlightRecording=settings=default,settings=jdiameter.jfc
+ * </pre>
+ * Call sites check {@link JfrEventType#isEnabled()} (or get null from
+ * {@link JfrEventType#begin()}) before collecting any field value.
+ */
+public final class DiameterEvents {
+
+  public static final JfrEventType MESSAGE_RECEIVED = new JfrEventType("org.jdiameter.MessageReceived", "Diameter Message Received",
+      "Message received from peer, duration covers listener processing",
+      "peer", String.class, "commandCode", Integer.TYPE, "applicationId", Long.TYPE, "request", Boolean.TYPE, "size", Integer.TYPE,
+      "hopByHopId", Long.TYPE, "endToEndId", Long.TYPE);
+
+  public static final JfrEventType MESSAGE_SENT = new JfrEventType("org.jdiameter.MessageSent", "Diameter Message Sent",
+      "Message sent to peer, duration covers encoding and writing",
+      "peer", String.class, "commandCode", Integer.TYPE, "applicationId", Long.TYPE, "request", Boolean.TYPE, "size", Integer.TYPE,
+      "hopByHopId", Long.TYPE, "endToEndId", Long.TYPE);
+
+  public static final JfrEventType PEER_STATE_CHANGE = new JfrEventType("org.jdiameter.PeerStateChange", "Diameter Peer State Change",
+      "Peer state machine transition",
+      "peer", String.class, "oldState", String.class, "newState", String.class);
+
+  public static final JfrEventType SESSION_CREATED = new JfrEventType("org.jdiameter.SessionCreated", "Diameter Session Created",
+      "Application session created",
+      "sessionId", String.class, "applicationId", String.class, "sessionType", String.class);
+
+  public static final JfrEventType SESSION_RELEASED = new JfrEventType("org.jdiameter.SessionReleased", "Diameter Session Released",
+      "Application session released",
+      "sessionId", String.class, "applicationId", String.class, "sessionType", String.class, "lifetime", Long.TYPE);
+
+  public static final JfrEventType TIMER_FIRED = new JfrEventType("org.jdiameter.TimerFired", "Diameter Timer Fired",
+      "Session timer fired, duration covers timer processing",
+      "sessionId", String.class, "timerName", String.class);
+
+  public static final JfrEventType OVERLOAD_REJECTED = new JfrEventType("org.jdiameter.OverloadRejected", "Diameter Overload Rejection",
+      "Message rejected because of overload",
+      "peer", String.class, "commandCode", Integer.TYPE, "applicationId", Long.TYPE, "resultCode", Long.TYPE, "reason", String.class);
+
+  private DiameterEvents() {
+  }
+
+  /**
+   * Commits message received or sent event
+   */
+  public static void commitMessage(JfrEventType type, Object event, Object peer, Message message) {
+    if (event != null) {
+      type.commit(event, String.valueOf(peer), message.getCommandCode(), message.getApplicationId(), message.isRequest(),
+          message instanceof IMessage ? ((IMessage) message).getSize() : 0, message.getHopByHopIdentifier(), message.getEndToEndIdentifier());
+    }
+  }
+
+  /**
+   * Emits overload rejection event
+   *
+   * @param message rejected message
+   * @param resultCode result code of answer sent back, 0 if none
+   * @param reason what was overloaded
+   */
+  public static void overloadRejected(Message message, long resultCode, String reason) {
+    if (OVERLOAD_REJECTED.isEnabled()) {
+      IPeer peer = message instanceof IMessage ? ((IMessage) message).getPeer() : null;
+      OVERLOAD_REJECTED.emit(peer != null ? String.valueOf(peer.getUri()) : "", message.getCommandCode(), message.getApplicationId(),
+          resultCode, reason);
+    }
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.jfr;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Flight Recorder event type defined at runtime through jdk.jfr.EventFactory.
+ * The stack is built for JVMs without the jdk.jfr API, so it is only accessed
+ * reflectively; when it is missing every type stays disabled.
+ *
+ * The enabled flag is refreshed by a recorder listener whenever a recording
+ * changes state, so checking {@link #isEnabled()} is a single volatile read.
+ */
+public final class JfrEventType {
+
+  private static final Logger logger = LoggerFactory.getLogger(JfrEventType.class);
+
+  private static final List<JfrEventType> types = new CopyOnWriteArrayList<JfrEventType>();
+  private static final Api api = Api.load();
+
+  private final String name;
+  private volatile boolean enabled;
+
+  private Object factory;
+  private Object eventType;
+
+  /**
+   * @param name event name, as used in .jfc settings
+   * @param label human readable name
+   * @param description event description
+   * @param fields pairs of field name and type (String, Integer.TYPE, Long.TYPE or Boolean.TYPE)
+   */
+  JfrEventType(String name, String label, String description, Object... fields) {
+    this.name = name;
+    if (api != null) {
+      try {
+        List<Object> annotations = new ArrayList<Object>();
+        annotations.add(api.annotation("jdk.jfr.Name", name));
+        annotations.add(api.annotation("jdk.jfr.Label", label));
+        annotations.add(api.annotation("jdk.jfr.Description", description));
+        annotations.add(api.annotation("jdk.jfr.Category", new String[] {"Diameter"}));
+        List<Object> values = new ArrayList<Object>();
+        for (int i = 0; i < fields.length; i += 2) {
+          values.add(api.valueDescriptor((Class<?>) fields[i + 1], (String) fields[i]));
+        }
+        this.factory = api.create.invoke(null, annotations, values);
+        this.eventType = api.getEventType.invoke(factory);
+        types.add(this);
+        refresh();
+      }
+      catch (Throwable e) {
+        logger.debug("Can not register flight recorder event " + name, e);
+        this.factory = null;
+      }
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return true if a running recording has this event enabled
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Starts timing of an event
+   *
+   * @return event to pass to {@link #commit(Object, Object...)} or null if the event is disabled
+   */
+  public Object begin() {
+    if (!enabled) {
+      return null;
+    }
+    try {
+      Object event = api.newEvent.invoke(factory);
+      api.begin.invoke(event);
+      return event;
+    }
+    catch (Throwable e) {
+      return null;
+    }
+  }
+
+  /**
+   * Sets fields, in declaration order, and commits event started by {@link #begin()}
+   */
+  public void commit(Object event, Object... values) {
+    if (event == null) {
+      return;
+    }
+    try {
+      for (int i = 0; i < values.length; i++) {
+        api.set.invoke(event, i, values[i]);
+      }
+      api.commit.invoke(event);
+    }
+    catch (Throwable e) {
+      logger.debug("Can not commit flight recorder event " + name, e);
+    }
+  }
+
+  /**
+   * Commits an instant event
+   */
+  public void emit(Object... values) {
+    commit(begin(), values);
+  }
+
+  private void refresh() {
+    try {
+      enabled = (Boolean) api.isEnabled.invoke(eventType);
+    }
+    catch (Throwable e) {
+      enabled = false;
+    }
+  }
+
+  /**
+   * Reflective handles to jdk.jfr
+   */
+  private static final class Api {
+
+    private Class<?> annotationElement;
+    private Constructor<?> annotationConstructor;
+    private Constructor<?> valueDescriptorConstructor;
+    private Method create;
+    private Method getEventType;
+    private Method isEnabled;
+    private Method newEvent;
+    private Method begin;
+    private Method set;
+    private Method commit;
+
+    static Api load() {
+      try {
+        Api api = new Api();
+        ClassLoader cl = JfrEventType.class.getClassLoader();
+        api.annotationElement = Class.forName("jdk.jfr.AnnotationElement", true, cl);
+        api.annotationConstructor = api.annotationElement.getConstructor(Class.class, Object.class);
+        Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor", true, cl);
+        api.valueDescriptorConstructor = valueDescriptor.getConstructor(Class.class, String.class, List.class);
+        Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory", true, cl);
+        api.create = eventFactory.getMethod("create", List.class, List.class);
+        api.getEventType = eventFactory.getMethod("getEventType");
+        api.newEvent = eventFactory.getMethod("newEvent");
+        api.isEnabled = Class.forName("jdk.jfr.EventType", true, cl).getMethod("isEnabled");
+        Class<?> event = Class.forName("jdk.jfr.Event", true, cl);
+        api.begin = event.getMethod("begin");
+        api.set = event.getMethod("set", Integer.TYPE, Object.class);
+        api.commit = event.getMethod("commit");
+
+        // refresh enabled flags whenever a recording starts or stops
+        Class<?> recorder = Class.forName("jdk.jfr.FlightRecorder", true, cl);
+        Class<?> listener = Class.forName("jdk.jfr.FlightRecorderListener", true, cl);
+        Object proxy = Proxy.newProxyInstance(cl, new Class<?>[] {listener}, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getDeclaringClass() == Object.class) {
+              if ("equals".equals(method.getName())) {
+                return proxy == args[0];
+              }
+              return "hashCode".equals(method.getName()) ? System.identityHashCode(proxy) : "JfrEventType.Listener";
+            }
+            for (JfrEventType type : types) {
+              type.refresh();
+            }
+            return null;
+          }
+        });
+        recorder.getMethod("addListener", listener).invoke(null, proxy);
+        return api;
+      }
+      catch (Throwable e) {
+        logger.debug("Flight recorder API not available, Diameter events are disabled", e);
+        return null;
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    Object annotation(String type, Object value) throws Exception {
+      Class<? extends Annotation> annotation = (Class<? extends Annotation>) Class.forName(type, true, JfrEventType.class.getClassLoader());
+      return annotationConstructor.newInstance(annotation, value);
+    }
+
+    Object valueDescriptor(Class<?> type, String name) throws Exception {
+      return valueDescriptorConstructor.newInstance(type, name, Collections.emptyList());
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.statistic;
+
+import org.jdiameter.common.api.statistic.IHistogram;
+import org.jdiameter.common.api.statistic.IStatisticManager;
+
+/**
+ * Histograms of one peer resolved once per type, application and command, so recording a sample
+ * neither builds the peer name nor allocates a lookup key. Entries are kept in a copy on write array
+ * scanned linearly, a peer sees only a few application and command pairs. Past MAX_ENTRIES pairs
+ * histograms are looked up in statistic manager on each call.
+ */
+public final class HistogramCache {
+
+  static final int MAX_ENTRIES = 64;
+
+  private final IStatisticManager statisticManager;
+  private final String peer;
+  private volatile Entry[] entries = new Entry[0];
+
+  public HistogramCache(IStatisticManager statisticManager, String peer) {
+    this.statisticManager = statisticManager;
+    this.peer = peer;
+  }
+
+  public IHistogram get(IHistogram.Type type, long applicationId, int commandCode) {
+    for (Entry entry : entries) {
+      if (entry.matches(type, applicationId, commandCode)) {
+        return entry.histogram;
+      }
+    }
+    return resolve(type, applicationId, commandCode);
+  }
+
+  private synchronized IHistogram resolve(IHistogram.Type type, long applicationId, int commandCode) {
+    Entry[] current = entries;
+    for (Entry entry : current) {
+      if (entry.matches(type, applicationId, commandCode)) {
+        return entry.histogram;
+      }
+    }
+    IHistogram histogram = statisticManager.getHistogram(type, peer, applicationId, commandCode);
+    // disabled histogram is shared, do not keep it so enabling statistics later takes effect
+    if (statisticManager.isOn() && current.length < MAX_ENTRIES) {
+      Entry[] updated = new Entry[current.length + 1];
+      System.arraycopy(current, 0, updated, 0, current.length);
+      updated[current.length] = new Entry(type, applicationId, commandCode, histogram);
+      entries = updated;
+    }
+    return histogram;
+  }
+
+  public String getPeer() {
+    return peer;
+  }
+
+  private static final class Entry {
+
+    private final IHistogram.Type type;
+    private final long applicationId;
+    private final int commandCode;
+    private final IHistogram histogram;
+
+    private Entry(IHistogram.Type type, long applicationId, int commandCode, IHistogram histogram) {
+      this.type = type;
+      this.applicationId = applicationId;
+      this.commandCode = commandCode;
+      this.histogram = histogram;
+    }
+
+    private boolean matches(IHistogram.Type type, long applicationId, int commandCode) {
+      return this.type == type && this.applicationId == applicationId && this.commandCode == commandCode;
+    }
+  }
+}
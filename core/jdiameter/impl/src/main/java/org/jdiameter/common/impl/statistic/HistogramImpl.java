@@ -0,0 +1,229 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.statistic;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.jdiameter.common.api.statistic.IHistogram;
+
+/**
+ * Log-linear latency histogram with microsecond resolution. Values below 64us
+ * have their own bucket, above that each power of two is split in 32 buckets,
+ * so the reported percentiles are within ~3% of the recorded values. Samples
+ * above ~19 hours are clamped to the last bucket (the maximum stays exact).
+ *
+ * Recording is lock free and does not allocate. {@link #rotate()} moves the
+ * current interval into a snapshot which backs all accessor methods.
+ */
+public class HistogramImpl implements IHistogram {
+
+  private static final int LINEAR_BITS = 6;
+  private static final int SUB_BITS = 5;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  private static final int MAX_EXPONENT = 36;
+  static final int BUCKETS = (1 << LINEAR_BITS) + (MAX_EXPONENT - LINEAR_BITS + 1) * SUB_COUNT;
+
+  private final Type type;
+  private final String peer;
+  private final long applicationId;
+  private final int commandCode;
+  private final String name;
+  private final boolean enabled;
+
+  private final AtomicLongArray buckets;
+  private final AtomicLong max = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+
+  private volatile Snapshot last = new Snapshot(new long[0], 0, 0, 0, null);
+
+  public HistogramImpl(Type type, String peer, long applicationId, int commandCode, boolean enabled) {
+    this.type = type;
+    this.peer = peer;
+    this.applicationId = applicationId;
+    this.commandCode = commandCode;
+    this.name = type.name() + "." + peer + "." + applicationId + "." + commandCode;
+    this.enabled = enabled;
+    this.buckets = enabled ? new AtomicLongArray(BUCKETS) : null;
+  }
+
+  /**
+   * Creates histogram which is not bound to a peer, application and command
+   */
+  HistogramImpl(String name) {
+    this.type = null;
+    this.peer = null;
+    this.applicationId = 0;
+    this.commandCode = 0;
+    this.name = name;
+    this.enabled = true;
+    this.buckets = new AtomicLongArray(BUCKETS);
+  }
+
+  @Override
+  public Type getType() {
+    return type;
+  }
+
+  @Override
+  public String getPeer() {
+    return peer;
+  }
+
+  @Override
+  public long getApplicationId() {
+    return applicationId;
+  }
+
+  @Override
+  public int getCommandCode() {
+    return commandCode;
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @Override
+  public void record(long nanos) {
+    if (!enabled) {
+      return;
+    }
+    long micros = nanos < 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(nanos);
+    buckets.incrementAndGet(indexOf(micros));
+    sum.addAndGet(micros);
+    long m = max.get();
+    while (micros > m && !max.compareAndSet(m, micros)) {
+      m = max.get();
+    }
+  }
+
+  @Override
+  public void rotate() {
+    if (!enabled) {
+      return;
+    }
+    long[] counts = new long[BUCKETS];
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets.getAndSet(i, 0);
+      count += counts[i];
+    }
+    last = new Snapshot(counts, count, max.getAndSet(0), sum.getAndSet(0), last);
+  }
+
+  @Override
+  public long getCount() {
+    return last.count;
+  }
+
+  @Override
+  public long getSum() {
+    return last.sum;
+  }
+
+  @Override
+  public long getTotalCount() {
+    return last.totalCount;
+  }
+
+  @Override
+  public long getTotalSum() {
+    return last.totalSum;
+  }
+
+  @Override
+  public long getValueAtPercentile(double percentile) {
+    Snapshot s = last;
+    if (s.count == 0) {
+      return 0;
+    }
+    double p = Math.min(Math.max(percentile, 0), 100);
+    long rank = Math.max(1, (long) Math.ceil(p / 100 * s.count));
+    long seen = 0;
+    for (int i = 0; i < s.counts.length; i++) {
+      seen += s.counts[i];
+      if (seen >= rank) {
+        // last bucket also holds clamped values
+        return i == BUCKETS - 1 ? s.max : Math.min(highestValueOf(i), s.max);
+      }
+    }
+    return s.max;
+  }
+
+  @Override
+  public long getMaxValue() {
+    return last.max;
+  }
+
+  static int indexOf(long value) {
+    if (value < (1 << LINEAR_BITS)) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKETS - 1;
+    }
+    int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+    return (1 << LINEAR_BITS) + (exponent - LINEAR_BITS) * SUB_COUNT + sub;
+  }
+
+  static long highestValueOf(int index) {
+    if (index < (1 << LINEAR_BITS)) {
+      return index;
+    }
+    int exponent = (index - (1 << LINEAR_BITS)) / SUB_COUNT + LINEAR_BITS;
+    int sub = (index - (1 << LINEAR_BITS)) % SUB_COUNT;
+    long width = 1L << (exponent - SUB_BITS);
+    return ((SUB_COUNT + sub) * width) + width - 1;
+  }
+
+  @Override
+  public String toString() {
+    return "Histogram [" + name + ", count=" + getCount() + ", p50=" + getValueAtPercentile(50) + "us, p99=" + getValueAtPercentile(99) +
+        "us, p99.9=" + getValueAtPercentile(99.9) + "us, max=" + getMaxValue() + "us]";
+  }
+
+  private static class Snapshot {
+
+    private final long[] counts;
+    private final long count;
+    private final long max;
+    private final long sum;
+    private final long totalCount;
+    private final long totalSum;
+
+    Snapshot(long[] counts, long count, long max, long sum, Snapshot previous) {
+      this.counts = counts;
+      this.count = count;
+      this.max = max;
+      this.sum = sum;
+      this.totalCount = previous == null ? count : previous.totalCount + count;
+      this.totalSum = previous == null ? sum : previous.totalSum + sum;
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.statistic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jdiameter.common.api.statistic.IHistogram;
+import org.jdiameter.common.api.statistic.IStatisticManager;
+
+/**
+ * Standard MBean exposing histograms of {@link IStatisticManager}
+ */
+public class LatencyStatistic implements LatencyStatisticMBean {
+
+  private final IStatisticManager statisticManager;
+
+  public LatencyStatistic(IStatisticManager statisticManager) {
+    this.statisticManager = statisticManager;
+  }
+
+  @Override
+  public String[] getHistogramNames() {
+    List<IHistogram> histograms = statisticManager.getHistograms();
+    List<String> names = new ArrayList<String>(histograms.size());
+    for (IHistogram h : histograms) {
+      names.add(h.getName());
+    }
+    return names.toArray(new String[names.size()]);
+  }
+
+  @Override
+  public long getCount(String histogram) {
+    IHistogram h = find(histogram);
+    return h == null ? -1 : h.getCount();
+  }
+
+  @Override
+  public long getPercentile(String histogram, double percentile) {
+    IHistogram h = find(histogram);
+    return h == null ? -1 : h.getValueAtPercentile(percentile);
+  }
+
+  @Override
+  public long getMax(String histogram) {
+    IHistogram h = find(histogram);
+    return h == null ? -1 : h.getMaxValue();
+  }
+
+  @Override
+  public String[] getSummary() {
+    List<IHistogram> histograms = statisticManager.getHistograms();
+    List<String> lines = new ArrayList<String>(histograms.size());
+    for (IHistogram h : histograms) {
+      lines.add(h.toString());
+    }
+    return lines.toArray(new String[lines.size()]);
+  }
+
+  private IHistogram find(String name) {
+    for (IHistogram h : statisticManager.getHistograms()) {
+      if (h.getName().equals(name)) {
+        return h;
+      }
+    }
+    return null;
+  }
+}
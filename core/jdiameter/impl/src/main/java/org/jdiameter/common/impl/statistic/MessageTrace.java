@@ -0,0 +1,66 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.statistic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Standard MBean exposing {@link MessageTracerImpl}
+ */
+public class MessageTrace implements MessageTraceMBean {
+
+  private final MessageTracerImpl tracer;
+
+  public MessageTrace(MessageTracerImpl tracer) {
+    this.tracer = tracer;
+  }
+
+  @Override
+  public int getSampling() {
+    return tracer.getSampling();
+  }
+
+  @Override
+  public void setSampling(int sampling) {
+    tracer.setSampling(sampling);
+  }
+
+  @Override
+  public String[] getStageSummary() {
+    List<String> lines = new ArrayList<String>();
+    for (HistogramImpl h : tracer.getHistograms()) {
+      lines.add(h.toString());
+    }
+    return lines.toArray(new String[lines.size()]);
+  }
+
+  @Override
+  public String[] getSlowestTraces() {
+    List<String> traces = tracer.getSlowestTraces();
+    return traces.toArray(new String[traces.size()]);
+  }
+
+  @Override
+  public void resetSlowestTraces() {
+    tracer.resetSlowestTraces();
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.statistic;
+
+/**
+ * JMX view of sampled message lifecycle traces. Stage values are in
+ * microseconds and describe the last closed statistic interval.
+ */
+public interface MessageTraceMBean {
+
+  int getSampling();
+
+  void setSampling(int sampling);
+
+  /**
+   * @return one line per stage with count, p50, p99, p99.9 and max
+   */
+  String[] getStageSummary();
+
+  /**
+   * @return slowest sampled traces, the slowest first
+   */
+  String[] getSlowestTraces();
+
+  void resetSlowestTraces();
+
+}
@@ -0,0 +1,223 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.statistic;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.common.api.statistic.IMessageTracer;
+
+/**
+ * Message tracer sampling 1 in N messages. Stage histograms and the slowest
+ * traces are only updated for sampled messages, so the cost for other messages
+ * is a null check per stage.
+ */
+public class MessageTracerImpl implements IMessageTracer {
+
+  private static final Stage[] STAGES = Stage.values();
+
+  private volatile int sampling;
+  private final HistogramImpl[] stageHistograms = new HistogramImpl[STAGES.length];
+  private final HistogramImpl totalHistogram = new HistogramImpl("Total");
+
+  // slowest traces, unordered, replaced from the fastest one when full
+  private final Trace[] slowest;
+  private int slowestCount;
+
+  public MessageTracerImpl(int sampling, int slowestSize) {
+    this.sampling = Math.max(0, sampling);
+    this.slowest = new Trace[Math.max(0, slowestSize)];
+    for (Stage stage : STAGES) {
+      stageHistograms[stage.ordinal()] = new HistogramImpl(stage.name());
+    }
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return sampling > 0;
+  }
+
+  public int getSampling() {
+    return sampling;
+  }
+
+  /**
+   * @param sampling N to trace 1 in N messages, 0 disables tracing
+   */
+  public void setSampling(int sampling) {
+    this.sampling = Math.max(0, sampling);
+  }
+
+  @Override
+  public void start(IMessage message, Stage stage) {
+    int n = sampling;
+    if (n <= 0 || message.getTrace() != null) {
+      return;
+    }
+    if (n > 1 && ThreadLocalRandom.current().nextInt(n) != 0) {
+      return;
+    }
+    long[] trace = new long[STAGES.length];
+    if (stage == Stage.Decoded && message.getReceiveTime() != 0) {
+      trace[Stage.Received.ordinal()] = message.getReceiveTime();
+    }
+    message.setTrace(trace);
+    message.stamp(stage);
+  }
+
+  @Override
+  public void complete(IMessage message) {
+    long[] trace = message.getTrace();
+    if (trace == null) {
+      return;
+    }
+    message.setTrace(null);
+    long first = 0;
+    long previous = 0;
+    for (int i = 0; i < trace.length; i++) {
+      if (trace[i] == 0) {
+        continue;
+      }
+      if (previous != 0) {
+        stageHistograms[i].record(trace[i] - previous);
+      }
+      else {
+        first = trace[i];
+      }
+      previous = trace[i];
+    }
+    long total = previous - first;
+    totalHistogram.record(total);
+    if (slowest.length > 0) {
+      offer(trace, total, message);
+    }
+  }
+
+  @Override
+  public void rotate() {
+    for (HistogramImpl h : stageHistograms) {
+      h.rotate();
+    }
+    totalHistogram.rotate();
+  }
+
+  public List<HistogramImpl> getHistograms() {
+    List<HistogramImpl> histograms = new ArrayList<HistogramImpl>(stageHistograms.length + 1);
+    histograms.addAll(Arrays.asList(stageHistograms));
+    histograms.add(totalHistogram);
+    return histograms;
+  }
+
+  /**
+   * @return slowest traces, the slowest first
+   */
+  public synchronized List<String> getSlowestTraces() {
+    Trace[] copy = Arrays.copyOf(slowest, slowestCount);
+    Arrays.sort(copy, new Comparator<Trace>() {
+      @Override
+      public int compare(Trace o1, Trace o2) {
+        return o1.total < o2.total ? 1 : o1.total == o2.total ? 0 : -1;
+      }
+    });
+    List<String> traces = new ArrayList<String>(copy.length);
+    for (Trace t : copy) {
+      traces.add(t.toString());
+    }
+    return traces;
+  }
+
+  public synchronized void resetSlowestTraces() {
+    Arrays.fill(slowest, null);
+    slowestCount = 0;
+  }
+
+  private synchronized void offer(long[] trace, long total, IMessage message) {
+    int index;
+    if (slowestCount < slowest.length) {
+      index = slowestCount++;
+    }
+    else {
+      index = 0;
+      for (int i = 1; i < slowestCount; i++) {
+        if (slowest[i].total < slowest[index].total) {
+          index = i;
+        }
+      }
+      if (slowest[index].total >= total) {
+        return;
+      }
+    }
+    slowest[index] = new Trace(trace, total, message);
+  }
+
+  private static class Trace {
+
+    private final long[] stamps;
+    private final long total;
+    private final long timestamp = System.currentTimeMillis();
+    private final int commandCode;
+    private final long applicationId;
+    private final boolean request;
+    private final long hopByHopId;
+    private final long endToEndId;
+    private final String peer;
+
+    Trace(long[] stamps, long total, IMessage message) {
+      this.stamps = stamps;
+      this.total = total;
+      this.commandCode = message.getCommandCode();
+      this.applicationId = message.getApplicationId();
+      this.request = message.isRequest();
+      this.hopByHopId = message.getHopByHopIdentifier();
+      this.endToEndId = message.getEndToEndIdentifier();
+      this.peer = message.getPeer() != null ? String.valueOf(message.getPeer().getUri()) : null;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(timestamp)));
+      sb.append(" total=").append(TimeUnit.NANOSECONDS.toMicros(total)).append("us");
+      sb.append(" code=").append(commandCode).append(request ? " request" : " answer");
+      sb.append(" app=").append(applicationId);
+      sb.append(" hbh=").append(hopByHopId).append(" e2e=").append(endToEndId);
+      if (peer != null) {
+        sb.append(" peer=").append(peer);
+      }
+      long previous = 0;
+      for (int i = 0; i < stamps.length; i++) {
+        if (stamps[i] != 0) {
+          sb.append(' ').append(STAGES[i].name()).append("=+");
+          sb.append(previous == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(stamps[i] - previous)).append("us");
+          previous = stamps[i];
+        }
+      }
+      return sb.toString();
+    }
+  }
+}
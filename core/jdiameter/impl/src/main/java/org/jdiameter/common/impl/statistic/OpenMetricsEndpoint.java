@@ -0,0 +1,463 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.statistic;
+
+import static org.jdiameter.common.api.statistic.IStatisticRecord.Counters.AppGenRejectedRequest;
+import static org.jdiameter.common.api.statistic.IStatisticRecord.Counters.AppGenRejectedResponse;
+import static org.jdiameter.common.api.statistic.IStatisticRecord.Counters.AppGenRequest;
+import static org.jdiameter.common.api.statistic.IStatisticRecord.Counters.AppGenResponse;
+import static org.jdiameter.common.api.statistic.IStatisticRecord.Counters.BrokenTasks;
+import static org.jdiameter.common.api.statistic.IStatisticRecord.Counters.CanceledTasks;
+import static org.jdiameter.common.api.statistic.IStatisticRecord.Counters.NetGenRejectedRequest;
+import static org.jdiameter.common.api.statistic.IStatisticRecord.Counters.NetGenRejectedResponse;
+import static org.jdiameter.common.api.statistic.IStatisticRecord.Counters.NetGenRequest;
+import static org.jdiameter.common.api.statistic.IStatisticRecord.Counters.NetGenResponse;
+import static org.jdiameter.common.api.statistic.IStatisticRecord.Counters.RejectedTasks;
+import static org.jdiameter.common.api.statistic.IStatisticRecord.Counters.ShedRequest;
+import static org.jdiameter.common.api.statistic.IStatisticRecord.Counters.SysGenResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.jdiameter.api.StatisticRecord;
+import org.jdiameter.common.api.statistic.IHistogram;
+import org.jdiameter.common.api.statistic.IStatistic;
+import org.jdiameter.common.api.statistic.IStatisticManager;
+import org.jdiameter.common.api.statistic.IStatisticRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded scrape endpoint rendering statistics and latency histograms in
+ * OpenMetrics text format under /metrics. Monotonic counts are rendered as
+ * counters, other records as gauges and histograms as summaries whose count and
+ * sum cover all closed intervals. Scrapes are served one at a time by
+ * a single daemon thread, rendering straight into a reused byte buffer, so a
+ * scrape does not produce garbage apart from the HTTP exchange itself.
+ */
+public class OpenMetricsEndpoint implements HttpHandler {
+
+  private static final Logger logger = LoggerFactory.getLogger(OpenMetricsEndpoint.class);
+
+  private static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+  private static final String PREFIX = "jdiameter_";
+  private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+  private static final String[] QUANTILE_LABELS = {"0.5", "0.99", "0.999"};
+  // records which only grow, apart from an explicit statistic reset
+  private static final Set<String> COUNTERS = new HashSet<String>();
+
+  static {
+    for (IStatisticRecord.Counters counter : EnumSet.of(AppGenRequest, AppGenRejectedRequest, AppGenResponse, AppGenRejectedResponse,
+        NetGenRequest, NetGenRejectedRequest, NetGenResponse, NetGenRejectedResponse, SysGenResponse, ShedRequest, CanceledTasks, BrokenTasks,
+        RejectedTasks)) {
+      COUNTERS.add(counter.name());
+    }
+  }
+
+  private final IStatisticManager statisticManager;
+  private final InetSocketAddress address;
+
+  private HttpServer server;
+  private ExecutorService executor;
+
+  // reused between scrapes, only touched by the endpoint thread
+  private byte[] buffer = new byte[64 * 1024];
+  private int length;
+  private final List<String> families = new ArrayList<String>();
+
+  public OpenMetricsEndpoint(IStatisticManager statisticManager, String host, int port) {
+    this.statisticManager = statisticManager;
+    this.address = new InetSocketAddress(host, port);
+  }
+
+  public synchronized void start() throws IOException {
+    if (server != null) {
+      return;
+    }
+    executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "jdiameter-metrics");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    server = HttpServer.create(address, 0);
+    server.createContext("/metrics", this);
+    server.setExecutor(executor);
+    server.start();
+    logger.info("OpenMetrics endpoint listening on {}", server.getAddress());
+  }
+
+  public synchronized void stop() {
+    if (server != null) {
+      server.stop(0);
+      server = null;
+    }
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  public synchronized InetSocketAddress getAddress() {
+    return server != null ? server.getAddress() : address;
+  }
+
+  @Override
+  public void handle(HttpExchange exchange) throws IOException {
+    try {
+      String method = exchange.getRequestMethod();
+      if (!"GET".equals(method) && !"HEAD".equals(method)) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      render();
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      if ("HEAD".equals(method)) {
+        exchange.sendResponseHeaders(200, -1);
+        return;
+      }
+      exchange.sendResponseHeaders(200, length);
+      OutputStream os = exchange.getResponseBody();
+      os.write(buffer, 0, length);
+      os.flush();
+    }
+    catch (RuntimeException e) {
+      logger.warn("Failed to render metrics", e);
+      exchange.sendResponseHeaders(500, -1);
+    }
+    finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * Renders all statistics into the internal buffer
+   */
+  void render() {
+    length = 0;
+    List<IStatistic> statistics = statisticManager.getStatistic();
+    for (IStatistic.Groups group : IStatistic.Groups.values()) {
+      // samples of one family have to be contiguous, so collect names per group first
+      families.clear();
+      for (IStatistic statistic : statistics) {
+        if (statistic.getGroup() == group && statistic.isEnabled()) {
+          for (StatisticRecord record : records(statistic)) {
+            if (!families.contains(record.getName())) {
+              families.add(record.getName());
+            }
+          }
+        }
+      }
+      for (int i = 0; i < families.size(); i++) {
+        renderFamily(group, families.get(i), statistics);
+      }
+    }
+    for (IHistogram.Type type : IHistogram.Type.values()) {
+      renderHistograms(type, statisticManager.getHistograms());
+    }
+    write("# EOF\n");
+  }
+
+  byte[] getBuffer() {
+    return buffer;
+  }
+
+  int getLength() {
+    return length;
+  }
+
+  private void renderFamily(IStatistic.Groups group, String family, List<IStatistic> statistics) {
+    boolean header = false;
+    boolean counter = COUNTERS.contains(family);
+    for (IStatistic statistic : statistics) {
+      if (statistic.getGroup() != group || !statistic.isEnabled()) {
+        continue;
+      }
+      IStatisticRecord record = statistic.getRecordByName(family);
+      if (record == null) {
+        continue;
+      }
+      if (!header) {
+        write("# TYPE ");
+        writeFamilyName(group, family);
+        write(counter ? " counter\n" : " gauge\n");
+        if (record.getDescription() != null) {
+          write("# HELP ");
+          writeFamilyName(group, family);
+          write(' ');
+          writeEscaped(record.getDescription());
+          write('\n');
+        }
+        header = true;
+      }
+      writeFamilyName(group, family);
+      if (counter) {
+        write("_total");
+      }
+      write("{name=\"");
+      // statistic names are prefixed with group name and a dot
+      String name = statistic.getName();
+      int offset = name.startsWith(group.name()) ? group.name().length() + 1 : 0;
+      writeEscaped(name, Math.min(offset, name.length()));
+      write("\"} ");
+      writeValue(record);
+      write('\n');
+    }
+  }
+
+  private void renderHistograms(IHistogram.Type type, List<IHistogram> histograms) {
+    boolean header = false;
+    for (IHistogram histogram : histograms) {
+      if (histogram.getType() != type) {
+        continue;
+      }
+      if (!header) {
+        write("# TYPE ");
+        writeHistogramName(type, false);
+        write(" summary\n# UNIT ");
+        writeHistogramName(type, false);
+        write(" microseconds\n# HELP ");
+        writeHistogramName(type, false);
+        write(' ');
+        writeEscaped(type.getDescription());
+        write('\n');
+        header = true;
+      }
+      for (int i = 0; i < QUANTILES.length; i++) {
+        writeHistogramName(type, false);
+        writeHistogramLabels(histogram);
+        write(",quantile=\"");
+        write(QUANTILE_LABELS[i]);
+        write("\"} ");
+        writeLong(histogram.getValueAtPercentile(QUANTILES[i] * 100));
+        write('\n');
+      }
+      writeHistogramName(type, false);
+      write("_count");
+      writeHistogramLabels(histogram);
+      write("} ");
+      writeLong(histogram.getTotalCount());
+      write('\n');
+      writeHistogramName(type, false);
+      write("_sum");
+      writeHistogramLabels(histogram);
+      write("} ");
+      writeLong(histogram.getTotalSum());
+      write('\n');
+    }
+    header = false;
+    for (IHistogram histogram : histograms) {
+      if (histogram.getType() != type) {
+        continue;
+      }
+      if (!header) {
+        write("# TYPE ");
+        writeHistogramName(type, true);
+        write(" gauge\n# UNIT ");
+        writeHistogramName(type, true);
+        write(" microseconds\n");
+        header = true;
+      }
+      writeHistogramName(type, true);
+      writeHistogramLabels(histogram);
+      write("} ");
+      writeLong(histogram.getMaxValue());
+      write('\n');
+    }
+  }
+
+  private Iterable<StatisticRecord> records(IStatistic statistic) {
+    // avoid the array copy made by getRecords()
+    return statistic instanceof StatisticImpl ? ((StatisticImpl) statistic).records : Arrays.asList(statistic.getRecords());
+  }
+
+  private void writeFamilyName(IStatistic.Groups group, String family) {
+    write(PREFIX);
+    writeName(group.name());
+    write('_');
+    writeName(family);
+  }
+
+  private void writeHistogramName(IHistogram.Type type, boolean max) {
+    write(PREFIX);
+    write("latency_");
+    writeName(type.name());
+    write(max ? "_max_microseconds" : "_microseconds");
+  }
+
+  private void writeHistogramLabels(IHistogram histogram) {
+    write("{peer=\"");
+    writeEscaped(histogram.getPeer());
+    write("\",application_id=\"");
+    writeLong(histogram.getApplicationId());
+    write("\",command_code=\"");
+    writeLong(histogram.getCommandCode());
+    write('"');
+  }
+
+  private void writeValue(IStatisticRecord record) {
+    IStatisticRecord.ValueHolder holder = record instanceof StatisticRecordImpl ? ((StatisticRecordImpl) record).valueHolder : null;
+    if (holder instanceof IStatisticRecord.DoubleValueHolder) {
+      writeDouble(((IStatisticRecord.DoubleValueHolder) holder).getValueAsDouble());
+    }
+    else if (holder instanceof IStatisticRecord.IntegerValueHolder) {
+      writeLong(((IStatisticRecord.IntegerValueHolder) holder).getValueAsInt());
+    }
+    else if (holder instanceof IStatisticRecord.LongValueHolder) {
+      writeLong(((IStatisticRecord.LongValueHolder) holder).getValueAsLong());
+    }
+    else if (holder == null) {
+      writeLong(record.getValueAsLong());
+    }
+    else {
+      write("NaN");
+    }
+  }
+
+  // --- low level output, ASCII names and numbers, UTF-8 label values
+
+  private void ensure(int extra) {
+    if (length + extra > buffer.length) {
+      byte[] grown = new byte[Math.max(buffer.length * 2, length + extra)];
+      System.arraycopy(buffer, 0, grown, 0, length);
+      buffer = grown;
+    }
+  }
+
+  private void write(char c) {
+    ensure(1);
+    buffer[length++] = (byte) c;
+  }
+
+  private void write(String s) {
+    ensure(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      buffer[length++] = (byte) s.charAt(i);
+    }
+  }
+
+  private void writeName(String s) {
+    ensure(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+      buffer[length++] = (byte) (valid ? c : '_');
+    }
+  }
+
+  private void writeEscaped(String s) {
+    writeEscaped(s, 0);
+  }
+
+  private void writeEscaped(String s, int from) {
+    ensure((s.length() - from) * 3);
+    for (int i = from; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '\\' || c == '"') {
+        ensure(2);
+        buffer[length++] = '\\';
+        buffer[length++] = (byte) c;
+      }
+      else if (c == '\n') {
+        ensure(2);
+        buffer[length++] = '\\';
+        buffer[length++] = 'n';
+      }
+      else if (c < 0x80) {
+        buffer[length++] = (byte) c;
+      }
+      else if (c < 0x800) {
+        buffer[length++] = (byte) (0xC0 | (c >> 6));
+        buffer[length++] = (byte) (0x80 | (c & 0x3F));
+      }
+      else {
+        buffer[length++] = (byte) (0xE0 | (c >> 12));
+        buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        buffer[length++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+  }
+
+  private void writeLong(long value) {
+    ensure(20);
+    if (value == Long.MIN_VALUE) {
+      write("-9223372036854775808");
+      return;
+    }
+    if (value < 0) {
+      buffer[length++] = '-';
+      value = -value;
+    }
+    int start = length;
+    do {
+      buffer[length++] = (byte) ('0' + (value % 10));
+      value /= 10;
+    } while (value != 0);
+    // digits were written least significant first
+    for (int i = start, j = length - 1; i < j; i++, j--) {
+      byte b = buffer[i];
+      buffer[i] = buffer[j];
+      buffer[j] = b;
+    }
+  }
+
+  private void writeDouble(double value) {
+    if (Double.isNaN(value)) {
+      write("NaN");
+    }
+    else if (Double.isInfinite(value)) {
+      write(value > 0 ? "+Inf" : "-Inf");
+    }
+    else if (Math.abs(value) >= 1e15) {
+      writeLong((long) value);
+    }
+    else {
+      // fixed three decimal places
+      long scaled = Math.round(value * 1000);
+      if (scaled < 0) {
+        write('-');
+        scaled = -scaled;
+      }
+      writeLong(scaled / 1000);
+      write('.');
+      long fraction = scaled % 1000;
+      write((char) ('0' + fraction / 100));
+      write((char) ('0' + (fraction / 10) % 10));
+      write((char) ('0' + fraction % 10));
+    }
+  }
+}
@@ -42,7 +42,9 @@
 
 package org.jdiameter.common.impl.statistic;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.jdiameter.api.StatisticRecord;
 import org.jdiameter.common.api.statistic.IStatistic;
@@ -58,6 +60,9 @@ class StatisticImpl implements IStatistic {
 
   protected boolean enable = true;
   protected ConcurrentLinkedQueue<StatisticRecord> records = new ConcurrentLinkedQueue<StatisticRecord>();
+  // records resolved on registration, so lookups on the message path do not scan
+  protected ConcurrentHashMap<String, IStatisticRecord> recordsByName = new ConcurrentHashMap<String, IStatisticRecord>();
+  protected AtomicReferenceArray<IStatisticRecord> recordsByCounter = new AtomicReferenceArray<IStatisticRecord>(Counters.values().length);
   protected String name;
   protected String description;
   protected IStatistic.Groups group;
@@ -93,6 +98,7 @@ class StatisticImpl implements IStatistic {
     this.description = desctiprion;
     for (IStatisticRecord r : rec) {
       records.add(r);
+      index(r);
     }
   }
   @Override
@@ -100,27 +106,33 @@ class StatisticImpl implements IStatistic {
     for (IStatisticRecord r : rec) {
       r.enable(this.enable);
       records.add(r);
+      index(r);
     }
   }
 
-  @Override
-  public IStatisticRecord getRecordByName(String name) {
-    for (StatisticRecord r : records) {
-      if (r.getName().equals(name)) {
-        return (IStatisticRecord) r;
+  private void index(IStatisticRecord r) {
+    recordsByName.putIfAbsent(r.getName(), r);
+    for (Counters c : Counters.values()) {
+      if (c.name().equals(r.getName())) {
+        recordsByCounter.compareAndSet(c.ordinal(), null, r);
+        break;
       }
     }
-    return null;
+  }
+
+  @Override
+  public IStatistic.Groups getGroup() {
+    return group;
+  }
+
+  @Override
+  public IStatisticRecord getRecordByName(String name) {
+    return recordsByName.get(name);
   }
 
   @Override
   public IStatisticRecord getRecordByName(Counters name) {
-    for (StatisticRecord r : records) {
-      if (r.getName().equals(name.toString())) {
-        return (IStatisticRecord) r;
-      }
-    }
-    return null;
+    return recordsByCounter.get(name.ordinal());
   }
 
   @Override
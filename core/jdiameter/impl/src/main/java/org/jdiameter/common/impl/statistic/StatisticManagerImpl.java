@@ -46,10 +46,13 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.jdiameter.api.Configuration;
 import org.jdiameter.client.impl.helpers.Parameters;
+import org.jdiameter.common.api.statistic.IHistogram;
 import org.jdiameter.common.api.statistic.IStatistic;
 import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
@@ -68,9 +71,17 @@ public class StatisticManagerImpl implements IStatisticManager {
   private List<IStatistic> frozenAllStatistic = Collections.unmodifiableList(allStatistic);
   private List<IStatisticRecord> frozenAllPSStatisticRecord = Collections.unmodifiableList(allPSStatisticRecord);
 
+  // histograms are created on first sample, enabled ones are also kept in list for processor/JMX
+  private static final String HISTOGRAM_PREFIX = "Latency";
+  private static final IHistogram DISABLED_HISTOGRAM = new HistogramImpl(IHistogram.Type.RoundTripTime, "", 0, 0, false);
+  private ConcurrentMap<HistogramKey, IHistogram> histograms = new ConcurrentHashMap<HistogramKey, IHistogram>();
+  private List<IHistogram> allHistograms = new CopyOnWriteArrayList<IHistogram>();
+  private List<IHistogram> frozenAllHistograms = Collections.unmodifiableList(allHistograms);
+
   private boolean enabled;
   private long pause, delay;
   private Set<String> activeRecords; //list of stats enabled on start
+  private MessageTracerImpl messageTracer;
 
 
   public StatisticManagerImpl(Configuration config) {
@@ -78,12 +89,16 @@ public class StatisticManagerImpl implements IStatisticManager {
     long delay = (Long) Parameters.StatisticsLoggerDelay.defValue();
     boolean enabled = (Boolean) Parameters.StatisticsEnabled.defValue();
     String activeRecords = (String) Parameters.Statistics.defValue();
+    int traceSampling = (Integer) Parameters.StatisticsTraceSampling.defValue();
+    int traceSlowest = (Integer) Parameters.StatisticsTraceSlowest.defValue();
     Configuration[] loggerParams = config.getChildren(Parameters.Statistics.ordinal());
     if (loggerParams != null && loggerParams.length > 0) {
       pause = loggerParams[0].getLongValue(Parameters.StatisticsLoggerPause.ordinal(), pause);
       delay = loggerParams[0].getLongValue(Parameters.StatisticsLoggerDelay.ordinal(), delay);
       enabled = loggerParams[0].getBooleanValue(Parameters.StatisticsEnabled.ordinal(), enabled);
       activeRecords = loggerParams[0].getStringValue(Parameters.StatisticsActiveList.ordinal(), activeRecords);
+      traceSampling = loggerParams[0].getIntValue(Parameters.StatisticsTraceSampling.ordinal(), traceSampling);
+      traceSlowest = loggerParams[0].getIntValue(Parameters.StatisticsTraceSlowest.ordinal(), traceSlowest);
     }
     this.pause = pause;
     this.delay = delay;
@@ -95,6 +110,7 @@ public class StatisticManagerImpl implements IStatisticManager {
       }
     }
     this.activeRecords = Collections.unmodifiableSet(enabledSet);
+    this.messageTracer = new MessageTracerImpl(enabled ? traceSampling : 0, traceSlowest);
 
   }
 
@@ -192,6 +208,27 @@ public class StatisticManagerImpl implements IStatisticManager {
     this.allStatistic.remove(stat);
   }
 
+  @Override
+  public IHistogram getHistogram(IHistogram.Type type, String peer, long applicationId, int commandCode) {
+    if (!enabled) {
+      return DISABLED_HISTOGRAM;
+    }
+    HistogramKey key = new HistogramKey(type, peer, applicationId, commandCode);
+    IHistogram histogram = histograms.get(key);
+    if (histogram == null) {
+      boolean active = this.isEnabled(HISTOGRAM_PREFIX + "." + type.name());
+      histogram = new HistogramImpl(type, peer, applicationId, commandCode, active);
+      IHistogram present = histograms.putIfAbsent(key, histogram);
+      if (present != null) {
+        histogram = present;
+      }
+      else if (active) {
+        allHistograms.add(histogram);
+      }
+    }
+    return histogram;
+  }
+
   private boolean isEnabled(String name) {
 
     if (this.activeRecords.contains(name)) {
@@ -239,4 +276,50 @@ public class StatisticManagerImpl implements IStatisticManager {
     return this.frozenAllStatistic;
   }
 
+  @Override
+  public List<IHistogram> getHistograms() {
+    return this.frozenAllHistograms;
+  }
+
+  @Override
+  public MessageTracerImpl getMessageTracer() {
+    return this.messageTracer;
+  }
+
+  private static final class HistogramKey {
+
+    private final IHistogram.Type type;
+    private final String peer;
+    private final long applicationId;
+    private final int commandCode;
+
+    HistogramKey(IHistogram.Type type, String peer, long applicationId, int commandCode) {
+      this.type = type;
+      this.peer = peer;
+      this.applicationId = applicationId;
+      this.commandCode = commandCode;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = type.hashCode();
+      result = 31 * result + (peer == null ? 0 : peer.hashCode());
+      result = 31 * result + (int) (applicationId ^ (applicationId >>> 32));
+      return 31 * result + commandCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof HistogramKey)) {
+        return false;
+      }
+      HistogramKey other = (HistogramKey) obj;
+      return type == other.type && applicationId == other.applicationId && commandCode == other.commandCode &&
+          (peer == null ? other.peer == null : peer.equals(other.peer));
+    }
+  }
+
 }
@@ -44,14 +44,20 @@ package org.jdiameter.common.impl.statistic;
 
 import static org.jdiameter.common.api.concurrent.IConcurrentFactory.ScheduledExecServices.StatisticTimer;
 
+import java.lang.management.ManagementFactory;
 import java.util.HashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.jdiameter.api.Configuration;
+import org.jdiameter.client.impl.helpers.Parameters;
 import org.jdiameter.api.StatisticRecord;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.api.statistic.IHistogram;
 import org.jdiameter.common.api.statistic.IStatistic;
 import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticProcessor;
@@ -76,18 +82,36 @@ public class StatisticProcessorImpl implements IStatisticProcessor {
   // statics for logger names
   private static final String STATS_ROOT_LOGGER_NAME = "jdiameter.statistic";
   private static final String STATS_LOGGER_PREFIX = "jdiameter.statistic.";
+  private static final String LATENCY_MBEAN_NAME = "org.jdiameter:type=LatencyStatistic,id=";
+  private static final String TRACE_MBEAN_NAME = "org.jdiameter:type=MessageTrace,id=";
 
   // future for actions to update per second stats
   private Future<?> processorFuture;
   // future for logger runnable
   private Future<?> logFuture;
 
+  // name under which histograms are exposed over JMX, null when not registered
+  private ObjectName latencyMBeanName;
+  private ObjectName traceMBeanName;
+
+  // embedded scrape endpoint, null when not configured
+  private OpenMetricsEndpoint metricsEndpoint;
+
   // map of loggers, so we dont have to fetch from slf all the time
   private HashMap<String, Logger> loggers = new HashMap<String, Logger>();
 
   public StatisticProcessorImpl(Configuration config, IConcurrentFactory concurrentFactory, final IStatisticManager statisticFactory) {
     this.statisticFactory = statisticFactory;
     this.concurrentFactory = concurrentFactory;
+    Configuration[] loggerParams = config.getChildren(Parameters.Statistics.ordinal());
+    if (loggerParams != null && loggerParams.length > 0) {
+      int port = loggerParams[0].getIntValue(Parameters.StatisticsMetricsPort.ordinal(), (Integer) Parameters.StatisticsMetricsPort.defValue());
+      if (port > 0) {
+        String host = loggerParams[0].getStringValue(Parameters.StatisticsMetricsAddress.ordinal(),
+            (String) Parameters.StatisticsMetricsAddress.defValue());
+        this.metricsEndpoint = new OpenMetricsEndpoint(statisticFactory, host, port);
+      }
+    }
   }
 
   @Override
@@ -123,6 +147,21 @@ public class StatisticProcessorImpl implements IStatisticProcessor {
       @Override
       public void run() {
         boolean oneLine = false;
+        statisticFactory.getMessageTracer().rotate();
+        // histograms are reset once per logging interval
+        for (IHistogram histogram : statisticFactory.getHistograms()) {
+          histogram.rotate();
+          oneLine = true;
+          String loggerKey = "Latency." + histogram.getType().name();
+          Logger logger = null;
+          if ((logger = loggers.get(loggerKey)) == null) {
+            logger = LoggerFactory.getLogger(STATS_LOGGER_PREFIX + loggerKey);
+            loggers.put(loggerKey, logger);
+          }
+          if (logger.isTraceEnabled() && histogram.getCount() > 0) {
+            logger.trace(histogram.toString());
+          }
+        }
         for (IStatistic statistic : statisticFactory.getStatistic()) {
           if (statistic.isEnabled()) {
             for (StatisticRecord record : statistic.getRecords()) {
@@ -151,6 +190,37 @@ public class StatisticProcessorImpl implements IStatisticProcessor {
         }
       }
     }, statisticFactory.getPause(), statisticFactory.getDelay(), TimeUnit.MILLISECONDS);
+
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(LATENCY_MBEAN_NAME + Integer.toHexString(System.identityHashCode(this)));
+      server.registerMBean(new LatencyStatistic(statisticFactory), name);
+      this.latencyMBeanName = name;
+    }
+    catch (Exception e) {
+      logger.warn("Can not register latency statistic MBean", e);
+    }
+
+    if (this.statisticFactory.getMessageTracer() instanceof MessageTracerImpl) {
+      try {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(TRACE_MBEAN_NAME + Integer.toHexString(System.identityHashCode(this)));
+        server.registerMBean(new MessageTrace((MessageTracerImpl) this.statisticFactory.getMessageTracer()), name);
+        this.traceMBeanName = name;
+      }
+      catch (Exception e) {
+        logger.warn("Can not register message trace MBean", e);
+      }
+    }
+
+    if (this.metricsEndpoint != null) {
+      try {
+        this.metricsEndpoint.start();
+      }
+      catch (Exception e) {
+        logger.warn("Can not start OpenMetrics endpoint on " + this.metricsEndpoint.getAddress(), e);
+      }
+    }
   }
 
   @Override
@@ -167,6 +237,29 @@ public class StatisticProcessorImpl implements IStatisticProcessor {
       this.logFuture.cancel(false);
       this.logFuture = null;
     }
+
+    if (this.latencyMBeanName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.latencyMBeanName);
+      }
+      catch (Exception e) {
+        logger.debug("Can not unregister latency statistic MBean", e);
+      }
+      this.latencyMBeanName = null;
+    }
+    if (this.traceMBeanName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.traceMBeanName);
+      }
+      catch (Exception e) {
+        logger.debug("Can not unregister message trace MBean", e);
+      }
+      this.traceMBeanName = null;
+    }
+
+    if (this.metricsEndpoint != null) {
+      this.metricsEndpoint.stop();
+    }
     this.concurrentFactory.shutdownNow(executorService);
   }
 
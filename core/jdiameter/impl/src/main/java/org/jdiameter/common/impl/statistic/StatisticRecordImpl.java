@@ -44,7 +44,6 @@ package org.jdiameter.common.impl.statistic;
 
 import java.util.Arrays;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicLong;
 
 import org.jdiameter.api.StatisticRecord;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
@@ -61,13 +60,13 @@ class StatisticRecordImpl implements IStatisticRecord {
   protected String description;
   protected Counters counter;
 
-  protected AtomicLong value;
+  protected StripedLong value;
   protected ConcurrentLinkedQueue<StatisticRecord> childs = new ConcurrentLinkedQueue<StatisticRecord>();
   protected ValueHolder valueHolder;
 
   StatisticRecordImpl(String name) {
     this.name = name;
-    this.value = new AtomicLong(0);
+    this.value = new StripedLong(0);
   }
 
   StatisticRecordImpl(String name, String description) {
@@ -98,7 +97,7 @@ class StatisticRecordImpl implements IStatisticRecord {
 
   StatisticRecordImpl(String name, String description,  long value) {
     this(name, description);
-    this.value = new AtomicLong(value);
+    this.value = new StripedLong(value);
   }
 
   @Override
@@ -131,14 +130,14 @@ class StatisticRecordImpl implements IStatisticRecord {
   @Override
   public void inc() {
     if (enable) {
-      this.value.incrementAndGet();
+      this.value.add(1);
     }
   }
 
   @Override
   public void inc(long delta) {
     if (enable) {
-      this.value.addAndGet(delta);
+      this.value.add(delta);
     }
   }
 
@@ -159,7 +158,7 @@ class StatisticRecordImpl implements IStatisticRecord {
   @Override
   public void dec() {
     if (enable) {
-      value.decrementAndGet();
+      value.add(-1);
     }
   }
 
@@ -0,0 +1,97 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.statistic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Long counter which spreads contended updates over cells on separate cache lines, like the JDK 8 LongAdder.
+ * Uncontended it is a single atomic long; the cells are only created after the first failed update.
+ * Reads sum base and cells, so they are not an atomic snapshot while updates are in progress.
+ */
+final class StripedLong {
+
+  // longs per cell, keeps cells one cache line apart
+  private static final int PAD = 8;
+  private static final int CELLS;
+
+  static {
+    int n = 1;
+    while (n < Runtime.getRuntime().availableProcessors()) {
+      n <<= 1;
+    }
+    CELLS = n;
+  }
+
+  private final AtomicLong base;
+  private volatile AtomicLongArray cells;
+
+  StripedLong(long initial) {
+    this.base = new AtomicLong(initial);
+  }
+
+  void add(long x) {
+    AtomicLongArray cs = cells;
+    if (cs == null) {
+      long b = base.get();
+      if (base.compareAndSet(b, b + x)) {
+        return;
+      }
+      cs = inflate();
+    }
+    cs.getAndAdd(index(), x);
+  }
+
+  long get() {
+    long sum = base.get();
+    AtomicLongArray cs = cells;
+    if (cs != null) {
+      for (int i = 0; i < CELLS; i++) {
+        sum += cs.get(i * PAD);
+      }
+    }
+    return sum;
+  }
+
+  void set(long value) {
+    AtomicLongArray cs = cells;
+    if (cs != null) {
+      for (int i = 0; i < CELLS; i++) {
+        cs.set(i * PAD, 0);
+      }
+    }
+    base.set(value);
+  }
+
+  private synchronized AtomicLongArray inflate() {
+    if (cells == null) {
+      cells = new AtomicLongArray(CELLS * PAD);
+    }
+    return cells;
+  }
+
+  private static int index() {
+    long id = Thread.currentThread().getId();
+    int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+    return ((h >>> 16) & (CELLS - 1)) * PAD;
+  }
+}
@@ -59,7 +59,9 @@ import org.jdiameter.client.impl.BaseSessionImpl;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.jdiameter.common.api.data.ISessionDatasource;
 import org.jdiameter.common.api.timer.ITimerFacility;
+import org.jdiameter.common.api.timer.ITimerHandle;
 import org.jdiameter.common.impl.app.AppSessionImpl;
+import org.jdiameter.common.impl.jfr.DiameterEvents;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -158,15 +160,32 @@ public class LocalTimerFacilityImpl implements ITimerFacility {
     }
   }
 
-  private final class TimerTaskHandle implements Runnable, Externalizable {
+  private final class TimerTaskHandle implements Runnable, Externalizable, ITimerHandle {
     // its not really serializable;
     private String sessionId;
     private String timerName;
     private String id; //for debug, easier to check what's going on and what that timer does.
     private transient ScheduledFuture<?> future;
 
+    @Override
+    public String getSessionId() {
+      return sessionId;
+    }
+
+    @Override
+    public String getTimerName() {
+      return timerName;
+    }
+
+    @Override
+    public long getDelay() {
+      ScheduledFuture<?> f = future;
+      return f != null ? f.getDelay(TimeUnit.MILLISECONDS) : 0;
+    }
+
     @Override
     public void run() {
+      Object jfrEvent = DiameterEvents.TIMER_FIRED.begin();
       try {
         BaseSession bSession = sessionDataSource.getSession(sessionId);
         if (bSession == null) {
@@ -194,6 +213,9 @@ public class LocalTimerFacilityImpl implements ITimerFacility {
         logger.error("Failure executing timer task witb id: " + id, e);
       }
       finally {
+        if (jfrEvent != null) {
+          DiameterEvents.TIMER_FIRED.commit(jfrEvent, sessionId, timerName);
+        }
         returnTimerTaskHandle(this);
       }
     }
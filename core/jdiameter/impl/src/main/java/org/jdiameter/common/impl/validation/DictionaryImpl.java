@@ -104,6 +104,10 @@ public class DictionaryImpl implements Dictionary {
 
   private Map<String, String> typedefMap = new HashMap<String, String>();
 
+  // commands compiled at configuration, looked up without allocating a key
+  private LongIntTable commandIndex = new LongIntTable(0);
+  private MessageRepresentationImpl[] commands = new MessageRepresentationImpl[0];
+
   private boolean configured = false;
 
   private DictionaryImpl(InputStream is) {
@@ -236,6 +240,7 @@ public class DictionaryImpl implements Dictionary {
       this.parseTypeDefs(doc);
       this.parseAvps(doc);
       this.parseCommands(doc);
+      this.compileCommands();
 
       this.configured = true;
 
@@ -680,6 +685,37 @@ public class DictionaryImpl implements Dictionary {
     }
   }
 
+  /**
+   * Compiles the validation program of every command and indexes commands by a primitive key.
+   */
+  private void compileCommands() {
+    LongIntTable index = new LongIntTable(commandMap.size());
+    MessageRepresentationImpl[] compiled = new MessageRepresentationImpl[commandMap.size()];
+    int n = 0;
+    for (MessageRepresentation rep : commandMap.values()) {
+      MessageRepresentationImpl msg = (MessageRepresentationImpl) rep;
+      msg.compile();
+      if (index.putIfAbsent(commandKey(msg.getCommandCode(), msg.getApplicationId(), msg.isRequest()), n)) {
+        compiled[n++] = msg;
+      }
+    }
+    this.commands = compiled;
+    this.commandIndex = index;
+  }
+
+  private MessageRepresentationImpl getCompiledMessage(int commandCode, long applicationId, boolean isRequest) {
+    int i = commandIndex.get(commandKey(commandCode, applicationId, isRequest));
+    if (i >= 0) {
+      return commands[i];
+    }
+    // not known at configuration, might have been added to the command map since
+    return (MessageRepresentationImpl) this.commandMap.get(new MessageRepresentationImpl(commandCode, applicationId, isRequest));
+  }
+
+  private static long commandKey(int commandCode, long applicationId, boolean isRequest) {
+    return (applicationId << 25) | ((commandCode & 0xFFFFFFL) << 1) | (isRequest ? 1 : 0);
+  }
+
   /*
    * (non-Javadoc)
    *
@@ -752,8 +788,7 @@ public class DictionaryImpl implements Dictionary {
     if (!this.configured) {
       return null;
     }
-    MessageRepresentation key = new MessageRepresentationImpl(commandCode, applicationId, isRequest);
-    return this.commandMap.get(key);
+    return getCompiledMessage(commandCode, applicationId, isRequest);
   }
 
   // Validation ---------------------------------------------------------------
@@ -817,8 +852,7 @@ public class DictionaryImpl implements Dictionary {
       return;
     }
 
-    MessageRepresentationImpl rep = new MessageRepresentationImpl(msg.getCommandCode(), msg.getApplicationId(), msg.isRequest());
-    rep = (MessageRepresentationImpl) this.commandMap.get(rep);
+    MessageRepresentationImpl rep = getCompiledMessage(msg.getCommandCode(), msg.getApplicationId(), msg.isRequest());
     if (rep == null) {
       // no notion, lets leave it.
       logger.warn("Validation could not be performed, command not defined!. Code={}, Application-Id={}, Req={}",
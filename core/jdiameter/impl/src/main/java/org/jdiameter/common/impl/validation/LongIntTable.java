@@ -0,0 +1,73 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.validation;
+
+/**
+ * Fixed size open addressing table of long keys to non negative int values, filled once and then only read.
+ */
+final class LongIntTable {
+
+  private final long[] keys;
+  // value + 1, 0 marks an empty slot
+  private final int[] values;
+  private final int mask;
+
+  LongIntTable(int expectedSize) {
+    int capacity = Integer.highestOneBit(Math.max(2, expectedSize * 2 - 1)) << 1;
+    this.keys = new long[capacity];
+    this.values = new int[capacity];
+    this.mask = capacity - 1;
+  }
+
+  /**
+   * @return false if key was already present, its value is kept
+   */
+  boolean putIfAbsent(long key, int value) {
+    int i = index(key);
+    for (; values[i] != 0; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        return false;
+      }
+    }
+    keys[i] = key;
+    values[i] = value + 1;
+    return true;
+  }
+
+  /**
+   * @return value of key or -1 if absent
+   */
+  int get(long key) {
+    for (int i = index(key); values[i] != 0; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        return values[i] - 1;
+      }
+    }
+    return -1;
+  }
+
+  private int index(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return (int) key & mask;
+  }
+}
@@ -46,7 +46,6 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import org.jdiameter.api.Avp;
 import org.jdiameter.api.AvpSet;
 import org.jdiameter.api.Message;
 import org.jdiameter.api.validation.AvpNotAllowedException;
@@ -76,6 +75,7 @@ public class MessageRepresentationImpl implements MessageRepresentation {
   private boolean isRequest = false;
   protected Map<AvpRepresentation, AvpRepresentation> unmuttableMessageAvps = new HashMap<AvpRepresentation, AvpRepresentation>();
   private String name = null;
+  private transient volatile ValidationProgram program;
 
   public MessageRepresentationImpl(int commandCode, long applicationId, boolean isRequest) {
     super();
@@ -148,6 +148,7 @@ public class MessageRepresentationImpl implements MessageRepresentation {
   public void setMessageAvps(Map<AvpRepresentation, AvpRepresentation> messageAvps) {
     //this.unmuttableMessageAvps = Collections.unmodifiableMap(messageAvps);
     this.unmuttableMessageAvps = messageAvps;
+    this.program = null;
   }
 
   @Override
@@ -264,6 +265,7 @@ public class MessageRepresentationImpl implements MessageRepresentation {
     clone.commandCode = this.commandCode;
     clone.isRequest = this.isRequest;
     clone.name = this.name;
+    clone.program = null;
     // clone.messageAvps = new HashMap<AvpRepresentation,
     // AvpRepresentation>();
     Map<AvpRepresentation, AvpRepresentation> map = new HashMap<AvpRepresentation, AvpRepresentation>();
@@ -293,83 +295,20 @@ public class MessageRepresentationImpl implements MessageRepresentation {
     if (validatorLevel == ValidatorLevel.OFF) {
       return;
     }
-
-    // if its !OFF, we will go down, at least to this section
-    for (AvpRepresentation ap : this.unmuttableMessageAvps.values()) {
-      AvpSet innerSet = msg.getAvps().getAvps(ap.getCode(), ap.getVendorId());
-
-      int count = 0;
-      if (innerSet != null) {
-        count = innerSet.size();
-      }
-
-      if (!ap.isCountValidForMultiplicity(count)) {
-        throw new AvpNotAllowedException("AVP: \n" + ap + "\n, has wrong count in message - " + (count), ap.getCode(), ap.getVendorId());
-      }
-      // if its ALL, we need to go down deeper in AVPs
-      if (validatorLevel != ValidatorLevel.ALL) {
-        continue;
-      }
-      if (count != 0 && ap.isGrouped()) {
-        // we are grouped
-        validateGrouped(ap, innerSet);
-      }
-    }
+    // if its ALL, we need to go down deeper in AVPs
+    compile().validate(msg.getAvps(), validatorLevel == ValidatorLevel.ALL);
   }
 
   /**
-   * @param ap
-   * @param innerSet
+   * Compiles the AVP definitions of this command for validation, unless they are compiled already.
+   * Definitions changed later through {@link #getMessageAvps()} are not picked up, use {@link #setMessageAvps(Map)}.
    */
-  private void validateGrouped(AvpRepresentation ap, AvpSet innerSet) {
-    // we have set of grouped avps, and ap is grouped, lets validate
-    // NOTE this methods can be called multiple time, until we dont have
-
-    for (int index = 0; index < innerSet.size(); index++) {
-
-      Avp presumablyGrouped = innerSet.getAvpByIndex(index);
-      ap.validate(presumablyGrouped);
-      // AvpSet groupedPart = null;
-      // try {
-      //   groupedPart = presumablyGrouped.getGrouped();
-      // }
-      // catch (AvpDataException e) {
-      //   logger.debug("Failed to get grouped AVP.", e);
-      // }
-      //
-      // if (groupedPart == null) {
-      //   logger.error("Avp should be grouped, but its not: " + ap);
-      //
-      //   continue;
-      // }
-      // else {
-      //   validateGroupedChildren(ap, groupedPart);
-      // }
+  ValidationProgram compile() {
+    ValidationProgram p = program;
+    if (p == null) {
+      p = program = new ValidationProgram(null, unmuttableMessageAvps.values());
     }
+    return p;
   }
 
-  //  /**
-  //   * @param ap
-  //   * @param presumablyGrouped
-  //   */
-  //  private void validateGroupedChildren(AvpRepresentation ap, AvpSet groupedAvp) {
-  //    // we have grouped avp, and its representation, we should validate
-  //    // children.
-  //    for (AvpRepresentation childrenVAvp : ap.getChildren()) {
-  //      AvpSet childSset = groupedAvp.getAvps(childrenVAvp.getCode(), childrenVAvp.getVendorId());
-  //      int count = childSset.size();
-  //
-  //      if (!childrenVAvp.isCountValidForMultiplicity(count)) {
-  //        throw new AvpNotAllowedException("AVP: " + childrenVAvp + " has wrong count, in grouped parent avp - " + (count) + ", allowed: "
-  //            + childrenVAvp.getMultiplicityIndicator(), ap.getCode(), ap.getVendorId());
-  //      }
-  //      if (childrenVAvp.isGrouped()) {
-  //
-  //        validateGrouped(childrenVAvp, childSset);
-  //      }
-  //      // else we are good ?
-  //    }
-  //
-  //  }
-
 }
@@ -0,0 +1,194 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.validation;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.AvpDataException;
+import org.jdiameter.api.AvpSet;
+import org.jdiameter.api.validation.AvpNotAllowedException;
+import org.jdiameter.api.validation.AvpRepresentation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Multiplicity rules of a command or grouped AVP compiled for validation in one pass over the AVPs.
+ * Each defined AVP gets a slot, present AVPs are counted into their slots and the counts are checked
+ * against min/max arrays. Grouped AVPs carry their own program and are validated the same way, a grouped
+ * AVP that is defined within itself reuses the program of the enclosing definition.
+ */
+final class ValidationProgram {
+
+  private static final Logger logger = LoggerFactory.getLogger(ValidationProgram.class);
+
+  // counts are consumed before nested programs run, so one array per thread is enough
+  private static final ThreadLocal<int[]> COUNTS = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[64];
+    }
+  };
+
+  private final AvpRepresentation parent;
+  private final LongIntTable slots;
+  private final AvpRepresentation[] avps;
+  private final int[] min;
+  private final int[] max;
+  private final ValidationProgram[] groups;
+  private final boolean hasGroups;
+
+  /**
+   * @param parent grouped AVP the definitions belong to, null for a command
+   * @param definitions AVPs defined in command or grouped AVP
+   */
+  ValidationProgram(AvpRepresentation parent, Collection<AvpRepresentation> definitions) {
+    this(parent, definitions, new HashMap<AvpRepresentation, ValidationProgram>());
+  }
+
+  /**
+   * @param path programs of the grouped AVPs being compiled, from the command down to parent
+   */
+  private ValidationProgram(AvpRepresentation parent, Collection<AvpRepresentation> definitions, Map<AvpRepresentation, ValidationProgram> path) {
+    this.parent = parent;
+    this.slots = new LongIntTable(definitions.size());
+    AvpRepresentation[] reps = new AvpRepresentation[definitions.size()];
+    int n = 0;
+    for (AvpRepresentation rep : definitions) {
+      if (slots.putIfAbsent(key(rep.getCode(), rep.getVendorId()), n)) {
+        reps[n++] = rep;
+      }
+      else {
+        logger.debug("AVP {}/{} defined more than once in {}, keeping first definition", new Object[] {rep.getCode(), rep.getVendorId(), parent});
+      }
+    }
+    this.avps = Arrays.copyOf(reps, n);
+    this.min = new int[n];
+    this.max = new int[n];
+    this.groups = new ValidationProgram[n];
+    boolean grouped = false;
+    if (parent != null) {
+      path.put(parent, this);
+    }
+    for (int i = 0; i < n; i++) {
+      setMultiplicity(i, avps[i]);
+      if (avps[i].isGrouped()) {
+        ValidationProgram enclosing = path.get(avps[i]);
+        if (enclosing != null) {
+          // recursive definition, nesting is bounded by the message so the enclosing program can be reused
+          groups[i] = enclosing;
+        }
+        else {
+          groups[i] = new ValidationProgram(avps[i], avps[i].getChildren(), path);
+        }
+        grouped = true;
+      }
+    }
+    if (parent != null) {
+      path.remove(parent);
+    }
+    this.hasGroups = grouped;
+  }
+
+  private void setMultiplicity(int slot, AvpRepresentation rep) {
+    String mi = rep.getMultiplicityIndicator();
+    if (!rep.isAllowed()) {
+      max[slot] = 0;
+    }
+    else if (AvpRepresentation._MP_ZERO_OR_MORE.equals(mi)) {
+      max[slot] = Integer.MAX_VALUE;
+    }
+    else if (AvpRepresentation._MP_ZERO_OR_ONE.equals(mi)) {
+      max[slot] = 1;
+    }
+    else if (AvpRepresentation._MP_ONE.equals(mi)) {
+      min[slot] = 1;
+      max[slot] = 1;
+    }
+    else if (AvpRepresentation._MP_ONE_AND_MORE.equals(mi)) {
+      min[slot] = 1;
+      max[slot] = Integer.MAX_VALUE;
+    }
+    else {
+      // unknown indicator, no count is valid
+      min[slot] = 1;
+      max[slot] = 0;
+    }
+  }
+
+  /**
+   * @param avpSet AVPs of message or grouped AVP
+   * @param deep true if grouped AVPs should be validated too
+   */
+  void validate(AvpSet avpSet, boolean deep) throws AvpNotAllowedException {
+    int n = avps.length;
+    int[] counts = COUNTS.get();
+    if (counts.length < n) {
+      counts = new int[n];
+      COUNTS.set(counts);
+    }
+    else {
+      Arrays.fill(counts, 0, n, 0);
+    }
+    for (Avp avp : avpSet) {
+      int slot = slots.get(key(avp.getCode(), avp.getVendorId()));
+      if (slot >= 0) {
+        counts[slot]++;
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      if (counts[i] < min[i] || counts[i] > max[i]) {
+        throw wrongCount(avps[i], counts[i]);
+      }
+    }
+    if (!deep || !hasGroups) {
+      return;
+    }
+    for (Avp avp : avpSet) {
+      int slot = slots.get(key(avp.getCode(), avp.getVendorId()));
+      if (slot >= 0 && groups[slot] != null) {
+        AvpSet grouped;
+        try {
+          grouped = avp.getGrouped();
+        }
+        catch (AvpDataException e) {
+          throw new AvpNotAllowedException("Failed to parse AVP to grouped!", e, avps[slot].getCode(), avps[slot].getVendorId());
+        }
+        groups[slot].validate(grouped, true);
+      }
+    }
+  }
+
+  private AvpNotAllowedException wrongCount(AvpRepresentation rep, int count) {
+    if (parent == null) {
+      return new AvpNotAllowedException("AVP: \n" + rep + "\n, has wrong count in message - " + (count), rep.getCode(), rep.getVendorId());
+    }
+    return new AvpNotAllowedException("AVP: " + rep + " has wrong count, in grouped parent avp - " + (count) + ", allowed: "
+        + rep.getMultiplicityIndicator(), parent.getCode(), parent.getVendorId());
+  }
+
+  static long key(int code, long vendorId) {
+    return (vendorId << 32) | (code & 0xFFFFFFFFL);
+  }
+}
@@ -66,10 +66,18 @@ public interface IMutablePeerTable extends MutablePeerTable, IPeerTable {
 
   /**
    * Save message to duplicate storage
-   * @param key key of message
+   * @param request answered request
    * @param answer message
    */
-  void saveToDuplicate(String key, IMessage answer);
+  void saveToDuplicate(IMessage request, IMessage answer);
+
+  /**
+   * Save message to duplicate storage
+   * @param originHost Origin-Host of answered request
+   * @param endToEndId End-to-End identifier of answered request
+   * @param answer message
+   */
+  void saveToDuplicate(String originHost, long endToEndId, IMessage answer);
 
   /**
    * Return instance of session factory
@@ -70,6 +70,30 @@ public interface IOverloadManager extends OverloadManager {
    */
   boolean isParenAppOverload(final ApplicationId appId, int type);
 
+  /**
+   * Return true if request of application should be dropped to relieve overload. Requests of the lowest
+   * DRMP priority are dropped first, as many as the reduction percentage of the application calls for.
+   * @param appId application id
+   * @param priority DRMP priority of the request, 0 is the highest
+   * @return true if request should be rejected
+   */
+  boolean shedRequest(final ApplicationId appId, int priority);
+
+  /**
+   * Return percentage of traffic peers should abate to relieve the application, as reported by DOIC
+   * @param appId application id
+   * @return reduction percentage, 0 if application has no overload
+   */
+  int getReductionPercentage(final ApplicationId appId);
+
+  /**
+   * Return sequence number of the current overload report of application. It changes whenever the
+   * reduction percentage changes and stays set for a validity period after overload has ceased.
+   * @param appId application id
+   * @return sequence number or 0 if there is nothing to report
+   */
+  long getReportSequence(final ApplicationId appId);
+
   /**
    * Notification about overload
    * @param index overload entry index
@@ -0,0 +1,313 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.server.impl;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.jdiameter.api.Avp;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded store of encoded answers used to answer retransmitted requests (RFC 6733, 6.1.3).
+ *
+ * Answers are keyed by Origin-Host of the request and End-to-End identifier, hashed together into a long; the
+ * host is compared as well on lookup, so hash collisions never return the answer of another host. Entries live
+ * in a ring of time buckets: {@link #rotate()} drops the oldest bucket as a whole, so an entry is kept between
+ * one and (BUCKETS / (BUCKETS - 1)) periods. Each bucket holds the share of one period, maxSize / BUCKETS
+ * answers; a bucket which fills up before its period ends rotates early, trading retention time for new
+ * answers. Each bucket has a small bloom filter which lets requests without the T flag skip the lookup when
+ * they were never answered.
+ */
+public class DuplicateAnswerCache {
+
+  private static final Logger logger = LoggerFactory.getLogger(DuplicateAnswerCache.class);
+
+  public static final int BUCKETS = 4;
+
+  private static final int MAX_FILTER_BITS = 1 << 25;
+
+  private final IMessageParser parser;
+  private final int bucketSize;
+  private final int filterBits;
+
+  private final Bucket[] buckets = new Bucket[BUCKETS];
+  private volatile int current;
+  private final AtomicLong earlyRotations = new AtomicLong();
+
+  /**
+   * @param parser used to encode stored and decode returned answers
+   * @param maxSize maximal number of stored answers
+   */
+  public DuplicateAnswerCache(IMessageParser parser, int maxSize) {
+    this.parser = parser;
+    this.bucketSize = Math.max(1, maxSize / BUCKETS);
+    // about 8 bits per entry gives a few percent of false positives with two hashes
+    this.filterBits = (int) Math.min(MAX_FILTER_BITS, Long.highestOneBit(Math.max(64L, bucketSize * 8L) - 1) << 1);
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = new Bucket(filterBits);
+    }
+  }
+
+  /**
+   * @param request received request
+   * @return copy of the answer stored for it or null
+   */
+  public IMessage get(IMessage request) {
+    String host;
+    try {
+      host = request.getAvps().getAvp(Avp.ORIGIN_HOST).getDiameterIdentity();
+    }
+    catch (Exception e) {
+      logger.debug("Unable to read Origin-Host of request", e);
+      return null;
+    }
+    if (host == null) {
+      return null;
+    }
+    long key = key(host, request.getEndToEndIdentifier());
+    int c = current;
+    boolean check = request.isReTransmitted();
+    byte[] data = null;
+    for (int i = 0; i < BUCKETS && data == null; i++) {
+      Bucket b = buckets[(c - i + BUCKETS) % BUCKETS];
+      if (check || b.mightContain(key)) {
+        data = b.get(key, host);
+      }
+    }
+    if (data == null) {
+      return null;
+    }
+    try {
+      return parser.createMessage(data);
+    }
+    catch (Exception e) {
+      logger.debug("Unable to decode stored answer", e);
+      return null;
+    }
+  }
+
+  /**
+   * Stores the encoded answer, rotating early if the current bucket is full.
+   *
+   * @param originHost Origin-Host of the request
+   * @param endToEndId End-to-End identifier of the request
+   * @param answer answer to the request
+   */
+  public void put(String originHost, long endToEndId, IMessage answer) {
+    if (originHost == null) {
+      return;
+    }
+    byte[] data;
+    try {
+      ByteBuffer buffer = parser.encodeMessage(answer);
+      data = new byte[buffer.remaining()];
+      buffer.get(data);
+    }
+    catch (Exception e) {
+      logger.debug("Unable to encode answer for duplicate protection", e);
+      return;
+    }
+    long key = key(originHost, endToEndId);
+    while (true) {
+      Bucket b = buckets[current];
+      if (b.put(key, originHost, data, bucketSize)) {
+        break;
+      }
+      rotateFull(b);
+    }
+    if (logger.isTraceEnabled()) {
+      logger.trace("Duplicate Protection - Inserting Entry with host '{}' and End-to-End '{}'", originHost, endToEndId);
+    }
+  }
+
+  /**
+   * Starts a new bucket, dropping the oldest one with everything stored in it.
+   */
+  public synchronized void rotate() {
+    int next = (current + 1) % BUCKETS;
+    buckets[next] = new Bucket(filterBits);
+    current = next;
+  }
+
+  private synchronized void rotateFull(Bucket full) {
+    // another put may have rotated already
+    if (buckets[current] == full) {
+      earlyRotations.incrementAndGet();
+      logger.debug("Duplicate Protection - bucket full after {} answers, rotating early", bucketSize);
+      rotate();
+    }
+  }
+
+  public synchronized void clear() {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = new Bucket(filterBits);
+    }
+  }
+
+  public int size() {
+    int total = 0;
+    for (Bucket b : buckets) {
+      total += b.size();
+    }
+    return total;
+  }
+
+  /**
+   * @return count of rotations caused by a full bucket rather than by the timer
+   */
+  public long getEarlyRotationCount() {
+    return earlyRotations.get();
+  }
+
+  /**
+   * @return true if the bloom filter of any bucket may hold an answer for the host and identifier
+   */
+  boolean mightContain(String host, long endToEndId) {
+    long key = key(host, endToEndId);
+    for (Bucket b : buckets) {
+      if (b.mightContain(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static long key(String host, long endToEndId) {
+    return ((long) host.hashCode() << 32) | (endToEndId & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Open addressing table of answers keyed by host and identifier, with a bloom filter in front of it.
+   */
+  private static final class Bucket {
+
+    private final AtomicLongArray filter;
+    private final int filterMask;
+    private long[] keys = new long[64];
+    private String[] hosts = new String[64];
+    private byte[][] values = new byte[64][];
+    private int count;
+
+    Bucket(int filterBits) {
+      this.filter = new AtomicLongArray(filterBits >>> 6);
+      this.filterMask = filterBits - 1;
+    }
+
+    boolean mightContain(long key) {
+      long h = mix(key);
+      int b1 = (int) h & filterMask;
+      int b2 = (int) (h >>> 32) & filterMask;
+      return (filter.get(b1 >>> 6) & (1L << b1)) != 0 && (filter.get(b2 >>> 6) & (1L << b2)) != 0;
+    }
+
+    synchronized byte[] get(long key, String host) {
+      int mask = keys.length - 1;
+      for (int i = (int) mix(key) & mask; values[i] != null; i = (i + 1) & mask) {
+        if (keys[i] == key && hosts[i].equals(host)) {
+          return values[i];
+        }
+      }
+      return null;
+    }
+
+    /**
+     * @return false if the answer is new and the bucket already holds limit answers
+     */
+    synchronized boolean put(long key, String host, byte[] value, int limit) {
+      int mask = keys.length - 1;
+      int i = (int) mix(key) & mask;
+      for (; values[i] != null; i = (i + 1) & mask) {
+        if (keys[i] == key && hosts[i].equals(host)) {
+          values[i] = value;
+          return true;
+        }
+      }
+      if (count >= limit) {
+        return false;
+      }
+      if ((count + 1) * 2 > keys.length) {
+        resize();
+      }
+      mask = keys.length - 1;
+      i = (int) mix(key) & mask;
+      while (values[i] != null) {
+        i = (i + 1) & mask;
+      }
+      keys[i] = key;
+      hosts[i] = host;
+      values[i] = value;
+      count++;
+      long h = mix(key);
+      setBit((int) h & filterMask);
+      setBit((int) (h >>> 32) & filterMask);
+      return true;
+    }
+
+    synchronized int size() {
+      return count;
+    }
+
+    private void setBit(int bit) {
+      int i = bit >>> 6;
+      long mask = 1L << bit;
+      long v;
+      while (((v = filter.get(i)) & mask) == 0 && !filter.compareAndSet(i, v, v | mask)) {
+        // retry
+      }
+    }
+
+    private void resize() {
+      long[] oldKeys = keys;
+      String[] oldHosts = hosts;
+      byte[][] oldValues = values;
+      keys = new long[oldKeys.length * 2];
+      hosts = new String[oldKeys.length * 2];
+      values = new byte[oldKeys.length * 2][];
+      int mask = keys.length - 1;
+      for (int j = 0; j < oldKeys.length; j++) {
+        if (oldValues[j] != null) {
+          int i = (int) mix(oldKeys[j]) & mask;
+          while (values[i] != null) {
+            i = (i + 1) & mask;
+          }
+          keys[i] = oldKeys[j];
+          hosts[i] = oldHosts[j];
+          values[i] = oldValues[j];
+        }
+      }
+    }
+
+    private static long mix(long key) {
+      // murmur3 finalizer
+      key ^= key >>> 33;
+      key *= 0xff51afd7ed558ccdL;
+      key ^= key >>> 33;
+      key *= 0xc4ceb9fe1a85ec53L;
+      key ^= key >>> 33;
+      return key;
+    }
+  }
+}
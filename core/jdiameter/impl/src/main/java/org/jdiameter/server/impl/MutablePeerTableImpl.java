@@ -140,7 +140,7 @@ public class MutablePeerTableImpl extends PeerTableImpl implements IMutablePeerT
   protected long duplicateTimer;
   protected ScheduledExecutorService duplicationScheduler = null;
   protected ScheduledFuture duplicationHandler = null;
-  protected ConcurrentHashMap<String, StorageEntry> storageAnswers = new ConcurrentHashMap<String, StorageEntry>();
+  protected DuplicateAnswerCache storageAnswers;
 
   protected boolean isAcceptUndefinedPeer  = false;
 
@@ -163,32 +163,6 @@ public class MutablePeerTableImpl extends PeerTableImpl implements IMutablePeerT
 
   private IContainer stack;
 
-  protected class StorageEntry {
-
-    private String duplicationKey;
-    private long time = System.currentTimeMillis();
-    private IMessage answer;
-
-    public StorageEntry(IMessage message) {
-      answer = message;
-      // duplicationKey = message.getDuplicationKey(); doesn't work because it's answer
-      String[] originInfo = router.getRequestRouteInfo(answer);
-      duplicationKey = message.getDuplicationKey(originInfo[0], message.getEndToEndIdentifier());
-    }
-
-    public IMessage getMessage() {
-      return answer;
-    }
-
-    public long getTime() {
-      return time;
-    }
-
-    public String getDuplicationKey() {
-      return duplicationKey;
-    }
-  }
-
   public MutablePeerTableImpl(Configuration config, MetaData metaData, IContainer stack, org.jdiameter.server.api.IRouter router,
       ISessionFactory sessionFactory, IFsmFactory fsmFactory, ITransportLayerFactory trFactory,
       IMessageParser parser, INetwork network, IOverloadManager ovrManager,
@@ -212,6 +186,7 @@ public class MutablePeerTableImpl extends PeerTableImpl implements IMutablePeerT
     if (this.duplicateProtection) {
       this.duplicateTimer = config.getLongValue(DuplicateTimer.ordinal(), (Long) DuplicateTimer.defValue());
       this.duplicateSize = config.getIntValue(DuplicateSize.ordinal(), (Integer) DuplicateSize.defValue());
+      this.storageAnswers = new DuplicateAnswerCache(parser, duplicateSize);
     }
     logger.debug("Duplicate Protection Configuration: Enabled? {}, Timer: {}, Size: {}",
         new Object[]{this.duplicateProtection, this.duplicateTimer, this.duplicateSize});
@@ -307,31 +282,13 @@ public class MutablePeerTableImpl extends PeerTableImpl implements IMutablePeerT
       Runnable duplicateTask = new Runnable() {
         @Override
         public void run() {
-          long now = System.currentTimeMillis();
-          if (logger.isDebugEnabled()) {
-            logger.debug("Running Duplicate Cleaning Task. Duplicate Storage size is: {}. Removing entries with time <= '{}'",
-                storageAnswers.size(), now - duplicateTimer);
-          }
-          for (StorageEntry s : storageAnswers.values()) {
-            if (s != null && s.getTime() + duplicateTimer <= now) {
-              if (logger.isTraceEnabled()) {
-                logger.trace("Duplicate Cleaning Task - Removing Entry with key '{}' and time '{}'", s.getDuplicationKey(), s.getTime());
-              }
-              storageAnswers.remove(s.getDuplicationKey());
-            }
-            else {
-              if (logger.isTraceEnabled()) {
-                logger.trace("Duplicate Cleaning Task - Skipping Entry with key '{}' and time '{}'", s.getDuplicationKey(), s.getTime());
-              }
-            }
-          }
-          if (logger.isDebugEnabled()) {
-            logger.debug("Completed Duplicate Cleaning Task. New Duplicate Storage size is: {}. Total task runtime: {}ms",
-                storageAnswers.size(), System.currentTimeMillis() - now);
-          }
+          // drops the oldest bucket, entries are kept for at least duplicateTimer
+          storageAnswers.rotate();
+          logger.debug("Rotated Duplicate Storage. Duplicate Storage size is: {}", storageAnswers.size());
         }
       };
-      duplicationHandler = duplicationScheduler.scheduleAtFixedRate(duplicateTask, duplicateTimer, duplicateTimer, TimeUnit.MILLISECONDS);
+      long period = Math.max(1, duplicateTimer / (DuplicateAnswerCache.BUCKETS - 1));
+      duplicationHandler = duplicationScheduler.scheduleAtFixedRate(duplicateTask, period, period, TimeUnit.MILLISECONDS);
     }
     //
     connScheduler = concurrentFactory.getScheduledExecutorService(ConnectionTimer.name());
@@ -589,6 +546,7 @@ public class MutablePeerTableImpl extends PeerTableImpl implements IMutablePeerT
     }
 
     peerTable.put(peer.getUri().getFQDN(), peer);
+    router.invalidatePeerCandidates();
     if (peerTableListener != null) {
       peerTableListener.peerAccepted(peer);
     }
@@ -627,7 +585,9 @@ public class MutablePeerTableImpl extends PeerTableImpl implements IMutablePeerT
       connHandler = null;
     }
     //remove incoming data
-    storageAnswers.clear();
+    if (storageAnswers != null) {
+      storageAnswers.clear();
+    }
 
     // Clear dynamic peers from peertable
     Iterator<String> it = super.peerTable.keySet().iterator();
@@ -640,6 +600,7 @@ public class MutablePeerTableImpl extends PeerTableImpl implements IMutablePeerT
         it.remove();
       }
     }
+    router.invalidatePeerCandidates();
 
   }
 
@@ -708,6 +669,7 @@ public class MutablePeerTableImpl extends PeerTableImpl implements IMutablePeerT
       if (fqdn != null) {
         predefinedPeerTable.remove(fqdn);
         Peer removedPeer = peerTable.remove(fqdn);
+        router.invalidatePeerCandidates();
         if (peerTableListener != null) {
           peerTableListener.peerRemoved(removedPeer);
         }
@@ -736,24 +698,25 @@ public class MutablePeerTableImpl extends PeerTableImpl implements IMutablePeerT
 
   @Override
   public IMessage isDuplicate(IMessage request) {
-    String key = request.getDuplicationKey();
-    if (key != null && storageAnswers != null) {
-      StorageEntry entry = storageAnswers.get(key);
-      return entry != null ? (IMessage) entry.getMessage().clone() : null;
-    }
-    return null;
+    return storageAnswers != null ? storageAnswers.get(request) : null;
   }
 
   @Override
-  public void saveToDuplicate(String key, IMessage answer) {
-    if (storageAnswers != null && storageAnswers.size() < duplicateSize) {
-      if (key != null) {
-        StorageEntry se = new StorageEntry((IMessage) answer.clone());
-        if (logger.isTraceEnabled()) {
-          logger.trace("Duplicate Protection - Inserting Entry with key '{}' and time '{}'", key, se.getTime());
-        }
-        storageAnswers.put(key, se);
+  public void saveToDuplicate(IMessage request, IMessage answer) {
+    if (storageAnswers != null) {
+      try {
+        storageAnswers.put(request.getAvps().getAvp(Avp.ORIGIN_HOST).getDiameterIdentity(), request.getEndToEndIdentifier(), answer);
       }
+      catch (Exception e) {
+        logger.debug("Unable to read Origin-Host of request", e);
+      }
+    }
+  }
+
+  @Override
+  public void saveToDuplicate(String originHost, long endToEndId, IMessage answer) {
+    if (storageAnswers != null) {
+      storageAnswers.put(originHost, endToEndId, answer);
     }
   }
 
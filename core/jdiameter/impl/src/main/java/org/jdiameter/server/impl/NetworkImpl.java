@@ -42,9 +42,12 @@
 
 package org.jdiameter.server.impl;
 
+import static org.jdiameter.common.api.concurrent.IConcurrentFactory.ScheduledExecServices.ProcessingMessageTimer;
+
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.jdiameter.api.ApplicationAlreadyUseException;
 import org.jdiameter.api.ApplicationId;
@@ -54,11 +57,13 @@ import org.jdiameter.api.Message;
 import org.jdiameter.api.NetworkReqListener;
 import org.jdiameter.api.Peer;
 import org.jdiameter.api.Realm;
+import org.jdiameter.api.RequestPublisher;
 import org.jdiameter.api.Selector;
 import org.jdiameter.api.Statistic;
 import org.jdiameter.api.URI;
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.controller.IRealmTable;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.jdiameter.common.api.statistic.IStatistic;
 import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
@@ -90,6 +95,14 @@ public class NetworkImpl implements INetwork {
 
   protected IStatistic statistic;
 
+  // expires requests waiting in request publishers, may be null
+  private IConcurrentFactory concurrentFactory;
+
+  public NetworkImpl(IStatisticManager statisticFactory, IMetaData metaData, IRouter router, IConcurrentFactory concurrentFactory) {
+    this(statisticFactory, metaData, router);
+    this.concurrentFactory = concurrentFactory;
+  }
+
   public NetworkImpl(IStatisticManager statisticFactory, IMetaData metaData, IRouter router) {
     this.router = router;
     this.metaData = metaData;
@@ -159,7 +172,10 @@ public class NetworkImpl implements INetwork {
         }
       }
       metaData.remApplicationId(a);
-      router.getRealmTable().removeLocalApplicationId(a);
+      Realm realm = router.getRealmTable().removeLocalApplicationId(a);
+      if (realm != null) {
+        router.realmRemoved(realm);
+      }
     }
   }
 
@@ -177,10 +193,31 @@ public class NetworkImpl implements INetwork {
         }
       }
       metaData.remApplicationId(s.getMetaData());
-      router.getRealmTable().removeLocalApplicationId(s.getMetaData());
+      Realm realm = router.getRealmTable().removeLocalApplicationId(s.getMetaData());
+      if (realm != null) {
+        router.realmRemoved(realm);
+      }
     }
   }
 
+  @Override
+  public RequestPublisher getRequestPublisher(ApplicationId applicationId, long maxPause, TimeUnit timeUnit)
+      throws ApplicationAlreadyUseException {
+    return getRequestPublisher(applicationId, RequestPublisher.DEFAULT_CAPACITY, maxPause, timeUnit);
+  }
+
+  @Override
+  public RequestPublisher getRequestPublisher(ApplicationId applicationId, int capacity, long maxPause, TimeUnit timeUnit)
+      throws ApplicationAlreadyUseException {
+    if (appIdToNetListener.containsKey(applicationId)) {
+      throw new ApplicationAlreadyUseException(applicationId + " already use");
+    }
+    RequestPublisherImpl publisher = new RequestPublisherImpl(this, applicationId, capacity, timeUnit.toMillis(maxPause),
+        concurrentFactory != null ? concurrentFactory.getScheduledExecutorService(ProcessingMessageTimer.name()) : null);
+    addNetworkReqListener(publisher, applicationId);
+    return publisher;
+  }
+
   public Peer addPeer(String name, String realm, boolean connecting) {
     if (manager != null) {
       try {
@@ -232,7 +269,13 @@ public class NetworkImpl implements INetwork {
   }
 
   public Collection<Realm> remRealm(String name) {
-    return router.getRealmTable().removeRealm(name);
+    Collection<Realm> realms = router.getRealmTable().removeRealm(name);
+    if (realms != null) {
+      for (Realm realm : realms) {
+        router.realmRemoved(realm);
+      }
+    }
+    return realms;
   }
 
   @Override
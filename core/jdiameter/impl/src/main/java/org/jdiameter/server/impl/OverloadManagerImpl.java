@@ -47,6 +47,7 @@ import static org.jdiameter.client.impl.helpers.Parameters.ApplicationId;
 import static org.jdiameter.client.impl.helpers.Parameters.AuthApplId;
 import static org.jdiameter.client.impl.helpers.Parameters.VendorId;
 import static org.jdiameter.server.impl.helpers.Parameters.OverloadEntryIndex;
+import static org.jdiameter.server.impl.helpers.Parameters.OverloadEntryRamp;
 import static org.jdiameter.server.impl.helpers.Parameters.OverloadEntryhighThreshold;
 import static org.jdiameter.server.impl.helpers.Parameters.OverloadEntrylowThreshold;
 import static org.jdiameter.server.impl.helpers.Parameters.OverloadMonitor;
@@ -54,6 +55,9 @@ import static org.jdiameter.server.impl.helpers.Parameters.OverloadMonitor;
 import java.util.ArrayList;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -61,6 +65,8 @@ import org.jdiameter.api.ApplicationId;
 import org.jdiameter.api.Configuration;
 import org.jdiameter.api.OverloadListener;
 import org.jdiameter.api.URI;
+import org.jdiameter.client.impl.controller.PriorityClassifier;
+import org.jdiameter.client.impl.router.OverloadReport;
 import org.jdiameter.server.api.IOverloadManager;
 
 /**
@@ -104,7 +110,8 @@ public class OverloadManagerImpl implements IOverloadManager {
       info.appendEntry(
           e.getIntValue(OverloadEntryIndex.ordinal(), 0),
           e.getDoubleValue(OverloadEntrylowThreshold.ordinal(), 0),
-          e.getDoubleValue(OverloadEntryhighThreshold.ordinal(), 0)
+          e.getDoubleValue(OverloadEntryhighThreshold.ordinal(), 0),
+          e.getBooleanValue(OverloadEntryRamp.ordinal(), (Boolean) OverloadEntryRamp.defValue())
       );
       appInfo.put(appId, info);
     }
@@ -154,6 +161,33 @@ public class OverloadManagerImpl implements IOverloadManager {
     return app != null && app.isOverload(type);
   }
 
+  @Override
+  public boolean shedRequest(final ApplicationId appId, int priority) {
+    if (appId == null) {
+      return false;
+    }
+    AppOverloadInfo app = appInfo.get( createKey(appId) );
+    return app != null && app.shedRequest(priority);
+  }
+
+  @Override
+  public int getReductionPercentage(final ApplicationId appId) {
+    if (appId == null) {
+      return 0;
+    }
+    AppOverloadInfo app = appInfo.get( createKey(appId) );
+    return app != null ? app.getReduction() : 0;
+  }
+
+  @Override
+  public long getReportSequence(final ApplicationId appId) {
+    if (appId == null) {
+      return 0;
+    }
+    AppOverloadInfo app = appInfo.get( createKey(appId) );
+    return app != null ? app.getReportSequence() : 0;
+  }
+
   @Override
   public void addOverloadListener(OverloadListener overloadListener, double lowThreshold, double highThreshold, int qIndex) {
     listeners.add(new OverloadInfo(overloadListener, lowThreshold, highThreshold, qIndex));
@@ -177,6 +211,13 @@ public class OverloadManagerImpl implements IOverloadManager {
     private ApplicationId appId;
     private ArrayList <AppOverloadInfoEntry> entries = new ArrayList<AppOverloadInfoEntry>();
     private final Object lock = new Object();
+    // DOIC report state
+    private volatile int reduction;
+    private volatile long reportSequence;
+    private volatile long reportEndTime;
+    // recent arrivals per DRMP priority, halved every second
+    private final AtomicLongArray arrivals = new AtomicLongArray(PriorityClassifier.LOWEST_PRIORITY + 1);
+    private volatile long arrivalsDecayTime = System.currentTimeMillis();
 
     public ApplicationId getAppId() {
       return appId;
@@ -187,7 +228,11 @@ public class OverloadManagerImpl implements IOverloadManager {
     }
 
     public void appendEntry(int type, double lowThreshold, double highThreshold) {
-      entries.add(new AppOverloadInfoEntry(type, lowThreshold, highThreshold));
+      appendEntry(type, lowThreshold, highThreshold, false);
+    }
+
+    public void appendEntry(int type, double lowThreshold, double highThreshold, boolean ramp) {
+      entries.add(new AppOverloadInfoEntry(type, lowThreshold, highThreshold, ramp));
     }
 
     public boolean isOverload() {
@@ -220,6 +265,83 @@ public class OverloadManagerImpl implements IOverloadManager {
           }
         }
       }
+      updateReduction();
+    }
+
+    public int getReduction() {
+      return reduction;
+    }
+
+    /**
+     * Sheds the reduction percentage of recent arrivals, taking them from the lowest priorities first.
+     * The own priority is shed only with the probability needed to cover what lower priorities can not.
+     */
+    public boolean shedRequest(int priority) {
+      int p = Math.min(Math.max(priority, PriorityClassifier.HIGHEST_PRIORITY), PriorityClassifier.LOWEST_PRIORITY);
+      decayArrivals();
+      arrivals.incrementAndGet(p);
+      int r = reduction;
+      if (r <= 0) {
+        return false;
+      }
+      if (r >= 100) {
+        return true;
+      }
+      long total = 0;
+      long lower = 0;
+      for (int i = 0; i < arrivals.length(); i++) {
+        long n = arrivals.get(i);
+        total += n;
+        if (i > p) {
+          lower += n;
+        }
+      }
+      double target = total * r / 100.0;
+      if (lower >= target) {
+        return false;
+      }
+      return ThreadLocalRandom.current().nextDouble() * arrivals.get(p) < target - lower;
+    }
+
+    private void decayArrivals() {
+      long now = System.currentTimeMillis();
+      if (now - arrivalsDecayTime < 1000) {
+        return;
+      }
+      synchronized (lock) {
+        if (now - arrivalsDecayTime < 1000) {
+          return;
+        }
+        arrivalsDecayTime = now;
+        for (int i = 0; i < arrivals.length(); i++) {
+          arrivals.set(i, arrivals.get(i) / 2);
+        }
+      }
+    }
+
+    public long getReportSequence() {
+      long end = reportEndTime;
+      if (end != 0 && end <= System.currentTimeMillis()) {
+        return 0;
+      }
+      return reportSequence;
+    }
+
+    private void updateReduction() {
+      int value = 0;
+      for (AppOverloadInfoEntry e : entries) {
+        value = Math.max(value, e.getReduction());
+      }
+      synchronized (lock) {
+        if (value != reduction) {
+          long now = System.currentTimeMillis();
+          // sequence numbers must keep growing across restarts, so they follow the clock
+          reportSequence = Math.max(reportSequence + 1, now);
+          // the end of overload is reported for one validity period
+          reportEndTime = value == 0 ? now + TimeUnit.SECONDS.toMillis(OverloadReport.DEFAULT_VALIDITY_DURATION) : 0;
+          reduction = value;
+        }
+      }
     }
   }
 
@@ -227,12 +349,18 @@ public class OverloadManagerImpl implements IOverloadManager {
     private int type;
     private double lowThreshold, highThreshold;
     private double currentValue;
+    private final boolean ramp;
     private final Object lock = new Object();
 
     public AppOverloadInfoEntry(int type, double lowThreshold, double highThreshold) {
+      this(type, lowThreshold, highThreshold, false);
+    }
+
+    public AppOverloadInfoEntry(int type, double lowThreshold, double highThreshold, boolean ramp) {
       this.type = type;
       this.lowThreshold = lowThreshold;
       this.highThreshold = highThreshold;
+      this.ramp = ramp;
     }
 
 
@@ -263,6 +391,26 @@ public class OverloadManagerImpl implements IOverloadManager {
         return  (currentValue >= lowThreshold && currentValue <= highThreshold);
       }
     }
+
+    public boolean isRamp() {
+      return ramp;
+    }
+
+    /**
+     * @return percentage of traffic to abate, 100 between the thresholds, or with a ramp configured
+     * growing from 1 at low threshold to 100 at high threshold
+     */
+    public int getReduction() {
+      synchronized (lock) {
+        if (currentValue < lowThreshold || currentValue > highThreshold) {
+          return 0;
+        }
+        if (!ramp || highThreshold <= lowThreshold) {
+          return 100;
+        }
+        return (int) Math.max(1, Math.round(100 * (currentValue - lowThreshold) / (highThreshold - lowThreshold)));
+      }
+    }
   }
 
   public static class OverloadInfo {
@@ -74,10 +74,15 @@ import org.jdiameter.client.api.io.IConnection;
 import org.jdiameter.client.api.io.ITransportLayerFactory;
 import org.jdiameter.client.api.io.TransportException;
 import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.client.impl.router.OverloadReport;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.jdiameter.common.api.data.ISessionDatasource;
+import org.jdiameter.common.api.data.SessionOverloadException;
+import org.jdiameter.common.api.statistic.IHistogram;
+import org.jdiameter.common.api.statistic.IMessageTracer;
 import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
+import org.jdiameter.common.impl.jfr.DiameterEvents;
 import org.jdiameter.server.api.IFsmFactory;
 import org.jdiameter.server.api.INetwork;
 import org.jdiameter.server.api.IOverloadManager;
@@ -153,6 +158,20 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
     //}
   }
 
+  @Override
+  protected void appendOverloadReport(IMessage answer) {
+    super.appendOverloadReport(answer);
+    if (ovrManager == null || answer.getAvps().getAvp(Avp.OC_OLR) != null) {
+      return;
+    }
+    ApplicationId appId = answer.getSingleApplicationId();
+    long sequence = ovrManager.getReportSequence(appId);
+    if (sequence != 0) {
+      OverloadReport.addReport(answer, sequence, OverloadReport.HOST_REPORT, ovrManager.getReductionPercentage(appId),
+          OverloadReport.DEFAULT_VALIDITY_DURATION);
+    }
+  }
+
   @Override
   public boolean isAttemptConnection() {
     return isAttemptConnection;
@@ -516,8 +535,9 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
      * @return
      */
     private boolean handleByAgent(IMessage message, boolean isProcessed, IRequest req, IRealm matched) {
-      if (ovrManager != null && ovrManager.isParenAppOverload(message.getSingleApplicationId())) {
+      if (ovrManager != null && ovrManager.shedRequest(message.getSingleApplicationId(), message.getPriority())) {
         logger.debug("Request [{}] skipped, because server application is overloaded", message);
+        DiameterEvents.overloadRejected(message, ResultCode.TOO_BUSY, "Application overloaded");
         sendErrorAnswer(message, "Overloaded", ResultCode.TOO_BUSY);
         return true;
       }
@@ -526,14 +546,14 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
           router.registerRequestRouteInfo(message);
           IMessage answer = (IMessage) matched.getAgent().processRequest(req, matched);
           if (isDuplicateProtection && answer != null) {
-            peerTable.saveToDuplicate(message.getDuplicationKey(), answer);
+            peerTable.saveToDuplicate(message, answer);
           }
           isProcessed = true;
           if (answer != null) {
             sendMessage(answer);
           }
           if (statistic.isEnabled()) {
-            statistic.getRecordByName(IStatisticRecord.Counters.SysGenResponse.name()).inc();
+            statistic.getRecordByName(IStatisticRecord.Counters.SysGenResponse).inc();
           }
         }
         catch (Exception exc) {
@@ -546,7 +566,7 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
       if (isProcessed) {
         // NOTE: done to inc stat which informs on net work request consumption :)
         if (statistic.isEnabled()) {
-          statistic.getRecordByName(IStatisticRecord.Counters.NetGenRequest.name()).inc();
+          statistic.getRecordByName(IStatisticRecord.Counters.NetGenRequest).inc();
         }
       }
       return isProcessed;
@@ -566,7 +586,7 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
       if (!isProcessed) {
         if (statistic.isEnabled()) {
           // Decrement what we have incremented in super.receiveMessage(message) since it wasn't processed
-          statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedRequest.name()).dec();
+          statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedRequest).dec();
         }
 
         NetworkReqListener listener = network.getListener(message);
@@ -591,7 +611,7 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
             try {
               sendMessage(answer);
               if (statistic.isEnabled()) {
-                statistic.getRecordByName(IStatisticRecord.Counters.SysGenResponse.name()).inc();
+                statistic.getRecordByName(IStatisticRecord.Counters.SysGenResponse).inc();
               }
             }
             catch (Exception e) {
@@ -602,17 +622,25 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
             }
           }
           else {
-            if (ovrManager != null && ovrManager.isParenAppOverload(message.getSingleApplicationId())) {
+            if (ovrManager != null && ovrManager.shedRequest(message.getSingleApplicationId(), message.getPriority())) {
               logger.debug("Request [{}] skipped, because server application is overloaded", message);
+              DiameterEvents.overloadRejected(message, ResultCode.TOO_BUSY, "Application overloaded");
               sendErrorAnswer(message, "Overloaded", ResultCode.TOO_BUSY);
               return true;
             }
             else {
               try {
                 router.registerRequestRouteInfo(message);
+                message.stamp(IMessageTracer.Stage.Routed);
+                Object jfrEvent = DiameterEvents.MESSAGE_RECEIVED.begin();
+                long started = System.nanoTime();
                 answer = (IMessage) listener.processRequest(message);
+                recordLatency(IHistogram.Type.ListenerExecTime, message, System.nanoTime() - started);
+                DiameterEvents.commitMessage(DiameterEvents.MESSAGE_RECEIVED, jfrEvent, uri, message);
+                message.stamp(IMessageTracer.Stage.Processed);
+                continueTrace(message, answer);
                 if (isDuplicateProtection && answer != null) {
-                  peerTable.saveToDuplicate(message.getDuplicationKey(), answer);
+                  peerTable.saveToDuplicate(message, answer);
                 }
                 isProcessed = true;
                 if (isProcessed && answer != null) {
@@ -621,10 +649,16 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
                   sendMessage(answer);
                 }
                 if (statistic.isEnabled()) {
-                  statistic.getRecordByName(IStatisticRecord.Counters.AppGenResponse.name()).inc();
+                  statistic.getRecordByName(IStatisticRecord.Counters.AppGenResponse).inc();
                 }
               }
               catch (Exception exc) {
+                if (SessionOverloadException.isCausedBy(exc)) {
+                  logger.debug("Request [{}] skipped, because session capacity is reached", message);
+                  DiameterEvents.overloadRejected(message, ResultCode.TOO_BUSY, "Session capacity reached");
+                  sendErrorAnswer(message, "Overloaded", ResultCode.TOO_BUSY);
+                  return true;
+                }
                 // TODO: check this!!
                 logger.warn("Error during processing message by listener", exc);
                 sendErrorAnswer(message, "Unable to process", ResultCode.UNABLE_TO_COMPLY);
@@ -644,7 +678,7 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
       if (isProcessed) {
         // NOTE: done to inc stat which informs on net work request consumption :)...
         if (statistic.isEnabled()) {
-          statistic.getRecordByName(IStatisticRecord.Counters.NetGenRequest.name()).inc();
+          statistic.getRecordByName(IStatisticRecord.Counters.NetGenRequest).inc();
         }
       }
       return isProcessed;
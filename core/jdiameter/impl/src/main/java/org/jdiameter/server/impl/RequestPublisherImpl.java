@@ -0,0 +1,360 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.server.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.api.Answer;
+import org.jdiameter.api.ApplicationId;
+import org.jdiameter.api.NetworkReqListener;
+import org.jdiameter.api.Request;
+import org.jdiameter.api.RequestPublisher;
+import org.jdiameter.api.ResultCode;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.controller.IPeer;
+import org.jdiameter.common.impl.jfr.DiameterEvents;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link RequestPublisher} registered as the network listener of an application. Requests wait in a queue for
+ * subscriber demand, for up to the max pause, and are handed to the subscriber by whichever thread finds demand
+ * for them: the delivering peer thread or the one signalling demand. Requests still waiting after the max pause
+ * are answered with DIAMETER_TOO_BUSY through the peer they came from, requests arriving while the queue is at
+ * capacity right away. No thread is ever parked.
+ */
+public class RequestPublisherImpl implements RequestPublisher, NetworkReqListener {
+
+  private static final Logger logger = LoggerFactory.getLogger(RequestPublisherImpl.class);
+
+  private final NetworkImpl network;
+  private final ApplicationId applicationId;
+  private final int capacity;
+  private final long maxPause;
+  private final ScheduledExecutorService timer;
+
+  private Subscriber subscriber;
+  private long demand;
+  private boolean closed;
+
+  // requests waiting for demand, oldest first
+  private final ArrayDeque<Pending> pending = new ArrayDeque<Pending>();
+  private ScheduledFuture<?> expiry;
+  // a thread is delivering, onNext is never called concurrently nor recursively
+  private boolean draining;
+
+  /**
+   * @param capacity maximum number of requests waiting for demand
+   * @param timer expires waiting requests, if null they are expired only when requests or demand arrive
+   */
+  public RequestPublisherImpl(NetworkImpl network, ApplicationId applicationId, int capacity, long maxPause,
+      ScheduledExecutorService timer) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive, was " + capacity);
+    }
+    this.network = network;
+    this.applicationId = applicationId;
+    this.capacity = capacity;
+    this.maxPause = maxPause;
+    this.timer = timer;
+  }
+
+  @Override
+  public void subscribe(Subscriber subscriber) {
+    if (subscriber == null) {
+      throw new NullPointerException("Subscriber must not be null");
+    }
+    boolean accepted;
+    synchronized (this) {
+      accepted = !closed && this.subscriber == null;
+      if (accepted) {
+        this.subscriber = subscriber;
+      }
+    }
+    if (accepted) {
+      subscriber.onSubscribe(new SubscriptionImpl(subscriber));
+    }
+    else {
+      subscriber.onSubscribe(new SubscriptionImpl(null));
+      subscriber.onError(new IllegalStateException("Publisher for " + applicationId + " already has a subscriber or is closed"));
+    }
+  }
+
+  @Override
+  public Answer processRequest(Request request) {
+    List<Request> expired;
+    boolean accepted;
+    synchronized (this) {
+      long now = System.currentTimeMillis();
+      expired = expire(now);
+      // without pause only taken when it can be delivered right away
+      accepted = !closed && (maxPause > 0 || (subscriber != null && demand > 0 && pending.isEmpty()))
+          && pending.size() < capacity;
+      if (accepted) {
+        pending.add(new Pending(request, now + maxPause));
+        scheduleExpiry(now);
+      }
+    }
+    tooBusy(expired);
+    if (!accepted) {
+      logger.debug("No demand for request [{}] of {}, answering with DIAMETER_TOO_BUSY", request, applicationId);
+      DiameterEvents.overloadRejected(request, ResultCode.TOO_BUSY, "No subscriber demand");
+      return request.createAnswer(ResultCode.TOO_BUSY);
+    }
+    drain();
+    // answered asynchronously by the subscriber
+    return null;
+  }
+
+  /**
+   * Closes the publisher, completing the subscriber and unregistering it from the network. Waiting requests
+   * are answered with DIAMETER_TOO_BUSY.
+   */
+  public void close() {
+    Subscriber target;
+    List<Request> waiting = new ArrayList<Request>();
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      target = subscriber;
+      subscriber = null;
+      for (Pending p : pending) {
+        waiting.add(p.request);
+      }
+      pending.clear();
+      if (expiry != null) {
+        expiry.cancel(false);
+        expiry = null;
+      }
+    }
+    network.removeNetworkReqListener(applicationId);
+    tooBusy(waiting);
+    if (target != null) {
+      target.onComplete();
+    }
+  }
+
+  public ApplicationId getApplicationId() {
+    return applicationId;
+  }
+
+  /**
+   * @return number of requests waiting for demand
+   */
+  public synchronized int getPendingCount() {
+    return pending.size();
+  }
+
+  /**
+   * Delivers waiting requests while there is demand, unless another thread already does
+   */
+  private void drain() {
+    synchronized (this) {
+      if (draining) {
+        return;
+      }
+      draining = true;
+    }
+    boolean done = false;
+    List<Request> expired;
+    try {
+      while (true) {
+        Subscriber target;
+        Request next;
+        synchronized (this) {
+          if (pending.isEmpty() || demand == 0 || subscriber == null) {
+            draining = false;
+            done = true;
+            // the timer leaves requests with demand to the draining thread, expire them now that it stops
+            long now = System.currentTimeMillis();
+            expired = expire(now);
+            scheduleExpiry(now);
+            break;
+          }
+          if (demand != Long.MAX_VALUE) {
+            demand--;
+          }
+          target = subscriber;
+          next = pending.poll().request;
+        }
+        try {
+          target.onNext(next);
+        }
+        catch (Exception e) {
+          logger.warn("Subscriber failed to process request", e);
+          answer(next, ResultCode.UNABLE_TO_COMPLY);
+        }
+      }
+    }
+    finally {
+      if (!done) {
+        synchronized (this) {
+          draining = false;
+        }
+      }
+    }
+    tooBusy(expired);
+  }
+
+  /**
+   * Removes the requests waiting longer than the max pause, unless they can be delivered now
+   */
+  private List<Request> expire(long now) {
+    if (demand > 0 && subscriber != null) {
+      return Collections.emptyList();
+    }
+    List<Request> expired = null;
+    while (!pending.isEmpty() && pending.peek().deadline <= now) {
+      if (expired == null) {
+        expired = new ArrayList<Request>();
+      }
+      expired.add(pending.poll().request);
+    }
+    return expired != null ? expired : Collections.<Request>emptyList();
+  }
+
+  private void scheduleExpiry(long now) {
+    if (timer == null || expiry != null || pending.isEmpty()) {
+      return;
+    }
+    Runnable task = new Runnable() {
+      @Override
+      public void run() {
+        List<Request> expired;
+        boolean deliverable;
+        synchronized (RequestPublisherImpl.this) {
+          expiry = null;
+          long now = System.currentTimeMillis();
+          expired = expire(now);
+          // not re-armed while there is demand, the draining thread does it once it stops
+          deliverable = demand > 0 && subscriber != null;
+          if (!deliverable) {
+            scheduleExpiry(now);
+          }
+        }
+        tooBusy(expired);
+        if (deliverable) {
+          drain();
+        }
+      }
+    };
+    try {
+      expiry = timer.schedule(task, Math.max(0, pending.peek().deadline - now), TimeUnit.MILLISECONDS);
+    }
+    catch (RejectedExecutionException e) {
+      logger.debug("Unable to schedule expiry of requests waiting in publisher of {}", applicationId);
+    }
+  }
+
+  private void tooBusy(List<Request> requests) {
+    for (Request request : requests) {
+      logger.debug("No demand for request [{}] of {} within {} ms, answering with DIAMETER_TOO_BUSY",
+          new Object[]{request, applicationId, maxPause});
+      DiameterEvents.overloadRejected(request, ResultCode.TOO_BUSY, "No subscriber demand");
+      answer(request, ResultCode.TOO_BUSY);
+    }
+  }
+
+  /**
+   * Answers the request directly through the peer it was received from
+   */
+  private void answer(Request request, long resultCode) {
+    IPeer peer = ((IMessage) request).getPeer();
+    if (peer == null) {
+      logger.debug("Unable to answer request [{}] with {}, its peer is unknown", request, resultCode);
+      return;
+    }
+    try {
+      IMessage answer = (IMessage) request.createAnswer(resultCode);
+      answer.setPeer(peer);
+      peer.sendMessage(answer);
+    }
+    catch (Exception e) {
+      logger.warn("Unable to answer request [" + request + "] with " + resultCode, e);
+    }
+  }
+
+  private void addDemand(long n) {
+    synchronized (this) {
+      demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+    }
+    drain();
+  }
+
+  private static final class Pending {
+
+    private final Request request;
+    private final long deadline;
+
+    Pending(Request request, long deadline) {
+      this.request = request;
+      this.deadline = deadline;
+    }
+  }
+
+  private class SubscriptionImpl implements Subscription {
+
+    private final Subscriber owner;
+
+    SubscriptionImpl(Subscriber owner) {
+      this.owner = owner;
+    }
+
+    private boolean isActive() {
+      synchronized (RequestPublisherImpl.this) {
+        return owner != null && owner == subscriber;
+      }
+    }
+
+    @Override
+    public void request(long n) {
+      if (!isActive()) {
+        return;
+      }
+      if (n <= 0) {
+        cancel();
+        owner.onError(new IllegalArgumentException("Demand must be positive, was " + n));
+        return;
+      }
+      addDemand(n);
+    }
+
+    @Override
+    public void cancel() {
+      if (!isActive()) {
+        return;
+      }
+      synchronized (RequestPublisherImpl.this) {
+        subscriber = null;
+      }
+      close();
+    }
+  }
+}
@@ -51,7 +51,6 @@ import static org.jdiameter.server.impl.app.auth.Event.Type.TIMEOUT_EXPIRES;
 
 import java.io.Serializable;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.jdiameter.api.Answer;
 import org.jdiameter.api.EventListener;
@@ -102,7 +101,7 @@ public class ServerAuthSessionImpl extends AppAuthSessionImpl implements ServerA
   protected IServerAuthSessionData sessionData;
 
   // Session State Handling ---------------------------------------------------
-  private Lock sendAndStateLock = new ReentrantLock();
+  private Lock sendAndStateLock = mailbox.getLock();
 
   // Factories and Listeners --------------------------------------------------
   protected transient IAuthMessageFactory factory;
@@ -387,7 +386,7 @@ public class ServerAuthSessionImpl extends AppAuthSessionImpl implements ServerA
     rd.session = this;
     rd.request = request;
     rd.answer = answer;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
   }
 
   @Override
@@ -410,7 +409,7 @@ public class ServerAuthSessionImpl extends AppAuthSessionImpl implements ServerA
     RequestDelivery rd = new RequestDelivery();
     rd.session = this;
     rd.request = request;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
     return null;
   }
 
@@ -44,7 +44,6 @@ package org.jdiameter.server.impl.app.cca;
 
 import java.io.Serializable;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.jdiameter.api.Answer;
 import org.jdiameter.api.Avp;
@@ -93,7 +92,7 @@ public class ServerCCASessionImpl extends AppCCASessionImpl implements ServerCCA
 
   protected IServerCCASessionData sessionData;
   // Session State Handling ---------------------------------------------------
-  protected Lock sendAndStateLock = new ReentrantLock();
+  protected Lock sendAndStateLock = mailbox.getLock();
 
   // Factories and Listeners --------------------------------------------------
   protected transient ICCAMessageFactory factory = null;
@@ -372,7 +371,7 @@ public class ServerCCASessionImpl extends AppCCASessionImpl implements ServerCCA
     //rd.session = (ServerCCASession) LocalDataSource.INSTANCE.getSession(request.getSessionId());
     rd.session = this;
     rd.request = request;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
     return null;
   }
 
@@ -382,7 +381,7 @@ public class ServerCCASessionImpl extends AppCCASessionImpl implements ServerCCA
     rd.session = this;
     rd.request = request;
     rd.answer = answer;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
   }
 
   @Override
@@ -52,7 +52,6 @@ import static org.jdiameter.server.impl.app.gq.Event.Type.TIMEOUT_EXPIRES;
 
 import java.io.Serializable;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.jdiameter.api.Answer;
 import org.jdiameter.api.EventListener;
@@ -106,7 +105,7 @@ public class GqServerSessionImpl extends AppAuthSessionImpl implements GqServerS
   protected IServerAuthSessionData sessionData;
 
   // Session State Handling ---------------------------------------------------
-  private Lock sendAndStateLock = new ReentrantLock();
+  private Lock sendAndStateLock = mailbox.getLock();
 
   // Factories and Listeners --------------------------------------------------
   protected transient IAuthMessageFactory factory;
@@ -411,7 +410,7 @@ public class GqServerSessionImpl extends AppAuthSessionImpl implements GqServerS
     rd.session = this;
     rd.request = request;
     rd.answer = answer;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
   }
 
   @Override
@@ -434,7 +433,7 @@ public class GqServerSessionImpl extends AppAuthSessionImpl implements GqServerS
     RequestDelivery rd = new RequestDelivery();
     rd.session = this;
     rd.request = request;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
     return null;
   }
 
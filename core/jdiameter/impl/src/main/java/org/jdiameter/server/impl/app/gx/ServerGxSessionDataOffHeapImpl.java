@@ -0,0 +1,56 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.server.impl.app.gx;
+
+import org.jdiameter.api.app.AppSession;
+import org.jdiameter.api.gx.ServerGxSession;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.common.api.app.gx.ServerGxSessionState;
+import org.jdiameter.common.impl.app.cca.ServerCreditControlSessionDataOffHeapImpl;
+import org.jdiameter.common.impl.data.OffHeapSlab;
+
+/**
+ * {@link IServerGxSessionData} kept in an {@link OffHeapSlab} record, see {@link ServerCreditControlSessionDataOffHeapImpl}.
+ */
+public class ServerGxSessionDataOffHeapImpl extends ServerCreditControlSessionDataOffHeapImpl implements IServerGxSessionData {
+
+  private static final ServerGxSessionState[] STATES = ServerGxSessionState.values();
+
+  public ServerGxSessionDataOffHeapImpl(OffHeapSlab slab, IMessageParser messageParser) {
+    super(slab, messageParser);
+    setServerGxSessionState(ServerGxSessionState.IDLE);
+  }
+
+  @Override
+  public Class<? extends AppSession> getAppSessionIface() {
+    return ServerGxSession.class;
+  }
+
+  @Override
+  public ServerGxSessionState getServerGxSessionState() {
+    return getState(STATES, ServerGxSessionState.IDLE);
+  }
+
+  @Override
+  public void setServerGxSessionState(ServerGxSessionState state) {
+    setState(state);
+  }
+
+}
@@ -44,7 +44,6 @@ package org.jdiameter.server.impl.app.gx;
 
 import java.io.Serializable;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.jdiameter.api.Answer;
 import org.jdiameter.api.Avp;
@@ -91,7 +90,7 @@ public class ServerGxSessionImpl extends AppGxSessionImpl implements ServerGxSes
   private static final Logger logger = LoggerFactory.getLogger(ServerGxSessionImpl.class);
 
   // Session State Handling ---------------------------------------------------
-  protected Lock sendAndStateLock = new ReentrantLock();
+  protected Lock sendAndStateLock = mailbox.getLock();
 
   // Factories and Listeners --------------------------------------------------
   protected transient IGxMessageFactory factory = null;
@@ -355,7 +354,7 @@ public class ServerGxSessionImpl extends AppGxSessionImpl implements ServerGxSes
     //rd.session = (ServerGxSession) LocalDataSource.INSTANCE.getSession(request.getSessionId());
     rd.session = this;
     rd.request = request;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
     return null;
   }
 
@@ -365,7 +364,7 @@ public class ServerGxSessionImpl extends AppGxSessionImpl implements ServerGxSes
     rd.session = this;
     rd.request = request;
     rd.answer = answer;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
   }
 
   @Override
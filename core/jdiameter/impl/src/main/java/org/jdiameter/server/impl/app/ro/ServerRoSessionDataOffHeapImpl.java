@@ -0,0 +1,56 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.server.impl.app.ro;
+
+import org.jdiameter.api.app.AppSession;
+import org.jdiameter.api.ro.ServerRoSession;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.common.api.app.ro.ServerRoSessionState;
+import org.jdiameter.common.impl.app.cca.ServerCreditControlSessionDataOffHeapImpl;
+import org.jdiameter.common.impl.data.OffHeapSlab;
+
+/**
+ * {@link IServerRoSessionData} kept in an {@link OffHeapSlab} record, see {@link ServerCreditControlSessionDataOffHeapImpl}.
+ */
+public class ServerRoSessionDataOffHeapImpl extends ServerCreditControlSessionDataOffHeapImpl implements IServerRoSessionData {
+
+  private static final ServerRoSessionState[] STATES = ServerRoSessionState.values();
+
+  public ServerRoSessionDataOffHeapImpl(OffHeapSlab slab, IMessageParser messageParser) {
+    super(slab, messageParser);
+    setServerRoSessionState(ServerRoSessionState.IDLE);
+  }
+
+  @Override
+  public Class<? extends AppSession> getAppSessionIface() {
+    return ServerRoSession.class;
+  }
+
+  @Override
+  public ServerRoSessionState getServerRoSessionState() {
+    return getState(STATES, ServerRoSessionState.IDLE);
+  }
+
+  @Override
+  public void setServerRoSessionState(ServerRoSessionState state) {
+    setState(state);
+  }
+
+}
@@ -44,7 +44,6 @@ package org.jdiameter.server.impl.app.ro;
 
 import java.io.Serializable;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.jdiameter.api.Answer;
 import org.jdiameter.api.Avp;
@@ -92,7 +91,7 @@ public class ServerRoSessionImpl extends AppRoSessionImpl implements ServerRoSes
   private static final Logger logger = LoggerFactory.getLogger(ServerRoSessionImpl.class);
 
   // Session State Handling ---------------------------------------------------
-  protected Lock sendAndStateLock = new ReentrantLock();
+  protected Lock sendAndStateLock = mailbox.getLock();
 
   // Factories and Listeners --------------------------------------------------
   protected transient IRoMessageFactory factory = null;
@@ -374,7 +373,7 @@ public class ServerRoSessionImpl extends AppRoSessionImpl implements ServerRoSes
     //rd.session = (ServerRoSession) LocalDataSource.INSTANCE.getSession(request.getSessionId());
     rd.session = this;
     rd.request = request;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
     return null;
   }
 
@@ -384,7 +383,7 @@ public class ServerRoSessionImpl extends AppRoSessionImpl implements ServerRoSes
     rd.session = this;
     rd.request = request;
     rd.answer = answer;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
   }
 
   @Override
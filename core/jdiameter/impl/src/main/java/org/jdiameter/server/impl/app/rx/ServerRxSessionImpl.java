@@ -43,7 +43,6 @@
 package org.jdiameter.server.impl.app.rx;
 
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.jdiameter.api.Answer;
 import org.jdiameter.api.AvpDataException;
@@ -95,7 +94,7 @@ public class ServerRxSessionImpl extends AppRxSessionImpl implements ServerRxSes
   // Session State Handling ---------------------------------------------------
   //protected boolean stateless = true;
   //protected ServerGxSessionState state = ServerGxSessionState.IDLE;
-  protected Lock sendAndStateLock = new ReentrantLock();
+  protected Lock sendAndStateLock = mailbox.getLock();
 
   // Factories and Listeners --------------------------------------------------
   protected transient IRxMessageFactory factory = null;
@@ -328,7 +327,7 @@ public class ServerRxSessionImpl extends AppRxSessionImpl implements ServerRxSes
     //rd.session = (ServerRxSession) LocalDataSource.INSTANCE.getSession(request.getSessionId());
     rd.session = this;
     rd.request = request;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
     return null;
   }
 
@@ -338,7 +337,7 @@ public class ServerRxSessionImpl extends AppRxSessionImpl implements ServerRxSes
     rd.session = this;
     rd.request = request;
     rd.answer = answer;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
   }
 
   /*
@@ -43,7 +43,6 @@
 package org.jdiameter.server.impl.app.sh;
 
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.jdiameter.api.Answer;
 import org.jdiameter.api.Avp;
@@ -94,7 +93,7 @@ public class ShServerSessionImpl extends ShSession implements ServerShSession, E
   private Logger logger = LoggerFactory.getLogger(ShServerSessionImpl.class);
 
   // Session State Handling ---------------------------------------------------
-  protected Lock sendAndStateLock = new ReentrantLock();
+  protected Lock sendAndStateLock = mailbox.getLock();
 
   // Factories and Listeners --------------------------------------------------
   protected transient IShMessageFactory factory = null;
@@ -147,7 +146,7 @@ public class ShServerSessionImpl extends ShSession implements ServerShSession, E
     rd.session = this;
     rd.request = request;
     rd.answer = answer;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
   }
 
   @Override
@@ -174,7 +173,7 @@ public class ShServerSessionImpl extends ShSession implements ServerShSession, E
     RequestDelivery rd = new RequestDelivery();
     rd.session = this;
     rd.request = request;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
     return null;
   }
 
@@ -185,7 +185,7 @@ public class SLgServerSessionImpl extends SLgSession
     rd.session = this;
     rd.request = request;
     rd.answer = answer;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
   }
 
   public void timeoutExpired(Request request) {
@@ -200,7 +200,7 @@ public class SLgServerSessionImpl extends SLgSession
     RequestDelivery rd = new RequestDelivery();
     rd.session = this;
     rd.request = request;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
     return null;
   }
 
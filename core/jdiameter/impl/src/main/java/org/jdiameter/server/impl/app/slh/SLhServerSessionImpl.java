@@ -169,7 +169,7 @@ public class SLhServerSessionImpl extends SLhSession implements ServerSLhSession
     rd.session = this;
     rd.request = request;
     rd.answer = answer;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
   }
 
   public void timeoutExpired(Request request) {
@@ -184,7 +184,7 @@ public class SLhServerSessionImpl extends SLhSession implements ServerSLhSession
     RequestDelivery rd = new RequestDelivery();
     rd.session = this;
     rd.request = request;
-    super.scheduler.execute(rd);
+    super.mailbox.execute(rd);
     return null;
   }
 
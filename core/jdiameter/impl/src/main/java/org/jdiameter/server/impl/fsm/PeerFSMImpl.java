@@ -213,7 +213,7 @@ public class PeerFSMImpl extends org.jdiameter.client.impl.fsm.PeerFSMImpl imple
                   break;
                 case SEND_MSG_EVENT:
                   try {
-                    context.sendMessage(message(event));
+                    sendMessage(event);
                   }
                   catch (Throwable e) {
                     logger.debug("Can not send message", e);
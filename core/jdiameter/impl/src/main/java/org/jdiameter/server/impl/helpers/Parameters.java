@@ -116,6 +116,11 @@ public class Parameters extends org.jdiameter.client.impl.helpers.Parameters {
    * Overload low threshold property
    */
   public static final Parameters OverloadEntrylowThreshold  = new Parameters("OverloadEntrylowThreshold", Double.class, "");
+  /**
+   * Overload entry reduction ramp property, when true the share of rejected requests grows from low to high
+   * threshold instead of rejecting all of them between the thresholds
+   */
+  public static final Parameters OverloadEntryRamp = new Parameters("OverloadEntryRamp", Boolean.class, false);
   /**
    * Peer reconnection property property
    */
@@ -140,6 +145,11 @@ public class Parameters extends org.jdiameter.client.impl.helpers.Parameters {
 
   public static final Parameters RequestTableClearSize = new Parameters("RequestTableClearSize", Integer.class, new Integer(2048));
 
+  /**
+   * RequestTableExpiry - time in milliseconds after which request table entries not answered are dropped
+   */
+  public static final Parameters RequestTableExpiry = new Parameters("RequestTableExpiry", Long.class, 60000L);
+
   protected Parameters(String name, Class type) {
     super(name, type);
   }
@@ -0,0 +1,499 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdiameter.api.Answer;
+import org.jdiameter.api.AnswerFuture;
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.Configuration;
+import org.jdiameter.api.Peer;
+import org.jdiameter.api.SessionFactory;
+import org.jdiameter.api.URI;
+import org.jdiameter.client.api.IAssembler;
+import org.jdiameter.client.api.IContainer;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.IMetaData;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for answer futures and the asynchronous send of sessions
+ */
+public class TestAnswerFutureImpl {
+
+    private MessageParser parser;
+    private ScheduledExecutorService scheduler;
+    private List<IMessage> sent;
+    private SessionImpl session;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        parser = new MessageParser();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        sent = new ArrayList<IMessage>();
+        session = new SessionImpl(createContainer());
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testCallbacks() throws Exception {
+        AnswerFutureImpl<String> future = new AnswerFutureImpl<String>();
+        Recorder<String> before = new Recorder<String>();
+        future.addCallback(before);
+        assertFalse(future.isDone());
+        assertEquals(0, before.calls.get());
+
+        assertTrue(future.complete("answer"));
+        assertEquals("answer", before.result);
+        assertEquals(1, before.calls.get());
+        // completed once only
+        assertFalse(future.complete("other"));
+        assertFalse(future.fail(new Exception()));
+        assertEquals(1, before.calls.get());
+
+        // notified right away, in the calling thread
+        Recorder<String> after = new Recorder<String>();
+        future.addCallback(after);
+        assertEquals("answer", after.result);
+        assertSame(Thread.currentThread(), after.thread);
+        assertEquals("answer", future.get());
+        assertEquals("answer", future.get(0, TimeUnit.MILLISECONDS));
+
+        // a failing callback does not stop the others
+        AnswerFutureImpl<String> failing = new AnswerFutureImpl<String>();
+        failing.addCallback(new Recorder<String>() {
+            @Override
+            public void onSuccess(String result) {
+                throw new IllegalStateException();
+            }
+        });
+        Recorder<String> next = new Recorder<String>();
+        failing.addCallback(next);
+        failing.complete("answer");
+        assertEquals("answer", next.result);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        AnswerFutureImpl<String> future = new AnswerFutureImpl<String>();
+        Recorder<String> before = new Recorder<String>();
+        future.addCallback(before);
+        Exception cause = new Exception("failed");
+        assertTrue(future.fail(cause));
+        assertSame(cause, before.failure);
+        assertNull(before.result);
+        assertTrue(future.isDone());
+        assertFalse(future.isCancelled());
+
+        Recorder<String> after = new Recorder<String>();
+        future.addCallback(after);
+        assertSame(cause, after.failure);
+        try {
+            future.get();
+            fail("failed future returned");
+        }
+        catch (ExecutionException e) {
+            assertSame(cause, e.getCause());
+        }
+    }
+
+    @Test
+    public void testThenApply() throws Exception {
+        AnswerFutureImpl<String> future = new AnswerFutureImpl<String>();
+        AnswerFuture<Integer> length = future.thenApply(new AnswerFuture.Function<String, Integer>() {
+            @Override
+            public Integer apply(String value) {
+                return value.length();
+            }
+        });
+        AnswerFuture<Integer> doubled = length.thenApply(new AnswerFuture.Function<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer value) {
+                return value * 2;
+            }
+        });
+        assertFalse(doubled.isDone());
+        future.complete("answer");
+        assertEquals(6, (int) length.get());
+        assertEquals(12, (int) doubled.get());
+
+        // an exception of the function fails the next future
+        final Exception cause = new Exception("function");
+        AnswerFuture<Integer> failed = future.thenApply(new AnswerFuture.Function<String, Integer>() {
+            @Override
+            public Integer apply(String value) throws Exception {
+                throw cause;
+            }
+        });
+        assertExecutionFailure(cause, failed);
+
+        // a failure skips the function and propagates down the chain
+        AnswerFutureImpl<String> source = new AnswerFutureImpl<String>();
+        final AtomicInteger applied = new AtomicInteger();
+        AnswerFuture<Integer> chained = source.thenApply(new AnswerFuture.Function<String, Integer>() {
+            @Override
+            public Integer apply(String value) {
+                applied.incrementAndGet();
+                return 0;
+            }
+        }).thenApply(new AnswerFuture.Function<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer value) {
+                applied.incrementAndGet();
+                return value;
+            }
+        });
+        source.fail(cause);
+        assertExecutionFailure(cause, chained);
+        assertEquals(0, applied.get());
+    }
+
+    @Test
+    public void testThenCompose() throws Exception {
+        AnswerFutureImpl<String> first = new AnswerFutureImpl<String>();
+        final AnswerFutureImpl<Integer> second = new AnswerFutureImpl<Integer>();
+        final List<String> arguments = new ArrayList<String>();
+        AnswerFuture<Integer> composed = first.thenCompose(new AnswerFuture.Function<String, AnswerFuture<Integer>>() {
+            @Override
+            public AnswerFuture<Integer> apply(String value) {
+                arguments.add(value);
+                return second;
+            }
+        });
+        first.complete("first");
+        assertEquals(1, arguments.size());
+        assertEquals("first", arguments.get(0));
+        // waits for the stage returned by the function
+        assertFalse(composed.isDone());
+        second.complete(2);
+        assertEquals(2, (int) composed.get());
+
+        // a failure of the returned stage fails the composed future
+        AnswerFutureImpl<String> source = new AnswerFutureImpl<String>();
+        final AnswerFutureImpl<Integer> failing = new AnswerFutureImpl<Integer>();
+        composed = source.thenCompose(new AnswerFuture.Function<String, AnswerFuture<Integer>>() {
+            @Override
+            public AnswerFuture<Integer> apply(String value) {
+                return failing;
+            }
+        });
+        source.complete("first");
+        TimeoutException timeout = new TimeoutException();
+        failing.fail(timeout);
+        assertExecutionFailure(timeout, composed);
+
+        // a null stage completes with null
+        source = new AnswerFutureImpl<String>();
+        composed = source.thenCompose(new AnswerFuture.Function<String, AnswerFuture<Integer>>() {
+            @Override
+            public AnswerFuture<Integer> apply(String value) {
+                return null;
+            }
+        });
+        source.complete("first");
+        assertTrue(composed.isDone());
+        assertNull(composed.get());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        AnswerFutureImpl<String> future = new AnswerFutureImpl<String>();
+        try {
+            future.get(10, TimeUnit.MILLISECONDS);
+            fail("pending future returned");
+        }
+        catch (TimeoutException e) {
+            // expected, the future stays pending
+        }
+        assertFalse(future.isDone());
+
+        AnswerFuture<Integer> chained = future.thenApply(new AnswerFuture.Function<String, Integer>() {
+            @Override
+            public Integer apply(String value) {
+                return value.length();
+            }
+        });
+        TimeoutException timeout = new TimeoutException();
+        future.fail(timeout);
+        assertExecutionFailure(timeout, future);
+        assertExecutionFailure(timeout, chained);
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        AnswerFutureImpl<String> future = new AnswerFutureImpl<String>();
+        final AtomicInteger released = new AtomicInteger();
+        future.setCanceller(new Runnable() {
+            @Override
+            public void run() {
+                released.incrementAndGet();
+            }
+        });
+        Recorder<String> callback = new Recorder<String>();
+        future.addCallback(callback);
+        assertTrue(future.cancel(false));
+        assertFalse(future.cancel(false));
+        assertEquals(1, released.get());
+        assertTrue(future.isCancelled());
+        assertTrue(callback.failure instanceof CancellationException);
+        assertFalse(future.complete("late"));
+        try {
+            future.get();
+            fail("cancelled future returned");
+        }
+        catch (CancellationException e) {
+            // expected
+        }
+
+        // completed futures are not cancelled
+        AnswerFutureImpl<String> completed = new AnswerFutureImpl<String>();
+        completed.setCanceller(new Runnable() {
+            @Override
+            public void run() {
+                released.incrementAndGet();
+            }
+        });
+        completed.complete("answer");
+        assertFalse(completed.cancel(false));
+        assertEquals(1, released.get());
+    }
+
+    @Test
+    public void testCancelChain() throws Exception {
+        AnswerFutureImpl<String> first = new AnswerFutureImpl<String>();
+        AnswerFuture<Integer> applied = first.thenApply(new AnswerFuture.Function<String, Integer>() {
+            @Override
+            public Integer apply(String value) {
+                return value.length();
+            }
+        });
+        // cancelling the dependent future cancels the one it waits for
+        assertTrue(applied.cancel(false));
+        assertTrue(first.isCancelled());
+
+        first = new AnswerFutureImpl<String>();
+        final AnswerFutureImpl<Integer> second = new AnswerFutureImpl<Integer>();
+        AnswerFuture<Integer> composed = first.thenCompose(new AnswerFuture.Function<String, AnswerFuture<Integer>>() {
+            @Override
+            public AnswerFuture<Integer> apply(String value) {
+                return second;
+            }
+        });
+        first.complete("first");
+        // once the function ran, cancelling reaches the returned stage
+        assertTrue(composed.cancel(false));
+        assertTrue(second.isCancelled());
+        assertFalse(first.isCancelled());
+    }
+
+    @Test
+    public void testSendAsync() throws Exception {
+        AnswerFuture<Answer> future = session.sendAsync(createRequest());
+        assertEquals(1, sent.size());
+        IMessage request = sent.get(0);
+        assertEquals(session.getSessionId(), request.getSessionId());
+        assertFalse(future.isDone());
+
+        Recorder<Answer> callback = new Recorder<Answer>();
+        future.addCallback(callback);
+        Answer answer = createAnswer();
+        request.getEventListener().receivedSuccessMessage(request, answer);
+        assertSame(answer, future.get());
+        assertSame(answer, callback.result);
+        // a duplicate answer is dropped
+        request.getEventListener().receivedSuccessMessage(request, createAnswer());
+        assertSame(answer, future.get());
+        assertEquals(1, callback.calls.get());
+    }
+
+    @Test
+    public void testSendAsyncTimeout() throws Exception {
+        AnswerFuture<Answer> future = session.sendAsync(createRequest(), 50, TimeUnit.MILLISECONDS);
+        AnswerFuture<Integer> chained = future.thenApply(new AnswerFuture.Function<Answer, Integer>() {
+            @Override
+            public Integer apply(Answer value) {
+                return value.getCommandCode();
+            }
+        });
+        try {
+            chained.get(5, TimeUnit.SECONDS);
+            fail("answer received");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(future.isDone());
+        assertFalse(future.isCancelled());
+    }
+
+    @Test
+    public void testSendAsyncCancel() throws Exception {
+        AnswerFuture<Answer> future = session.sendAsync(createRequest(), 50, TimeUnit.MILLISECONDS);
+        IMessage request = sent.get(0);
+        Recorder<Answer> callback = new Recorder<Answer>();
+        future.addCallback(callback);
+        assertTrue(future.cancel(false));
+        assertTrue(callback.failure instanceof CancellationException);
+
+        // the canceller released the request: its listener is invalid and its timer stopped
+        assertFalse(request.getEventListener().isValid());
+        Thread.sleep(100);
+        assertFalse(request.isTimeOut());
+        request.getEventListener().receivedSuccessMessage(request, createAnswer());
+        assertEquals(1, callback.calls.get());
+        assertTrue(future.isCancelled());
+    }
+
+    private IMessage createRequest() {
+        IMessage request = parser.createEmptyMessage(272, 4);
+        request.setRequest(true);
+        request.getAvps().addAvp(Avp.DESTINATION_REALM, "realm", true, false, true);
+        return request;
+    }
+
+    private Answer createAnswer() {
+        return (Answer) parser.createEmptyMessage(272, 4);
+    }
+
+    private static void assertExecutionFailure(Throwable cause, AnswerFuture<?> future) throws InterruptedException {
+        assertTrue(future.isDone());
+        try {
+            future.get();
+            fail("failed future returned");
+        }
+        catch (ExecutionException e) {
+            assertSame(cause, e.getCause());
+        }
+    }
+
+    private IContainer createContainer() throws Exception {
+        final URI uri = new URI("aaa://localhost:3868");
+        final Peer localPeer = stub(Peer.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getUri") ? uri : method.getName().equals("getRealmName") ? "realm" : null;
+            }
+        });
+        final IMetaData metaData = stub(IMetaData.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getLocalPeer") ? localPeer : null;
+            }
+        });
+        final SessionFactory sessionFactory = stub(SessionFactory.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getSessionId") ? "localhost;1;1" : null;
+            }
+        });
+        // default values of all parameters
+        final Configuration configuration = stub(Configuration.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return args != null && args.length == 2 ? args[1] : null;
+            }
+        });
+        // no concurrent factory, listeners are called inline
+        final IAssembler assembler = stub(IAssembler.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getComponentInstance") && args[0] == IMessageParser.class ? parser : null;
+            }
+        });
+        return stub(IContainer.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getSessionFactory")) {
+                    return sessionFactory;
+                }
+                if (name.equals("getAssemblerFacility")) {
+                    return assembler;
+                }
+                if (name.equals("getConfiguration")) {
+                    return configuration;
+                }
+                if (name.equals("getMetaData")) {
+                    return metaData;
+                }
+                if (name.equals("getScheduledFacility")) {
+                    return scheduler;
+                }
+                if (name.equals("sendMessage")) {
+                    sent.add((IMessage) args[0]);
+                }
+                return null;
+            }
+        });
+    }
+
+    private static <T> T stub(Class<T> iface, InvocationHandler handler) {
+        return iface.cast(Proxy.newProxyInstance(TestAnswerFutureImpl.class.getClassLoader(), new Class<?>[] {iface}, handler));
+    }
+
+    private static class Recorder<A> implements AnswerFuture.Callback<A> {
+
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile A result;
+        private volatile Throwable failure;
+        private volatile Thread thread;
+
+        @Override
+        public void onSuccess(A result) {
+            this.result = result;
+            this.thread = Thread.currentThread();
+            calls.incrementAndGet();
+        }
+
+        @Override
+        public void onFailure(Throwable cause) {
+            this.failure = cause;
+            this.thread = Thread.currentThread();
+            calls.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.client.impl.controller;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.jdiameter.api.Avp;
+import org.jdiameter.client.api.IMessage;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for the classification of encoded requests ahead of decoding
+ */
+public class TestPriorityClassifier {
+
+    @Test
+    public void testEncodedRequest() throws Exception {
+        PriorityClassifier classifier = new PriorityClassifier("4:272=9, 4:272:3=2, 16777238:272=12");
+
+        assertEquals(9, classifier.classify(request(4, 272, -1, 1)));
+        // CC-Request-Type specific entry
+        assertEquals(2, classifier.classify(request(4, 272, -1, 3)));
+        assertEquals(12, classifier.classify(request(16777238, 272, -1, 3)));
+        assertEquals(IMessage.DEFAULT_PRIORITY, classifier.classify(request(5, 272, -1, 1)));
+        // DRMP AVP wins over configured defaults, unless out of range
+        assertEquals(4, classifier.classify(request(4, 272, 4, 3)));
+        assertEquals(2, classifier.classify(request(4, 272, 99, 3)));
+    }
+
+    @Test
+    public void testTruncatedRequest() throws Exception {
+        PriorityClassifier classifier = new PriorityClassifier(null);
+        byte[] request = request(4, 272, 3, 1);
+        byte[] truncated = new byte[request.length - 6];
+        System.arraycopy(request, 0, truncated, 0, truncated.length);
+        assertEquals(IMessage.DEFAULT_PRIORITY, classifier.classify(truncated));
+        assertEquals(3, classifier.classify(request));
+    }
+
+    private static byte[] request(long appId, int commandCode, int drmp, int requestType) {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        buffer.putInt(0);
+        buffer.putInt(0x80000000 | commandCode);
+        buffer.putInt((int) appId);
+        buffer.putInt(1);
+        buffer.putInt(2);
+        byte[] sessionId = "host;1;2".getBytes();
+        buffer.putInt(Avp.SESSION_ID);
+        buffer.putInt(0x40000000 | (8 + sessionId.length));
+        buffer.put(sessionId);
+        buffer.position((buffer.position() + 3) & ~3);
+        buffer.putInt(Avp.CC_REQUEST_TYPE);
+        buffer.putInt(0x40000000 | 12);
+        buffer.putInt(requestType);
+        if (drmp >= 0) {
+            buffer.putInt(Avp.DRMP);
+            buffer.putInt(12);
+            buffer.putInt(drmp);
+        }
+        int length = buffer.position();
+        buffer.putInt(0, 0x01000000 | length);
+        byte[] message = new byte[length];
+        System.arraycopy(buffer.array(), 0, message, 0, length);
+        return message;
+    }
+}
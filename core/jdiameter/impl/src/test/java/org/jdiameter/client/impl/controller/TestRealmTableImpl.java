@@ -0,0 +1,78 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.client.impl.controller;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.jdiameter.api.ApplicationId;
+import org.jdiameter.api.LocalAction;
+import org.jdiameter.client.api.IContainer;
+import org.jdiameter.client.api.controller.IRealm;
+import org.jdiameter.server.api.agent.IAgentConfiguration;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for the peer to realm index of the realm table
+ */
+public class TestRealmTableImpl {
+
+    @Test
+    public void testRealmForPeer() throws Exception {
+        RealmTableImpl table = new RealmTableImpl(container());
+        IRealm one = (IRealm) table.addRealm("one.example.com", ApplicationId.createByAuthAppId(4), LocalAction.LOCAL,
+            (IAgentConfiguration) null, false, -1, new String[] {"aaa://p1", "aaa://p2"});
+        table.addRealm("two.example.com", ApplicationId.createByAuthAppId(4), LocalAction.LOCAL,
+            (IAgentConfiguration) null, false, -1, new String[] {"aaa://p2", "aaa://p3"});
+        assertEquals("one.example.com", table.getRealmForPeer("aaa://p1"));
+        // the first realm listing the peer
+        assertEquals("one.example.com", table.getRealmForPeer("aaa://p2"));
+        assertEquals("two.example.com", table.getRealmForPeer("aaa://p3"));
+        assertNull(table.getRealmForPeer("aaa://p4"));
+
+        // lookups without changes keep the snapshot
+        RealmTableImpl.RealmSnapshot snapshot = table.snapshot;
+        table.getRealmForPeer("aaa://p1");
+        assertSame(snapshot, table.snapshot);
+
+        // peer names changed directly on a realm
+        one.addPeerName("aaa://p4");
+        assertEquals("one.example.com", table.getRealmForPeer("aaa://p4"));
+        one.removePeerName("aaa://p2");
+        assertEquals("two.example.com", table.getRealmForPeer("aaa://p2"));
+        one.removePeerName("aaa://p1");
+        assertNull(table.getRealmForPeer("aaa://p1"));
+    }
+
+    private static IContainer container() {
+        return (IContainer) Proxy.newProxyInstance(TestRealmTableImpl.class.getClassLoader(), new Class<?>[] {IContainer.class},
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    return null;
+                }
+            });
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.client.impl.fsm;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.api.app.StateEvent;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.fsm.EventTypes;
+import org.jdiameter.client.api.fsm.FsmEvent;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for the DRMP priority ordered FSM event queue
+ */
+public class TestPriorityEventQueue {
+
+    private final MessageParser parser = new MessageParser();
+    private final List<StateEvent> evicted = new ArrayList<StateEvent>();
+
+    private final PriorityEventQueue.EvictionListener listener = new PriorityEventQueue.EvictionListener() {
+        @Override
+        public void evicted(StateEvent event) {
+            evicted.add(event);
+        }
+    };
+
+    @BeforeMethod
+    public void setUp() {
+        evicted.clear();
+    }
+
+    @Test
+    public void testOrder() throws Exception {
+        PriorityEventQueue queue = new PriorityEventQueue(10, listener);
+        StateEvent low1 = request(12);
+        StateEvent high = request(2);
+        StateEvent low2 = request(12);
+        StateEvent timeout = new FsmEvent(EventTypes.TIMEOUT_EVENT);
+        StateEvent answer = answer(14);
+        for (StateEvent event : new StateEvent[]{low1, high, low2, timeout, answer}) {
+            assertTrue(queue.offer(event, 0, TimeUnit.MILLISECONDS));
+        }
+        assertEquals(5, queue.size());
+        // other events first, then requests by priority, FIFO within each
+        assertSame(timeout, queue.poll(0, TimeUnit.MILLISECONDS));
+        assertSame(answer, queue.poll(0, TimeUnit.MILLISECONDS));
+        assertSame(high, queue.poll(0, TimeUnit.MILLISECONDS));
+        assertSame(low1, queue.poll(0, TimeUnit.MILLISECONDS));
+        assertSame(low2, queue.poll(0, TimeUnit.MILLISECONDS));
+        assertNull(queue.poll(0, TimeUnit.MILLISECONDS));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testDisplacement() throws Exception {
+        PriorityEventQueue queue = new PriorityEventQueue(3, listener);
+        StateEvent low1 = request(12);
+        StateEvent low2 = request(12);
+        StateEvent mid = request(8);
+        queue.offer(low1, 0, TimeUnit.MILLISECONDS);
+        queue.offer(mid, 0, TimeUnit.MILLISECONDS);
+        queue.offer(low2, 0, TimeUnit.MILLISECONDS);
+        assertEquals(0, queue.remainingCapacity());
+
+        // same or lower priority does not displace, the offer times out
+        assertFalse(queue.offer(request(12), 10, TimeUnit.MILLISECONDS));
+        assertFalse(queue.offer(request(15), 0, TimeUnit.MILLISECONDS));
+        assertTrue(evicted.isEmpty());
+
+        // higher priority pushes out the newest of the lowest priority
+        StateEvent high = request(1);
+        assertTrue(queue.offer(high, 0, TimeUnit.MILLISECONDS));
+        assertEquals(1, evicted.size());
+        assertSame(low2, evicted.get(0));
+
+        // events other than received requests displace as well
+        StateEvent answer = answer(15);
+        assertTrue(queue.offer(answer, 0, TimeUnit.MILLISECONDS));
+        assertSame(low1, evicted.get(1));
+
+        assertTrue(queue.offer(new FsmEvent(EventTypes.TIMEOUT_EVENT), 0, TimeUnit.MILLISECONDS));
+        assertSame(mid, evicted.get(2));
+
+        assertTrue(queue.offer(new FsmEvent(EventTypes.TIMEOUT_EVENT), 0, TimeUnit.MILLISECONDS));
+        assertSame(high, evicted.get(3));
+
+        // only received requests can be displaced
+        assertFalse(queue.offer(new FsmEvent(EventTypes.TIMEOUT_EVENT), 0, TimeUnit.MILLISECONDS));
+        assertEquals(4, evicted.size());
+        assertEquals(3, queue.size());
+    }
+
+    @Test
+    public void testWaitingOffer() throws Exception {
+        final PriorityEventQueue queue = new PriorityEventQueue(1, listener);
+        queue.offer(request(12), 0, TimeUnit.MILLISECONDS);
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                    queue.poll(0, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        };
+        consumer.start();
+        // space freed by the consumer is taken without evicting anything
+        assertTrue(queue.offer(request(12), 5, TimeUnit.SECONDS));
+        consumer.join();
+        assertTrue(evicted.isEmpty());
+        assertEquals(1, queue.size());
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        assertEquals(1, queue.remainingCapacity());
+    }
+
+    private StateEvent request(int priority) {
+        IMessage message = parser.createEmptyMessage(272, 4);
+        message.setRequest(true);
+        message.setPriority(priority);
+        return new FsmEvent(EventTypes.RECEIVE_MSG_EVENT, message);
+    }
+
+    private StateEvent answer(int priority) {
+        IMessage message = parser.createEmptyMessage(272, 4);
+        message.setRequest(false);
+        message.setPriority(priority);
+        return new FsmEvent(EventTypes.RECEIVE_MSG_EVENT, message);
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.client.impl.fsm;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for the ingress controller, driven by a synthetic queue delay curve and a simulated queue
+ */
+public class TestQueueDelayController {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private long now = 1000 * MS;
+
+    @Test
+    public void testShortBurstTolerated() throws Exception {
+        QueueDelayController controller = new QueueDelayController(5, 100);
+        // above target for less than an interval
+        for (int i = 0; i < 90; i++) {
+            step(controller, 20);
+            assertFalse(controller.shed(15, now));
+        }
+        step(controller, 1);
+        for (int i = 0; i < 90; i++) {
+            step(controller, 20);
+            assertFalse(controller.shed(15, now));
+        }
+        assertFalse(controller.isOverloaded());
+        assertEquals(0, controller.getOverloadCount());
+    }
+
+    @Test
+    public void testSustainedOverloadConverges() throws Exception {
+        for (int overload : new int[] {2, 5, 10}) {
+            QueueDelayController controller = new QueueDelayController(5, 100);
+            Queue queue = new Queue(controller);
+            // clients keep sending at the same rate whatever is rejected
+            queue.run(3000, 10 * overload, 15, 0, 0);
+            assertTrue(controller.isOverloaded());
+            assertEquals(1, controller.getOverloadCount());
+            // shedding starts one interval after the delay first exceeded the target
+            assertWithin(100 * MS, queue.firstShed - queue.firstAbove);
+
+            queue.run(2000, 10 * overload, 15, 0, 0);
+            assertTrue("overload " + overload + ": mean delay " + queue.meanDelay() / MS + "ms",
+                queue.meanDelay() < 10 * MS);
+            double expected = 1 - 1.0 / overload;
+            assertTrue("overload " + overload + ": shed " + queue.shedRatio(15), Math.abs(queue.shedRatio(15) - expected) < 0.05);
+
+            // load back below capacity ends shedding
+            queue.run(300, 5, 15, 0, 0);
+            assertFalse(controller.isOverloaded());
+            queue.run(1000, 5, 15, 0, 0);
+            assertEquals(0, queue.shed[15]);
+            assertEquals(1, controller.getOverloadCount());
+        }
+    }
+
+    @Test
+    public void testLowPriorityFirst() throws Exception {
+        QueueDelayController controller = new QueueDelayController(5, 100);
+        Queue queue = new Queue(controller);
+        // twice the capacity, three quarters of it low priority
+        queue.run(2000, 15, 12, 5, 3);
+        queue.run(2000, 15, 12, 5, 3);
+        assertTrue(queue.meanDelay() < 10 * MS);
+        assertTrue("low shed " + queue.shedRatio(12), Math.abs(queue.shedRatio(12) - 2.0 / 3) < 0.05);
+        assertTrue("high shed " + queue.shedRatio(3), queue.shedRatio(3) < 0.02);
+
+        // without enough low priority traffic the higher priority is shed as well
+        queue.run(2000, 5, 12, 15, 3);
+        queue.run(2000, 5, 12, 15, 3);
+        assertTrue(queue.meanDelay() < 10 * MS);
+        assertTrue("low shed " + queue.shedRatio(12), queue.shedRatio(12) > 0.95);
+        assertTrue("high shed " + queue.shedRatio(3), Math.abs(queue.shedRatio(3) - 1.0 / 3) < 0.05);
+    }
+
+    @Test
+    public void testDrainedQueue() throws Exception {
+        QueueDelayController controller = new QueueDelayController(5, 100);
+        for (int i = 0; i < 300; i++) {
+            now += MS;
+            // a queue emptied by each dequeue is not standing
+            controller.dequeued(20 * MS, now, true);
+            assertFalse(controller.shed(15, now));
+        }
+        assertFalse(controller.isOverloaded());
+    }
+
+    @Test
+    public void testRecentPriorityMix() throws Exception {
+        QueueDelayController controller = new QueueDelayController(5, 100);
+        // mostly high priority traffic for a long time, below capacity
+        for (int i = 0; i < 5000; i++) {
+            now += MS;
+            offer(controller, 9, 3);
+            offer(controller, 1, 12);
+            controller.dequeued(0, now, true);
+        }
+        // then mostly low priority, standing queue after a while
+        for (int i = 0; i < 150; i++) {
+            now += MS;
+            offer(controller, 1, 3);
+            offer(controller, 3, 12);
+            controller.dequeued(0, now, true);
+        }
+        while (!controller.isOverloaded()) {
+            now += MS;
+            offer(controller, 1, 3);
+            offer(controller, 3, 12);
+            controller.dequeued(20 * MS, now, false);
+        }
+
+        // the recent low priority arrivals absorb the whole fraction, the older high priority ones do not count
+        double fraction = controller.getShedFraction();
+        assertTrue(fraction > 0 && fraction < 0.75);
+        assertEquals(0, controller.getShedProbability(3), 0);
+        assertEquals(fraction / 0.75, controller.getShedProbability(12), 0.01);
+    }
+
+    private void offer(QueueDelayController controller, int count, int priority) {
+        for (int i = 0; i < count; i++) {
+            controller.shed(priority, now);
+        }
+    }
+
+    private void step(QueueDelayController controller, long delay) {
+        now += MS;
+        controller.dequeued(delay * MS, now, false);
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected ~" + expected + " but was " + actual, Math.abs(actual - expected) <= 2 * MS);
+    }
+
+    /**
+     * Queue served at 10 requests per millisecond, fed in 1ms steps by two priorities
+     */
+    private static class Queue {
+
+        private static final int SERVICE_RATE = 10;
+
+        private final QueueDelayController controller;
+        private final ArrayDeque<Long> arrivals = new ArrayDeque<Long>();
+        private long time = 1000 * MS;
+        long firstAbove = -1;
+        long firstShed = -1;
+        // of the last run
+        final long[] sent = new long[16];
+        final long[] shed = new long[16];
+        private long delaySum;
+        private long delayCount;
+
+        Queue(QueueDelayController controller) {
+            this.controller = controller;
+        }
+
+        void run(int millis, int lowRate, int lowPriority, int highRate, int highPriority) {
+            Arrays.fill(sent, 0);
+            Arrays.fill(shed, 0);
+            delaySum = 0;
+            delayCount = 0;
+            for (int i = 0; i < millis; i++) {
+                time += MS;
+                offer(lowRate, lowPriority);
+                offer(highRate, highPriority);
+                for (int j = 0; j < SERVICE_RATE && !arrivals.isEmpty(); j++) {
+                    long delay = time - arrivals.poll();
+                    if (firstAbove < 0 && delay >= 5 * MS) {
+                        firstAbove = time;
+                    }
+                    delaySum += delay;
+                    delayCount++;
+                    controller.dequeued(delay, time, arrivals.isEmpty());
+                }
+            }
+        }
+
+        private void offer(int rate, int priority) {
+            for (int i = 0; i < rate; i++) {
+                sent[priority]++;
+                if (controller.shed(priority, time)) {
+                    shed[priority]++;
+                    if (firstShed < 0) {
+                        firstShed = time;
+                    }
+                }
+                else {
+                    arrivals.add(time);
+                }
+            }
+        }
+
+        double shedRatio(int priority) {
+            return (double) shed[priority] / sent[priority];
+        }
+
+        long meanDelay() {
+            return delayCount == 0 ? 0 : delaySum / delayCount;
+        }
+    }
+}
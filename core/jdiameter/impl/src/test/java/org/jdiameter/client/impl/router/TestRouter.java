@@ -25,11 +25,15 @@ import org.jdiameter.client.api.IAnswer;
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.IRequest;
 import org.jdiameter.client.api.controller.IPeer;
+import org.jdiameter.client.api.controller.IPeerTable;
+import org.jdiameter.client.api.controller.IRealm;
 import org.jdiameter.client.api.controller.IRealmTable;
 import org.jdiameter.client.api.fsm.EventTypes;
 import org.jdiameter.client.api.io.IConnectionListener;
 import org.jdiameter.client.api.io.TransportException;
+import org.jdiameter.client.impl.controller.PeerTableImpl;
 import org.jdiameter.client.impl.helpers.XMLConfiguration;
+import org.jdiameter.client.impl.parser.MessageParser;
 import org.jdiameter.common.api.statistic.IStatistic;
 import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
@@ -39,15 +43,30 @@ import org.jdiameter.server.api.agent.IAgentConfiguration;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.net.InetAddress;
 import java.net.URISyntaxException;
 import java.net.UnknownServiceException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
 
 /**
  * Various testcases for Router implementations
@@ -243,12 +262,749 @@ public class TestRouter {
 
     }
 
+    @Test
+    public void testLeastOutstandingRequests() throws Exception {
+
+        Configuration config = new XMLConfiguration("src/test/resources/jdiameter-leastoutstandingrequests-config.xml");
+        LeastOutstandingRequestsRouter router = new LeastOutstandingRequestsRouter(new RealmTableTest(), config);
+
+        IStatisticManager manager = new StatisticManagerImpl(config);
+        PeerTest p1 = new PeerTest(1, 1, true, manager);
+        PeerTest p2 = new PeerTest(2, 1, true, manager);
+
+        List<IPeer> peers = new ArrayList<IPeer>(2);
+        peers.add(p1);
+        peers.add(p2);
+
+        // p1 has a pending request, p2 is idle
+        p1.setOutstandingRequests(1);
+        assertEquals(p2.toString(), router.selectPeer(peers).toString());
+        assertEquals(p2.toString(), router.selectPeer(peers).toString());
+
+        // p2 now has more pending requests than p1
+        p2.setOutstandingRequests(3);
+        assertEquals(p1.toString(), router.selectPeer(peers).toString());
+        assertEquals(p1.toString(), router.selectPeer(peers).toString());
+
+        // p2 weighs 4 times more, 3/4 < 1/1
+        p2.setRating(4);
+        assertEquals(p2.toString(), router.selectPeer(peers).toString());
+        assertEquals(p2.toString(), router.selectPeer(peers).toString());
+
+        // answers received at p1
+        p1.setOutstandingRequests(0);
+        assertEquals(p1.toString(), router.selectPeer(peers).toString());
+
+        // equally loaded peers take turns
+        p2.setRating(1);
+        p2.setOutstandingRequests(0);
+        String first = router.selectPeer(peers).toString();
+        String second = router.selectPeer(peers).toString();
+        assertEquals(false, first.equals(second));
+
+        // zero rated peers are only used when nothing else is available
+        p1.setRating(0);
+        p2.setOutstandingRequests(10);
+        assertEquals(p2.toString(), router.selectPeer(peers).toString());
+        p2.setRating(0);
+        assertEquals(p1.toString(), router.selectPeer(peers).toString());
+    }
+
+    @Test
+    public void testLatencyAware() throws Exception {
+
+        Configuration config = new XMLConfiguration("src/test/resources/jdiameter-latencyaware-config.xml");
+        LatencyAwareRouter router = new LatencyAwareRouter(new RealmTableTest(), config);
+
+        IStatisticManager manager = new StatisticManagerImpl(config);
+        PeerTest p1 = new PeerTest(1, 1, true, manager);
+        PeerTest p2 = new PeerTest(2, 1, true, manager);
+
+        // with two peers both are always picked, so selection is deterministic
+        List<IPeer> peers = new ArrayList<IPeer>(2);
+        peers.add(p1);
+        peers.add(p2);
+
+        // p1 answers in 10ms, p2 in 50ms
+        p1.setAnswerLatency(TimeUnit.MILLISECONDS.toNanos(10));
+        p2.setAnswerLatency(TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(p1.toString(), router.selectPeer(peers).toString());
+        assertEquals(p1.toString(), router.selectPeer(peers).toString());
+
+        // p1 queue builds up: 10 * 6 > 50 * 1
+        p1.setOutstandingRequests(5);
+        assertEquals(p2.toString(), router.selectPeer(peers).toString());
+
+        // p2 weighs 4 times less than p1: 10 * 6 / 4 < 50
+        p1.setRating(4);
+        assertEquals(p1.toString(), router.selectPeer(peers).toString());
+
+        // request to p1 just timed out
+        p1.setLastTimeoutTime(System.nanoTime());
+        assertEquals(p2.toString(), router.selectPeer(peers).toString());
+
+        // timeout long ago, but p1 just recovered
+        p1.setLastTimeoutTime(System.nanoTime() - 2 * LatencyAwareRouter.TIMEOUT_PENALTY_WINDOW);
+        p1.setOkayTime(System.nanoTime());
+        assertEquals(p2.toString(), router.selectPeer(peers).toString());
+
+        // recovered long ago
+        p1.setOkayTime(System.nanoTime() - 2 * LatencyAwareRouter.RECOVERY_PENALTY_WINDOW);
+        assertEquals(p1.toString(), router.selectPeer(peers).toString());
+
+        // zero is a valid nanoTime, only Long.MIN_VALUE stands for an event that never happened
+        assertEquals(1.0, router.getPenalty(Long.MIN_VALUE, 0, LatencyAwareRouter.TIMEOUT_PENALTY, LatencyAwareRouter.TIMEOUT_PENALTY_WINDOW));
+        assertEquals(LatencyAwareRouter.TIMEOUT_PENALTY,
+            router.getPenalty(0, 0, LatencyAwareRouter.TIMEOUT_PENALTY, LatencyAwareRouter.TIMEOUT_PENALTY_WINDOW));
+        assertEquals(1.0, router.getPenalty(p2.getLastTimeoutTime(), System.nanoTime(), LatencyAwareRouter.TIMEOUT_PENALTY,
+            LatencyAwareRouter.TIMEOUT_PENALTY_WINDOW));
+
+        // all candidates get picked with more peers
+        PeerTest p3 = new PeerTest(3, 1, true, manager);
+        peers.add(p3);
+        Set<String> selected = new HashSet<String>();
+        for (int i = 0; i < 100; i++) {
+            selected.add(router.selectPeer(peers).toString());
+        }
+        assertEquals(3, selected.size());
+    }
+
+    @Test
+    public void testConsistentHash() throws Exception {
+
+        Configuration config = new XMLConfiguration("src/test/resources/jdiameter-consistenthash-config.xml");
+        ConsistentHashRouter router = new ConsistentHashRouter(new RealmTableTest(), config);
+
+        IStatisticManager manager = new StatisticManagerImpl(config);
+        PeerTest p1 = new PeerTest(1, 1, true, manager);
+        PeerTest p2 = new PeerTest(2, 1, true, manager);
+        PeerTest p3 = new PeerTest(3, 2, true, manager);
+        ConsistentHashRouter.HashRing ring = new ConsistentHashRouter.HashRing(new IPeer[]{p1, p2, p3});
+
+        int sessions = 4000;
+        String[] owners = new String[sessions];
+        int[] counts = new int[4];
+        for (int i = 0; i < sessions; i++) {
+            IPeer peer = router.selectPeer("client.example.com;1234;" + i, ring);
+            owners[i] = peer.toString();
+            counts[((PeerTest) peer).getId()]++;
+            // sticky
+            assertEquals(owners[i], router.selectPeer("client.example.com;1234;" + i, ring).toString());
+        }
+        // weighted: p3 has twice the rating, allow some spread
+        assertTrue(counts[1] > sessions / 8 && counts[2] > sessions / 8);
+        assertTrue(counts[3] > counts[1] && counts[3] > counts[2]);
+
+        // p2 fails, only its sessions move
+        p2.setConnected(false);
+        for (int i = 0; i < sessions; i++) {
+            String owner = router.selectPeer("client.example.com;1234;" + i, ring).toString();
+            if (owners[i].equals(p2.toString())) {
+                assertFalse(owner.equals(p2.toString()));
+            }
+            else {
+                assertEquals(owners[i], owner);
+            }
+        }
+
+        // p2 recovers, its sessions move back
+        p2.setConnected(true);
+        for (int i = 0; i < sessions; i++) {
+            assertEquals(owners[i], router.selectPeer("client.example.com;1234;" + i, ring).toString());
+        }
+
+        // nothing available
+        p1.setConnected(false);
+        p2.setConnected(false);
+        p3.setConnected(false);
+        assertNull(router.selectPeer("client.example.com;1234;0", ring));
+    }
+
+    @Test
+    public void testConsistentHashBatch() throws Exception {
+
+        Configuration config = new XMLConfiguration("src/test/resources/jdiameter-consistenthash-config.xml");
+        IStatisticManager manager = new StatisticManagerImpl(config);
+        final PeerTest p1 = new PeerTest(1, 1, true, manager);
+        final PeerTest p2 = new PeerTest(2, 1, true, manager);
+        final PeerTest p3 = new PeerTest(3, 1, true, manager);
+        // all peers of the realm entry are candidates, as the realm lookup would return them
+        final ConsistentHashRouter hashRouter = new ConsistentHashRouter(new RealmTableTest(), config) {
+            @Override
+            public IPeer getPeer(IMessage message, IPeerTable table) {
+                IPeer[] peers = new IPeer[]{p1, p2, p3};
+                return selectPeer(message, newPeerCandidates(null, null, peers, peers, peers.length, 0, 0));
+            }
+
+            @Override
+            public boolean updateRoute(IRequest message) {
+                return false;
+            }
+        };
+        final MetaData localMetaData = (MetaData) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{MetaData.class},
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    return null;
+                }
+            });
+        PeerTableImpl table = new PeerTableImpl() {
+            {
+                this.router = hashRouter;
+                this.metaData = localMetaData;
+                this.isStarted = true;
+            }
+        };
+
+        MessageParser parser = new MessageParser();
+        List<IMessage> batch = new ArrayList<IMessage>();
+        for (int i = 0; i < 60; i++) {
+            IMessage message = parser.createEmptyMessage(272, 4);
+            message.setRequest(true);
+            message.getAvps().addAvp(Avp.SESSION_ID, "client.example.com;1234;" + i, true, false, false);
+            batch.add(message);
+        }
+        Map<IMessage, Exception> failed = table.sendMessages(batch);
+        assertTrue(failed.isEmpty());
+
+        // each request reaches the owner of its session, as when sent alone
+        int total = 0;
+        for (PeerTest peer : new PeerTest[]{p1, p2, p3}) {
+            assertTrue(peer.getBatches().size() <= 1);
+            for (List<IMessage> sent : peer.getBatches()) {
+                for (IMessage message : sent) {
+                    assertSame(peer, hashRouter.getPeer(message, table));
+                    assertSame(peer, message.getPeer());
+                    total++;
+                }
+            }
+        }
+        assertEquals(batch.size(), total);
+        // the batch was spread, not routed as a whole
+        assertEquals(1, p1.getBatches().size());
+        assertEquals(1, p2.getBatches().size());
+        assertEquals(1, p3.getBatches().size());
+    }
+
+    @Test
+    public void testRealmCandidatesInvalidation() throws Exception {
+        Configuration config = new XMLConfiguration("src/test/resources/jdiameter-weightedroundrobin-config.xml");
+        IStatisticManager manager = new StatisticManagerImpl(config);
+        PeerTest p1 = new PeerTest(1, 1, true, manager);
+        PeerTest p2 = new PeerTest(2, 1, true, manager);
+        IPeerTable table = peerTable(p1, p2);
+        IRealm realm1 = realm("one.example.com", p1);
+        IRealm realm2 = realm("two.example.com", p2);
+        RouterImpl router = new WeightedRoundRobinRouter(new RealmTableTest(), config);
+
+        RouterImpl.PeerCandidates candidates1 = router.getPeerCandidates(realm1, table);
+        RouterImpl.PeerCandidates candidates2 = router.getPeerCandidates(realm2, table);
+        assertSame(candidates1, router.getPeerCandidates(realm1, table));
+
+        // a stale peer in one realm rebuilds that realm only
+        router.invalidatePeerCandidates(realm1);
+        assertFalse(candidates1 == router.getPeerCandidates(realm1, table));
+        assertSame(candidates2, router.getPeerCandidates(realm2, table));
+
+        // a peer state change rebuilds all of them
+        router.invalidatePeerCandidates();
+        assertFalse(candidates2 == router.getPeerCandidates(realm2, table));
+    }
+
+    @Test
+    public void testConsistentHashRingReuse() throws Exception {
+        Configuration config = new XMLConfiguration("src/test/resources/jdiameter-consistenthash-config.xml");
+        IStatisticManager manager = new StatisticManagerImpl(config);
+        PeerTest p1 = new PeerTest(1, 1, true, manager);
+        PeerTest p2 = new PeerTest(2, 1, true, manager);
+        IPeerTable table = peerTable(p1, p2);
+        IRealm realm = realm("one.example.com", p1, p2);
+        ConsistentHashRouter router = new ConsistentHashRouter(new RealmTableTest(), config);
+
+        ConsistentHashRouter.HashRing ring = ((ConsistentHashRouter.RingCandidates) router.getPeerCandidates(realm, table)).ring;
+
+        // a peer flaps, the available peers are rebuilt but the ring is kept
+        p2.setConnected(false);
+        router.invalidatePeerCandidates();
+        RouterImpl.PeerCandidates candidates = router.getPeerCandidates(realm, table);
+        assertEquals(1, candidates.peers.size());
+        assertSame(ring, ((ConsistentHashRouter.RingCandidates) candidates).ring);
+        p2.setConnected(true);
+        router.invalidatePeerCandidates();
+        assertSame(ring, ((ConsistentHashRouter.RingCandidates) router.getPeerCandidates(realm, table)).ring);
+
+        // a rating change moves the ring points
+        p2.setRating(2);
+        router.invalidatePeerCandidates();
+        ConsistentHashRouter.HashRing rated = ((ConsistentHashRouter.RingCandidates) router.getPeerCandidates(realm, table)).ring;
+        assertFalse(ring == rated);
+
+        // a removed realm entry takes its ring along
+        router.realmRemoved(realm);
+        assertFalse(rated == ((ConsistentHashRouter.RingCandidates) router.getPeerCandidates(realm, table)).ring);
+    }
+
+    @Test
+    public void testConsistentHashRealmRemovedWhileBuilding() throws Exception {
+        Configuration config = new XMLConfiguration("src/test/resources/jdiameter-consistenthash-config.xml");
+        IStatisticManager manager = new StatisticManagerImpl(config);
+        PeerTest p1 = new PeerTest(1, 1, true, manager);
+        IPeerTable table = peerTable(p1);
+        final IRealm realm = realm("one.example.com", p1);
+        final AtomicBoolean remove = new AtomicBoolean();
+        ConsistentHashRouter router = new ConsistentHashRouter(new RealmTableTest(), config) {
+            @Override
+            protected PeerCandidates newPeerCandidates(IRealm r, PeerCandidates previous, IPeer[] realmPeers, IPeer[] availablePeers,
+                    int peerNamesCount, int generation, int peerNamesVersion) {
+                if (remove.getAndSet(false)) {
+                    realmRemoved(realm);
+                }
+                return super.newPeerCandidates(r, previous, realmPeers, availablePeers, peerNamesCount, generation, peerNamesVersion);
+            }
+        };
+
+        // the ring built while the realm entry was removed is not kept for the next build
+        remove.set(true);
+        ConsistentHashRouter.HashRing ring = ((ConsistentHashRouter.RingCandidates) router.getPeerCandidates(realm, table)).ring;
+        assertEquals(0, router.peerCandidates.size());
+        assertFalse(ring == ((ConsistentHashRouter.RingCandidates) router.getPeerCandidates(realm, table)).ring);
+    }
+
+    @Test
+    public void testRealmRemoved() throws Exception {
+        Configuration config = new XMLConfiguration("src/test/resources/jdiameter-weightedroundrobin-config.xml");
+        IStatisticManager manager = new StatisticManagerImpl(config);
+        PeerTest p1 = new PeerTest(1, 1, true, manager);
+        PeerTest p2 = new PeerTest(2, 1, true, manager);
+        IPeerTable table = peerTable(p1, p2);
+        IRealm realm1 = realm("one.example.com", p1, p2);
+        IRealm realm2 = realm("two.example.com", p1, p2);
+        RouterImpl router = new WeightedRoundRobinRouter(new RealmTableTest(), config);
+
+        RouterImpl.PeerCandidates candidates2 = router.getPeerCandidates(realm2, table);
+        router.getPeerCandidates(realm1, table);
+        assertEquals(2, router.peerCandidates.size());
+
+        // the removed realm entry leaves nothing behind, the others keep their data
+        router.realmRemoved(realm1);
+        assertEquals(1, router.peerCandidates.size());
+        assertSame(candidates2, router.getPeerCandidates(realm2, table));
+    }
+
+    @Test
+    public void testRealmRemovedWhileBuilding() throws Exception {
+        Configuration config = new XMLConfiguration("src/test/resources/jdiameter-weightedroundrobin-config.xml");
+        IStatisticManager manager = new StatisticManagerImpl(config);
+        PeerTest p1 = new PeerTest(1, 1, true, manager);
+        IPeerTable table = peerTable(p1);
+        final IRealm realm = realm("one.example.com", p1);
+        final AtomicBoolean remove = new AtomicBoolean();
+        RouterImpl router = new WeightedRoundRobinRouter(new RealmTableTest(), config) {
+            @Override
+            protected PeerCandidates newPeerCandidates(IRealm r, PeerCandidates previous, IPeer[] realmPeers, IPeer[] availablePeers,
+                    int peerNamesCount, int generation, int peerNamesVersion) {
+                if (remove.getAndSet(false)) {
+                    realmRemoved(realm);
+                }
+                return super.newPeerCandidates(r, previous, realmPeers, availablePeers, peerNamesCount, generation, peerNamesVersion);
+            }
+        };
+
+        // removed while its set is built, the set is used but not kept
+        remove.set(true);
+        assertEquals(1, router.getPeerCandidates(realm, table).peers.size());
+        assertEquals(0, router.peerCandidates.size());
+
+        // removed after it was matched, before its set is built
+        int removals = router.peerCandidatesRemovals.get();
+        router.realmRemoved(realm);
+        router.getPeerCandidates(realm, table, removals);
+        assertEquals(0, router.peerCandidates.size());
+
+        router.getPeerCandidates(realm, table);
+        assertEquals(1, router.peerCandidates.size());
+    }
+
+    private static IPeerTable peerTable(final PeerTest... peers) {
+        return (IPeerTable) Proxy.newProxyInstance(TestRouter.class.getClassLoader(), new Class<?>[]{IPeerTable.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getPeer")) {
+                    for (PeerTest peer : peers) {
+                        if (peer.toString().equals(args[0])) {
+                            return peer;
+                        }
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    private static IRealm realm(final String name, final PeerTest... peers) {
+        final String[] names = new String[peers.length];
+        for (int i = 0; i < peers.length; i++) {
+            names[i] = peers[i].toString();
+        }
+        return (IRealm) Proxy.newProxyInstance(TestRouter.class.getClassLoader(), new Class<?>[]{IRealm.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String m = method.getName();
+                if (m.equals("getName")) {
+                    return name;
+                }
+                else if (m.equals("getPeerNames")) {
+                    return names;
+                }
+                else if (m.equals("getPeerNamesVersion")) {
+                    return 0;
+                }
+                else if (m.equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                }
+                else if (m.equals("equals")) {
+                    return proxy == args[0];
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testOverloadReportParsing() throws Exception {
+        MessageParser parser = new MessageParser();
+
+        IMessage answer = parser.createEmptyMessage(272, 4);
+        OverloadReport.addReport(answer, 7, OverloadReport.REALM_REPORT, 30, 10);
+        OverloadReport report = OverloadReport.getReport(answer);
+        assertNotNull(report);
+        assertEquals(7, report.getSequenceNumber());
+        assertEquals(OverloadReport.REALM_REPORT, report.getType());
+        assertEquals(30, report.getReduction());
+        assertFalse(report.isExpired(System.nanoTime()));
+        assertTrue(report.isExpired(System.nanoTime() + TimeUnit.SECONDS.toNanos(11)));
+
+        // reduction is capped at 100%, validity defaults when absent
+        answer = parser.createEmptyMessage(272, 4);
+        AvpSet olr = answer.getAvps().addGroupedAvp(Avp.OC_OLR, false, false);
+        olr.addAvp(Avp.OC_SEQUENCE_NUMBER, 1L, false, false);
+        olr.addAvp(Avp.OC_REPORT_TYPE, OverloadReport.HOST_REPORT, false, false);
+        olr.addAvp(Avp.OC_REDUCTION_PERCENTAGE, 250, false, false, true);
+        report = OverloadReport.getReport(answer);
+        assertEquals(100, report.getReduction());
+        assertFalse(report.isExpired(System.nanoTime() + TimeUnit.SECONDS.toNanos(OverloadReport.DEFAULT_VALIDITY_DURATION - 1)));
+        assertTrue(report.isExpired(System.nanoTime() + TimeUnit.SECONDS.toNanos(OverloadReport.DEFAULT_VALIDITY_DURATION + 1)));
+
+        // mandatory sequence number missing
+        answer = parser.createEmptyMessage(272, 4);
+        olr = answer.getAvps().addGroupedAvp(Avp.OC_OLR, false, false);
+        olr.addAvp(Avp.OC_REPORT_TYPE, OverloadReport.HOST_REPORT, false, false);
+        assertNull(OverloadReport.getReport(answer));
+        assertNull(OverloadReport.getReport(parser.createEmptyMessage(272, 4)));
+    }
+
+    @Test
+    public void testOverloadReportSequence() throws Exception {
+        Configuration config = new XMLConfiguration("src/test/resources/jdiameter-consistenthash-config.xml");
+        RouterImpl router = new ConsistentHashRouter(new RealmTableTest(), config);
+        MessageParser parser = new MessageParser();
+        IMessage request = parser.createEmptyMessage(272, 4);
+        request.setRequest(true);
+        request.getAvps().addAvp(Avp.DESTINATION_REALM, "server.realm", true, false, true);
+
+        router.processOverloadReport(request, overloadAnswer(parser, 5, OverloadReport.HOST_REPORT, 100, 30));
+        assertThrottled(router, request, "server.example.com", "server.realm");
+        // another host of the realm is not affected by a host report
+        router.abateOverload(request, "other.example.com", "server.realm");
+
+        // stale sequence number is ignored, even if it would end the overload
+        router.processOverloadReport(request, overloadAnswer(parser, 4, OverloadReport.HOST_REPORT, 0, 30));
+        assertThrottled(router, request, "server.example.com", "server.realm");
+
+        // newer report with zero reduction ends it
+        router.processOverloadReport(request, overloadAnswer(parser, 6, OverloadReport.HOST_REPORT, 0, 30));
+        router.abateOverload(request, "server.example.com", "server.realm");
+        assertTrue(router.hostReports.isEmpty());
+
+        // realm report applies to requests without Destination-Host only
+        router.processOverloadReport(request, overloadAnswer(parser, 1, OverloadReport.REALM_REPORT, 100, 30));
+        assertThrottled(router, request, "other.example.com", "server.realm");
+        IMessage hostRequest = parser.createEmptyMessage(272, 4);
+        hostRequest.setRequest(true);
+        hostRequest.getAvps().addAvp(Avp.DESTINATION_REALM, "server.realm", true, false, true);
+        hostRequest.getAvps().addAvp(Avp.DESTINATION_HOST, "other.example.com", true, false, true);
+        router.abateOverload(hostRequest, "other.example.com", "server.realm");
+    }
+
+    @Test
+    public void testOverloadHostReportDiversion() throws Exception {
+        Configuration config = new XMLConfiguration("src/test/resources/jdiameter-weightedroundrobin-config.xml");
+        IStatisticManager manager = new StatisticManagerImpl(config);
+        PeerTest p1 = new PeerTest(1, 1, true, manager);
+        PeerTest p2 = new PeerTest(2, 1, true, manager);
+        RouterImpl router = new WeightedRoundRobinRouter(new RealmTableTest(), config);
+        RouterImpl.PeerCandidates candidates = router.getPeerCandidates(realm("server.realm", p1, p2), peerTable(p1, p2));
+        MessageParser parser = new MessageParser();
+        IMessage request = parser.createEmptyMessage(272, 4);
+        request.setRequest(true);
+        request.getAvps().addAvp(Avp.DESTINATION_REALM, "server.realm", true, false, true);
+
+        // a realm routed request is diverted from the overloaded peer, not throttled
+        router.hostReports.put(p1.getUri().getFQDN(), new OverloadReport(1, OverloadReport.HOST_REPORT, 100, 30));
+        for (int i = 0; i < 10; i++) {
+            assertSame(p2, router.abateOverload(request, candidates, p1, "server.realm"));
+            assertSame(p2, router.abateOverload(request, candidates, p2, "server.realm"));
+        }
+
+        // unless all of the candidates are overloaded
+        router.hostReports.put(p2.getUri().getFQDN(), new OverloadReport(1, OverloadReport.HOST_REPORT, 100, 30));
+        try {
+            router.abateOverload(request, candidates, p1, "server.realm");
+            fail("Request not throttled");
+        }
+        catch (RouteException e) {
+            // expected
+        }
+
+        // the realm report applies to the peer the request is diverted to
+        router.hostReports.remove(p2.getUri().getFQDN());
+        router.realmReports.put("server.realm", new OverloadReport(1, OverloadReport.REALM_REPORT, 100, 30));
+        try {
+            router.abateOverload(request, candidates, p1, "server.realm");
+            fail("Request not throttled");
+        }
+        catch (RouteException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testOverloadReportExpiry() throws Exception {
+        Configuration config = new XMLConfiguration("src/test/resources/jdiameter-consistenthash-config.xml");
+        RouterImpl router = new ConsistentHashRouter(new RealmTableTest(), config);
+        MessageParser parser = new MessageParser();
+        IMessage request = parser.createEmptyMessage(272, 4);
+        request.setRequest(true);
+
+        // zero validity ends the overload straight away
+        router.processOverloadReport(request, overloadAnswer(parser, 1, OverloadReport.HOST_REPORT, 100, 0));
+        assertTrue(router.hostReports.isEmpty());
+
+        router.processOverloadReport(request, overloadAnswer(parser, 2, OverloadReport.HOST_REPORT, 100, 1));
+        assertThrottled(router, request, "server.example.com", null);
+        Thread.sleep(1100);
+        router.abateOverload(request, "server.example.com", null);
+        assertTrue(router.hostReports.isEmpty());
+
+        // an expired report is replaced whatever its sequence number, and trimmed when expired
+        router.processOverloadReport(request, overloadAnswer(parser, 9, OverloadReport.HOST_REPORT, 100, 1));
+        Thread.sleep(1100);
+        router.processOverloadReport(request, overloadAnswer(parser, 1, OverloadReport.HOST_REPORT, 100, 1));
+        assertThrottled(router, request, "server.example.com", null);
+        Thread.sleep(1100);
+        router.trimOverloadReports();
+        assertTrue(router.hostReports.isEmpty());
+    }
+
+    @Test
+    public void testOverloadLossAbatement() throws Exception {
+        int samples = 20000;
+        int throttled = 0;
+        OverloadReport report = new OverloadReport(1, OverloadReport.HOST_REPORT, 30, 30);
+        for (int i = 0; i < samples; i++) {
+            if (report.abate()) {
+                throttled++;
+            }
+        }
+        assertTrue("throttled " + throttled, Math.abs(throttled - samples * 30 / 100) < samples / 50);
+        assertFalse(new OverloadReport(1, OverloadReport.HOST_REPORT, 0, 30).abate());
+        assertTrue(new OverloadReport(1, OverloadReport.HOST_REPORT, 100, 30).abate());
+    }
+
+    @Test
+    public void testOverloadSupportedFeaturesEcho() throws Exception {
+        MessageParser parser = new MessageParser();
+        IMessage request = parser.createEmptyMessage(272, 4);
+        request.setRequest(true);
+        assertEquals(0, OverloadReport.getFeatureVector(request));
+
+        // a reacting node always supports the loss algorithm, even with an empty vector
+        OverloadReport.addSupportedFeatures(request, 0);
+        assertEquals(OverloadReport.LOSS_ALGORITHM, OverloadReport.getFeatureVector(request));
+
+        // only the supported algorithm is echoed back in the answer
+        request = parser.createEmptyMessage(272, 4);
+        request.setRequest(true);
+        OverloadReport.addSupportedFeatures(request, 0x6);
+        request.setOverloadFeatures(OverloadReport.getFeatureVector(request) & OverloadReport.LOSS_ALGORITHM);
+        IMessage answer = (IMessage) request.createAnswer(ResultCode.SUCCESS);
+        assertEquals(OverloadReport.LOSS_ALGORITHM, answer.getOverloadFeatures());
+        OverloadReport.addSupportedFeatures(answer, answer.getOverloadFeatures());
+        assertEquals(OverloadReport.LOSS_ALGORITHM, OverloadReport.getFeatureVector(answer));
+    }
+
+    private static IMessage overloadAnswer(MessageParser parser, long sequence, int type, int reduction, int validity) {
+        IMessage answer = parser.createEmptyMessage(272, 4);
+        answer.getAvps().addAvp(Avp.ORIGIN_HOST, "server.example.com", true, false, true);
+        OverloadReport.addReport(answer, sequence, type, reduction, validity);
+        return answer;
+    }
+
+    private static void assertThrottled(RouterImpl router, IMessage request, String host, String realm) {
+        try {
+            router.abateOverload(request, host, realm);
+            fail("Request not throttled");
+        }
+        catch (RouteException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRequestRouteTable() throws Exception {
+
+        RequestRouteTable<String> table = new RequestRouteTable<String>(1000, 60000);
+        for (long i = 0; i < 1000; i++) {
+            table.put(i, "session", "entry" + i);
+        }
+        assertEquals(1000, table.size());
+        assertEquals("entry10", table.get(10, "session"));
+        assertEquals("entry10", table.remove(10, "session"));
+        assertNull(table.get(10, "session"));
+        assertEquals(999, table.size());
+        assertEquals(0, table.getEvictedCount());
+
+        // a burst rotates early, going over capacity evicts the oldest bucket only, not the new entries
+        table.put(1000, "session", "entry1000");
+        assertEquals(1000, table.size());
+        assertEquals(0, table.getEvictedCount());
+        table.put(1001, "session", "entry1001");
+        assertEquals(142, table.getEvictedCount());
+        assertEquals(859, table.size());
+        assertNull(table.get(0, "session"));
+        assertEquals("entry143", table.get(143, "session"));
+        assertEquals("entry1001", table.get(1001, "session"));
+
+        // the capacity is a hard bound, the oldest entries go first
+        for (long i = 2000; i < 5000; i++) {
+            table.put(i, "session", "entry" + i);
+            assertTrue(table.size() <= 1000);
+        }
+        assertEquals(4001 - table.size(), table.getEvictedCount());
+        assertNull(table.get(1001, "session"));
+        for (long i = 4857; i < 5000; i++) {
+            assertEquals("entry" + i, table.get(i, "session"));
+        }
+        assertEquals(0, table.getExpiredCount());
+
+        // removing entries of a bucket rotated out does not skew the size
+        table = new RequestRouteTable<String>(1000, 70);
+        table.put(1, null, "entry1");
+        Thread.sleep(100);
+        table.put(2, null, "entry2");
+        assertNull(table.remove(1, null));
+        assertEquals(1, table.size());
+        assertEquals("entry2", table.remove(2, null));
+        assertEquals(0, table.size());
+
+        // entries expire
+        table = new RequestRouteTable<String>(1000, 70);
+        table.put(1, null, "entry1");
+        Thread.sleep(100);
+        // expiry is applied on insertion
+        assertEquals("entry1", table.get(1, null));
+        table.put(2, null, "entry2");
+        assertNull(table.get(1, null));
+        assertEquals(1, table.getExpiredCount());
+        assertEquals("entry2", table.get(2, null));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void testRequestRouteTableSameIdentifiers() throws Exception {
+        // requests of two sessions received from different peers with the same End-to-End and Hop-by-Hop
+        RequestRouteTable<String> table = new RequestRouteTable<String>(1000, 60000);
+        table.put(7, "session1", "peer1");
+        table.put(7, "session2", "peer2");
+        assertEquals(2, table.size());
+        assertEquals("peer1", table.get(7, "session1"));
+        assertEquals("peer2", table.get(7, "session2"));
+        assertNull(table.get(7, "session3"));
+        assertNull(table.remove(7, "session3"));
+
+        // same session again replaces its own entry only
+        table.put(7, "session1", "peer3");
+        assertEquals(2, table.size());
+        assertEquals("peer3", table.get(7, "session1"));
+
+        assertEquals("peer3", table.remove(7, "session1"));
+        assertNull(table.get(7, "session1"));
+        assertEquals("peer2", table.get(7, "session2"));
+        assertEquals(1, table.size());
+        assertEquals("peer2", table.remove(7, "session2"));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testRequestRouteTableConcurrentCapacity() throws Exception {
+        // threads filling a full table never take it over its capacity
+        final RequestRouteTable<String> table = new RequestRouteTable<String>(100, 60000);
+        final int threads = 16;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicInteger maxSize = new AtomicInteger();
+        for (int t = 0; t < threads; t++) {
+            final long base = (long) t << 32;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (long i = 0; i < 20000; i++) {
+                            table.put(base | i, "session", "entry");
+                            int size = table.size();
+                            if (size > maxSize.get()) {
+                                maxSize.set(size);
+                            }
+                        }
+                    }
+                    catch (InterruptedException e) {
+                        // ends the thread
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        start.countDown();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertTrue("Table went over capacity: " + maxSize.get(), maxSize.get() <= 100);
+        assertTrue(table.size() <= 100);
+        assertTrue(table.getEvictedCount() > 0);
+
+        // every entry counted is still reachable
+        int found = 0;
+        for (int t = 0; t < threads; t++) {
+            for (long i = 0; i < 20000; i++) {
+                if (table.get(((long) t << 32) | i, "session") != null) {
+                    found++;
+                }
+            }
+        }
+        assertEquals(table.size(), found);
+    }
+
     private static class RealmTableTest implements IRealmTable {
 
         public Realm matchRealm(IRequest request) {
             return null;
         }
 
+        public Realm matchRealm(IRequest request, String destRealm) {
+            return null;
+        }
+
         public Realm matchRealm(IAnswer message, String destRealm) {
             return null;
         }
@@ -281,8 +1037,8 @@ public class TestRouter {
 
         }
 
-        public void removeLocalApplicationId(ApplicationId a) {
-
+        public Realm removeLocalApplicationId(ApplicationId a) {
+            return null;
         }
 
         public void addLocalRealm(String localRealm, String fqdn) {
@@ -323,6 +1079,7 @@ public class TestRouter {
         private int id;
         private int rating;
         private boolean connected;
+        private final List<List<IMessage>> batches = new ArrayList<List<IMessage>>();
 
         public PeerTest(int id, int rating, boolean connected, IStatisticManager manager) throws URISyntaxException, UnknownServiceException {
             super(new URI("aaa://"+id), manager);
@@ -336,6 +1093,34 @@ public class TestRouter {
             this.rating = rating;
         }
 
+        public int getId() {
+            return id;
+        }
+
+        public void setConnected(boolean connected) {
+            this.connected = connected;
+        }
+
+        public void setOutstandingRequests(int outstanding) {
+            this.outstandingRequests.set(outstanding);
+        }
+
+        public void setAnswerLatency(long latency) {
+            this.answerLatency.set(latency);
+        }
+
+        public void setLastTimeoutTime(long time) {
+            this.lastTimeoutTime = time;
+        }
+
+        public void setOkayTime(long time) {
+            this.okayTime = time;
+        }
+
+        public List<List<IMessage>> getBatches() {
+            return batches;
+        }
+
         public int getRating() {
             return rating;
         }
@@ -352,6 +1137,10 @@ public class TestRouter {
 
         }
 
+        public void remExpiredMessage(IMessage message) {
+
+        }
+
         public IMessage[] remAllMessage() {
             return new IMessage[0];
         }
@@ -364,6 +1153,11 @@ public class TestRouter {
             return false;
         }
 
+        public boolean sendMessages(List<IMessage> messages) throws TransportException, OverloadException, InternalException {
+            batches.add(new ArrayList<IMessage>(messages));
+            return true;
+        }
+
         public boolean hasValidConnection() {
             return connected;
         }
@@ -405,7 +1199,11 @@ public class TestRouter {
 
         }
 
+        @SuppressWarnings("unchecked")
         public <E> E getState(Class<E> enumc) {
+            if (enumc == PeerState.class) {
+                return (E) (connected ? PeerState.OKAY : PeerState.DOWN);
+            }
             return null;
         }
 
@@ -0,0 +1,433 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.concurrent;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for the per session mailbox and its lock
+ */
+public class TestSerialExecutor {
+
+    @Test
+    public void testOrderAndBatches() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        SerialExecutor mailbox = new SerialExecutor(executor);
+        final List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < 100; i++) {
+            final int n = i;
+            mailbox.execute(new Runnable() {
+                @Override
+                public void run() {
+                    order.add(n);
+                }
+            });
+        }
+        // one drain for the whole queue, not one per task
+        assertEquals(1, executor.pending());
+        assertTrue(mailbox.isScheduled());
+
+        // a drain runs one batch and hands the thread back with the rest queued
+        executor.runNext();
+        assertEquals(SerialExecutor.BATCH_SIZE, order.size());
+        assertEquals(1, executor.pending());
+        assertEquals(100 - SerialExecutor.BATCH_SIZE, mailbox.getQueueSize());
+        executor.runAll();
+        assertEquals(100, order.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+        assertFalse(mailbox.isScheduled());
+    }
+
+    @Test
+    public void testFailedTask() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        SerialExecutor mailbox = new SerialExecutor(executor);
+        final AtomicInteger ran = new AtomicInteger();
+        mailbox.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("expected by test");
+            }
+        });
+        mailbox.execute(counter(ran));
+        executor.runAll();
+        // the failure neither stops the batch nor leaves the mailbox scheduled
+        assertEquals(1, ran.get());
+        assertFalse(mailbox.isScheduled());
+        mailbox.execute(counter(ran));
+        assertEquals(1, executor.pending());
+        executor.runAll();
+        assertEquals(2, ran.get());
+    }
+
+    @Test
+    public void testRejected() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        SerialExecutor mailbox = new SerialExecutor(executor);
+        executor.reject = true;
+        try {
+            mailbox.execute(counter(new AtomicInteger()));
+            fail("Task not rejected");
+        }
+        catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertFalse(mailbox.isScheduled());
+        assertEquals(0, mailbox.getQueueSize());
+        executor.reject = false;
+        AtomicInteger ran = new AtomicInteger();
+        mailbox.execute(counter(ran));
+        executor.runAll();
+        assertEquals(1, ran.get());
+    }
+
+    @Test
+    public void testLockHolderQueuesTasks() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        SerialExecutor mailbox = new SerialExecutor(executor);
+        Lock lock = mailbox.getLock();
+        AtomicInteger ran = new AtomicInteger();
+
+        lock.lock();
+        // reentrant, like the lock it replaces
+        lock.lock();
+        mailbox.execute(counter(ran));
+        // nothing handed to the pool while the lock is held
+        assertEquals(0, executor.pending());
+        lock.unlock();
+        assertEquals(0, executor.pending());
+        lock.unlock();
+        // released to the queued task
+        assertEquals(1, executor.pending());
+        assertFalse(lock.tryLock());
+        executor.runAll();
+        assertEquals(1, ran.get());
+        assertFalse(mailbox.isScheduled());
+
+        // tasks run holding the lock already
+        final Lock taskLock = lock;
+        final AtomicInteger nested = new AtomicInteger();
+        mailbox.execute(new Runnable() {
+            @Override
+            public void run() {
+                taskLock.lock();
+                try {
+                    nested.incrementAndGet();
+                }
+                finally {
+                    taskLock.unlock();
+                }
+            }
+        });
+        mailbox.execute(counter(ran));
+        executor.runAll();
+        assertEquals(1, nested.get());
+        assertEquals(2, ran.get());
+        assertFalse(mailbox.isScheduled());
+
+        try {
+            lock.unlock();
+            fail("Unlocked without holding the lock");
+        }
+        catch (IllegalMonitorStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLockWaitsForDrain() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            SerialExecutor mailbox = new SerialExecutor(pool);
+            final Lock lock = mailbox.getLock();
+            final CountDownLatch running = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final AtomicInteger active = new AtomicInteger();
+            final AtomicInteger overlaps = new AtomicInteger();
+            mailbox.execute(new Runnable() {
+                @Override
+                public void run() {
+                    enter(active, overlaps);
+                    running.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException e) {
+                        // ends the task
+                    }
+                    active.decrementAndGet();
+                }
+            });
+            assertTrue(running.await(10, TimeUnit.SECONDS));
+            assertFalse(lock.tryLock());
+            assertFalse(lock.tryLock(20, TimeUnit.MILLISECONDS));
+
+            final CountDownLatch locked = new CountDownLatch(1);
+            Thread sender = new Thread() {
+                @Override
+                public void run() {
+                    lock.lock();
+                    try {
+                        enter(active, overlaps);
+                        locked.countDown();
+                        active.decrementAndGet();
+                    }
+                    finally {
+                        lock.unlock();
+                    }
+                }
+            };
+            sender.start();
+            assertFalse(locked.await(50, TimeUnit.MILLISECONDS));
+            release.countDown();
+            assertTrue(locked.await(10, TimeUnit.SECONDS));
+            sender.join(10000);
+            assertEquals(0, overlaps.get());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCondition() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            SerialExecutor mailbox = new SerialExecutor(pool);
+            final Lock lock = mailbox.getLock();
+            final Condition condition = lock.newCondition();
+            final CountDownLatch waiting = new CountDownLatch(1);
+            final AtomicInteger signalled = new AtomicInteger();
+            final AtomicInteger holds = new AtomicInteger();
+            Thread waiter = new Thread() {
+                @Override
+                public void run() {
+                    lock.lock();
+                    lock.lock();
+                    try {
+                        waiting.countDown();
+                        condition.awaitUninterruptibly();
+                        signalled.incrementAndGet();
+                    }
+                    finally {
+                        lock.unlock();
+                    }
+                    // both holds were given back
+                    if (!lock.tryLock()) {
+                        holds.incrementAndGet();
+                    }
+                    lock.unlock();
+                    lock.unlock();
+                }
+            };
+            waiter.start();
+            assertTrue(waiting.await(10, TimeUnit.SECONDS));
+
+            // the mailbox is given up while waiting, its tasks run
+            AtomicInteger ran = new AtomicInteger();
+            final CountDownLatch drained = new CountDownLatch(1);
+            mailbox.execute(counter(ran));
+            mailbox.execute(new Runnable() {
+                @Override
+                public void run() {
+                    drained.countDown();
+                }
+            });
+            assertTrue(drained.await(10, TimeUnit.SECONDS));
+            assertEquals(1, ran.get());
+
+            assertTrue(lock.tryLock(10, TimeUnit.SECONDS));
+            try {
+                condition.signal();
+                // the waiter needs the mailbox back first
+                Thread.sleep(50);
+                assertEquals(0, signalled.get());
+            }
+            finally {
+                lock.unlock();
+            }
+            waiter.join(10000);
+            assertEquals(1, signalled.get());
+            assertEquals(0, holds.get());
+            assertFalse(mailbox.isScheduled());
+
+            // a timed wait without signal gives up, holding the lock again
+            lock.lock();
+            try {
+                assertFalse(condition.await(20, TimeUnit.MILLISECONDS));
+                assertTrue(condition.awaitNanos(TimeUnit.MILLISECONDS.toNanos(20)) <= 0);
+            }
+            finally {
+                lock.unlock();
+            }
+            assertFalse(mailbox.isScheduled());
+
+            try {
+                condition.await();
+                fail("Waited without holding the lock");
+            }
+            catch (IllegalMonitorStateException e) {
+                // expected
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExclusive() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            final SerialExecutor mailbox = new SerialExecutor(pool);
+            final Lock lock = mailbox.getLock();
+            final AtomicInteger active = new AtomicInteger();
+            final AtomicInteger overlaps = new AtomicInteger();
+            final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+            final AtomicInteger locked = new AtomicInteger();
+            final int threads = 4;
+            final int tasks = 5000;
+            final CountDownLatch done = new CountDownLatch(threads * tasks);
+            List<Thread> submitters = new ArrayList<Thread>();
+            for (int t = 0; t < threads; t++) {
+                final int base = t * tasks;
+                submitters.add(new Thread() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < tasks; i++) {
+                            final int n = base + i;
+                            if (i % 4 == 0) {
+                                // sends from application threads take the lock instead
+                                lock.lock();
+                                try {
+                                    enter(active, overlaps);
+                                    locked.incrementAndGet();
+                                    active.decrementAndGet();
+                                }
+                                finally {
+                                    lock.unlock();
+                                }
+                                done.countDown();
+                                continue;
+                            }
+                            mailbox.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    enter(active, overlaps);
+                                    order.add(n);
+                                    active.decrementAndGet();
+                                    done.countDown();
+                                }
+                            });
+                        }
+                    }
+                });
+            }
+            for (Thread t : submitters) {
+                t.start();
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+            assertEquals(0, overlaps.get());
+            assertEquals(threads * tasks / 4, locked.get());
+            assertEquals(threads * tasks - locked.get(), order.size());
+            // tasks of each submitter ran in submission order
+            int[] last = new int[threads];
+            for (int t = 0; t < threads; t++) {
+                last[t] = -1;
+            }
+            for (int n : order) {
+                int t = n / tasks;
+                assertTrue(n > last[t]);
+                last[t] = n;
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void enter(AtomicInteger active, AtomicInteger overlaps) {
+        if (active.incrementAndGet() != 1) {
+            overlaps.incrementAndGet();
+        }
+    }
+
+    private static Runnable counter(final AtomicInteger count) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                count.incrementAndGet();
+            }
+        };
+    }
+
+    /**
+     * Executor running its tasks only when told to
+     */
+    private static class ManualExecutor implements Executor {
+
+        private final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+        boolean reject;
+
+        @Override
+        public void execute(Runnable command) {
+            if (reject) {
+                throw new RejectedExecutionException();
+            }
+            tasks.add(command);
+        }
+
+        int pending() {
+            return tasks.size();
+        }
+
+        void runNext() {
+            tasks.removeFirst().run();
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                runNext();
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.data;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotSame;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+
+import org.jdiameter.api.Request;
+import org.jdiameter.client.impl.app.ro.ClientRoSessionDataOffHeapImpl;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.jdiameter.common.api.app.ro.ClientRoSessionState;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for the off heap record allocator
+ */
+public class TestOffHeapSlab {
+
+    @Test
+    public void testAllocateFreeReuse() throws Exception {
+        OffHeapSlab slab = new OffHeapSlab(16, 1);
+        int first = slab.allocate();
+        int second = slab.allocate();
+        assertEquals(2, slab.size());
+        assertEquals(OffHeapSlab.SEGMENT_RECORDS, slab.getCapacity());
+
+        slab.putLong(first, 0, 42L);
+        slab.putInt(first, 8, 7);
+        slab.setReference(first, 0, "timer");
+        slab.putLong(second, 0, 43L);
+        assertEquals(42L, slab.getLong(first, 0));
+        assertEquals(7, slab.getInt(first, 8));
+        assertEquals(43L, slab.getLong(second, 0));
+
+        slab.free(first);
+        assertEquals(1, slab.size());
+        // the freed handle is reused, zeroed
+        assertEquals(first, slab.allocate());
+        assertEquals(0L, slab.getLong(first, 0));
+        assertEquals(0, slab.getInt(first, 8));
+        assertNull(slab.getReference(first, 0));
+        assertEquals(43L, slab.getLong(second, 0));
+
+        // a second segment is added once the first is full
+        for (int i = slab.size(); i <= OffHeapSlab.SEGMENT_RECORDS; i++) {
+            slab.allocate();
+        }
+        assertEquals(OffHeapSlab.SEGMENT_RECORDS + 1, slab.size());
+        assertEquals(2 * OffHeapSlab.SEGMENT_RECORDS, slab.getCapacity());
+        // record bytes and, per reference slot, the link to its data chunks
+        assertEquals(2L * OffHeapSlab.SEGMENT_RECORDS * (16 + 8), slab.getOffHeapBytes());
+    }
+
+    @Test
+    public void testBounds() throws Exception {
+        OffHeapSlab slab = new OffHeapSlab(8, 1);
+        int handle = slab.allocate();
+        try {
+            slab.putLong(handle, 4, 1L);
+            throw new AssertionError("Write past the record");
+        }
+        catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+        try {
+            slab.getReference(handle, 1);
+            throw new AssertionError("Read past the reference slots");
+        }
+        catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+        try {
+            slab.free(handle + 1);
+            throw new AssertionError("Free of a never allocated handle");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLeakReclaimed() throws Exception {
+        OffHeapSlab slab = new OffHeapSlab(16, 1);
+        Object kept = new Object();
+        int keptHandle = slab.allocate(kept);
+        slab.putLong(keptHandle, 0, 1L);
+        // freed by its owner, not a leak
+        Object released = new Object();
+        slab.free(slab.allocate(released));
+        for (int i = 0; i < 100; i++) {
+            slab.allocate(new Object());
+        }
+        assertEquals(101, slab.size());
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (slab.getReclaimed() < 100 && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+            slab.reclaim();
+        }
+        assertEquals(100, slab.getReclaimed());
+        assertEquals(1, slab.size());
+        assertEquals(1L, slab.getLong(keptHandle, 0));
+        assertTrue(slab.toString().contains("reclaimed=100"));
+        // reclaimed handles are reused
+        assertTrue(slab.allocate(kept) < 101);
+        assertEquals(0, slab.reclaim());
+        // keep the owners reachable up to here
+        assertNotSame(kept, released);
+    }
+
+    @Test
+    public void testData() throws Exception {
+        OffHeapSlab slab = new OffHeapSlab(8, 2);
+        int handle = slab.allocate();
+        assertFalse(slab.hasData(handle, 0));
+        assertNull(slab.getData(handle, 0));
+
+        // spanning several chunks
+        byte[] data = new byte[3 * OffHeapSlab.CHUNK_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        slab.putData(handle, 0, data);
+        slab.putData(handle, 1, new byte[0]);
+        assertTrue(slab.hasData(handle, 0));
+        assertTrue(Arrays.equals(data, slab.getData(handle, 0)));
+        assertEquals(0, slab.getData(handle, 1).length);
+        assertEquals(4, slab.getChunks());
+        assertNull(slab.getReference(handle, 0));
+
+        // replaced by smaller data, then by an object
+        slab.putData(handle, 0, new byte[] {1, 2, 3});
+        assertTrue(Arrays.equals(new byte[] {1, 2, 3}, slab.getData(handle, 0)));
+        assertEquals(1, slab.getChunks());
+        slab.setReference(handle, 0, "timer");
+        assertFalse(slab.hasData(handle, 0));
+        assertEquals(0, slab.getChunks());
+        assertSame("timer", slab.getReference(handle, 0));
+
+        // freed chunks are reused, freeing the record frees its data
+        slab.putData(handle, 0, data);
+        slab.putData(handle, 1, data);
+        assertEquals(8, slab.getChunks());
+        slab.free(handle);
+        assertEquals(0, slab.getChunks());
+        handle = slab.allocate();
+        assertFalse(slab.hasData(handle, 0));
+        assertFalse(slab.hasData(handle, 1));
+    }
+
+    @Test
+    public void testRequestKeptOffHeap() throws Exception {
+        OffHeapSlab slab = new OffHeapSlab();
+        MessageParser parser = new MessageParser();
+        ClientRoSessionDataOffHeapImpl data = new ClientRoSessionDataOffHeapImpl(slab, parser);
+        data.setSessionId("host;1;1");
+        assertEquals(ClientRoSessionState.IDLE, data.getClientRoSessionState());
+
+        Request request = (Request) parser.createEmptyMessage(272, 4);
+        request.setRequest(true);
+        data.setBuffer(request);
+        assertEquals(1, slab.getChunks());
+        // decoded from the slab on the first read, then kept until overwritten
+        Request decoded = data.getBuffer();
+        assertNotSame(request, decoded);
+        assertSame(decoded, data.getBuffer());
+        assertEquals(272, decoded.getCommandCode());
+        assertTrue(decoded.isRequest());
+        data.setBuffer((Request) parser.createEmptyMessage(274, 4));
+        assertEquals(274, data.getBuffer().getCommandCode());
+        assertSame(data.getBuffer(), data.getBuffer());
+
+        // each data has its own record
+        ClientRoSessionDataOffHeapImpl other = new ClientRoSessionDataOffHeapImpl(slab, parser);
+        other.setSessionId("host;1;2");
+        assertNull(other.getBuffer());
+
+        data.setBuffer(null);
+        assertNull(data.getBuffer());
+        assertEquals(0, slab.getChunks());
+        data.setTxTimerRequest(request);
+        data.remove();
+        assertNull(data.getBuffer());
+        assertNull(data.getTxTimerRequest());
+        assertEquals(1, slab.size());
+        assertEquals(0, slab.getChunks());
+    }
+}
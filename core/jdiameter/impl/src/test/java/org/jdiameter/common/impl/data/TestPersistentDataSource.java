@@ -0,0 +1,354 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.data;
+
+import static org.jdiameter.client.impl.helpers.Parameters.SessionJournalFile;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.api.Answer;
+import org.jdiameter.api.ApplicationId;
+import org.jdiameter.api.BaseSession;
+import org.jdiameter.api.Configuration;
+import org.jdiameter.api.NetworkReqListener;
+import org.jdiameter.api.Request;
+import org.jdiameter.api.Session;
+import org.jdiameter.api.app.AppSession;
+import org.jdiameter.client.api.IAssembler;
+import org.jdiameter.client.api.IContainer;
+import org.jdiameter.client.api.ISessionFactory;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.client.impl.app.ro.ClientRoSessionDataOffHeapImpl;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.jdiameter.common.api.app.IAppSessionData;
+import org.jdiameter.common.api.app.IAppSessionFactory;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.api.data.ISessionDatasource;
+import org.jdiameter.common.api.timer.ITimerFacility;
+import org.jdiameter.common.api.timer.ITimerHandle;
+import org.jdiameter.common.impl.app.AppSessionImpl;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for the sessions restored by the persistent datasource
+ */
+public class TestPersistentDataSource {
+
+    private static final String SESSION_ID = "host;1;1";
+
+    private File dir;
+    private File file;
+    private MessageParser parser;
+    private ScheduledThreadPoolExecutor scheduler;
+    // timers fired on rebuilt sessions
+    private List<String> fired;
+    // timers which found no session
+    private List<String> lost;
+    private volatile IAppSessionFactory appSessionFactory;
+    private PersistentDataSource dataSource;
+    private ITimerFacility timerFacility;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        dir = File.createTempFile("journal", "");
+        assertTrue(dir.delete() && dir.mkdir());
+        file = new File(dir, "sessions.journal");
+        parser = new MessageParser();
+        scheduler = new ScheduledThreadPoolExecutor(1);
+        fired = new CopyOnWriteArrayList<String>();
+        lost = new CopyOnWriteArrayList<String>();
+        appSessionFactory = null;
+        dataSource = null;
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        if (dataSource != null) {
+            dataSource.stop();
+        }
+        scheduler.shutdownNow();
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testExpiredTimer() throws Exception {
+        // Tx timer expired while the node was down
+        writeSession(System.currentTimeMillis() - 1000);
+        appSessionFactory = new AppSessionFactory();
+        start();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (fired.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, fired.size());
+        assertEquals("TX", fired.get(0));
+        assertEquals(0, lost.size());
+        assertEquals(0, dataSource.getRestoredCount());
+    }
+
+    @Test
+    public void testNoAppSessionFactory() throws Exception {
+        writeSession(System.currentTimeMillis() + 60000);
+        start();
+        assertEquals(1, dataSource.getRestoredCount());
+
+        // the application did not register its factory yet, the session is kept
+        assertNull(dataSource.getSession(SESSION_ID));
+        assertEquals(1, dataSource.getRestoredCount());
+        assertTrue(dataSource.exists(SESSION_ID));
+
+        appSessionFactory = new AppSessionFactory();
+        assertNotNull(dataSource.getSession(SESSION_ID));
+        assertEquals(0, dataSource.getRestoredCount());
+    }
+
+    private void writeSession(long txExpiryTime) throws Exception {
+        OffHeapSlab slab = new OffHeapSlab();
+        SessionJournal journal = new SessionJournal(file, 4096, slab.getReferences());
+        journal.open();
+        ClientRoSessionDataOffHeapImpl data = new ClientRoSessionDataOffHeapImpl(slab, parser);
+        data.setSessionId(SESSION_ID);
+        data.setApplicationId(ApplicationId.createByAuthAppId(4));
+        data.attach(journal, false);
+        data.setTxTimerId(new TimerHandle("TX", txExpiryTime));
+        journal.close();
+    }
+
+    private void start() throws Exception {
+        IContainer container = createContainer();
+        dataSource = new PersistentDataSource(container);
+        timerFacility = new TimerFacility();
+        dataSource.start();
+    }
+
+    private IContainer createContainer() {
+        final IContainer[] container = new IContainer[1];
+        // default values of all parameters, but the journal file
+        final Configuration configuration = stub(Configuration.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (args != null && args.length == 2) {
+                    return args[0].equals(SessionJournalFile.ordinal()) ? file.getPath() : args[1];
+                }
+                return null;
+            }
+        });
+        final IConcurrentFactory concurrentFactory = stub(IConcurrentFactory.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getScheduledExecutorService") ? scheduler : null;
+            }
+        });
+        final IAssembler assembler = stub(IAssembler.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getComponentInstance")) {
+                    if (args[0] == IMessageParser.class) {
+                        return parser;
+                    }
+                    if (args[0] == ISessionDatasource.class) {
+                        return dataSource;
+                    }
+                    if (args[0] == ITimerFacility.class) {
+                        return timerFacility;
+                    }
+                    if (args[0] == IConcurrentFactory.class) {
+                        return concurrentFactory;
+                    }
+                }
+                return null;
+            }
+        });
+        final ISessionFactory sessionFactory = stub(ISessionFactory.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getAppSessionFactory")) {
+                    return appSessionFactory;
+                }
+                if (name.equals("getContainer")) {
+                    return container[0];
+                }
+                if (name.equals("getNewSession")) {
+                    final String sessionId = (String) args[0];
+                    return stub(Session.class, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            return method.getName().equals("getSessionId") ? sessionId : null;
+                        }
+                    });
+                }
+                return null;
+            }
+        });
+        container[0] = stub(IContainer.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getSessionFactory")) {
+                    return sessionFactory;
+                }
+                if (name.equals("getAssemblerFacility")) {
+                    return assembler;
+                }
+                if (name.equals("getConfiguration")) {
+                    return configuration;
+                }
+                if (name.equals("getConcurrentFactory")) {
+                    return concurrentFactory;
+                }
+                return null;
+            }
+        });
+        return container[0];
+    }
+
+    // stubbed methods returning primitives answer their default value
+    private static <T> T stub(Class<T> iface, final InvocationHandler handler) {
+        return iface.cast(Proxy.newProxyInstance(TestPersistentDataSource.class.getClassLoader(), new Class<?>[] {iface}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                Object result = handler.invoke(proxy, method, args);
+                if (result == null && method.getReturnType() == boolean.class) {
+                    return false;
+                }
+                if (result == null && method.getReturnType() == long.class) {
+                    return 0L;
+                }
+                if (result == null && method.getReturnType() == int.class) {
+                    return 0;
+                }
+                return result;
+            }
+        }));
+    }
+
+    private class AppSessionFactory implements IAppSessionFactory {
+
+        @Override
+        public AppSession getNewSession(String sessionId, Class<? extends AppSession> aClass, ApplicationId applicationId, Object[] args) {
+            return null;
+        }
+
+        @Override
+        public AppSession getSession(String sessionId, Class<? extends AppSession> aClass) {
+            ClientRoSessionDataOffHeapImpl data = dataSource.getRestoredData(sessionId, ClientRoSessionDataOffHeapImpl.class);
+            try {
+                return data != null ? new RestoredSession((ISessionFactory) dataSource.container.getSessionFactory(), data) : null;
+            }
+            catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private class RestoredSession extends AppSessionImpl implements NetworkReqListener {
+
+        RestoredSession(ISessionFactory sf, IAppSessionData appSessionData) {
+            super(sf, appSessionData);
+        }
+
+        @Override
+        public void onTimer(String timerName) {
+            fired.add(timerName);
+        }
+
+        @Override
+        public boolean isStateless() {
+            return false;
+        }
+
+        @Override
+        public Answer processRequest(Request request) {
+            return null;
+        }
+    }
+
+    // looks the session up when a timer fires, as the local timer facility does
+    private class TimerFacility implements ITimerFacility {
+
+        @Override
+        public Serializable schedule(final String sessionId, final String timerName, long miliseconds) {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    BaseSession session = dataSource.getSession(sessionId);
+                    if (session == null) {
+                        lost.add(timerName);
+                    }
+                    else {
+                        ((AppSessionImpl) session).onTimer(timerName);
+                    }
+                }
+            }, miliseconds, TimeUnit.MILLISECONDS);
+            return new TimerHandle(timerName, System.currentTimeMillis() + miliseconds);
+        }
+
+        @Override
+        public void cancel(Serializable id) {
+        }
+    }
+
+    private static class TimerHandle implements ITimerHandle, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String timerName;
+        private final long expiryTime;
+
+        TimerHandle(String timerName, long expiryTime) {
+            this.timerName = timerName;
+            this.expiryTime = expiryTime;
+        }
+
+        @Override
+        public String getSessionId() {
+            return SESSION_ID;
+        }
+
+        @Override
+        public String getTimerName() {
+            return timerName;
+        }
+
+        @Override
+        public long getDelay() {
+            return expiryTime - System.currentTimeMillis();
+        }
+    }
+}
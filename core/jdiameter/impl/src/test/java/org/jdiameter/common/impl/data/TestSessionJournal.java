@@ -0,0 +1,415 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.common.impl.data;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.api.ApplicationId;
+import org.jdiameter.api.Request;
+import org.jdiameter.client.impl.app.ro.ClientRoSessionDataOffHeapImpl;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.jdiameter.common.api.timer.ITimerFacility;
+import org.jdiameter.common.api.timer.ITimerHandle;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for the session journal: entry format, torn entries, compaction and restore
+ */
+public class TestSessionJournal {
+
+    private File dir;
+    private File file;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        dir = File.createTempFile("journal", "");
+        assertTrue(dir.delete() && dir.mkdir());
+        file = new File(dir, "sessions.journal");
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testFormat() throws Exception {
+        SessionJournal journal = new SessionJournal(file, 4096, 3);
+        assertTrue(journal.open().isEmpty());
+        assertEquals(1, journal.getGeneration());
+        OffHeapSlab slab = new OffHeapSlab(16, 3);
+        int handle = slab.allocate();
+        slab.putLong(handle, 0, 42L);
+
+        journal.session("s1", "cls", ApplicationId.createByAuthAppId(10415, 4));
+        journal.record("s1", slab, handle);
+        journal.request("s1", 1, new byte[] {1, 2, 3});
+        journal.timer("s1", 0, "TX", 12345L);
+        journal.clear("s1", 2);
+        journal.session("s2", "cls", null);
+        journal.remove("s2");
+        journal.close();
+
+        // header, then the session entry: length, type, session id, data class, application id
+        RandomAccessFile raf = new RandomAccessFile(new File(file.getPath() + ".1"), "r");
+        try {
+            assertEquals(0x4A444A32, raf.readInt());
+            assertEquals(3, raf.readInt());
+            assertEquals(1L, raf.readLong());
+            assertEquals(1 + 2 + 2 + 2 + 3 + 1 + 24, raf.readInt());
+            assertEquals(1, raf.readByte());
+            assertEquals(2, raf.readShort());
+        }
+        finally {
+            raf.close();
+        }
+
+        journal = new SessionJournal(file, 4096, 3);
+        Map<String, SessionJournal.Image> images = open(journal);
+        assertEquals(1, images.size());
+        SessionJournal.Image image = images.get("s1");
+        assertEquals("cls", image.getDataClass());
+        assertEquals(4, image.getApplicationId().getAuthAppId());
+        assertEquals(10415, image.getApplicationId().getVendorId());
+        assertEquals(16, image.getRecord().length);
+        slab.putLong(handle, 0, 0L);
+        slab.putBytes(handle, image.getRecord());
+        assertEquals(42L, slab.getLong(handle, 0));
+        SessionJournal.TimerEntry timer = (SessionJournal.TimerEntry) image.getReferences()[0];
+        assertEquals("TX", timer.getTimerName());
+        assertEquals(12345L, timer.getExpiryTime());
+        assertEquals(3, ((byte[]) image.getReferences()[1]).length);
+        assertNull(image.getReferences()[2]);
+
+        // the segment is folded into the journal file, sized to its entries, appending goes on in a new one
+        assertTrue(file.exists());
+        assertEquals(16 + (4 + 1 + 2 + 2 + 2 + 3 + 1 + 24) + (4 + 1 + 2 + 2 + 2 + 16) + (4 + 1 + 2 + 2 + 1 + 4 + 3)
+            + (4 + 1 + 2 + 2 + 1 + 2 + 2 + 8), file.length());
+        assertFalse(new File(file.getPath() + ".1").exists());
+        assertEquals(2, journal.getGeneration());
+        journal.close();
+    }
+
+    @Test
+    public void testTornTail() throws Exception {
+        SessionJournal journal = new SessionJournal(file, 4096, 3);
+        journal.open();
+        journal.session("s1", "cls", null);
+        journal.session("s2", "cls", null);
+        int torn = journal.getPosition();
+        journal.remove("s1");
+        journal.close();
+
+        // the length of the last entry was not written
+        RandomAccessFile raf = new RandomAccessFile(new File(file.getPath() + ".1"), "rw");
+        try {
+            raf.seek(torn);
+            raf.writeInt(0);
+        }
+        finally {
+            raf.close();
+        }
+        journal = new SessionJournal(file, 4096, 3);
+        Map<String, SessionJournal.Image> images = open(journal);
+        assertEquals(2, images.size());
+        journal.session("s3", "cls", null);
+        torn = journal.getPosition();
+        journal.close();
+
+        // a malformed entry, its session id longer than the entry
+        raf = new RandomAccessFile(new File(file.getPath() + ".2"), "rw");
+        try {
+            raf.seek(torn);
+            raf.writeInt(8);
+            raf.writeByte(6);
+            raf.writeShort(300);
+        }
+        finally {
+            raf.close();
+        }
+        journal = new SessionJournal(file, 4096, 3);
+        images = open(journal);
+        assertEquals(3, images.size());
+        assertTrue(images.containsKey("s3"));
+        journal.close();
+    }
+
+    @Test
+    public void testTornMiddle() throws Exception {
+        SessionJournal journal = new SessionJournal(file, 4096, 3);
+        journal.open();
+        journal.session("s1", "cls", null);
+        int torn = journal.getPosition();
+        journal.session("s2", "cls", null);
+        journal.session("s3", "cls", null);
+        journal.remove("s1");
+        journal.close();
+
+        // the entry of s2 was reserved but not written when the process crashed, those after it were
+        RandomAccessFile raf = new RandomAccessFile(new File(file.getPath() + ".1"), "rw");
+        try {
+            raf.seek(torn);
+            int length = raf.readInt();
+            raf.seek(torn);
+            raf.writeInt(-length);
+            raf.write(new byte[length]);
+        }
+        finally {
+            raf.close();
+        }
+        journal = new SessionJournal(file, 4096, 3);
+        Map<String, SessionJournal.Image> images = open(journal);
+        assertEquals(1, images.size());
+        assertTrue(images.containsKey("s3"));
+        journal.close();
+    }
+
+    @Test
+    public void testFields() throws Exception {
+        SessionJournal journal = new SessionJournal(file, 4096, 3);
+        journal.open();
+        OffHeapSlab slab = new OffHeapSlab(16, 3);
+        int handle = slab.allocate();
+        slab.putLong(handle, 0, 42L);
+        journal.session("s1", "cls", null);
+        journal.record("s1", slab, handle);
+        int position = journal.getPosition();
+        journal.field("s1", 8, 7);
+        // length, type, session id, offset, width and value
+        assertEquals(4 + 1 + 2 + 2 + 2 + 1 + 4, journal.getPosition() - position);
+        journal.field("s1", 12, (byte) 3);
+        journal.close();
+
+        journal = new SessionJournal(file, 4096, 3);
+        Map<String, SessionJournal.Image> images = open(journal);
+        slab.putBytes(handle, images.get("s1").getRecord());
+        assertEquals(42L, slab.getLong(handle, 0));
+        assertEquals(7, slab.getInt(handle, 8));
+        assertEquals(3, slab.getByte(handle, 12));
+        journal.close();
+    }
+
+    @Test
+    public void testBackgroundCompaction() throws Exception {
+        SessionJournal journal = new SessionJournal(file, 1024, 3);
+        journal.open();
+        OffHeapSlab slab = new OffHeapSlab(16, 3);
+        int handle = slab.allocate();
+        for (int i = 0; i < 10; i++) {
+            journal.session("s" + i, "cls", null);
+        }
+        for (int n = 0; n < 200; n++) {
+            for (int i = 0; i < 10; i++) {
+                slab.putLong(handle, 0, n * 10 + i);
+                journal.record("s" + i, slab, handle);
+            }
+        }
+        for (int i = 0; i < 5; i++) {
+            journal.remove("s" + i);
+        }
+        assertTrue(journal.getGeneration() > 10);
+        journal.checkpoint();
+        assertTrue(journal.getCheckpoints() > 0);
+        // the journal file and the current segment
+        assertEquals(2, dir.listFiles().length);
+        journal.session("s10", "cls", null);
+        journal.close();
+
+        journal = new SessionJournal(file, 1024, 3);
+        Map<String, SessionJournal.Image> images = open(journal);
+        assertEquals(6, images.size());
+        for (int i = 5; i < 10; i++) {
+            slab.putBytes(handle, images.get("s" + i).getRecord());
+            assertEquals(199 * 10 + i, slab.getLong(handle, 0));
+        }
+        assertNull(images.get("s10").getRecord());
+        journal.close();
+    }
+
+    @Test
+    public void testConcurrentAppend() throws Exception {
+        final SessionJournal journal = new SessionJournal(file, 1024, 3);
+        journal.open();
+        ExecutorService compaction = Executors.newSingleThreadExecutor();
+        journal.setExecutor(compaction);
+        final int threads = 4;
+        final int changes = 500;
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final String sessionId = "s" + t;
+            Thread writer = new Thread() {
+                @Override
+                public void run() {
+                    OffHeapSlab slab = new OffHeapSlab(16, 3);
+                    int handle = slab.allocate();
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    journal.session(sessionId, "cls", null);
+                    for (int n = 1; n <= changes; n++) {
+                        slab.putLong(handle, 0, n);
+                        journal.record(sessionId, slab, handle);
+                    }
+                }
+            };
+            writer.start();
+            writers.add(writer);
+        }
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        journal.checkpoint();
+        journal.close();
+        compaction.shutdown();
+        assertTrue(compaction.awaitTermination(5, TimeUnit.SECONDS));
+
+        // segments filled by several writers at once, each change replayed in order
+        SessionJournal reopened = new SessionJournal(file, 1024, 3);
+        Map<String, SessionJournal.Image> images = open(reopened);
+        assertEquals(threads, images.size());
+        OffHeapSlab slab = new OffHeapSlab(16, 3);
+        int handle = slab.allocate();
+        for (int t = 0; t < threads; t++) {
+            slab.putBytes(handle, images.get("s" + t).getRecord());
+            assertEquals(changes, slab.getLong(handle, 0));
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void testRestoreTimers() throws Exception {
+        MessageParser parser = new MessageParser();
+        OffHeapSlab slab = new OffHeapSlab();
+        SessionJournal journal = new SessionJournal(file, 4096, slab.getReferences());
+        journal.open();
+        ClientRoSessionDataOffHeapImpl data = new ClientRoSessionDataOffHeapImpl(slab, parser);
+        data.setSessionId("host;1;1");
+        data.setApplicationId(ApplicationId.createByAuthAppId(4));
+        data.attach(journal, false);
+        data.setTxTimerId(new TimerHandle("host;1;1", "TX", System.currentTimeMillis() + 5000));
+        data.setBuffer((Request) parser.createEmptyMessage(272, 4));
+        data.setGatheredCCFH(1);
+        journal.close();
+
+        // restart
+        journal = new SessionJournal(file, 4096, slab.getReferences());
+        Map<String, SessionJournal.Image> images = open(journal);
+        SessionJournal.Image image = images.get("host;1;1");
+        assertEquals(ClientRoSessionDataOffHeapImpl.class.getName(), image.getDataClass());
+        TimerFacility timerFacility = new TimerFacility();
+        ClientRoSessionDataOffHeapImpl restored = new ClientRoSessionDataOffHeapImpl(slab, parser);
+        restored.setSessionId("host;1;1");
+        restored.restore(image, timerFacility);
+
+        assertEquals(1, timerFacility.scheduled.size());
+        TimerHandle timer = timerFacility.scheduled.get(0);
+        assertEquals("TX", timer.getTimerName());
+        assertTrue(timer.getDelay() > 4000 && timer.getDelay() <= 5000);
+        assertEquals(timer, restored.getTxTimerId());
+        assertNotNull(restored.getBuffer());
+        assertEquals(272, restored.getBuffer().getCommandCode());
+        assertEquals(1, restored.getGatheredCCFH());
+        journal.close();
+    }
+
+    private static Map<String, SessionJournal.Image> open(SessionJournal journal) throws IOException {
+        Collection<SessionJournal.Image> images = journal.open();
+        Map<String, SessionJournal.Image> result = new HashMap<String, SessionJournal.Image>();
+        for (SessionJournal.Image image : images) {
+            result.put(image.getSessionId(), image);
+        }
+        return result;
+    }
+
+    private static class TimerHandle implements ITimerHandle, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String sessionId;
+        private final String timerName;
+        private final long expiryTime;
+
+        TimerHandle(String sessionId, String timerName, long expiryTime) {
+            this.sessionId = sessionId;
+            this.timerName = timerName;
+            this.expiryTime = expiryTime;
+        }
+
+        @Override
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        @Override
+        public String getTimerName() {
+            return timerName;
+        }
+
+        @Override
+        public long getDelay() {
+            return expiryTime - System.currentTimeMillis();
+        }
+    }
+
+    private static class TimerFacility implements ITimerFacility {
+
+        private final List<TimerHandle> scheduled = new ArrayList<TimerHandle>();
+
+        @Override
+        public Serializable schedule(String sessionId, String timerName, long miliseconds) {
+            TimerHandle timer = new TimerHandle(sessionId, timerName, System.currentTimeMillis() + miliseconds);
+            scheduled.add(timer);
+            return timer;
+        }
+
+        @Override
+        public void cancel(Serializable id) {
+            scheduled.remove(id);
+        }
+    }
+}
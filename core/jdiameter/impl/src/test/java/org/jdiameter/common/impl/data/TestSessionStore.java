@@ -0,0 +1,195 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.data;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jdiameter.api.Answer;
+import org.jdiameter.api.BaseSession;
+import org.jdiameter.api.NetworkReqListener;
+import org.jdiameter.api.Request;
+import org.jdiameter.common.api.data.SessionOverloadException;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for the striped session table
+ */
+public class TestSessionStore {
+
+    @Test
+    public void testAddGetRemove() throws Exception {
+        SessionStore store = new SessionStore(4, 0);
+        for (int i = 0; i < 1000; i++) {
+            store.add(session("host;1;" + i));
+        }
+        assertEquals(1000, store.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("host;1;" + i, store.getSession("host;1;" + i).getSessionId());
+            // looked up by an equal, not identical id
+            assertTrue(store.contains(new String("host;1;" + i)));
+        }
+        assertNull(store.getSession("host;1;1000"));
+
+        NetworkReqListener listener = listener();
+        assertTrue(store.setListener("host;1;10", listener));
+        assertFalse(store.setListener("host;1;1000", listener));
+        assertSame(listener, store.getListener("host;1;10"));
+        assertSame(listener, store.removeListener("host;1;10"));
+        assertNull(store.getListener("host;1;10"));
+
+        // removal shrinks the tables, remaining sessions stay reachable
+        for (int i = 0; i < 990; i++) {
+            assertEquals("host;1;" + i, store.remove("host;1;" + i).getSessionId());
+        }
+        assertEquals(10, store.size());
+        assertNull(store.remove("host;1;0"));
+        for (int i = 990; i < 1000; i++) {
+            assertEquals("host;1;" + i, store.getSession("host;1;" + i).getSessionId());
+        }
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        SessionStore store = new SessionStore(2, 2);
+        store.add(session("a"));
+        store.add(session("b"));
+        try {
+            store.add(session("c"));
+            fail("store is full");
+        }
+        catch (SessionOverloadException e) {
+            assertEquals(2, e.getCapacity());
+        }
+        assertEquals(1, store.getRejectedCount());
+        store.remove("a");
+        store.add(session("c"));
+        assertEquals(2, store.size());
+
+        // sessions are counted per stripe, the capacity applies to their sum
+        store = new SessionStore(SessionStore.DEFAULT_STRIPES, 100);
+        for (int i = 0; i < 100; i++) {
+            store.add(session("session" + i));
+        }
+        try {
+            store.add(session("session100"));
+            fail("store is full");
+        }
+        catch (SessionOverloadException e) {
+            assertEquals(100, e.getCapacity());
+        }
+        int sum = 0;
+        for (int size : store.getStripeSizes()) {
+            sum += size;
+        }
+        assertEquals(100, sum);
+        assertEquals(100, store.size());
+    }
+
+    @Test
+    public void testLookupDuringMutation() throws Exception {
+        final SessionStore store = new SessionStore(1, 0);
+        final BaseSession stable = session("stable");
+        store.add(stable);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicInteger lookups = new AtomicInteger();
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                // churn grows, shrinks and reuses slots of the only stripe
+                for (int round = 0; round < 200; round++) {
+                    for (int i = 0; i < 200; i++) {
+                        store.add(session("churn;" + i));
+                    }
+                    for (int i = 0; i < 200; i++) {
+                        store.remove("churn;" + i);
+                    }
+                }
+            }
+        };
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (!isInterrupted()) {
+                        assertSame(stable, store.getSession("stable"));
+                        BaseSession churn = store.getSession("churn;7");
+                        if (churn != null) {
+                            assertEquals("churn;7", churn.getSessionId());
+                        }
+                        lookups.incrementAndGet();
+                    }
+                }
+                catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        };
+        reader.start();
+        writer.start();
+        writer.join();
+        reader.interrupt();
+        reader.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertTrue(lookups.get() > 0);
+        assertEquals(1, store.size());
+    }
+
+    private static BaseSession session(final String sessionId) {
+        return (BaseSession) Proxy.newProxyInstance(BaseSession.class.getClassLoader(), new Class<?>[] {BaseSession.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getSessionId")) {
+                            return sessionId;
+                        }
+                        if (method.getName().equals("equals")) {
+                            return proxy == args[0];
+                        }
+                        if (method.getName().equals("hashCode")) {
+                            return System.identityHashCode(proxy);
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    private static NetworkReqListener listener() {
+        return new NetworkReqListener() {
+            @Override
+            public Answer processRequest(Request request) {
+                return null;
+            }
+        };
+    }
+}
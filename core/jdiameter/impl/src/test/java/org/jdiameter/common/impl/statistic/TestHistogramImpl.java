@@ -0,0 +1,139 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.statistic;
+
+import static org.jdiameter.client.impl.helpers.Parameters.Statistics;
+import static org.jdiameter.client.impl.helpers.Parameters.StatisticsActiveList;
+import static org.jdiameter.client.impl.helpers.Parameters.StatisticsEnabled;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotSame;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.client.impl.helpers.EmptyConfiguration;
+import org.jdiameter.common.api.statistic.IHistogram;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for the latency histogram and the per peer histogram cache
+ */
+public class TestHistogramImpl {
+
+    @Test
+    public void testBuckets() throws Exception {
+        for (long value = 0; value < (1L << 37); value = value * 3 / 2 + 1) {
+            int index = HistogramImpl.indexOf(value);
+            assertTrue(index >= 0 && index < HistogramImpl.BUCKETS);
+            long highest = HistogramImpl.highestValueOf(index);
+            assertTrue(value <= highest);
+            // relative error stays within one sub bucket
+            assertTrue(highest - value <= Math.max(value / 32, 0));
+        }
+        assertEquals(HistogramImpl.BUCKETS - 1, HistogramImpl.indexOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testRecordAndRotate() throws Exception {
+        HistogramImpl histogram = new HistogramImpl("test");
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        // nothing visible before the interval is closed
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+
+        histogram.rotate();
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMaxValue());
+        assertWithin(500, histogram.getValueAtPercentile(50));
+        assertWithin(990, histogram.getValueAtPercentile(99));
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+        assertEquals(1, histogram.getValueAtPercentile(0));
+
+        histogram.rotate();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxValue());
+    }
+
+    @Test
+    public void testClampedAndNegative() throws Exception {
+        HistogramImpl histogram = new HistogramImpl("test");
+        histogram.record(-5);
+        histogram.record(TimeUnit.DAYS.toNanos(2));
+        histogram.rotate();
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        // max stays exact for values above the last bucket
+        assertEquals(TimeUnit.DAYS.toMicros(2), histogram.getValueAtPercentile(100));
+        assertEquals(TimeUnit.DAYS.toMicros(2), histogram.getMaxValue());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        HistogramImpl histogram = new HistogramImpl(IHistogram.Type.RoundTripTime, "aaa://peer:3868", 4, 272, false);
+        assertFalse(histogram.isEnabled());
+        histogram.record(1000);
+        histogram.rotate();
+        assertEquals(0, histogram.getCount());
+        assertEquals("RoundTripTime.aaa://peer:3868.4.272", histogram.getName());
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        StatisticManagerImpl manager = new StatisticManagerImpl(EmptyConfiguration.getInstance().add(Statistics,
+            EmptyConfiguration.getInstance().add(StatisticsEnabled, true).add(StatisticsActiveList, "Latency")));
+        HistogramCache cache = new HistogramCache(manager, "aaa://peer:3868");
+
+        IHistogram rtt = cache.get(IHistogram.Type.RoundTripTime, 4, 272);
+        assertSame(rtt, cache.get(IHistogram.Type.RoundTripTime, 4, 272));
+        assertSame(rtt, manager.getHistogram(IHistogram.Type.RoundTripTime, "aaa://peer:3868", 4, 272));
+        assertEquals("aaa://peer:3868", rtt.getPeer());
+        assertNotSame(rtt, cache.get(IHistogram.Type.QueueWaitTime, 4, 272));
+        assertNotSame(rtt, cache.get(IHistogram.Type.RoundTripTime, 4, 258));
+        assertEquals(3, manager.getHistograms().size());
+
+        // past the cache size histograms still come from statistic manager
+        for (int i = 0; i < HistogramCache.MAX_ENTRIES * 2; i++) {
+            IHistogram histogram = cache.get(IHistogram.Type.ListenerExecTime, 16777216, i);
+            assertSame(histogram, cache.get(IHistogram.Type.ListenerExecTime, 16777216, i));
+        }
+        assertSame(rtt, cache.get(IHistogram.Type.RoundTripTime, 4, 272));
+    }
+
+    @Test
+    public void testCacheStatisticsOff() throws Exception {
+        StatisticManagerImpl manager = new StatisticManagerImpl(EmptyConfiguration.getInstance().add(Statistics,
+            EmptyConfiguration.getInstance().add(StatisticsEnabled, false)));
+        HistogramCache cache = new HistogramCache(manager, "aaa://peer:3868");
+        IHistogram histogram = cache.get(IHistogram.Type.RoundTripTime, 4, 272);
+        histogram.record(1000);
+        histogram.rotate();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, manager.getHistograms().size());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected ~" + expected + " but was " + actual, Math.abs(actual - expected) <= expected / 32 + 1);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.statistic;
+
+import static org.jdiameter.client.impl.helpers.Parameters.Statistics;
+import static org.jdiameter.client.impl.helpers.Parameters.StatisticsActiveList;
+import static org.jdiameter.client.impl.helpers.Parameters.StatisticsEnabled;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.client.impl.helpers.EmptyConfiguration;
+import org.jdiameter.common.api.statistic.IHistogram;
+import org.jdiameter.common.api.statistic.IStatistic;
+import org.jdiameter.common.api.statistic.IStatisticRecord;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for the OpenMetrics rendering of statistics and histograms
+ */
+public class TestOpenMetricsEndpoint {
+
+    @Test
+    public void testRender() throws Exception {
+        StatisticManagerImpl manager = new StatisticManagerImpl(EmptyConfiguration.getInstance().add(Statistics,
+            EmptyConfiguration.getInstance().add(StatisticsEnabled, true).add(StatisticsActiveList, "Peer,PeerFSM,Latency")));
+        IStatisticRecord requests = manager.newCounterRecord(IStatisticRecord.Counters.NetGenRequest);
+        manager.newStatistic("aaa://peer:3868", IStatistic.Groups.Peer, requests);
+        requests.inc(5);
+        IStatisticRecord queueSize = manager.newCounterRecord(IStatisticRecord.Counters.QueueSize);
+        manager.newStatistic("aaa://peer:3868", IStatistic.Groups.PeerFSM, queueSize);
+        queueSize.setLongValue(3);
+
+        IHistogram histogram = manager.getHistogram(IHistogram.Type.RoundTripTime, "aaa://peer:3868", 4, 272);
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(300));
+        histogram.rotate();
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(200));
+        histogram.rotate();
+
+        OpenMetricsEndpoint endpoint = new OpenMetricsEndpoint(manager, "127.0.0.1", 0);
+        endpoint.render();
+        String text = new String(endpoint.getBuffer(), 0, endpoint.getLength(), "UTF-8");
+
+        // monotonic count is a counter family whose sample carries the _total suffix
+        assertTrue(text, text.contains("# TYPE jdiameter_Peer_NetGenRequest counter\n"));
+        assertTrue(text, text.contains("jdiameter_Peer_NetGenRequest_total{name=\"aaa://peer:3868\"} 5\n"));
+        assertFalse(text, text.contains("jdiameter_Peer_NetGenRequest{"));
+        assertTrue(text, text.contains("# TYPE jdiameter_PeerFSM_QueueSize gauge\n"));
+        assertTrue(text, text.contains("jdiameter_PeerFSM_QueueSize{name=\"aaa://peer:3868\"} 3\n"));
+
+        // summary count and sum cover all closed intervals, quantiles the last one
+        String labels = "{peer=\"aaa://peer:3868\",application_id=\"4\",command_code=\"272\"";
+        assertTrue(text, text.contains("# TYPE jdiameter_latency_RoundTripTime_microseconds summary\n"));
+        assertTrue(text, text.contains("jdiameter_latency_RoundTripTime_microseconds_count" + labels + "} 3\n"));
+        assertTrue(text, text.contains("jdiameter_latency_RoundTripTime_microseconds_sum" + labels + "} 600\n"));
+        assertTrue(text, text.contains("jdiameter_latency_RoundTripTime_max_microseconds" + labels + "} 200\n"));
+        assertTrue(text, text.endsWith("# EOF\n"));
+    }
+}
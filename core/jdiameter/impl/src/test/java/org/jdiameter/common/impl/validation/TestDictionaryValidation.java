@@ -0,0 +1,330 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.validation;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.AvpDataException;
+import org.jdiameter.api.AvpSet;
+import org.jdiameter.api.Message;
+import org.jdiameter.api.validation.AvpNotAllowedException;
+import org.jdiameter.api.validation.AvpRepresentation;
+import org.jdiameter.api.validation.MessageRepresentation;
+import org.jdiameter.api.validation.ValidatorLevel;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for the compiled dictionary validation, the dictionary testsuite cases run against a reduced dictionary
+ */
+public class TestDictionaryValidation {
+
+    private static final int RECURSIVE_CODE = 60001;
+    private static final int RECURSIVE_CHILD_CODE = 60002;
+
+    private final MessageParser parser = new MessageParser();
+    private DictionaryImpl instance;
+
+    private boolean wasEnabled;
+    private boolean wasConfigured;
+    private ValidatorLevel wasSendLevel;
+    private ValidatorLevel wasReceiveLevel;
+
+    @BeforeClass
+    public void setUpClass() {
+        instance = (DictionaryImpl) DictionaryImpl.INSTANCE;
+        wasEnabled = instance.isEnabled();
+        wasConfigured = instance.isConfigured();
+        wasSendLevel = instance.getSendLevel();
+        wasReceiveLevel = instance.getReceiveLevel();
+        instance.configure(getClass().getResourceAsStream("/dictionary-validation.xml"));
+        assertTrue(instance.isConfigured());
+    }
+
+    @AfterClass
+    public void tearDownClass() {
+        instance.setEnabled(wasEnabled);
+        instance.setConfigured(wasConfigured);
+        instance.setSendLevel(wasSendLevel);
+        instance.setReceiveLevel(wasReceiveLevel);
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        instance.setEnabled(true);
+        instance.setConfigured(true);
+        instance.setReceiveLevel(ValidatorLevel.OFF);
+        instance.setSendLevel(ValidatorLevel.ALL);
+    }
+
+    @Test
+    public void testBasicOperations() {
+        Message answer = parser.createEmptyMessage(271, 19302);
+        answer.setRequest(false);
+        AvpSet set = answer.getAvps();
+        set.addAvp(Avp.SESSION_ID, "SESSION-ID;246t13461346713rfg@#$SD$@#6", false);
+        MessageRepresentation msgRep = instance.getMessage(271, 19302, false);
+        assertNotNull(msgRep);
+
+        assertTrue(msgRep.isAllowed(Avp.SESSION_ID, 0));
+        assertTrue(msgRep.isCountValidForMultiplicity(set, Avp.SESSION_ID, 0L));
+
+        assertTrue(msgRep.isAllowed(Avp.ORIGIN_HOST, 0));
+        assertFalse(msgRep.isCountValidForMultiplicity(set, Avp.ORIGIN_HOST, 0L));
+
+        assertTrue(msgRep.isAllowed(Avp.ACC_SESSION_ID, 0));
+        assertTrue(msgRep.isCountValidForMultiplicity(set, Avp.ACC_SESSION_ID, 0L));
+        set.addAvp(Avp.ACC_SESSION_ID, 55L, 0L, true, false);
+        assertFalse(msgRep.isCountValidForMultiplicity(set, Avp.ACC_SESSION_ID, 0L, 1));
+
+        assertTrue(msgRep.isAllowed(Avp.PROXY_INFO, 0));
+        set.addAvp(Avp.PROXY_INFO, 284L, 0L, true, false);
+        set.addAvp(Avp.PROXY_INFO, 284L, 0L, true, false);
+        assertTrue(msgRep.isCountValidForMultiplicity(set, Avp.PROXY_INFO, 0L));
+
+        assertFalse(msgRep.isAllowed(Avp.AUTH_APPLICATION_ID, 0));
+        assertTrue(msgRep.isCountValidForMultiplicity(set, Avp.AUTH_APPLICATION_ID, 0L));
+        assertFalse(msgRep.isCountValidForMultiplicity(set, Avp.AUTH_APPLICATION_ID, 0L, 1));
+
+        assertFalse(msgRep.isAllowed(Avp.DESTINATION_REALM, 0));
+        assertFalse(msgRep.isCountValidForMultiplicity(set, Avp.DESTINATION_REALM, 0L, 1));
+
+        // the compiled program sees the same rules
+        set.addAvp(Avp.ORIGIN_HOST, "host", false);
+        set.addAvp(Avp.ORIGIN_REALM, "realm", false);
+        assertViolation(answer, false, Avp.RESULT_CODE);
+        set.addAvp(Avp.RESULT_CODE, 2001);
+        assertValid(answer, false);
+        set.addAvp(Avp.DESTINATION_REALM, "realm", false);
+        assertViolation(answer, false, Avp.DESTINATION_REALM);
+    }
+
+    @Test
+    public void testGroupedAvpValidation() throws Exception {
+        Message msg = createMessage();
+        assertViolation(msg, false);
+
+        fillTopLevelAvps(msg);
+        assertValid(msg, false);
+
+        // Unit-Value within CC-Money within Granted-Service-Unit lacks Value-Digits
+        addTopLevelGroupedAvp(msg);
+        assertViolation(msg, false, Avp.UNIT_VALUE);
+        // receiving is not validated
+        assertValid(msg, true);
+
+        fillTopLevelGroupedAvp(msg);
+        assertValid(msg, false);
+        assertValid(msg, true);
+    }
+
+    @Test
+    public void testGroupedInGroupedViolation() throws Exception {
+        Message msg = createMessage();
+        fillTopLevelAvps(msg);
+        AvpSet gsu = msg.getAvps().addGroupedAvp(Avp.GRANTED_SERVICE_UNIT);
+        AvpSet ccMoney = gsu.addGroupedAvp(Avp.CC_MONEY);
+        ccMoney.addAvp(Avp.CURRENCY_CODE, 978);
+
+        // CC-Money lacks Unit-Value, reported by CC-Money
+        assertViolation(msg, false, Avp.CC_MONEY);
+        // only top level AVPs are checked at message level
+        instance.setSendLevel(ValidatorLevel.MESSAGE);
+        assertValid(msg, false);
+        instance.setSendLevel(ValidatorLevel.ALL);
+
+        AvpSet unitValue = ccMoney.addGroupedAvp(Avp.UNIT_VALUE);
+        unitValue.addAvp(Avp.VALUE_DIGITS, 100L);
+        assertValid(msg, false);
+
+        // second CC-Money in Granted-Service-Unit, reported by Granted-Service-Unit
+        gsu.addGroupedAvp(Avp.CC_MONEY).addGroupedAvp(Avp.UNIT_VALUE).addAvp(Avp.VALUE_DIGITS, 1L);
+        assertViolation(msg, false, Avp.GRANTED_SERVICE_UNIT);
+    }
+
+    @Test
+    public void testValidationLevels() throws Exception {
+        // lacks top level AVPs
+        Message msg = createMessage();
+
+        instance.setEnabled(false);
+        assertValid(msg, false);
+        instance.setEnabled(true);
+        instance.setConfigured(false);
+        assertValid(msg, false);
+        instance.setConfigured(true);
+
+        for (boolean incoming : new boolean[]{true, false}) {
+            setLevel(incoming, ValidatorLevel.OFF);
+            assertValid(msg, incoming);
+            setLevel(incoming, ValidatorLevel.MESSAGE);
+            assertViolation(msg, incoming);
+            setLevel(incoming, ValidatorLevel.ALL);
+            assertViolation(msg, incoming);
+        }
+
+        fillTopLevelAvps(msg);
+        addTopLevelGroupedAvp(msg);
+        for (boolean incoming : new boolean[]{true, false}) {
+            setLevel(incoming, ValidatorLevel.MESSAGE);
+            assertValid(msg, incoming);
+            setLevel(incoming, ValidatorLevel.ALL);
+            assertViolation(msg, incoming, Avp.UNIT_VALUE);
+        }
+    }
+
+    @Test
+    public void testCommandAddedAfterConfigure() throws Exception {
+        Message msg = parser.createEmptyMessage(60000, 4);
+        msg.setRequest(false);
+        assertValid(msg, false);
+
+        Map<AvpRepresentation, AvpRepresentation> avps = new HashMap<AvpRepresentation, AvpRepresentation>();
+        AvpRepresentation sessionId = new AvpRepresentationImpl(0, Avp.SESSION_ID, 0, AvpRepresentation._MP_ONE, "Session-Id");
+        avps.put(sessionId, sessionId);
+        MessageRepresentationImpl command = new MessageRepresentationImpl(60000, 4, false, "Test-Answer");
+        command.setMessageAvps(avps);
+        instance.getCommandMap().put(command, command);
+        try {
+            assertSame(command, instance.getMessage(60000, 4, false));
+            assertViolation(msg, false, Avp.SESSION_ID);
+            msg.getAvps().addAvp(Avp.SESSION_ID, "session", false);
+            assertValid(msg, false);
+        }
+        finally {
+            instance.getCommandMap().remove(command);
+        }
+    }
+
+    @Test
+    public void testRecursiveGroupedDefinition() throws Exception {
+        AvpRepresentationImpl recursive = new AvpRepresentationImpl("Recursive", "N/A", RECURSIVE_CODE, false, "may", "may", "mustnot", 0,
+            "Grouped", "Grouped");
+        List<AvpRepresentation> children = new ArrayList<AvpRepresentation>();
+        children.add(recursive);
+        children.add(new AvpRepresentationImpl(-1, RECURSIVE_CHILD_CODE, 0, AvpRepresentation._MP_ONE, "Recursive-Child"));
+        recursive.setChildren(children);
+
+        // must not recurse endlessly
+        ValidationProgram program = new ValidationProgram(null, Collections.<AvpRepresentation>singletonList(recursive));
+
+        AvpSet set = parser.createEmptyMessage(60000, 4).getAvps();
+        AvpSet outer = set.addGroupedAvp(RECURSIVE_CODE, 0, false, false);
+        outer.addAvp(RECURSIVE_CHILD_CODE, 1, 0, false, false);
+        AvpSet inner = outer.addGroupedAvp(RECURSIVE_CODE, 0, false, false);
+        program.validate(set, false);
+        try {
+            program.validate(set, true);
+            fail("Nested AVP lacks its child");
+        }
+        catch (AvpNotAllowedException e) {
+            assertEquals(RECURSIVE_CODE, e.getAvpCode());
+        }
+        inner.addAvp(RECURSIVE_CHILD_CODE, 1, 0, false, false);
+        program.validate(set, true);
+    }
+
+    private void setLevel(boolean incoming, ValidatorLevel level) {
+        if (incoming) {
+            instance.setReceiveLevel(level);
+        }
+        else {
+            instance.setSendLevel(level);
+        }
+    }
+
+    private void assertValid(Message msg, boolean incoming) {
+        try {
+            instance.validate(msg, incoming);
+        }
+        catch (AvpNotAllowedException e) {
+            fail("Validation of message should not fail: " + e.getMessage());
+        }
+    }
+
+    private void assertViolation(Message msg, boolean incoming, int code) {
+        assertEquals(code, assertViolation(msg, incoming).getAvpCode());
+    }
+
+    private AvpNotAllowedException assertViolation(Message msg, boolean incoming) {
+        try {
+            instance.validate(msg, incoming);
+        }
+        catch (AvpNotAllowedException e) {
+            return e;
+        }
+        fail("Validation of message should fail");
+        return null;
+    }
+
+    /**
+     * Creates message which lacks some top level AVPs
+     */
+    private Message createMessage() {
+        Message msg = parser.createEmptyMessage(272, 4);
+        msg.setRequest(false);
+        AvpSet set = msg.getAvps();
+        set.addAvp(Avp.AUTH_APPLICATION_ID, 5);
+        set.addAvp(Avp.CC_REQUEST_NUMBER, 0);
+        set.addAvp(Avp.ORIGIN_REALM, "ALALAL", false);
+        set.addAvp(Avp.RESULT_CODE, 2006);
+        set.addAvp(Avp.SESSION_ID, "asdqw64ds", false);
+        return msg;
+    }
+
+    private void fillTopLevelAvps(Message msg) {
+        AvpSet set = msg.getAvps();
+        set.addAvp(Avp.CC_REQUEST_TYPE, 1);
+        set.addAvp(Avp.ORIGIN_HOST, "124121235", false);
+    }
+
+    private void addTopLevelGroupedAvp(Message msg) {
+        AvpSet gsuAvp = msg.getAvps().addGroupedAvp(Avp.GRANTED_SERVICE_UNIT);
+        gsuAvp.addAvp(Avp.CC_INPUT_OCTETS, 8);
+        AvpSet ccMoneyAvp = gsuAvp.addGroupedAvp(Avp.CC_MONEY);
+        ccMoneyAvp.addAvp(Avp.CURRENCY_CODE, 124);
+        // Unit-Value lacks Value-Digits
+        AvpSet unitValueAvp = ccMoneyAvp.addGroupedAvp(Avp.UNIT_VALUE);
+        unitValueAvp.addAvp(Avp.EXPONENT, 12);
+    }
+
+    private void fillTopLevelGroupedAvp(Message msg) throws AvpDataException {
+        AvpSet gsuAvp = msg.getAvps().getAvp(Avp.GRANTED_SERVICE_UNIT).getGrouped();
+        AvpSet ccMoneyAvp = gsuAvp.getAvp(Avp.CC_MONEY).getGrouped();
+        AvpSet unitValueAvp = ccMoneyAvp.getAvp(Avp.UNIT_VALUE).getGrouped();
+        unitValueAvp.addAvp(Avp.VALUE_DIGITS, 142L);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.common.impl.validation;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for the long to int lookup table of the validation programs
+ */
+public class TestLongIntTable {
+
+    @Test
+    public void testPutAndGet() {
+        LongIntTable table = new LongIntTable(3);
+        assertTrue(table.putIfAbsent(0L, 0));
+        assertTrue(table.putIfAbsent(-1L, 1));
+        assertTrue(table.putIfAbsent(Long.MIN_VALUE, 2));
+        assertEquals(0, table.get(0L));
+        assertEquals(1, table.get(-1L));
+        assertEquals(2, table.get(Long.MIN_VALUE));
+        assertEquals(-1, table.get(1L));
+        assertEquals(-1, table.get(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testFirstValueKept() {
+        LongIntTable table = new LongIntTable(1);
+        assertTrue(table.putIfAbsent(42L, 7));
+        assertFalse(table.putIfAbsent(42L, 8));
+        assertEquals(7, table.get(42L));
+    }
+
+    @Test
+    public void testEmpty() {
+        LongIntTable table = new LongIntTable(0);
+        assertEquals(-1, table.get(0L));
+        assertEquals(-1, table.get(263L));
+    }
+
+    @Test
+    public void testFilledToExpectedSize() {
+        // AVP keys differing only in vendor or only in code, as the validation programs build them
+        int codes = 100;
+        long[] vendors = {0L, 10415L, 4294967295L};
+        LongIntTable table = new LongIntTable(codes * vendors.length);
+        int value = 0;
+        for (long vendor : vendors) {
+            for (int code = 0; code < codes; code++) {
+                assertTrue(table.putIfAbsent(ValidationProgram.key(code, vendor), value++));
+            }
+        }
+        value = 0;
+        for (long vendor : vendors) {
+            for (int code = 0; code < codes; code++) {
+                assertEquals(value++, table.get(ValidationProgram.key(code, vendor)));
+            }
+        }
+        assertEquals(-1, table.get(ValidationProgram.key(codes, 0L)));
+        assertEquals(-1, table.get(ValidationProgram.key(0, 1L)));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.server.impl;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.ResultCode;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for the store of answers used for duplicate detection
+ */
+public class TestDuplicateAnswerCache {
+
+    private final MessageParser parser = new MessageParser();
+
+    @Test
+    public void testStoredAnswer() throws Exception {
+        DuplicateAnswerCache cache = new DuplicateAnswerCache(parser, 100);
+        cache.put("client.example.com", 77, answer(77));
+        assertEquals(1, cache.size());
+
+        IMessage stored = cache.get(request("client.example.com", 77, false));
+        assertNotNull(stored);
+        assertEquals(272, stored.getCommandCode());
+        assertEquals(4, stored.getApplicationId());
+        assertEquals(77, stored.getEndToEndIdentifier());
+        assertEquals("client.example.com;1;77", stored.getSessionId());
+        assertEquals(ResultCode.SUCCESS, stored.getResultCode().getUnsigned32());
+
+        // a second get decodes a fresh copy
+        assertTrue(stored != cache.get(request("client.example.com", 77, false)));
+        assertNull(cache.get(request("client.example.com", 78, true)));
+        assertNull(cache.get(request("other.example.com", 77, true)));
+
+        // the same key replaces the stored answer
+        cache.put("client.example.com", 77, answer(77));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testRotationExpiry() throws Exception {
+        DuplicateAnswerCache cache = new DuplicateAnswerCache(parser, 100);
+        cache.put("client.example.com", 1, answer(1));
+        for (int i = 0; i < DuplicateAnswerCache.BUCKETS - 1; i++) {
+            cache.rotate();
+            assertNotNull(cache.get(request("client.example.com", 1, true)));
+        }
+        cache.put("client.example.com", 2, answer(2));
+        cache.rotate();
+        assertNull(cache.get(request("client.example.com", 1, true)));
+        assertNotNull(cache.get(request("client.example.com", 2, true)));
+        assertEquals(1, cache.size());
+        assertEquals(0, cache.getEarlyRotationCount());
+    }
+
+    @Test
+    public void testSizeBound() throws Exception {
+        int maxSize = 400;
+        DuplicateAnswerCache cache = new DuplicateAnswerCache(parser, maxSize);
+        int count = 1000;
+        for (int i = 0; i < count; i++) {
+            cache.put("client.example.com", i, answer(i));
+            assertTrue(cache.size() <= maxSize);
+        }
+        // full buckets rotate early, the newest answers are kept and the oldest dropped
+        assertTrue(cache.getEarlyRotationCount() >= (count - maxSize) / (maxSize / DuplicateAnswerCache.BUCKETS));
+        for (int i = count - maxSize / DuplicateAnswerCache.BUCKETS * (DuplicateAnswerCache.BUCKETS - 1); i < count; i++) {
+            assertNotNull(cache.get(request("client.example.com", i, false)));
+        }
+        assertNull(cache.get(request("client.example.com", 0, true)));
+    }
+
+    @Test
+    public void testManyHosts() throws Exception {
+        // hosts are not limited in number, only answers are
+        int hosts = 70000;
+        DuplicateAnswerCache cache = new DuplicateAnswerCache(parser, hosts * DuplicateAnswerCache.BUCKETS);
+        IMessage answer = answer(5);
+        for (int i = 0; i < hosts; i++) {
+            cache.put("client" + i + ".example.com", 5, answer);
+        }
+        assertEquals(hosts, cache.size());
+        assertNotNull(cache.get(request("client0.example.com", 5, false)));
+        assertNotNull(cache.get(request("client" + (hosts - 1) + ".example.com", 5, false)));
+    }
+
+    @Test
+    public void testBloomFilter() throws Exception {
+        DuplicateAnswerCache cache = new DuplicateAnswerCache(parser, 4000);
+        IMessage answer = answer(1);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("client.example.com", i, answer);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 1000; i++) {
+            // no false negatives, a first transmission of an answered request is found without the T flag
+            assertTrue(cache.mightContain("client.example.com", i));
+            assertNotNull(cache.get(request("client.example.com", i, false)));
+            if (cache.mightContain("client.example.com", 100000 + i)) {
+                falsePositives++;
+                assertNull(cache.get(request("client.example.com", 100000 + i, false)));
+            }
+        }
+        assertTrue("false positives " + falsePositives, falsePositives < 100);
+
+        // retransmitted requests are looked up whatever the filter says
+        assertNull(cache.get(request("client.example.com", 200000, true)));
+        assertNotNull(cache.get(request("client.example.com", 999, true)));
+    }
+
+    private IMessage request(String originHost, long endToEndId, boolean retransmitted) {
+        IMessage request = parser.createEmptyMessage(272, 4);
+        request.setRequest(true);
+        request.setEndToEndIdentifier(endToEndId);
+        request.setReTransmitted(retransmitted);
+        request.getAvps().addAvp(Avp.ORIGIN_HOST, originHost, true, false, true);
+        return request;
+    }
+
+    private IMessage answer(long endToEndId) {
+        IMessage answer = parser.createEmptyMessage(272, 4);
+        answer.setRequest(false);
+        answer.setEndToEndIdentifier(endToEndId);
+        answer.getAvps().addAvp(Avp.SESSION_ID, "client.example.com;1;" + endToEndId, true, false, false);
+        answer.getAvps().addAvp(Avp.RESULT_CODE, ResultCode.SUCCESS, true, false, true);
+        answer.getAvps().addAvp(Avp.ORIGIN_HOST, "server.example.com", true, false, true);
+        return answer;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.jdiameter.server.impl;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import org.jdiameter.api.ApplicationId;
+import org.jdiameter.server.impl.OverloadManagerImpl.AppOverloadInfo;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for the priority aware request shedding of the overload manager
+ */
+public class TestOverloadManagerImpl {
+
+    private static final int HIGH = 2;
+    private static final int MID = 8;
+    private static final int LOW = 12;
+
+    @Test
+    public void testAllRejectByDefault() throws Exception {
+        AppOverloadInfo info = new AppOverloadInfo(ApplicationId.createByAuthAppId(4));
+        info.appendEntry(1, 0.5, 1.0);
+        info.updateInformation(1, 0.4);
+        assertEquals(0, info.getReduction());
+        assertFalse(info.shedRequest(LOW));
+
+        // without a ramp everything between the thresholds is rejected
+        info.updateInformation(1, 0.55);
+        assertEquals(100, info.getReduction());
+        assertTrue(info.shedRequest(HIGH));
+        assertTrue(info.shedRequest(LOW));
+
+        info.updateInformation(1, 1.5);
+        assertEquals(0, info.getReduction());
+    }
+
+    @Test
+    public void testRamp() throws Exception {
+        AppOverloadInfo info = new AppOverloadInfo(ApplicationId.createByAuthAppId(4));
+        info.appendEntry(1, 0.5, 1.0, true);
+        info.updateInformation(1, 0.5);
+        assertEquals(1, info.getReduction());
+        info.updateInformation(1, 0.75);
+        assertEquals(50, info.getReduction());
+        info.updateInformation(1, 1.0);
+        assertEquals(100, info.getReduction());
+    }
+
+    @Test
+    public void testShedDistribution() throws Exception {
+        AppOverloadInfo info = new AppOverloadInfo(ApplicationId.createByAuthAppId(4));
+        info.appendEntry(1, 0.0, 1.0, true);
+        // 60% of the traffic shed: all LOW (50%) and a third of MID (10% out of 30%)
+        info.updateInformation(1, 0.6);
+        assertEquals(60, info.getReduction());
+
+        int[] offered = new int[16];
+        int[] shed = new int[16];
+        for (int i = 0; i < 20000; i++) {
+            // 50% LOW, 30% MID, 20% HIGH
+            int r = i % 10;
+            int priority = r < 5 ? LOW : r < 8 ? MID : HIGH;
+            offered[priority]++;
+            if (info.shedRequest(priority)) {
+                shed[priority]++;
+            }
+        }
+        // lowest priority goes first, highest is untouched
+        assertTrue("LOW shed " + shed[LOW], shed[LOW] > offered[LOW] * 0.95);
+        assertEquals(0, shed[HIGH]);
+        double total = (shed[LOW] + shed[MID] + shed[HIGH]) / 20000.0;
+        assertTrue("total shed " + total, Math.abs(total - 0.6) < 0.05);
+        assertTrue("MID shed " + shed[MID], shed[MID] > 0 && shed[MID] < offered[MID] / 2);
+    }
+}
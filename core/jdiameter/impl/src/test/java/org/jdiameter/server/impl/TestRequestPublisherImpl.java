@@ -0,0 +1,279 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.jdiameter.server.impl;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdiameter.api.Answer;
+import org.jdiameter.api.ApplicationId;
+import org.jdiameter.api.Request;
+import org.jdiameter.api.RequestPublisher;
+import org.jdiameter.api.ResultCode;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.controller.IPeer;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Testcases for the demand driven publisher of network requests
+ */
+public class TestRequestPublisherImpl {
+
+    private static final ApplicationId APPLICATION_ID = ApplicationId.createByAuthAppId(4);
+
+    private MessageParser parser;
+    private ScheduledExecutorService timer;
+    // answers sent through the peer of the requests
+    private List<IMessage> answers;
+    private IPeer peer;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        parser = new MessageParser();
+        timer = Executors.newSingleThreadScheduledExecutor();
+        answers = new CopyOnWriteArrayList<IMessage>();
+        peer = (IPeer) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {IPeer.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("sendMessage")) {
+                    answers.add((IMessage) args[0]);
+                    return true;
+                }
+                return null;
+            }
+        });
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void testDemand() throws Exception {
+        RequestPublisherImpl publisher = new RequestPublisherImpl(null, APPLICATION_ID, 10, 60000, timer);
+        Subscriber subscriber = new Subscriber();
+        publisher.subscribe(subscriber);
+        assertNotNull(subscriber.subscription);
+
+        // waits for demand
+        Request first = createRequest();
+        Request second = createRequest();
+        Request third = createRequest();
+        assertNull(publisher.processRequest(first));
+        assertNull(publisher.processRequest(second));
+        assertEquals(0, subscriber.received.size());
+        assertEquals(2, publisher.getPendingCount());
+
+        // delivered in order, within the demand
+        subscriber.subscription.request(1);
+        assertEquals(1, subscriber.received.size());
+        assertSame(first, subscriber.received.get(0));
+        subscriber.subscription.request(2);
+        assertEquals(2, subscriber.received.size());
+        assertSame(second, subscriber.received.get(1));
+        assertEquals(0, publisher.getPendingCount());
+
+        // the remaining demand takes the next request right away
+        assertNull(publisher.processRequest(third));
+        assertEquals(3, subscriber.received.size());
+        assertSame(third, subscriber.received.get(2));
+        assertEquals(0, answers.size());
+
+        // a second subscriber is refused
+        Subscriber other = new Subscriber();
+        publisher.subscribe(other);
+        assertTrue(other.error instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        RequestPublisherImpl publisher = new RequestPublisherImpl(null, APPLICATION_ID, 10, 50, timer);
+        Subscriber subscriber = new Subscriber();
+        publisher.subscribe(subscriber);
+        publisher.processRequest(createRequest());
+        publisher.processRequest(createRequest());
+
+        // answered by the timer, nobody asked for them
+        long deadline = System.currentTimeMillis() + 5000;
+        while (answers.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, answers.size());
+        for (IMessage answer : answers) {
+            assertEquals(ResultCode.TOO_BUSY, answer.getResultCode().getUnsigned32());
+        }
+        assertEquals(0, publisher.getPendingCount());
+        subscriber.subscription.request(1);
+        assertEquals(0, subscriber.received.size());
+    }
+
+    @Test
+    public void testExpiryWhileDraining() throws Exception {
+        final AtomicInteger scheduled = new AtomicInteger();
+        timer.shutdownNow();
+        timer = new ScheduledThreadPoolExecutor(1) {
+            @Override
+            public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+                scheduled.incrementAndGet();
+                return super.schedule(command, delay, unit);
+            }
+        };
+        final RequestPublisherImpl publisher = new RequestPublisherImpl(null, APPLICATION_ID, 10, 20, timer);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Subscriber subscriber = new Subscriber() {
+            @Override
+            public void onNext(Request request) {
+                super.onNext(request);
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(2);
+
+        // the subscriber blocks on the first request, the second one waits past the max pause with demand
+        Thread delivering = new Thread() {
+            @Override
+            public void run() {
+                publisher.processRequest(createRequest());
+            }
+        };
+        delivering.start();
+        while (subscriber.received.isEmpty()) {
+            Thread.sleep(1);
+        }
+        publisher.processRequest(createRequest());
+        Thread.sleep(200);
+
+        // the timer is not re-armed while the request waits for the draining thread
+        assertTrue("scheduled " + scheduled.get(), scheduled.get() <= 2);
+        assertEquals(1, publisher.getPendingCount());
+
+        release.countDown();
+        delivering.join(5000);
+        assertEquals(2, subscriber.received.size());
+        assertEquals(0, answers.size());
+    }
+
+    @Test
+    public void testExpiryWithoutTimer() throws Exception {
+        RequestPublisherImpl publisher = new RequestPublisherImpl(null, APPLICATION_ID, 10, 20, null);
+        publisher.subscribe(new Subscriber());
+        publisher.processRequest(createRequest());
+        Thread.sleep(50);
+        assertEquals(0, answers.size());
+
+        // expired by the next request
+        publisher.processRequest(createRequest());
+        assertEquals(1, answers.size());
+        assertEquals(ResultCode.TOO_BUSY, answers.get(0).getResultCode().getUnsigned32());
+        assertEquals(1, publisher.getPendingCount());
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        RequestPublisherImpl publisher = new RequestPublisherImpl(null, APPLICATION_ID, 2, 60000, timer);
+        Subscriber subscriber = new Subscriber();
+        publisher.subscribe(subscriber);
+        assertNull(publisher.processRequest(createRequest()));
+        assertNull(publisher.processRequest(createRequest()));
+
+        // answered right away once full, without waiting for the max pause
+        Answer answer = publisher.processRequest(createRequest());
+        assertNotNull(answer);
+        assertEquals(ResultCode.TOO_BUSY, answer.getResultCode().getUnsigned32());
+        assertEquals(2, publisher.getPendingCount());
+
+        // room again once demand takes waiting requests
+        subscriber.subscription.request(1);
+        assertNull(publisher.processRequest(createRequest()));
+        assertEquals(2, publisher.getPendingCount());
+    }
+
+    @Test
+    public void testNoPause() throws Exception {
+        RequestPublisherImpl publisher = new RequestPublisherImpl(null, APPLICATION_ID, 10, 0, timer);
+        Subscriber subscriber = new Subscriber();
+        publisher.subscribe(subscriber);
+        Answer answer = publisher.processRequest(createRequest());
+        assertEquals(ResultCode.TOO_BUSY, answer.getResultCode().getUnsigned32());
+
+        subscriber.subscription.request(1);
+        assertNull(publisher.processRequest(createRequest()));
+        assertEquals(1, subscriber.received.size());
+    }
+
+    private Request createRequest() {
+        IMessage request = parser.createEmptyMessage(272, 4);
+        request.setRequest(true);
+        request.setPeer(peer);
+        return request;
+    }
+
+    private static class Subscriber implements RequestPublisher.Subscriber {
+
+        private final List<Request> received = new CopyOnWriteArrayList<Request>();
+        private volatile RequestPublisher.Subscription subscription;
+        private volatile Throwable error;
+
+        @Override
+        public void onSubscribe(RequestPublisher.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Request request) {
+            received.add(request);
+        }
+
+        @Override
+        public void onError(Throwable cause) {
+            this.error = cause;
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
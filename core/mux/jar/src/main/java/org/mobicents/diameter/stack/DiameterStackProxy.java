@@ -43,6 +43,8 @@
 package org.mobicents.diameter.stack;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
@@ -169,6 +171,11 @@ public class DiameterStackProxy implements Stack, IContainer {
     ((IContainer) realStack).sendMessage(session);
   }
 
+  @Override
+  public Map<IMessage, Exception> sendMessages(List<IMessage> messages) throws IllegalDiameterStateException {
+    return ((IContainer) realStack).sendMessages(messages);
+  }
+
   @Override
   public IAssembler getAssemblerFacility() {
     return ((IContainer) realStack).getAssemblerFacility();